@@ -5,26 +5,41 @@
 package com.elevenpaths.almaraz;
 
 import org.springframework.boot.info.BuildProperties;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.annotation.Order;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
 import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
 import org.springframework.web.server.WebFilter;
 
+import com.elevenpaths.almaraz.context.InFlightRegistry;
 import com.elevenpaths.almaraz.context.RequestContext;
 import com.elevenpaths.almaraz.context.aspects.OperationRequestContextAspect;
+import com.elevenpaths.almaraz.ids.IdGenerator;
+import com.elevenpaths.almaraz.ids.RandomUuidIdGenerator;
+import com.elevenpaths.almaraz.logging.ErrorLogDeduplicator;
+import com.elevenpaths.almaraz.logging.SamplingPolicy;
 import com.elevenpaths.almaraz.resolvers.ValidRequestBody;
 import com.elevenpaths.almaraz.resolvers.ValidRequestBodyResolver;
 import com.elevenpaths.almaraz.validation.JsonSchemaRepository;
 import com.elevenpaths.almaraz.validation.JsonSchemaValidator;
+import com.elevenpaths.almaraz.webfilters.AlmarazWebFilter;
 import com.elevenpaths.almaraz.webfilters.BasePathWebFilter;
 import com.elevenpaths.almaraz.webfilters.CompleteLocationHeaderWebFilter;
 import com.elevenpaths.almaraz.webfilters.ErrorWebFilter;
+import com.elevenpaths.almaraz.webfilters.InFlightWebFilter;
+import com.elevenpaths.almaraz.webfilters.LightweightPathMatcher;
+import com.elevenpaths.almaraz.webfilters.LightweightWebFilter;
 import com.elevenpaths.almaraz.webfilters.LoggerWebFilter;
+import com.elevenpaths.almaraz.webfilters.MetricsWebFilter;
 import com.elevenpaths.almaraz.webfilters.RequestContextWebFilter;
+import com.elevenpaths.almaraz.webfilters.StaticResponseWebFilter;
 import com.elevenpaths.almaraz.webfilters.VersionWebFilter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * Default configuration for WebFlux applications that provides some of the Almaraz
  * components as Spring beans for dependency injection.
@@ -33,14 +48,27 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * of the filter:
  *
  * <ul>
+ * <li>LightweightWebFilter (1), only if there are lightweight paths</li>
+ * <li>VersionWebFilter (5), only if there are build properties</li>
+ * <li>StaticResponseWebFilter (5), only if there are static responses</li>
+ * <li>InFlightWebFilter (6), only if there is an {@link InFlightRegistry}</li>
  * <li>RequestContextWebFilter (10)</li>
  * <li>LoggerWebFilter (20)</li>
+ * <li>MetricsWebFilter (25), only if Micrometer is available and there is a MeterRegistry bean</li>
  * <li>ErrorWebFilter (30)</li>
  * <li>CompleteLocationHeaderWebFilter (40)</li>
  * <li>BasePathWebFilter (50)</li>
  * </ul>
  *
- * It also creates the bean {@link JsonSchemaValidator} to validate against JSON schemas.
+ * If {@link #isFusedWebFilter()} is overridden, the filters from RequestContextWebFilter to BasePathWebFilter
+ * are replaced by AlmarazWebFilter (10), which runs them in a single pass. Each filter is created by a protected
+ * factory method (e.g. {@link #createLoggerWebFilter()}) used in both modes, so override the factory methods
+ * (rather than the bean methods) to customize the filters.
+ *
+ * It also creates the bean {@link JsonSchemaValidator} to validate against JSON schemas, and the bean
+ * {@link IdGenerator} to generate transaction IDs (override {@link #getIdGenerator()} to choose another
+ * implementation). Override {@link #getSamplingPolicy()} to sample the log entries of the requests, and
+ * {@link #getInFlightRegistry()} to register the requests in flight and log the slow ones.
  * It configures the custom resolver {@link ValidRequestBodyResolver} to validate and bind
  * a request body to an entity class using the decorator {@link ValidRequestBody} in a
  * controller.
@@ -50,6 +78,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class AlmarazConfiguration implements WebFluxConfigurer {
 
+	/**
+	 * Micrometer is an optional dependency.
+	 */
+	private static final boolean MICROMETER_PRESENT = ClassUtils.isPresent(
+			"io.micrometer.core.instrument.MeterRegistry", AlmarazConfiguration.class.getClassLoader());
+
 	/**
 	 * Base path for the REST API. It is used by {@link CompleteLocationHeaderWebFilter}.
 	 */
@@ -112,6 +146,18 @@ public class AlmarazConfiguration implements WebFluxConfigurer {
 		return validator;
 	}
 	
+	/**
+	 * Get the generator of transaction IDs used by {@link RequestContextWebFilter}. It can also be injected
+	 * in {@link com.elevenpaths.almaraz.webclientfilters.LoggerWebClientFilter}.
+	 * By default, it generates random UUIDs. Override this method to choose another {@link IdGenerator}.
+	 *
+	 * @return IdGenerator
+	 */
+	@Bean
+	public IdGenerator getIdGenerator() {
+		return new RandomUuidIdGenerator();
+	}
+
 	/**
 	 * Get an instance of OperationRequestContext aspect.
 	 *
@@ -137,6 +183,82 @@ public class AlmarazConfiguration implements WebFluxConfigurer {
 		return new VersionWebFilter(objectMapper, buildProperties);
 	}
 
+	/**
+	 * Get the {@link LightweightWebFilter} that marks the requests that skip the Almaraz web filters (e.g.
+	 * liveness probes). It is only created if some path is registered with
+	 * {@link #configureLightweightPaths(LightweightPathMatcher)}.
+	 *
+	 * @return {@link WebFilter} to mark the lightweight requests.
+	 */
+	@Order(1)
+	@Bean
+	public LightweightWebFilter getLightweightWebFilter() {
+		LightweightPathMatcher matcher = new LightweightPathMatcher();
+		configureLightweightPaths(matcher);
+		return matcher.isEmpty() ? null : new LightweightWebFilter(matcher);
+	}
+
+	/**
+	 * Register the path prefixes (and optionally, the HTTP methods) of the requests that skip the Almaraz web
+	 * filters. By default, there are none. Override this method to register them.
+	 *
+	 * @param matcher
+	 */
+	protected void configureLightweightPaths(LightweightPathMatcher matcher) {
+	}
+
+	/**
+	 * Get the {@link StaticResponseWebFilter} that replies with static responses (e.g. health, readiness or
+	 * robots.txt) before creating the context and logging. It is only created if some static response is
+	 * registered with {@link #configureStaticResponses(StaticResponseWebFilter)}.
+	 *
+	 * @return {@link WebFilter} to reply with static responses.
+	 */
+	@Order(5)
+	@Bean
+	public StaticResponseWebFilter getStaticResponseWebFilter() {
+		StaticResponseWebFilter filter = new StaticResponseWebFilter();
+		configureStaticResponses(filter);
+		return filter.isEmpty() ? null : filter;
+	}
+
+	/**
+	 * Register the static responses of {@link StaticResponseWebFilter}. By default, there are no static
+	 * responses (the version is replied by {@link VersionWebFilter}). Override this method to register them.
+	 *
+	 * @param filter
+	 */
+	protected void configureStaticResponses(StaticResponseWebFilter filter) {
+	}
+
+	/**
+	 * Get the registry of the requests in flight used by {@link RequestContextWebFilter} and
+	 * {@link InFlightWebFilter}. By default, there is no registry. Override this method to register the requests
+	 * in flight and log the requests that exceed a latency budget (the watchdog is started with the first request).
+	 *
+	 * @return InFlightRegistry (or null)
+	 */
+	@Bean
+	public InFlightRegistry getInFlightRegistry() {
+		return null;
+	}
+
+	/**
+	 * Get the {@link InFlightWebFilter} that lists the requests in flight. It is only created if there is an
+	 * {@link InFlightRegistry}.
+	 *
+	 * @return {@link WebFilter} to list the requests in flight.
+	 */
+	@Order(6)
+	@Bean
+	public InFlightWebFilter getInFlightWebFilter() {
+		InFlightRegistry inFlightRegistry = getInFlightRegistry();
+		if (inFlightRegistry == null) {
+			return null;
+		}
+		return new InFlightWebFilter(objectMapper, inFlightRegistry);
+	}
+
 	/**
 	 * Get the {@link RequestContextWebFilter} that generates the reactive context
 	 * and initializes it with the correlator and transactionId.
@@ -146,7 +268,19 @@ public class AlmarazConfiguration implements WebFluxConfigurer {
 	@Order(10)
 	@Bean
 	public RequestContextWebFilter getContextWebFilter() {
-		return new RequestContextWebFilter();
+		if (isFusedWebFilter()) {
+			return null;
+		}
+		return createRequestContextWebFilter();
+	}
+
+	/**
+	 * Create the {@link RequestContextWebFilter}, either as a bean or as a step of the {@link AlmarazWebFilter}.
+	 *
+	 * @return {@link RequestContextWebFilter}
+	 */
+	protected RequestContextWebFilter createRequestContextWebFilter() {
+		return new RequestContextWebFilter(null, null, getIdGenerator(), getInFlightRegistry());
 	}
 
 	/**
@@ -157,7 +291,65 @@ public class AlmarazConfiguration implements WebFluxConfigurer {
 	@Order(20)
 	@Bean
 	public LoggerWebFilter getLoggerWebFilter() {
-		return new LoggerWebFilter();
+		if (isFusedWebFilter()) {
+			return null;
+		}
+		return createLoggerWebFilter();
+	}
+
+	/**
+	 * Create the {@link LoggerWebFilter}, either as a bean or as a step of the {@link AlmarazWebFilter}.
+	 *
+	 * @return {@link LoggerWebFilter}
+	 */
+	protected LoggerWebFilter createLoggerWebFilter() {
+		return new LoggerWebFilter(null, getSamplingPolicy());
+	}
+
+	/**
+	 * Get the {@link SamplingPolicy} used by {@link LoggerWebFilter}.
+	 * By default, there is no sampling policy (all the requests are logged). Override this method to sample the
+	 * log entries of the requests.
+	 *
+	 * @return SamplingPolicy (or null)
+	 */
+	protected SamplingPolicy getSamplingPolicy() {
+		return null;
+	}
+
+	/**
+	 * Get the {@link MetricsWebFilter} that records a timer for each request. It is only created if Micrometer
+	 * is available and there is a MeterRegistry bean (e.g. with Spring Boot actuator).
+	 *
+	 * @param applicationContext
+	 * @return {@link WebFilter} to record the metrics of the requests.
+	 */
+	@Order(25)
+	@Bean
+	public WebFilter getMetricsWebFilter(ApplicationContext applicationContext) {
+		if (isFusedWebFilter()) {
+			return null;
+		}
+		return createMetricsWebFilter(applicationContext);
+	}
+
+	/**
+	 * Create the {@link MetricsWebFilter} if Micrometer is available and there is a MeterRegistry bean, either as
+	 * a bean or as a step of the {@link AlmarazWebFilter}. It is declared as a {@link WebFilter} so that
+	 * Micrometer is only required if it is available, but it must return a {@link MetricsWebFilter} (or null).
+	 *
+	 * @param applicationContext
+	 * @return {@link MetricsWebFilter} (or null)
+	 */
+	protected WebFilter createMetricsWebFilter(ApplicationContext applicationContext) {
+		if (!MICROMETER_PRESENT) {
+			return null;
+		}
+		MeterRegistry registry = applicationContext.getBeanProvider(MeterRegistry.class).getIfAvailable();
+		if (registry == null) {
+			return null;
+		}
+		return new MetricsWebFilter(registry);
 	}
 
 	/**
@@ -169,7 +361,31 @@ public class AlmarazConfiguration implements WebFluxConfigurer {
 	@Order(30)
 	@Bean
 	public ErrorWebFilter getErrorWebFilter() {
-		return new ErrorWebFilter(objectMapper);
+		if (isFusedWebFilter()) {
+			return null;
+		}
+		return createErrorWebFilter();
+	}
+
+	/**
+	 * Create the {@link ErrorWebFilter}, either as a bean or as a step of the {@link AlmarazWebFilter}.
+	 *
+	 * @return {@link ErrorWebFilter}
+	 */
+	protected ErrorWebFilter createErrorWebFilter() {
+		return new ErrorWebFilter(objectMapper, getErrorLogDeduplicator());
+	}
+
+	/**
+	 * Get the deduplication of the error log entries used by {@link ErrorWebFilter}. By default, there is no
+	 * deduplication (every error is logged). Override this method to log only the first occurrence of each
+	 * error and a summary per window (the summary thread is started with the first error).
+	 *
+	 * @return ErrorLogDeduplicator (or null)
+	 */
+	@Bean
+	public ErrorLogDeduplicator getErrorLogDeduplicator() {
+		return null;
 	}
 
 	/**
@@ -181,6 +397,19 @@ public class AlmarazConfiguration implements WebFluxConfigurer {
 	@Order(40)
 	@Bean
 	public CompleteLocationHeaderWebFilter getCompleteLocationHeaderWebFilter() {
+		if (isFusedWebFilter()) {
+			return null;
+		}
+		return createCompleteLocationHeaderWebFilter();
+	}
+
+	/**
+	 * Create the {@link CompleteLocationHeaderWebFilter}, either as a bean or as a step of the
+	 * {@link AlmarazWebFilter}.
+	 *
+	 * @return {@link CompleteLocationHeaderWebFilter}
+	 */
+	protected CompleteLocationHeaderWebFilter createCompleteLocationHeaderWebFilter() {
 		return new CompleteLocationHeaderWebFilter();
 	}
 
@@ -192,7 +421,66 @@ public class AlmarazConfiguration implements WebFluxConfigurer {
 	@Order(50)
 	@Bean
 	public BasePathWebFilter getBasePathWebFilter() {
-		return new BasePathWebFilter(basePath);
+		if (isFusedWebFilter()) {
+			return null;
+		}
+		return createBasePathWebFilter();
+	}
+
+	/**
+	 * Create the {@link BasePathWebFilter}, either as a bean or as a step of the {@link AlmarazWebFilter}.
+	 *
+	 * @return {@link BasePathWebFilter}
+	 */
+	protected BasePathWebFilter createBasePathWebFilter() {
+		return new BasePathWebFilter(getBasePaths());
+	}
+
+	/**
+	 * Get the base paths (mount points) of the REST resources used by {@link BasePathWebFilter}.
+	 * By default, it is the base path of the constructor. Override this method to mount the same controllers
+	 * on several base paths (e.g. /api/v1 and /api/v2).
+	 *
+	 * @return base paths
+	 */
+	protected String[] getBasePaths() {
+		return new String[] { basePath };
+	}
+
+	/**
+	 * Check if the {@link AlmarazWebFilter} replaces the chain of {@link RequestContextWebFilter},
+	 * {@link LoggerWebFilter}, {@link MetricsWebFilter}, {@link ErrorWebFilter},
+	 * {@link CompleteLocationHeaderWebFilter} and {@link BasePathWebFilter}. It is disabled by default.
+	 * Override this method to run them in a single pass. The fused filter delegates to the filters created by the
+	 * factory methods (e.g. {@link #createLoggerWebFilter()}); the overrides of the bean methods (e.g.
+	 * {@link #getLoggerWebFilter()}) are not used in this mode, and they must return null.
+	 *
+	 * @return true to use the fused filter
+	 */
+	protected boolean isFusedWebFilter() {
+		return false;
+	}
+
+	/**
+	 * Get the {@link AlmarazWebFilter} that runs the Almaraz web filters in a single pass. It is only created
+	 * if {@link #isFusedWebFilter()} is enabled.
+	 *
+	 * @param applicationContext
+	 * @return {@link WebFilter} with the context, log, metrics, error, location and base path steps.
+	 */
+	@Order(10)
+	@Bean
+	public AlmarazWebFilter getAlmarazWebFilter(ApplicationContext applicationContext) {
+		if (!isFusedWebFilter()) {
+			return null;
+		}
+		return new AlmarazWebFilter(
+				createRequestContextWebFilter(),
+				createLoggerWebFilter(),
+				createErrorWebFilter(),
+				createCompleteLocationHeaderWebFilter(),
+				createBasePathWebFilter())
+				.setMetricsWebFilter((MetricsWebFilter) createMetricsWebFilter(applicationContext));
 	}
 
 	/**
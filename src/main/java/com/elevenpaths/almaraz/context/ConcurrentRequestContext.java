@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+/**
+ * Thread-safe {@link RequestContext} for reactive pipelines that update the context from several threads
+ * (e.g. with flatMap or parallel operators). The context properties are stored in a
+ * {@link ConcurrentSlotContextMap}.
+ *
+ * It keeps the fluent API of {@link RequestContext}. Use it with a context supplier for
+ * {@link com.elevenpaths.almaraz.webfilters.RequestContextWebFilter}:
+ *
+ * <code>
+ * new RequestContextWebFilter(ConcurrentRequestContext::new);
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class ConcurrentRequestContext extends RequestContext {
+
+	/**
+	 * Constructor.
+	 */
+	public ConcurrentRequestContext() {
+		super(new ConcurrentSlotContextMap());
+	}
+
+}
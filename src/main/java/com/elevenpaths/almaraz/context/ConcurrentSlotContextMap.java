@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe {@link ContextStorage} based on copy-on-write.
+ *
+ * The properties are stored in a {@link SlotContextMap} that is never modified once it is published.
+ * Every write copies the current map, applies the change to the copy and publishes it with a
+ * compare-and-set operation, retrying if another thread published a change in the meantime. Therefore,
+ * concurrent writers never block and no update is lost.
+ *
+ * Reads and iterations work on the published map, so they are consistent and never throw a
+ * {@link java.util.ConcurrentModificationException}. A {@link #snapshot()} is just a read-only view of
+ * the published map: it does not copy anything.
+ *
+ * The only change applied to a published map is the lazy formatting of primitive values, which is
+ * idempotent and publishes immutable {@link String} instances, so it is safe to race.
+ *
+ * Writes are more expensive than in {@link SlotContextMap}, so this storage should only be used when the
+ * context is modified from several threads (e.g. with parallel reactive pipelines).
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class ConcurrentSlotContextMap extends AbstractMap<String, String> implements ContextStorage {
+
+	/**
+	 * Published map with the context properties. It must not be modified.
+	 */
+	private final AtomicReference<SlotContextMap> current = new AtomicReference<>(new SlotContextMap());
+
+	@Override
+	public String getSlot(int slot) {
+		return current.get().getSlot(slot);
+	}
+
+	@Override
+	public void putSlot(int slot, String value) {
+		if (!Objects.equals(getSlot(slot), value)) {
+			update(map -> map.putSlot(slot, value));
+		}
+	}
+
+	@Override
+	public Object getValue(String key) {
+		return current.get().getValue(key);
+	}
+
+	@Override
+	public void putLong(String key, long value) {
+		update(map -> map.putLong(key, value));
+	}
+
+	@Override
+	public long getLong(String key, long defaultValue) {
+		return current.get().getLong(key, defaultValue);
+	}
+
+	@Override
+	public void putBoolean(String key, boolean value) {
+		update(map -> map.putBoolean(key, value));
+	}
+
+	@Override
+	public boolean getBoolean(String key, boolean defaultValue) {
+		return current.get().getBoolean(key, defaultValue);
+	}
+
+	@Override
+	public void putDouble(String key, double value) {
+		update(map -> map.putDouble(key, value));
+	}
+
+	@Override
+	public double getDouble(String key, double defaultValue) {
+		return current.get().getDouble(key, defaultValue);
+	}
+
+	/**
+	 * Get a read-only view of the published map. It does not copy the properties.
+	 */
+	@Override
+	public Map<String, String> snapshot() {
+		return Collections.unmodifiableMap(current.get());
+	}
+
+	@Override
+	public String get(Object key) {
+		return current.get().get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return current.get().containsKey(key);
+	}
+
+	@Override
+	public String put(String key, String value) {
+		String previous = get(key);
+		if (!Objects.equals(previous, value)) {
+			update(map -> map.put(key, value));
+		}
+		return previous;
+	}
+
+	@Override
+	public String remove(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		return put((String) key, null);
+	}
+
+	@Override
+	public void clear() {
+		current.set(new SlotContextMap());
+	}
+
+	@Override
+	public int size() {
+		return current.get().size();
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super String, ? super String> action) {
+		current.get().forEach(action);
+	}
+
+	/**
+	 * Apply a change to a copy of the published map and publish the copy. It retries if another
+	 * thread published a change in the meantime.
+	 *
+	 * @param change
+	 */
+	private void update(Consumer<SlotContextMap> change) {
+		while (true) {
+			SlotContextMap map = current.get();
+			SlotContextMap copy = new SlotContextMap(map);
+			change.accept(copy);
+			if (current.compareAndSet(map, copy)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Get the entries of the published map. The set is read-only.
+	 */
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return snapshot().entrySet();
+	}
+
+}
@@ -105,4 +105,44 @@ public class ContextField {
 	 */
 	public static final String LATENCY = "latency";
 
+	/**
+	 * Field name with the time (in milliseconds, with microsecond precision) to read and validate the body.
+	 */
+	public static final String LATENCY_VALIDATION = "latency_validation";
+
+	/**
+	 * Field name with the time (in milliseconds, with microsecond precision) spent in the handler.
+	 */
+	public static final String LATENCY_HANDLER = "latency_handler";
+
+	/**
+	 * Field name with the time (in milliseconds, with microsecond precision) to render an error.
+	 */
+	public static final String LATENCY_ERROR = "latency_error";
+
+	/**
+	 * Field name with the time (in milliseconds, with microsecond precision) to write the first byte.
+	 */
+	public static final String LATENCY_FIRST_BYTE = "latency_ttfb";
+
+	/**
+	 * Field name with the time (in milliseconds, with microsecond precision) to complete the response.
+	 */
+	public static final String LATENCY_COMPLETE = "latency_total";
+
+	/**
+	 * Field name with the phase in progress of a request (e.g. for slow requests still running).
+	 */
+	public static final String PHASE = "phase";
+
+	/**
+	 * Field name with the exception class and top frame of an error (e.g. in an error summary).
+	 */
+	public static final String EXCEPTION = "exception";
+
+	/**
+	 * Field name with the number of occurrences (e.g. of an error in an error summary).
+	 */
+	public static final String COUNT = "count";
+
 }
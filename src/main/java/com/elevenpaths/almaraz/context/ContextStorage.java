@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.Map;
+
+/**
+ * Storage of the {@link RequestContext} properties.
+ *
+ * The storage is a {@link Map} view of the context properties that also provides direct access to the
+ * well-known {@link ContextField} properties by slot (see {@link SlotContextMap} for the slot indexes).
+ *
+ * Apart from {@link String} values, the storage supports primitive long, boolean and double values. They
+ * are stored without boxing and the typed accessors never parse: if the property is missing or was
+ * stored with another type, they return the default value. The {@link Map} view exposes every value as
+ * {@link String}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public interface ContextStorage extends Map<String, String> {
+
+	/**
+	 * Get the value stored in a slot.
+	 *
+	 * @param slot
+	 * @return value or null
+	 */
+	String getSlot(int slot);
+
+	/**
+	 * Store a value in a slot. A null value clears the slot.
+	 *
+	 * @param slot
+	 * @param value
+	 */
+	void putSlot(int slot, String value);
+
+	/**
+	 * Get a value with its native type: {@link String}, {@link Long}, {@link Boolean} or {@link Double}.
+	 * Primitive values are boxed, but not formatted nor parsed.
+	 *
+	 * @param key
+	 * @return value or null
+	 */
+	Object getValue(String key);
+
+	/**
+	 * Store a long value.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	void putLong(String key, long value);
+
+	/**
+	 * Get a long value.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return value, or defaultValue if missing or not stored as long
+	 */
+	long getLong(String key, long defaultValue);
+
+	/**
+	 * Store a boolean value.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	void putBoolean(String key, boolean value);
+
+	/**
+	 * Get a boolean value.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return value, or defaultValue if missing or not stored as boolean
+	 */
+	boolean getBoolean(String key, boolean defaultValue);
+
+	/**
+	 * Store a double value.
+	 *
+	 * @param key
+	 * @param value
+	 */
+	void putDouble(String key, double value);
+
+	/**
+	 * Get a double value.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return value, or defaultValue if missing or not stored as double
+	 */
+	double getDouble(String key, double defaultValue);
+
+	/**
+	 * Get an immutable snapshot of the context properties.
+	 * Later changes in the storage are not visible in the snapshot.
+	 *
+	 * @return {@link Map} with the context properties
+	 */
+	Map<String, String> snapshot();
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable and empty {@link ContextStorage} for {@link RequestContext#EMPTY}.
+ * Writes are silently ignored so that the shared empty context can be used as a default context
+ * without failing the callers that update it.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+final class EmptyContextStorage extends AbstractMap<String, String> implements ContextStorage {
+
+	/**
+	 * Singleton instance.
+	 */
+	static final EmptyContextStorage INSTANCE = new EmptyContextStorage();
+
+	/**
+	 * Private constructor.
+	 */
+	private EmptyContextStorage() {
+	}
+
+	@Override
+	public String getSlot(int slot) {
+		return null;
+	}
+
+	@Override
+	public void putSlot(int slot, String value) {
+	}
+
+	@Override
+	public Object getValue(String key) {
+		return null;
+	}
+
+	@Override
+	public void putLong(String key, long value) {
+	}
+
+	@Override
+	public long getLong(String key, long defaultValue) {
+		return defaultValue;
+	}
+
+	@Override
+	public void putBoolean(String key, boolean value) {
+	}
+
+	@Override
+	public boolean getBoolean(String key, boolean defaultValue) {
+		return defaultValue;
+	}
+
+	@Override
+	public void putDouble(String key, double value) {
+	}
+
+	@Override
+	public double getDouble(String key, double defaultValue) {
+		return defaultValue;
+	}
+
+	@Override
+	public Map<String, String> snapshot() {
+		return Collections.emptyMap();
+	}
+
+	@Override
+	public String put(String key, String value) {
+		return null;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return Collections.emptySet();
+	}
+
+}
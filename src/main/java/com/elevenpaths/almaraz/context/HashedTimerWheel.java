@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hashed timer wheel to schedule a large number of timeouts that are usually cancelled before they expire
+ * (e.g. request latency budgets).
+ *
+ * Scheduling and cancelling a timeout are O(1) and lock-free: new timeouts are queued in a lock-free queue and
+ * moved to the buckets of the wheel by the worker thread, and cancelled timeouts are only marked (the worker
+ * thread drops them when it visits their bucket). The worker thread advances the wheel one bucket per tick and
+ * runs the expired tasks, so the precision of the timeouts is the tick duration and the tasks must be short.
+ *
+ * The worker thread is started with {@link #start()} or, at the latest, when the first timeout is scheduled (so
+ * that the pending queue is always drained). Once the wheel is closed, the new timeouts are not queued anymore.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@Slf4j
+class HashedTimerWheel implements AutoCloseable {
+
+	/**
+	 * Maximum time, in milliseconds, to wait for the worker thread when closing the wheel.
+	 */
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Buckets of the wheel (only accessed by the worker thread).
+	 */
+	private final Timeout[] buckets;
+
+	/**
+	 * Mask to calculate the bucket of a tick (the number of buckets is a power of 2).
+	 */
+	private final int mask;
+
+	/**
+	 * Tick duration in nanoseconds.
+	 */
+	private final long tickNanos;
+
+	/**
+	 * Start of the wheel with {@link System#nanoTime()}. Deadlines are relative to it.
+	 */
+	private final long startNanos;
+
+	/**
+	 * Timeouts pending to be moved to the buckets.
+	 */
+	private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Worker thread.
+	 */
+	private final Thread worker;
+
+	/**
+	 * Whether the worker thread is running.
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Whether the wheel is closed (it cannot be started again).
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param tickNanos duration of a tick
+	 * @param wheelSize number of buckets (rounded up to a power of 2)
+	 * @param threadName name of the worker thread
+	 */
+	HashedTimerWheel(long tickNanos, int wheelSize, String threadName) {
+		if (tickNanos <= 0 || wheelSize <= 0 || wheelSize > (1 << 20)) {
+			throw new IllegalArgumentException("Invalid tick duration or wheel size");
+		}
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize) {
+			size <<= 1;
+		}
+		this.buckets = new Timeout[size];
+		this.mask = size - 1;
+		this.tickNanos = tickNanos;
+		this.startNanos = System.nanoTime();
+		this.worker = new Thread(this::work, threadName);
+		this.worker.setDaemon(true);
+	}
+
+	/**
+	 * Start the worker thread.
+	 */
+	synchronized void start() {
+		if (!closed && !running && worker.getState() == Thread.State.NEW) {
+			running = true;
+			worker.start();
+		}
+	}
+
+	/**
+	 * Stop the worker thread. Pending timeouts do not expire, and they are discarded.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			running = false;
+		}
+		LockSupport.unpark(worker);
+		try {
+			worker.join(CLOSE_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Schedule a task to be run after a delay (unless the timeout is cancelled). It starts the worker thread if
+	 * it is not running. If the wheel is closed, the timeout is returned already cancelled.
+	 *
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return {@link Timeout}
+	 */
+	Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(delay));
+		if (!running) {
+			start();
+			if (closed) {
+				timeout.cancel();
+				return timeout;
+			}
+		}
+		pending.add(timeout);
+		if (closed) {
+			// Closed concurrently: the worker thread will not drain the queue anymore
+			pending.remove(timeout);
+			timeout.cancel();
+		}
+		return timeout;
+	}
+
+	/**
+	 * Loop of the worker thread.
+	 */
+	private void work() {
+		long tick = 0;
+		while (running) {
+			long deadline = startNanos + (tick + 1) * tickNanos;
+			long wait = deadline - System.nanoTime();
+			while (wait > 0 && running) {
+				LockSupport.parkNanos(this, wait);
+				wait = deadline - System.nanoTime();
+			}
+			if (!running) {
+				return;
+			}
+			transferPending(tick);
+			expire(tick);
+			tick++;
+		}
+	}
+
+	/**
+	 * Move the pending timeouts to their buckets.
+	 *
+	 * @param tick
+	 */
+	private void transferPending(long tick) {
+		Timeout timeout;
+		while ((timeout = pending.poll()) != null) {
+			if (timeout.state != Timeout.INIT) {
+				continue;
+			}
+			long expirationTick = timeout.deadlineNanos / tickNanos;
+			timeout.remainingRounds = (expirationTick - tick) / buckets.length;
+			int index = (int) (Math.max(expirationTick, tick) & mask);
+			timeout.next = buckets[index];
+			buckets[index] = timeout;
+		}
+	}
+
+	/**
+	 * Expire the timeouts of the bucket of the tick, and drop the cancelled ones.
+	 *
+	 * @param tick
+	 */
+	private void expire(long tick) {
+		int index = (int) (tick & mask);
+		Timeout previous = null;
+		Timeout timeout = buckets[index];
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			boolean remove = true;
+			if (timeout.state != Timeout.INIT) {
+				// cancelled
+			} else if (timeout.remainingRounds <= 0) {
+				if (Timeout.STATE.compareAndSet(timeout, Timeout.INIT, Timeout.EXPIRED)) {
+					run(timeout.task);
+				}
+			} else {
+				timeout.remainingRounds--;
+				remove = false;
+			}
+			if (remove) {
+				if (previous == null) {
+					buckets[index] = next;
+				} else {
+					previous.next = next;
+				}
+				timeout.next = null;
+			} else {
+				previous = timeout;
+			}
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Run a task without stopping the worker thread if it fails.
+	 *
+	 * @param task
+	 */
+	private void run(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			log.error("Error running timeout task", e);
+		}
+	}
+
+	/**
+	 * Timeout scheduled in the wheel.
+	 */
+	static final class Timeout {
+
+		private static final int INIT = 0;
+
+		private static final int CANCELLED = 1;
+
+		private static final int EXPIRED = 2;
+
+		private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+				AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		private final Runnable task;
+
+		private final long deadlineNanos;
+
+		private volatile int state = INIT;
+
+		/**
+		 * Remaining rounds of the wheel (only accessed by the worker thread).
+		 */
+		private long remainingRounds;
+
+		/**
+		 * Next timeout in the bucket (only accessed by the worker thread).
+		 */
+		private Timeout next;
+
+		private Timeout(Runnable task, long deadlineNanos) {
+			this.task = task;
+			this.deadlineNanos = deadlineNanos;
+		}
+
+		/**
+		 * Cancel the timeout.
+		 *
+		 * @return true if cancelled, false if it already expired or was cancelled
+		 */
+		boolean cancel() {
+			return STATE.compareAndSet(this, INIT, CANCELLED);
+		}
+
+		/**
+		 * Check if the timeout expired.
+		 *
+		 * @return true if expired
+		 */
+		boolean isExpired() {
+			return state == EXPIRED;
+		}
+
+	}
+
+}
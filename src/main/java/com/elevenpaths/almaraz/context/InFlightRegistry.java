@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.MDC;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Registry of the requests in flight, keyed by transaction ID. The requests are registered by
+ * {@link com.elevenpaths.almaraz.webfilters.RequestContextWebFilter} and unregistered when they are completed,
+ * failed or cancelled.
+ *
+ * It includes a watchdog, based on a {@link HashedTimerWheel}, to flag the requests that exceed a latency
+ * budget. Each slow request is logged once, while it is still running, with its {@link RequestContext} and the
+ * phase in progress ({@link ContextField#PHASE}, if there is a {@link RequestTiming}). The watchdog thread is
+ * started with {@link #start()} (or when the first request is registered) and stopped with {@link #close()}.
+ * Once closed, the requests are still registered but their latency budget is not watched anymore.
+ *
+ * Registering and unregistering a request do not block: the registry is a {@link ConcurrentHashMap} and the
+ * timeouts are scheduled and cancelled lock-free in the timer wheel.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@Slf4j
+public class InFlightRegistry implements AutoCloseable {
+
+	/**
+	 * Default tick duration of the watchdog.
+	 */
+	public static final Duration DEFAULT_TICK = Duration.ofMillis(100);
+
+	/**
+	 * Number of buckets of the timer wheel.
+	 */
+	private static final int WHEEL_SIZE = 512;
+
+	/**
+	 * Requests in flight by transaction ID.
+	 */
+	private final ConcurrentMap<String, InFlightRequest> requests = new ConcurrentHashMap<>();
+
+	/**
+	 * Latency budget in nanoseconds.
+	 */
+	private final long budgetNanos;
+
+	/**
+	 * Watchdog timer wheel.
+	 */
+	private final HashedTimerWheel watchdog;
+
+	/**
+	 * Constructor with the default tick duration.
+	 *
+	 * @param latencyBudget
+	 */
+	public InFlightRegistry(Duration latencyBudget) {
+		this(latencyBudget, DEFAULT_TICK);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param latencyBudget
+	 * @param tick duration of a tick of the watchdog (precision of the latency budget)
+	 */
+	public InFlightRegistry(Duration latencyBudget, Duration tick) {
+		if (latencyBudget.isNegative() || latencyBudget.isZero()) {
+			throw new IllegalArgumentException("Invalid latency budget: " + latencyBudget);
+		}
+		this.budgetNanos = latencyBudget.toNanos();
+		this.watchdog = new HashedTimerWheel(tick.toNanos(), WHEEL_SIZE, "almaraz-inflight-watchdog");
+	}
+
+	/**
+	 * Start the watchdog thread.
+	 *
+	 * @return this registry
+	 */
+	public InFlightRegistry start() {
+		watchdog.start();
+		return this;
+	}
+
+	/**
+	 * Stop the watchdog thread.
+	 */
+	@Override
+	public void close() {
+		watchdog.close();
+	}
+
+	/**
+	 * Register a request in flight and schedule its latency budget in the watchdog.
+	 *
+	 * @param id transaction ID
+	 * @param requestContext
+	 * @param method
+	 * @param path
+	 * @return {@link InFlightRequest}
+	 */
+	public InFlightRequest register(String id, RequestContext requestContext, String method, String path) {
+		InFlightRequest request = new InFlightRequest(id, requestContext, method, path);
+		requests.put(id, request);
+		request.setTimeout(watchdog.schedule(() -> onSlowRequest(request), budgetNanos, TimeUnit.NANOSECONDS));
+		return request;
+	}
+
+	/**
+	 * Unregister a request (completed, failed or cancelled) and cancel its latency budget.
+	 *
+	 * @param request
+	 */
+	public void unregister(InFlightRequest request) {
+		request.cancelTimeout();
+		requests.remove(request.getId(), request);
+	}
+
+	/**
+	 * Get a request in flight.
+	 *
+	 * @param id transaction ID
+	 * @return {@link InFlightRequest} (or null)
+	 */
+	public InFlightRequest get(String id) {
+		return requests.get(id);
+	}
+
+	/**
+	 * Get the requests in flight (read-only and weakly consistent view).
+	 *
+	 * @return requests in flight
+	 */
+	public Collection<InFlightRequest> getInFlightRequests() {
+		return Collections.unmodifiableCollection(requests.values());
+	}
+
+	/**
+	 * Get the number of requests in flight.
+	 *
+	 * @return number of requests
+	 */
+	public int size() {
+		return requests.size();
+	}
+
+	/**
+	 * Handle a request that exceeded the latency budget. It is executed once by the watchdog thread.
+	 * By default, it logs the request with its {@link RequestContext}.
+	 *
+	 * @param request
+	 */
+	protected void onSlowRequest(InFlightRequest request) {
+		if (!requests.containsKey(request.getId())) {
+			return;
+		}
+		Map<String, String> snapshot = request.getRequestContext().snapshot();
+		try {
+			if (snapshot != null) {
+				MDC.setContextMap(snapshot);
+			}
+			MDC.put(ContextField.METHOD, request.getMethod());
+			MDC.put(ContextField.PATH, request.getPath());
+			MDC.put(ContextField.LATENCY, Long.toString(request.getElapsedMillis()));
+			MDC.put(ContextField.PHASE, request.getPhase());
+			log.warn("Slow request");
+		} finally {
+			MDC.clear();
+		}
+	}
+
+}
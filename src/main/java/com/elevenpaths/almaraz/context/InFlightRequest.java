@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request in flight registered in an {@link InFlightRegistry}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class InFlightRequest {
+
+	/**
+	 * Key in the registry (transaction ID).
+	 */
+	private final String id;
+
+	/**
+	 * Context of the request.
+	 */
+	private final RequestContext requestContext;
+
+	/**
+	 * HTTP method.
+	 */
+	private final String method;
+
+	/**
+	 * Request path.
+	 */
+	private final String path;
+
+	/**
+	 * Start of the request with {@link System#nanoTime()}.
+	 */
+	private final long startNanos;
+
+	/**
+	 * Start of the request with {@link System#currentTimeMillis()}.
+	 */
+	private final long startTimestamp;
+
+	/**
+	 * Timeout of the latency budget in the watchdog.
+	 */
+	private volatile HashedTimerWheel.Timeout timeout;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param id
+	 * @param requestContext
+	 * @param method
+	 * @param path
+	 */
+	public InFlightRequest(String id, RequestContext requestContext, String method, String path) {
+		this.id = id;
+		this.requestContext = requestContext;
+		this.method = method;
+		this.path = path;
+		this.startNanos = System.nanoTime();
+		this.startTimestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * Get the key of the request in the registry.
+	 *
+	 * @return id (transaction ID)
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Get the context of the request.
+	 *
+	 * @return {@link RequestContext}
+	 */
+	public RequestContext getRequestContext() {
+		return requestContext;
+	}
+
+	/**
+	 * Get the HTTP method.
+	 *
+	 * @return method
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Get the request path.
+	 *
+	 * @return path
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * Get the start of the request.
+	 *
+	 * @return timestamp in milliseconds
+	 */
+	public long getStartTimestamp() {
+		return startTimestamp;
+	}
+
+	/**
+	 * Get the time elapsed since the start of the request.
+	 *
+	 * @return elapsed time in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Get the phase in progress, if the {@link RequestContext} has a {@link RequestTiming}.
+	 *
+	 * @return name of the phase in progress (or null if unknown)
+	 */
+	public String getPhase() {
+		RequestTiming timing = requestContext.getTiming();
+		return (timing == null) ? null : timing.getCurrentPhase().getPhaseName();
+	}
+
+	/**
+	 * Check if the request exceeded the latency budget.
+	 *
+	 * @return true if slow
+	 */
+	public boolean isSlow() {
+		HashedTimerWheel.Timeout t = timeout;
+		return t != null && t.isExpired();
+	}
+
+	/**
+	 * Set the timeout of the latency budget.
+	 *
+	 * @param timeout
+	 */
+	void setTimeout(HashedTimerWheel.Timeout timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Cancel the timeout of the latency budget (if any).
+	 */
+	void cancelTimeout() {
+		HashedTimerWheel.Timeout t = timeout;
+		if (t != null) {
+			t.cancel();
+		}
+	}
+
+}
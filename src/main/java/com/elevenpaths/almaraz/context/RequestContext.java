@@ -4,10 +4,11 @@
 
 package com.elevenpaths.almaraz.context;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
+import reactor.util.context.Context;
 
 /**
  * Basic context with relevant information about the request/response.
@@ -17,6 +18,11 @@ import reactor.core.publisher.Mono;
  * or to extend the class (to provide get/set methods). In both cases, the {@link #contextMap} must store
  * all the context information.
  *
+ * By default, the {@link #contextMap} is a {@link SlotContextMap}: the well-known {@link ContextField} properties
+ * are stored in fixed slots and the custom properties in an overflow map, created only when required.
+ * This storage is not thread-safe. Use {@link ConcurrentRequestContext} if the context is modified from
+ * several threads concurrently.
+ *
  * {@link RequestContext} is a fluent API.
  *
  * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
@@ -24,17 +30,48 @@ import reactor.core.publisher.Mono;
  */
 public class RequestContext {
 
+	/**
+	 * Shared empty context. It is returned when the reactive context does not contain a {@link RequestContext}.
+	 * It is immutable: any update is silently ignored.
+	 */
+	public static final RequestContext EMPTY = new RequestContext(EmptyContextStorage.INSTANCE);
+
 	/**
 	 * Context map with all the context properties.
 	 * Property values must be {@link String} due to a limitation of MDC (Mapped Diagnostic Context).
 	 */
-	private Map<String, String> contextMap;
+	private final ContextStorage contextMap;
+
+	/**
+	 * Log sampling decision. If null, the log entries of the request are written.
+	 * It is not a context property (it is not logged).
+	 */
+	private volatile SamplingDecision samplingDecision;
+
+	/**
+	 * Buffer of deferred log actions (for {@link SamplingDecision#DEFERRED}).
+	 */
+	private volatile RequestLogBuffer logBuffer;
+
+	/**
+	 * High-resolution timing of the request phases. It is not a context property.
+	 */
+	private volatile RequestTiming timing;
 
 	/**
 	 * Constructor.
 	 */
 	public RequestContext() {
-		this.contextMap = new HashMap<>();
+		this(new SlotContextMap());
+	}
+
+	/**
+	 * Constructor with a custom storage for the context properties.
+	 *
+	 * @param contextMap
+	 */
+	protected RequestContext(ContextStorage contextMap) {
+		this.contextMap = contextMap;
 	}
 
 	/**
@@ -44,7 +81,7 @@ public class RequestContext {
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext setTransactionId(String transactionId) {
-		return put(ContextField.TRANSACTION_ID, transactionId);
+		return putSlot(SlotContextMap.TRANSACTION_ID, transactionId);
 	}
 
 	/**
@@ -53,7 +90,7 @@ public class RequestContext {
 	 * @return transaction id
 	 */
 	public String getTransactionId() {
-		return getString(ContextField.TRANSACTION_ID);
+		return getSlot(SlotContextMap.TRANSACTION_ID);
 	}
 
 	/**
@@ -63,7 +100,7 @@ public class RequestContext {
 	 * @return  {@link RequestContext}
 	 */
 	public RequestContext setCorrelator(String correlator) {
-		return put(ContextField.CORRELATOR, correlator);
+		return putSlot(SlotContextMap.CORRELATOR, correlator);
 	}
 
 	/**
@@ -72,7 +109,7 @@ public class RequestContext {
 	 * @return correlator
 	 */
 	public String getCorrelator() {
-		return getString(ContextField.CORRELATOR);
+		return getSlot(SlotContextMap.CORRELATOR);
 	}
 
 	/**
@@ -82,7 +119,7 @@ public class RequestContext {
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext setOperation(String operation) {
-		return put(ContextField.OPERATION, operation);
+		return putSlot(SlotContextMap.OPERATION, operation);
 	}
 
 	/**
@@ -91,7 +128,7 @@ public class RequestContext {
 	 * @return operation
 	 */
 	public String getOperation() {
-		return getString(ContextField.OPERATION);
+		return getSlot(SlotContextMap.OPERATION);
 	}
 
 	/**
@@ -101,7 +138,7 @@ public class RequestContext {
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext setService(String service) {
-		return put(ContextField.SERVICE, service);
+		return putSlot(SlotContextMap.SERVICE, service);
 	}
 
 	/**
@@ -110,7 +147,7 @@ public class RequestContext {
 	 * @return service
 	 */
 	public String getService() {
-		return getString(ContextField.SERVICE);
+		return getSlot(SlotContextMap.SERVICE);
 	}
 
 	/**
@@ -120,7 +157,7 @@ public class RequestContext {
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext setComponent(String component) {
-		return put(ContextField.COMPONENT, component);
+		return putSlot(SlotContextMap.COMPONENT, component);
 	}
 
 	/**
@@ -129,7 +166,7 @@ public class RequestContext {
 	 * @return component
 	 */
 	public String getComponent() {
-		return getString(ContextField.COMPONENT);
+		return getSlot(SlotContextMap.COMPONENT);
 	}
 
 	/**
@@ -139,7 +176,7 @@ public class RequestContext {
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext setUser(String user) {
-		return put(ContextField.USER, user);
+		return putSlot(SlotContextMap.USER, user);
 	}
 
 	/**
@@ -148,7 +185,7 @@ public class RequestContext {
 	 * @return user
 	 */
 	public String getUser() {
-		return getString(ContextField.USER);
+		return getSlot(SlotContextMap.USER);
 	}
 
 	/**
@@ -158,7 +195,7 @@ public class RequestContext {
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext setRealm(String realm) {
-		return put(ContextField.REALM, realm);
+		return putSlot(SlotContextMap.REALM, realm);
 	}
 
 	/**
@@ -167,7 +204,29 @@ public class RequestContext {
 	 * @return realm
 	 */
 	public String getRealm() {
-		return getString(ContextField.REALM);
+		return getSlot(SlotContextMap.REALM);
+	}
+
+	/**
+	 * Set a well-known context property in its slot of the {@link #contextMap}.
+	 *
+	 * @param slot
+	 * @param value
+	 * @return {@link RequestContext}
+	 */
+	protected RequestContext putSlot(int slot, String value) {
+		contextMap.putSlot(slot, value);
+		return this;
+	}
+
+	/**
+	 * Get a well-known context property from its slot of the {@link #contextMap}.
+	 *
+	 * @param slot
+	 * @return Value of the context property as {@link String}
+	 */
+	protected String getSlot(int slot) {
+		return contextMap.getSlot(slot);
 	}
 
 	/**
@@ -194,57 +253,214 @@ public class RequestContext {
 
 	/**
 	 * Set a {@link Long} context property directly in the {@link #contextMap}.
-	 * The value is stored in the map as a {@link String} due to MDC limitations.
+	 * The value is stored unboxed and it is converted to {@link String} only when required by MDC.
+	 * A null value removes the property.
 	 *
 	 * @param key
 	 * @param value
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext put(String key, Long value) {
-		String strValue = (value == null) ? null : Long.toString(value);
-		return put(key, strValue);
+		if (value == null) {
+			return put(key, (String) null);
+		}
+		return put(key, value.longValue());
+	}
+
+	/**
+	 * Set a long context property directly in the {@link #contextMap}.
+	 * The value is stored unboxed and it is converted to {@link String} only when required by MDC.
+	 *
+	 * @param key
+	 * @param value
+	 * @return {@link RequestContext}
+	 */
+	public RequestContext put(String key, long value) {
+		contextMap.putLong(key, value);
+		return this;
 	}
 
 	/**
 	 * Get a context property directly from the {@link #contextMap} converting it to {@link Long}.
+	 * If the property was stored as {@link String}, it is parsed.
 	 *
 	 * @param key
 	 * @return Value of the context property as {@link Long}
 	 */
 	public Long getLong(String key) {
+		Object value = contextMap.getValue(key);
+		if (value instanceof Long) {
+			return (Long) value;
+		}
+		if (!(value instanceof String)) {
+			return null;
+		}
 		try {
-			return Long.valueOf(getString(key));
-		} catch (NullPointerException | NumberFormatException e) {
+			return Long.valueOf((String) value);
+		} catch (NumberFormatException e) {
 			return null;
 		}
 	}
 
+	/**
+	 * Get a long context property directly from the {@link #contextMap} without parsing it.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return Value of the context property, or defaultValue if missing or not stored as long.
+	 */
+	public long getLong(String key, long defaultValue) {
+		return contextMap.getLong(key, defaultValue);
+	}
+
 	/**
 	 * Set a {@link Boolean} context property directly in the {@link #contextMap}.
-	 * The value is stored in the map as a {@link String} due to MDC limitations.
+	 * The value is stored unboxed and it is converted to {@link String} only when required by MDC.
+	 * A null value removes the property.
 	 *
 	 * @param key
 	 * @param value
 	 * @return {@link RequestContext}
 	 */
 	public RequestContext put(String key, Boolean value) {
-		String strValue = (value == null) ? null : Boolean.toString(value);
-		return put(key, strValue);
+		if (value == null) {
+			return put(key, (String) null);
+		}
+		return put(key, value.booleanValue());
+	}
+
+	/**
+	 * Set a boolean context property directly in the {@link #contextMap}.
+	 * The value is stored unboxed and it is converted to {@link String} only when required by MDC.
+	 *
+	 * @param key
+	 * @param value
+	 * @return {@link RequestContext}
+	 */
+	public RequestContext put(String key, boolean value) {
+		contextMap.putBoolean(key, value);
+		return this;
 	}
 
 	/**
 	 * Get a context property directly from the {@link #contextMap} converting it to {@link Boolean}.
+	 * If the property was stored as {@link String}, it is parsed.
 	 *
 	 * @param key
 	 * @return Value of the context property as {@link Boolean}.
 	 */
 	public Boolean getBoolean(String key) {
-		return Boolean.valueOf(getString(key));
+		Object value = contextMap.getValue(key);
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
+		return Boolean.valueOf((value instanceof String) ? (String) value : null);
+	}
+
+	/**
+	 * Get a boolean context property directly from the {@link #contextMap} without parsing it.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return Value of the context property, or defaultValue if missing or not stored as boolean.
+	 */
+	public boolean getBoolean(String key, boolean defaultValue) {
+		return contextMap.getBoolean(key, defaultValue);
+	}
+
+	/**
+	 * Set a double context property directly in the {@link #contextMap}.
+	 * The value is stored unboxed and it is converted to {@link String} only when required by MDC.
+	 *
+	 * @param key
+	 * @param value
+	 * @return {@link RequestContext}
+	 */
+	public RequestContext put(String key, double value) {
+		contextMap.putDouble(key, value);
+		return this;
+	}
+
+	/**
+	 * Get a double context property directly from the {@link #contextMap} without parsing it.
+	 *
+	 * @param key
+	 * @param defaultValue
+	 * @return Value of the context property, or defaultValue if missing or not stored as double.
+	 */
+	public double getDouble(String key, double defaultValue) {
+		return contextMap.getDouble(key, defaultValue);
+	}
+
+	/**
+	 * Set the log sampling decision of the request. It is ignored in the {@link #EMPTY} context.
+	 *
+	 * @param samplingDecision
+	 * @return {@link RequestContext}
+	 */
+	public RequestContext setSamplingDecision(SamplingDecision samplingDecision) {
+		if (!isEmpty()) {
+			this.samplingDecision = samplingDecision;
+		}
+		return this;
+	}
 
+	/**
+	 * Get the log sampling decision of the request.
+	 *
+	 * @return {@link SamplingDecision}, or null if not decided (the log entries are written)
+	 */
+	public SamplingDecision getSamplingDecision() {
+		return samplingDecision;
+	}
+
+	/**
+	 * Set the buffer of deferred log actions of the request. It is ignored in the {@link #EMPTY} context.
+	 *
+	 * @param logBuffer
+	 * @return {@link RequestContext}
+	 */
+	public RequestContext setLogBuffer(RequestLogBuffer logBuffer) {
+		if (!isEmpty()) {
+			this.logBuffer = logBuffer;
+		}
+		return this;
+	}
+
+	/**
+	 * Get the buffer of deferred log actions of the request.
+	 *
+	 * @return {@link RequestLogBuffer}, or null if none
+	 */
+	public RequestLogBuffer getLogBuffer() {
+		return logBuffer;
+	}
+
+	/**
+	 * Set the high-resolution timing of the request phases. It is ignored in the {@link #EMPTY} context.
+	 *
+	 * @param timing
+	 * @return {@link RequestContext}
+	 */
+	public RequestContext setTiming(RequestTiming timing) {
+		if (!isEmpty()) {
+			this.timing = timing;
+		}
+		return this;
+	}
+
+	/**
+	 * Get the high-resolution timing of the request phases.
+	 *
+	 * @return {@link RequestTiming}, or null if the request is not timed
+	 */
+	public RequestTiming getTiming() {
+		return timing;
 	}
 
 	/**
 	 * Retrieve the whole {@link #contextMap}.
+	 * The map is a live view of the context: changes in the map are visible in the context and vice versa.
 	 *
 	 * @return {@link Map} with all the context properties.
 	 */
@@ -252,15 +468,56 @@ public class RequestContext {
 		return this.contextMap;
 	}
 
+	/**
+	 * Retrieve an immutable snapshot of the {@link #contextMap}.
+	 * Later changes in the context are not visible in the snapshot.
+	 *
+	 * @return {@link Map} with all the context properties.
+	 */
+	public Map<String, String> snapshot() {
+		return contextMap.snapshot();
+	}
+
+
+	/**
+	 * Check if this is the shared {@link #EMPTY} context.
+	 *
+	 * @return true if {@link #EMPTY}
+	 */
+	public boolean isEmpty() {
+		return this == EMPTY;
+	}
 
 	/**
 	 * Retrieve the context from the reactive stream.
+	 * If the reactive context does not contain a {@link RequestContext}, it returns {@link #EMPTY}.
 	 *
 	 * @return Reactive {@link RequestContext} from reactor context.
 	 */
 	public static Mono<RequestContext> context() {
 		return Mono.subscriberContext()
-				.map(ctxt -> ctxt.getOrDefault(RequestContext.class, new RequestContext()));
+				.map(RequestContext::from);
+	}
+
+	/**
+	 * Retrieve the context from a reactor {@link Context} synchronously and without allocations.
+	 *
+	 * @param context
+	 * @return {@link RequestContext} from reactor context, or {@link #EMPTY} if not available.
+	 */
+	public static RequestContext from(Context context) {
+		return context.getOrDefault(RequestContext.class, EMPTY);
+	}
+
+	/**
+	 * Retrieve the context from the reactor {@link Context} of a {@link Signal} synchronously and without
+	 * allocations.
+	 *
+	 * @param signal
+	 * @return {@link RequestContext} from reactor context, or {@link #EMPTY} if not available.
+	 */
+	public static RequestContext from(Signal<?> signal) {
+		return from(signal.getContext());
 	}
 
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded buffer of deferred log actions of a request, attached to the {@link RequestContext}. It is used to
+ * defer the log entries until the sampling decision is taken (see {@link SamplingDecision#DEFERRED}), and to
+ * write the log entries of a request as a batch.
+ *
+ * The log actions are added while the request is processed, and they are either executed in order with
+ * {@link #flush()} or dropped with {@link #discard()}. After any of them, the buffer is closed and it does not
+ * accept more log actions. When the buffer is full, it does not accept more log actions either, and the caller
+ * decides how to log them according to the {@link SamplingDecision}. It is thread-safe.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RequestLogBuffer {
+
+	/**
+	 * Default maximum number of log actions.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * Maximum number of log actions.
+	 */
+	private final int capacity;
+
+	/**
+	 * Buffered log actions (null when closed).
+	 */
+	private List<Runnable> actions = new ArrayList<>();
+
+	/**
+	 * Number of log actions rejected because the buffer was full.
+	 */
+	private int overflow;
+
+	/**
+	 * Constructor with default capacity.
+	 */
+	public RequestLogBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity
+	 */
+	public RequestLogBuffer(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Invalid log buffer capacity: " + capacity);
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Add a log action.
+	 *
+	 * @param action
+	 * @return false if the buffer is closed or full (the caller must decide how to log)
+	 */
+	public synchronized boolean add(Runnable action) {
+		if (actions == null) {
+			return false;
+		}
+		if (actions.size() >= capacity) {
+			overflow++;
+			return false;
+		}
+		actions.add(action);
+		return true;
+	}
+
+	/**
+	 * Close the buffer and execute the buffered log actions in order.
+	 */
+	public void flush() {
+		List<Runnable> pending;
+		synchronized (this) {
+			pending = actions;
+			actions = null;
+		}
+		if (pending != null) {
+			for (Runnable action : pending) {
+				action.run();
+			}
+		}
+	}
+
+	/**
+	 * Close the buffer and drop the buffered log actions.
+	 */
+	public synchronized void discard() {
+		actions = null;
+	}
+
+	/**
+	 * Check if the buffer is closed.
+	 *
+	 * @return true if flushed or discarded
+	 */
+	public synchronized boolean isClosed() {
+		return actions == null;
+	}
+
+	/**
+	 * Get the number of buffered log actions.
+	 *
+	 * @return buffered log actions
+	 */
+	public synchronized int size() {
+		return (actions == null) ? 0 : actions.size();
+	}
+
+	/**
+	 * Get the number of log actions rejected because the buffer was full.
+	 *
+	 * @return rejected log actions
+	 */
+	public synchronized int getOverflowCount() {
+		return overflow;
+	}
+
+}
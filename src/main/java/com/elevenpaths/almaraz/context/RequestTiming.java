@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * High-resolution (nanoseconds, with {@link System#nanoTime()}) timing of the phases of a request, attached to
+ * the {@link RequestContext}.
+ *
+ * {@link Phase#VALIDATION} is recorded as the accumulated time spent in the phase. The rest of phases are
+ * recorded as marks: the elapsed time since the filter chain entry when the phase ends (or starts, for
+ * {@link Phase#ERROR}). Only the first mark of each phase is recorded.
+ *
+ * {@link #getDuration(Phase)} returns the time spent in each phase: the handler excludes the validation, and the
+ * error rendering lasts until the first byte is written (or the response is completed).
+ * It is thread-safe.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RequestTiming {
+
+	/**
+	 * Phases of a request.
+	 */
+	public enum Phase {
+
+		/**
+		 * Body read and validation (e.g. in {@link com.elevenpaths.almaraz.resolvers.ValidRequestBodyResolver}).
+		 */
+		VALIDATION("validation"),
+
+		/**
+		 * Handler execution (including the downstream calls), until the response body is passed to the
+		 * response or an error is raised.
+		 */
+		HANDLER("handler"),
+
+		/**
+		 * Error rendering (e.g. in {@link com.elevenpaths.almaraz.webfilters.ErrorWebFilter}). It is marked when
+		 * the rendering starts.
+		 */
+		ERROR("error"),
+
+		/**
+		 * First byte written (the response is committed).
+		 */
+		FIRST_BYTE("ttfb"),
+
+		/**
+		 * Completion of the response.
+		 */
+		COMPLETE("total");
+
+		/**
+		 * Name of the phase (e.g. for logs or the Server-Timing header).
+		 */
+		private final String phaseName;
+
+		Phase(String phaseName) {
+			this.phaseName = phaseName;
+		}
+
+		/**
+		 * Get the name of the phase.
+		 *
+		 * @return name
+		 */
+		public String getPhaseName() {
+			return phaseName;
+		}
+
+	}
+
+	/**
+	 * Phases (cached to avoid copying the array).
+	 */
+	private static final Phase[] PHASES = Phase.values();
+
+	/**
+	 * Start of the request (filter chain entry) with {@link System#nanoTime()}.
+	 */
+	private final long startNanos;
+
+	/**
+	 * Nanoseconds of each phase (0 if not recorded).
+	 */
+	private final AtomicLongArray nanos = new AtomicLongArray(PHASES.length);
+
+	/**
+	 * Constructor starting now.
+	 */
+	public RequestTiming() {
+		this(System.nanoTime());
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param startNanos with {@link System#nanoTime()}
+	 */
+	public RequestTiming(long startNanos) {
+		this.startNanos = startNanos;
+	}
+
+	/**
+	 * Get the start of the request.
+	 *
+	 * @return start with {@link System#nanoTime()}
+	 */
+	public long getStartNanos() {
+		return startNanos;
+	}
+
+	/**
+	 * Add time to the {@link Phase#VALIDATION} phase (accumulated).
+	 *
+	 * @param durationNanos
+	 * @return {@link RequestTiming}
+	 */
+	public RequestTiming addValidation(long durationNanos) {
+		if (durationNanos > 0) {
+			nanos.addAndGet(Phase.VALIDATION.ordinal(), durationNanos);
+		}
+		return this;
+	}
+
+	/**
+	 * Record the mark of a phase now (elapsed time since the start), unless it was already recorded.
+	 *
+	 * @param phase
+	 * @return {@link RequestTiming}
+	 */
+	public RequestTiming mark(Phase phase) {
+		nanos.compareAndSet(phase.ordinal(), 0, Math.max(1, System.nanoTime() - startNanos));
+		return this;
+	}
+
+	/**
+	 * Check if a phase was recorded.
+	 *
+	 * @param phase
+	 * @return true if recorded
+	 */
+	public boolean isRecorded(Phase phase) {
+		return nanos.get(phase.ordinal()) > 0;
+	}
+
+	/**
+	 * Get the phase in progress (e.g. to debug a slow request while it is still running):
+	 * {@link Phase#HANDLER} until the handler ends, {@link Phase#ERROR} while an error is rendered,
+	 * {@link Phase#FIRST_BYTE} until the response is committed, and {@link Phase#COMPLETE} while the
+	 * response body is written (or once completed). Note that the validation is part of the handler phase.
+	 *
+	 * @return phase in progress
+	 */
+	public Phase getCurrentPhase() {
+		if (isRecorded(Phase.COMPLETE) || isRecorded(Phase.FIRST_BYTE)) {
+			return Phase.COMPLETE;
+		}
+		if (isRecorded(Phase.ERROR)) {
+			return Phase.ERROR;
+		}
+		if (isRecorded(Phase.HANDLER)) {
+			return Phase.FIRST_BYTE;
+		}
+		return Phase.HANDLER;
+	}
+
+	/**
+	 * Get the raw nanoseconds of a phase: the accumulated time for {@link Phase#VALIDATION}, or the mark (elapsed
+	 * time since the start) for the rest of phases.
+	 *
+	 * @param phase
+	 * @return nanoseconds (0 if not recorded)
+	 */
+	public long getNanos(Phase phase) {
+		return nanos.get(phase.ordinal());
+	}
+
+	/**
+	 * Get the time spent in a phase:
+	 * <ul>
+	 * <li>{@link Phase#VALIDATION} - Accumulated time.</li>
+	 * <li>{@link Phase#HANDLER} - Time until the handler ends (or the first byte is written), excluding the
+	 * validation.</li>
+	 * <li>{@link Phase#ERROR} - Time since the error rendering starts until the first byte is written (or the
+	 * response is completed, if the error happened after the first byte).</li>
+	 * <li>{@link Phase#FIRST_BYTE} and {@link Phase#COMPLETE} - Elapsed time since the start.</li>
+	 * </ul>
+	 *
+	 * @param phase
+	 * @return nanoseconds (0 if not recorded or not finished)
+	 */
+	public long getDuration(Phase phase) {
+		switch (phase) {
+		case HANDLER:
+			long handler = getNanos(Phase.HANDLER);
+			long end = (handler > 0) ? handler : getNanos(Phase.FIRST_BYTE);
+			return (end > 0) ? Math.max(1, end - getNanos(Phase.VALIDATION)) : 0;
+		case ERROR:
+			long error = getNanos(Phase.ERROR);
+			if (error == 0) {
+				return 0;
+			}
+			long firstByte = getNanos(Phase.FIRST_BYTE);
+			long errorEnd = (firstByte >= error) ? firstByte : getNanos(Phase.COMPLETE);
+			return (errorEnd >= error) ? Math.max(1, errorEnd - error) : 0;
+		default:
+			return getNanos(phase);
+		}
+	}
+
+	/**
+	 * Append the recorded phases in the format of the Server-Timing HTTP header
+	 * (e.g. "validation;dur=1.250, handler;dur=12.003"), with the durations in milliseconds.
+	 *
+	 * @param sb
+	 * @return {@link StringBuilder}
+	 */
+	public StringBuilder appendServerTiming(StringBuilder sb) {
+		for (Phase phase : PHASES) {
+			long duration = getDuration(phase);
+			if (duration > 0) {
+				if (sb.length() > 0) {
+					sb.append(", ");
+				}
+				sb.append(phase.phaseName).append(";dur=");
+				appendMillis(sb, duration);
+			}
+		}
+		return sb;
+	}
+
+	/**
+	 * Append nanoseconds as milliseconds with 3 decimals (microsecond precision) without formatting.
+	 *
+	 * @param sb
+	 * @param nanos
+	 * @return {@link StringBuilder}
+	 */
+	public static StringBuilder appendMillis(StringBuilder sb, long nanos) {
+		long micros = nanos / 1000;
+		long fraction = micros % 1000;
+		sb.append(micros / 1000).append('.');
+		if (fraction < 100) {
+			sb.append('0');
+		}
+		if (fraction < 10) {
+			sb.append('0');
+		}
+		return sb.append(fraction);
+	}
+
+}
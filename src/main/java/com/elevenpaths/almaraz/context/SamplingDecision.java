@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+/**
+ * Log sampling decision of a request, stored in the {@link RequestContext}. The request/response log entries
+ * and the log entries written with {@link com.elevenpaths.almaraz.logging.ReactiveLogger} follow the decision.
+ *
+ * A {@link RequestContext} without decision is logged as {@link #SAMPLED}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public enum SamplingDecision {
+
+	/**
+	 * The log entries of the request are written.
+	 */
+	SAMPLED,
+
+	/**
+	 * The log entries of the request are discarded.
+	 */
+	NOT_SAMPLED,
+
+	/**
+	 * The log entries of the request are buffered in a {@link RequestLogBuffer} until the response is
+	 * completed. Then, they are either written or discarded.
+	 */
+	DEFERRED
+
+}
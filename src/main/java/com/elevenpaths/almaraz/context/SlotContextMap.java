@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Storage engine for {@link RequestContext} properties.
+ *
+ * The well-known {@link ContextField} keys are stored in fixed array slots, so that the fluent setters
+ * and getters of {@link RequestContext} access them by index without hashing the key. Custom keys are
+ * stored in an overflow {@link HashMap} that is only created when the first custom key is inserted.
+ *
+ * Values can be stored as {@link String} or as primitive long, boolean or double values. Primitive values
+ * are kept unboxed (as raw bits in the slots, or in a reusable {@link TypedValue} holder for custom keys),
+ * so that the typed accessors never parse them. They are formatted as {@link String} lazily, only when
+ * the {@link Map} view is read (e.g. to update MDC), and the formatted value is cached until the value changes.
+ *
+ * The class is a {@link Map} itself, so it is exposed by {@link RequestContext#getContextMap()} as a live
+ * view of the context properties (e.g. to update MDC). Note that null values are not stored: putting a null
+ * value removes the property.
+ *
+ * This class is not thread-safe. See {@link ConcurrentSlotContextMap} for a thread-safe storage.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class SlotContextMap extends AbstractMap<String, String> implements ContextStorage {
+
+	/**
+	 * Slot for {@link ContextField#TRANSACTION_ID}.
+	 */
+	public static final int TRANSACTION_ID = 0;
+
+	/**
+	 * Slot for {@link ContextField#CORRELATOR}.
+	 */
+	public static final int CORRELATOR = 1;
+
+	/**
+	 * Slot for {@link ContextField#OPERATION}.
+	 */
+	public static final int OPERATION = 2;
+
+	/**
+	 * Slot for {@link ContextField#SERVICE}.
+	 */
+	public static final int SERVICE = 3;
+
+	/**
+	 * Slot for {@link ContextField#COMPONENT}.
+	 */
+	public static final int COMPONENT = 4;
+
+	/**
+	 * Slot for {@link ContextField#USER}.
+	 */
+	public static final int USER = 5;
+
+	/**
+	 * Slot for {@link ContextField#REALM}.
+	 */
+	public static final int REALM = 6;
+
+	/**
+	 * Slot for {@link ContextField#ERROR}.
+	 */
+	public static final int ERROR = 7;
+
+	/**
+	 * Slot for {@link ContextField#REASON}.
+	 */
+	public static final int REASON = 8;
+
+	/**
+	 * Slot for {@link ContextField#ALARM}.
+	 */
+	public static final int ALARM = 9;
+
+	/**
+	 * Slot for {@link ContextField#METHOD}.
+	 */
+	public static final int METHOD = 10;
+
+	/**
+	 * Slot for {@link ContextField#PATH}.
+	 */
+	public static final int PATH = 11;
+
+	/**
+	 * Slot for {@link ContextField#QUERY}.
+	 */
+	public static final int QUERY = 12;
+
+	/**
+	 * Slot for {@link ContextField#URL}.
+	 */
+	public static final int URL = 13;
+
+	/**
+	 * Slot for {@link ContextField#ADDRESS}.
+	 */
+	public static final int ADDRESS = 14;
+
+	/**
+	 * Slot for {@link ContextField#STATUS}.
+	 */
+	public static final int STATUS = 15;
+
+	/**
+	 * Slot for {@link ContextField#LATENCY}.
+	 */
+	public static final int LATENCY = 16;
+
+	/**
+	 * Keys of the slots, indexed by slot.
+	 */
+	static final String[] SLOT_KEYS = {
+			ContextField.TRANSACTION_ID,
+			ContextField.CORRELATOR,
+			ContextField.OPERATION,
+			ContextField.SERVICE,
+			ContextField.COMPONENT,
+			ContextField.USER,
+			ContextField.REALM,
+			ContextField.ERROR,
+			ContextField.REASON,
+			ContextField.ALARM,
+			ContextField.METHOD,
+			ContextField.PATH,
+			ContextField.QUERY,
+			ContextField.URL,
+			ContextField.ADDRESS,
+			ContextField.STATUS,
+			ContextField.LATENCY
+	};
+
+	/**
+	 * Number of slots.
+	 */
+	public static final int SLOT_COUNT = SLOT_KEYS.length;
+
+	/**
+	 * Types of the well-known context fields, indexed by slot ({@link TypedValue#NONE} if missing).
+	 */
+	private final byte[] types;
+
+	/**
+	 * Raw bits of the primitive values of the well-known context fields, indexed by slot.
+	 */
+	private final long[] bits;
+
+	/**
+	 * {@link String} values of the well-known context fields, indexed by slot. For primitive values,
+	 * it caches the formatted value (null if not formatted yet).
+	 */
+	private final String[] texts;
+
+	/**
+	 * Number of slots with a value.
+	 */
+	private int slotSize;
+
+	/**
+	 * Overflow map for custom keys. Values are {@link String} or {@link TypedValue}. It is lazily created.
+	 */
+	private Map<String, Object> overflow;
+
+	/**
+	 * Constructor of an empty map.
+	 */
+	public SlotContextMap() {
+		this.types = new byte[SLOT_COUNT];
+		this.bits = new long[SLOT_COUNT];
+		this.texts = new String[SLOT_COUNT];
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param map
+	 */
+	public SlotContextMap(SlotContextMap map) {
+		this.types = map.types.clone();
+		this.bits = map.bits.clone();
+		this.texts = map.texts.clone();
+		this.slotSize = map.slotSize;
+		if (map.overflow != null) {
+			this.overflow = new HashMap<>(map.overflow);
+			this.overflow.replaceAll((k, v) -> (v instanceof TypedValue) ? new TypedValue((TypedValue) v) : v);
+		}
+	}
+
+	/**
+	 * Get the slot for a context field.
+	 *
+	 * @param key
+	 * @return slot index, or -1 if the key is not a well-known {@link ContextField}.
+	 */
+	public static int slotOf(String key) {
+		switch (key) {
+		case ContextField.TRANSACTION_ID:
+			return TRANSACTION_ID;
+		case ContextField.CORRELATOR:
+			return CORRELATOR;
+		case ContextField.OPERATION:
+			return OPERATION;
+		case ContextField.SERVICE:
+			return SERVICE;
+		case ContextField.COMPONENT:
+			return COMPONENT;
+		case ContextField.USER:
+			return USER;
+		case ContextField.REALM:
+			return REALM;
+		case ContextField.ERROR:
+			return ERROR;
+		case ContextField.REASON:
+			return REASON;
+		case ContextField.ALARM:
+			return ALARM;
+		case ContextField.METHOD:
+			return METHOD;
+		case ContextField.PATH:
+			return PATH;
+		case ContextField.QUERY:
+			return QUERY;
+		case ContextField.URL:
+			return URL;
+		case ContextField.ADDRESS:
+			return ADDRESS;
+		case ContextField.STATUS:
+			return STATUS;
+		case ContextField.LATENCY:
+			return LATENCY;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Get the key of a slot.
+	 *
+	 * @param slot
+	 * @return key of the slot
+	 */
+	public static String keyOf(int slot) {
+		return SLOT_KEYS[slot];
+	}
+
+	/**
+	 * Get the value of a slot as {@link String}. Primitive values are formatted lazily.
+	 */
+	@Override
+	public String getSlot(int slot) {
+		String text = texts[slot];
+		if (text == null && types[slot] != TypedValue.NONE) {
+			text = TypedValue.format(types[slot], bits[slot]);
+			texts[slot] = text;
+		}
+		return text;
+	}
+
+	@Override
+	public void putSlot(int slot, String value) {
+		setSlot(slot, (value == null) ? TypedValue.NONE : TypedValue.STRING, 0L, value);
+	}
+
+	@Override
+	public Object getValue(String key) {
+		int slot = slotOf(key);
+		if (slot >= 0) {
+			return TypedValue.box(types[slot], bits[slot], texts[slot]);
+		}
+		Object value = (overflow == null) ? null : overflow.get(key);
+		if (value instanceof TypedValue) {
+			return TypedValue.box(((TypedValue) value).type, ((TypedValue) value).bits, null);
+		}
+		return value;
+	}
+
+	@Override
+	public void putLong(String key, long value) {
+		putTyped(key, TypedValue.LONG, value);
+	}
+
+	@Override
+	public long getLong(String key, long defaultValue) {
+		return getTyped(key, TypedValue.LONG, defaultValue);
+	}
+
+	@Override
+	public void putBoolean(String key, boolean value) {
+		putTyped(key, TypedValue.BOOLEAN, value ? 1L : 0L);
+	}
+
+	@Override
+	public boolean getBoolean(String key, boolean defaultValue) {
+		return getTyped(key, TypedValue.BOOLEAN, defaultValue ? 1L : 0L) != 0L;
+	}
+
+	@Override
+	public void putDouble(String key, double value) {
+		putTyped(key, TypedValue.DOUBLE, Double.doubleToRawLongBits(value));
+	}
+
+	@Override
+	public double getDouble(String key, double defaultValue) {
+		return Double.longBitsToDouble(getTyped(key, TypedValue.DOUBLE, Double.doubleToRawLongBits(defaultValue)));
+	}
+
+	/**
+	 * Get a snapshot with a copy of the map.
+	 */
+	@Override
+	public Map<String, String> snapshot() {
+		return Collections.unmodifiableMap(new SlotContextMap(this));
+	}
+
+	@Override
+	public String get(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		int slot = slotOf((String) key);
+		if (slot >= 0) {
+			return getSlot(slot);
+		}
+		return toText((overflow == null) ? null : overflow.get(key));
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (!(key instanceof String)) {
+			return false;
+		}
+		int slot = slotOf((String) key);
+		if (slot >= 0) {
+			return types[slot] != TypedValue.NONE;
+		}
+		return overflow != null && overflow.containsKey(key);
+	}
+
+	@Override
+	public String put(String key, String value) {
+		int slot = slotOf(key);
+		if (slot >= 0) {
+			String previous = getSlot(slot);
+			putSlot(slot, value);
+			return previous;
+		}
+		if (value == null) {
+			return toText((overflow == null) ? null : overflow.remove(key));
+		}
+		if (overflow == null) {
+			overflow = new HashMap<>();
+		}
+		return toText(overflow.put(key, value));
+	}
+
+	@Override
+	public String remove(Object key) {
+		if (!(key instanceof String)) {
+			return null;
+		}
+		return put((String) key, null);
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < SLOT_COUNT; i++) {
+			types[i] = TypedValue.NONE;
+			texts[i] = null;
+		}
+		slotSize = 0;
+		overflow = null;
+	}
+
+	@Override
+	public int size() {
+		return slotSize + ((overflow == null) ? 0 : overflow.size());
+	}
+
+	/**
+	 * Iterate over the context properties without allocating entries.
+	 */
+	@Override
+	public void forEach(BiConsumer<? super String, ? super String> action) {
+		for (int i = 0; i < SLOT_COUNT; i++) {
+			if (types[i] != TypedValue.NONE) {
+				action.accept(SLOT_KEYS[i], getSlot(i));
+			}
+		}
+		if (overflow != null) {
+			overflow.forEach((k, v) -> action.accept(k, v.toString()));
+		}
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new EntrySet();
+	}
+
+	/**
+	 * Update a slot.
+	 *
+	 * @param slot
+	 * @param type
+	 * @param value raw bits of a primitive value
+	 * @param text {@link String} value or null
+	 */
+	private void setSlot(int slot, byte type, long value, String text) {
+		byte previousType = types[slot];
+		if (previousType == TypedValue.NONE && type != TypedValue.NONE) {
+			slotSize++;
+		} else if (previousType != TypedValue.NONE && type == TypedValue.NONE) {
+			slotSize--;
+		}
+		types[slot] = type;
+		bits[slot] = value;
+		texts[slot] = text;
+	}
+
+	/**
+	 * Store a primitive value. The {@link TypedValue} holder of a custom key is reused if available.
+	 *
+	 * @param key
+	 * @param type
+	 * @param value raw bits of the primitive value
+	 */
+	private void putTyped(String key, byte type, long value) {
+		int slot = slotOf(key);
+		if (slot >= 0) {
+			if (types[slot] != type || bits[slot] != value) {
+				setSlot(slot, type, value, null);
+			}
+			return;
+		}
+		Object current = (overflow == null) ? null : overflow.get(key);
+		if (current instanceof TypedValue) {
+			((TypedValue) current).set(type, value);
+			return;
+		}
+		if (overflow == null) {
+			overflow = new HashMap<>();
+		}
+		overflow.put(key, new TypedValue(type, value));
+	}
+
+	/**
+	 * Get a primitive value without parsing.
+	 *
+	 * @param key
+	 * @param type
+	 * @param defaultValue raw bits of the default value
+	 * @return raw bits of the value, or defaultValue if the key is missing or has another type
+	 */
+	private long getTyped(String key, byte type, long defaultValue) {
+		int slot = slotOf(key);
+		if (slot >= 0) {
+			return (types[slot] == type) ? bits[slot] : defaultValue;
+		}
+		Object current = (overflow == null) ? null : overflow.get(key);
+		if (current instanceof TypedValue && ((TypedValue) current).type == type) {
+			return ((TypedValue) current).bits;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Convert an overflow value into {@link String}.
+	 *
+	 * @param value
+	 * @return value as {@link String}
+	 */
+	private static String toText(Object value) {
+		return (value == null) ? null : value.toString();
+	}
+
+	/**
+	 * Entry set view backed by the slots and the overflow map.
+	 */
+	private class EntrySet extends AbstractSet<Map.Entry<String, String>> {
+
+		@Override
+		public Iterator<Map.Entry<String, String>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return SlotContextMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			SlotContextMap.this.clear();
+		}
+
+	}
+
+	/**
+	 * Iterator over the slots with a value followed by the overflow entries.
+	 */
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+		private int nextSlot = nextSlot(0);
+
+		private int lastSlot = -1;
+
+		private Iterator<Map.Entry<String, Object>> overflowIterator;
+
+		@Override
+		public boolean hasNext() {
+			if (nextSlot < SLOT_COUNT) {
+				return true;
+			}
+			if (overflowIterator == null) {
+				if (overflow == null) {
+					return false;
+				}
+				overflowIterator = overflow.entrySet().iterator();
+			}
+			return overflowIterator.hasNext();
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			if (nextSlot < SLOT_COUNT) {
+				lastSlot = nextSlot;
+				nextSlot = nextSlot(nextSlot + 1);
+				return new SimpleImmutableEntry<>(SLOT_KEYS[lastSlot], getSlot(lastSlot));
+			}
+			lastSlot = -1;
+			Map.Entry<String, Object> entry = overflowIterator.next();
+			return new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().toString());
+		}
+
+		@Override
+		public void remove() {
+			if (lastSlot >= 0) {
+				putSlot(lastSlot, null);
+				lastSlot = -1;
+			} else if (overflowIterator != null) {
+				overflowIterator.remove();
+			} else {
+				throw new IllegalStateException();
+			}
+		}
+
+		private int nextSlot(int from) {
+			int slot = from;
+			while (slot < SLOT_COUNT && types[slot] == TypedValue.NONE) {
+				slot++;
+			}
+			return slot;
+		}
+
+	}
+
+}
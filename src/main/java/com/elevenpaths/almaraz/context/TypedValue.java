@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+/**
+ * Mutable holder of a primitive context value (long, boolean or double) stored by {@link SlotContextMap}
+ * for custom keys. The value is kept unboxed as raw bits, and it is formatted as {@link String} lazily,
+ * only when required (e.g. to update MDC). The formatted value is cached until the value changes.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+final class TypedValue {
+
+	/**
+	 * Type of a missing value.
+	 */
+	static final byte NONE = 0;
+
+	/**
+	 * Type of a {@link String} value.
+	 */
+	static final byte STRING = 1;
+
+	/**
+	 * Type of a long value.
+	 */
+	static final byte LONG = 2;
+
+	/**
+	 * Type of a boolean value.
+	 */
+	static final byte BOOLEAN = 3;
+
+	/**
+	 * Type of a double value.
+	 */
+	static final byte DOUBLE = 4;
+
+	/**
+	 * Type of the value (LONG, BOOLEAN or DOUBLE).
+	 */
+	byte type;
+
+	/**
+	 * Raw bits of the value.
+	 */
+	long bits;
+
+	/**
+	 * Cached value formatted as {@link String}.
+	 */
+	private String text;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param type
+	 * @param bits
+	 */
+	TypedValue(byte type, long bits) {
+		this.type = type;
+		this.bits = bits;
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param value
+	 */
+	TypedValue(TypedValue value) {
+		this.type = value.type;
+		this.bits = value.bits;
+		this.text = value.text;
+	}
+
+	/**
+	 * Update the value.
+	 *
+	 * @param type
+	 * @param bits
+	 */
+	void set(byte type, long bits) {
+		if (this.type != type || this.bits != bits) {
+			this.type = type;
+			this.bits = bits;
+			this.text = null;
+		}
+	}
+
+	/**
+	 * Get the value formatted as {@link String}.
+	 */
+	@Override
+	public String toString() {
+		if (text == null) {
+			text = format(type, bits);
+		}
+		return text;
+	}
+
+	/**
+	 * Box a value with its native type.
+	 *
+	 * @param type
+	 * @param bits
+	 * @param text value for {@link #STRING} type
+	 * @return {@link String}, {@link Long}, {@link Boolean}, {@link Double} or null
+	 */
+	static Object box(byte type, long bits, String text) {
+		switch (type) {
+		case STRING:
+			return text;
+		case LONG:
+			return bits;
+		case BOOLEAN:
+			return bits != 0;
+		case DOUBLE:
+			return Double.longBitsToDouble(bits);
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Format a primitive value as {@link String}.
+	 *
+	 * @param type
+	 * @param bits
+	 * @return formatted value
+	 */
+	static String format(byte type, long bits) {
+		switch (type) {
+		case LONG:
+			return Long.toString(bits);
+		case BOOLEAN:
+			return (bits != 0) ? "true" : "false";
+		case DOUBLE:
+			return Double.toString(Double.longBitsToDouble(bits));
+		default:
+			return null;
+		}
+	}
+
+}
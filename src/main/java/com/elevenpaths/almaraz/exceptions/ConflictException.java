@@ -19,6 +19,11 @@ public class ConflictException extends ResponseException {
 
 	private static final long serialVersionUID = 564052190751854075L;
 
+	/**
+	 * Shared instance (see {@link ResponseException#setStacklessClientErrors(boolean)}).
+	 */
+	private static final ConflictException SHARED = new ConflictException(true);
+
 	/**
 	 * Default constructor.
 	 */
@@ -45,4 +50,23 @@ public class ConflictException extends ResponseException {
 		super(HttpStatus.CONFLICT, ErrorCodes.CONFLICT, reason, t);
 	}
 
+	/**
+	 * Constructor of the shared instance.
+	 *
+	 * @param shared
+	 */
+	private ConflictException(boolean shared) {
+		super(HttpStatus.CONFLICT, ErrorCodes.CONFLICT, null, shared);
+	}
+
+	/**
+	 * Get an instance without headers nor details. If the stackless mode of client errors is enabled, it is
+	 * a shared instance (that cannot be modified); otherwise, it is a new instance.
+	 *
+	 * @return {@link ConflictException}
+	 */
+	public static ConflictException instance() {
+		return isStacklessClientErrors() ? SHARED : new ConflictException();
+	}
+
 }
@@ -17,6 +17,11 @@ public class ForbiddenException extends ResponseException {
 
 	private static final long serialVersionUID = -8256235138025666145L;
 
+	/**
+	 * Shared instance (see {@link ResponseException#setStacklessClientErrors(boolean)}).
+	 */
+	private static final ForbiddenException SHARED = new ForbiddenException(true);
+
 	/**
 	 * Default constructor.
 	 */
@@ -43,4 +48,23 @@ public class ForbiddenException extends ResponseException {
 		super(HttpStatus.FORBIDDEN, ErrorCodes.FORBIDDEN, reason, t);
 	}
 
+	/**
+	 * Constructor of the shared instance.
+	 *
+	 * @param shared
+	 */
+	private ForbiddenException(boolean shared) {
+		super(HttpStatus.FORBIDDEN, ErrorCodes.FORBIDDEN, null, shared);
+	}
+
+	/**
+	 * Get an instance without headers nor details. If the stackless mode of client errors is enabled, it is
+	 * a shared instance (that cannot be modified); otherwise, it is a new instance.
+	 *
+	 * @return {@link ForbiddenException}
+	 */
+	public static ForbiddenException instance() {
+		return isStacklessClientErrors() ? SHARED : new ForbiddenException();
+	}
+
 }
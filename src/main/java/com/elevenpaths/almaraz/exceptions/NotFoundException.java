@@ -16,6 +16,11 @@ public class NotFoundException extends ResponseException {
 
 	private static final long serialVersionUID = 4758686274252544211L;
 
+	/**
+	 * Shared instance (see {@link ResponseException#setStacklessClientErrors(boolean)}).
+	 */
+	private static final NotFoundException SHARED = new NotFoundException(true);
+
 	/**
 	 * Default constructor.
 	 */
@@ -42,4 +47,23 @@ public class NotFoundException extends ResponseException {
 		super(HttpStatus.NOT_FOUND, ErrorCodes.NOT_FOUND, reason, t);
 	}
 
+	/**
+	 * Constructor of the shared instance.
+	 *
+	 * @param shared
+	 */
+	private NotFoundException(boolean shared) {
+		super(HttpStatus.NOT_FOUND, null, null, shared);
+	}
+
+	/**
+	 * Get an instance without headers nor details. If the stackless mode of client errors is enabled, it is
+	 * a shared instance (that cannot be modified); otherwise, it is a new instance.
+	 *
+	 * @return {@link NotFoundException}
+	 */
+	public static NotFoundException instance() {
+		return isStacklessClientErrors() ? SHARED : new NotFoundException();
+	}
+
 }
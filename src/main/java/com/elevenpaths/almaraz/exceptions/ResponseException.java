@@ -13,11 +13,18 @@ import org.springframework.util.MultiValueMap;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.ToString;
 import lombok.experimental.Accessors;
 
 /**
  * Base exception with support to generate a JSON response with the error message.
  *
+ * The stack trace of client errors (non-5xx) is never logged, so it can be skipped with
+ * {@link #setStacklessClientErrors(boolean)}: filling in the stack trace is expensive in deep reactive stacks.
+ * The server errors (e.g. {@link ServerException}) always keep their stack trace. The subclasses without
+ * headers nor details (e.g. {@link NotFoundException#instance()}) also provide a shared, preallocated instance
+ * for this mode. A shared instance cannot be modified.
+ *
  * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
  *
  */
@@ -28,6 +35,11 @@ public class ResponseException extends RuntimeException {
 
 	private static final long serialVersionUID = 867007767497940895L;
 
+	/**
+	 * Skip the stack trace of client errors (non-5xx).
+	 */
+	private static volatile boolean stacklessClientErrors;
+
 	/**
 	 * HTTP status to generate the error response.
 	 */
@@ -53,6 +65,13 @@ public class ResponseException extends RuntimeException {
 	 */
 	private MultiValueMap<String, String> headers;
 
+	/**
+	 * Shared (preallocated and immutable) instance.
+	 */
+	@ToString.Exclude
+	@EqualsAndHashCode.Exclude
+	private final boolean shared;
+
 	/**
 	 * Constructor with status.
 	 *
@@ -82,10 +101,79 @@ public class ResponseException extends RuntimeException {
 	 * @param t
 	 */
 	public ResponseException(HttpStatus status, String error, String reason, Throwable t) {
-		super(reason, t);
+		super(reason, t, true, !isStackless(status));
 		this.status = status;
 		this.error = error;
 		this.reason = reason;
+		this.shared = false;
+	}
+
+	/**
+	 * Constructor of a shared instance, without stack trace, cause nor suppressed exceptions.
+	 *
+	 * @param status
+	 * @param error
+	 * @param reason
+	 * @param shared
+	 */
+	protected ResponseException(HttpStatus status, String error, String reason, boolean shared) {
+		super(reason, null, !shared, !shared && !isStackless(status));
+		this.status = status;
+		this.error = error;
+		this.reason = reason;
+		this.shared = shared;
+	}
+
+	/**
+	 * Enable or disable the stackless mode of client errors (non-5xx). It is disabled by default.
+	 *
+	 * @param stackless
+	 */
+	public static void setStacklessClientErrors(boolean stackless) {
+		stacklessClientErrors = stackless;
+	}
+
+	/**
+	 * Check if the stackless mode of client errors is enabled.
+	 *
+	 * @return true if the client errors do not fill in the stack trace
+	 */
+	public static boolean isStacklessClientErrors() {
+		return stacklessClientErrors;
+	}
+
+	/**
+	 * Check if an error with a status must skip the stack trace.
+	 *
+	 * @param status
+	 * @return true if stackless mode is enabled and the status is not a server error
+	 */
+	protected static boolean isStackless(HttpStatus status) {
+		return stacklessClientErrors && (status == null || !status.is5xxServerError());
+	}
+
+	/**
+	 * Set the error details.
+	 *
+	 * @param detailMap
+	 * @return {@link ResponseException}
+	 */
+	public ResponseException setDetailMap(Map<String, Object> detailMap) {
+		checkNotShared();
+		this.detailMap = detailMap;
+		return this;
+	}
+
+	/**
+	 * Set the headers for the error response.
+	 *
+	 * @param headers
+	 * @return {@link ResponseException}
+	 */
+	public ResponseException setHeaders(MultiValueMap<String, String> headers) {
+		checkNotShared();
+		this.headers = headers;
+		return this;
 	}
 
 	/**
@@ -96,6 +184,7 @@ public class ResponseException extends RuntimeException {
 	 * @return {@link ResponseException}
 	 */
 	public ResponseException addHeader(String headerName, String headerValue) {
+		checkNotShared();
 		if (headers == null) {
 			headers = new LinkedMultiValueMap<String, String>();
 		}
@@ -111,6 +200,7 @@ public class ResponseException extends RuntimeException {
 	 * @return {@link ResponseException}
 	 */
 	public ResponseException addDetail(String key, Object value) {
+		checkNotShared();
 		if (detailMap == null) {
 			detailMap = new HashMap<String, Object>();
 		}
@@ -118,4 +208,13 @@ public class ResponseException extends RuntimeException {
 		return this;
 	}
 
+	/**
+	 * Fail if this is a shared instance.
+	 */
+	private void checkNotShared() {
+		if (shared) {
+			throw new UnsupportedOperationException("Shared exception cannot be modified");
+		}
+	}
+
 }
@@ -16,6 +16,11 @@ public class UnsupportedMediaTypeException extends ResponseException {
 
 	private static final long serialVersionUID = 3098028308954612696L;
 
+	/**
+	 * Shared instance (see {@link ResponseException#setStacklessClientErrors(boolean)}).
+	 */
+	private static final UnsupportedMediaTypeException SHARED = new UnsupportedMediaTypeException(true);
+
 	/**
 	 * Default constructor.
 	 */
@@ -23,4 +28,23 @@ public class UnsupportedMediaTypeException extends ResponseException {
 		super(HttpStatus.UNSUPPORTED_MEDIA_TYPE, null, null);
 	}
 
+	/**
+	 * Constructor of the shared instance.
+	 *
+	 * @param shared
+	 */
+	private UnsupportedMediaTypeException(boolean shared) {
+		super(HttpStatus.UNSUPPORTED_MEDIA_TYPE, null, null, shared);
+	}
+
+	/**
+	 * Get an instance without headers nor details. If the stackless mode of client errors is enabled, it is
+	 * a shared instance (that cannot be modified); otherwise, it is a new instance.
+	 *
+	 * @return {@link UnsupportedMediaTypeException}
+	 */
+	public static UnsupportedMediaTypeException instance() {
+		return isStacklessClientErrors() ? SHARED : new UnsupportedMediaTypeException();
+	}
+
 }
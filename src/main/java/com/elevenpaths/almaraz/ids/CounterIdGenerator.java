@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdGenerator} of identifiers composed of a node identifier and a counter in hexadecimal
+ * (e.g. "a1b2c3d4-1f").
+ *
+ * The node identifier must be unique per instance of the service to generate unique identifiers across
+ * instances. By default, it is a random value generated when the generator is created.
+ *
+ * To avoid contention on the shared counter, each thread reserves a block of values and generates
+ * identifiers from its block. Therefore, identifiers are unique but they are not ordered across threads.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class CounterIdGenerator implements IdGenerator {
+
+	/**
+	 * Number of values reserved by a thread at once.
+	 */
+	private static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * Prefix of the identifiers (node identifier and separator).
+	 */
+	private final String prefix;
+
+	/**
+	 * Next block of values to be reserved.
+	 */
+	private final AtomicLong nextBlock = new AtomicLong();
+
+	/**
+	 * Block of values reserved by each thread.
+	 */
+	private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[] { 0L, 0L });
+
+	/**
+	 * Constructor with a random node identifier.
+	 */
+	public CounterIdGenerator() {
+		this(Integer.toHexString(ThreadLocalRandom.current().nextInt()));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param nodeId
+	 */
+	public CounterIdGenerator(String nodeId) {
+		this.prefix = nodeId + "-";
+	}
+
+	@Override
+	public String generateId() {
+		// block[0] is the next value and block[1] is the end (exclusive) of the reserved block
+		long[] range = block.get();
+		if (range[0] == range[1]) {
+			range[0] = nextBlock.getAndIncrement() * BLOCK_SIZE;
+			range[1] = range[0] + BLOCK_SIZE;
+		}
+		return prefix.concat(Long.toHexString(range[0]++));
+	}
+
+}
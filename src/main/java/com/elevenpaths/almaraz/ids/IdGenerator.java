@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+/**
+ * Generator of unique identifiers (e.g. the transaction ID of a request).
+ *
+ * Implementations must be thread-safe because the generator is shared by all the requests.
+ * Almaraz provides the following implementations:
+ * <ul>
+ * <li>{@link RandomUuidIdGenerator} - Random UUID (version 4) using {@link java.util.concurrent.ThreadLocalRandom}.</li>
+ * <li>{@link TimeOrderedIdGenerator} - Monotonic and time-sortable UUID (version 7).</li>
+ * <li>{@link CounterIdGenerator} - Counter prefixed with a node identifier.</li>
+ * </ul>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+	/**
+	 * Generate a new identifier.
+	 *
+	 * @return identifier
+	 */
+	String generateId();
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link IdGenerator} of random UUIDs (version 4).
+ *
+ * Unlike {@link UUID#randomUUID()}, it uses {@link ThreadLocalRandom} instead of a shared
+ * {@link java.security.SecureRandom}, so that it does not contend when several threads generate
+ * identifiers at the same time. Note that these identifiers are unique but not cryptographically secure,
+ * so they must not be used as secrets.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RandomUuidIdGenerator implements IdGenerator {
+
+	@Override
+	public String generateId() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long msb = (random.nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+		long lsb = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return UuidFormat.format(msb, lsb);
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link IdGenerator} of time-ordered UUIDs (version 7).
+ *
+ * The UUID starts with the unix timestamp in milliseconds (48 bits) followed by a 12-bit sequence, so that
+ * identifiers are sortable by creation time. The sequence makes the identifiers of this generator strictly
+ * monotonic, even if several identifiers are generated in the same millisecond (if the sequence is exhausted,
+ * the timestamp moves forward by one millisecond). The rest of the UUID (62 bits) is random using
+ * {@link ThreadLocalRandom}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+	/**
+	 * Bits of the sequence within a millisecond.
+	 */
+	private static final int SEQUENCE_BITS = 12;
+
+	/**
+	 * Last timestamp and sequence generated (timestamp << SEQUENCE_BITS | sequence).
+	 */
+	private final AtomicLong last = new AtomicLong();
+
+	@Override
+	public String generateId() {
+		long now = System.currentTimeMillis() << SEQUENCE_BITS;
+		long next = last.updateAndGet(previous -> Math.max(previous + 1, now));
+		long timestamp = next >>> SEQUENCE_BITS;
+		long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+		long msb = (timestamp << 16) | 0x7000L | sequence;
+		long lsb = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+		return UuidFormat.format(msb, lsb);
+	}
+
+}
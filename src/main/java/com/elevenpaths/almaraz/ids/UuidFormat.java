@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.UUID;
+
+/**
+ * Utility to format UUIDs without instantiating {@link UUID}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+final class UuidFormat {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Private constructor.
+	 */
+	private UuidFormat() {
+	}
+
+	/**
+	 * Format a UUID in its canonical representation (as {@link UUID#toString()}).
+	 *
+	 * @param msb most significant bits
+	 * @param lsb least significant bits
+	 * @return UUID as {@link String}
+	 */
+	static String format(long msb, long lsb) {
+		char[] chars = new char[36];
+		hex(chars, 0, msb >>> 32, 8);
+		chars[8] = '-';
+		hex(chars, 9, msb >>> 16, 4);
+		chars[13] = '-';
+		hex(chars, 14, msb, 4);
+		chars[18] = '-';
+		hex(chars, 19, lsb >>> 48, 4);
+		chars[23] = '-';
+		hex(chars, 24, lsb, 12);
+		return new String(chars);
+	}
+
+	/**
+	 * Write the lowest digits of a value in hexadecimal.
+	 *
+	 * @param chars
+	 * @param offset
+	 * @param value
+	 * @param digits
+	 */
+	private static void hex(char[] chars, int offset, long value, int digits) {
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			chars[i] = HEX_DIGITS[(int) (value & 0xF)];
+			value >>>= 4;
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.List;
+
+/**
+ * Appender that writes a batch of log events at once (e.g. with a single lock acquisition or a single
+ * write). {@link RequestContextAppender} passes the log events of a request to its child appenders as a batch
+ * when they implement this interface.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ * @param <E> type of the log events
+ */
+public interface BatchAppender<E> {
+
+	/**
+	 * Append a batch of log events, in order.
+	 *
+	 * @param events
+	 */
+	void doAppendBatch(List<E> events);
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.exceptions.ResponseException;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Deduplication of error log entries (e.g. by {@link com.elevenpaths.almaraz.webfilters.ErrorWebFilter}) to
+ * avoid flooding the log pipeline during an error storm.
+ *
+ * The errors are keyed by error identifier, exception class and top frame of the stack trace (of the cause,
+ * if any). The first occurrence of an error is logged in full; the following occurrences are only counted.
+ * At the end of each window, a summary is logged for every error with occurrences in the window, with the
+ * number of occurrences ({@link ContextField#COUNT}) and the alarm identifier ({@link ContextField#ALARM}).
+ * The errors without occurrences in a window are forgotten, so they are logged in full again if they reappear.
+ *
+ * The number of tracked errors is bounded. When the limit is reached, the occurrences of new errors are
+ * counted together (without error identifier nor exception) until some error is forgotten. The counts are
+ * approximate: an occurrence recorded while its error is being forgotten may be lost.
+ *
+ * The summaries are logged by a daemon thread that is started with {@link #start()} (or when the first error is
+ * recorded) and stopped with {@link #close()}. Once closed, every error is logged in full.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@Slf4j
+public class ErrorLogDeduplicator implements AutoCloseable {
+
+	/**
+	 * Default alarm identifier of the summaries.
+	 */
+	public static final String DEFAULT_ALARM = "ERROR_STORM";
+
+	/**
+	 * Default maximum number of tracked errors.
+	 */
+	public static final int DEFAULT_MAX_ERRORS = 256;
+
+	/**
+	 * Key of the occurrences of new errors when the limit of tracked errors is reached.
+	 */
+	private static final ErrorKey OVERFLOW = new ErrorKey(null, null, null);
+
+	/**
+	 * Accessor to the stack trace of a throwable without cloning it (or null to use
+	 * {@link Throwable#getStackTrace()}).
+	 */
+	private static final MethodHandle STACK_TRACE = stackTraceAccessor();
+
+	/**
+	 * Occurrences (not logged) in the current window by error.
+	 */
+	private final ConcurrentMap<ErrorKey, LongAdder> errors = new ConcurrentHashMap<>();
+
+	/**
+	 * Duration of a window in milliseconds.
+	 */
+	private final long windowMillis;
+
+	/**
+	 * Maximum number of tracked errors.
+	 */
+	private final int maxErrors;
+
+	/**
+	 * Alarm identifier of the summaries.
+	 */
+	private String alarm = DEFAULT_ALARM;
+
+	/**
+	 * Executor to log the summaries at the end of each window.
+	 */
+	private volatile ScheduledExecutorService executor;
+
+	/**
+	 * Whether the deduplicator is closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Constructor with the default maximum number of tracked errors.
+	 *
+	 * @param window
+	 */
+	public ErrorLogDeduplicator(Duration window) {
+		this(window, DEFAULT_MAX_ERRORS);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param window duration of the window of each summary
+	 * @param maxErrors maximum number of tracked errors
+	 */
+	public ErrorLogDeduplicator(Duration window, int maxErrors) {
+		if (window.isNegative() || window.isZero() || maxErrors < 1) {
+			throw new IllegalArgumentException("Invalid window or maximum number of errors");
+		}
+		this.windowMillis = window.toMillis();
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Set the alarm identifier of the summaries. By default, {@link #DEFAULT_ALARM}.
+	 *
+	 * @param alarm
+	 * @return this deduplicator
+	 */
+	public ErrorLogDeduplicator setAlarm(String alarm) {
+		this.alarm = alarm;
+		return this;
+	}
+
+	/**
+	 * Start the thread that logs the summaries.
+	 *
+	 * @return this deduplicator
+	 */
+	public synchronized ErrorLogDeduplicator start() {
+		if (executor == null && !closed) {
+			executor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "almaraz-error-log-summary");
+				thread.setDaemon(true);
+				return thread;
+			});
+			executor.scheduleAtFixedRate(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	/**
+	 * Stop the thread that logs the summaries. The occurrences of the current window are not logged.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Record an occurrence of an error. It starts the summary thread if it is not running.
+	 *
+	 * @param e
+	 * @return true if the error must be logged in full (first occurrence, or the deduplicator is closed)
+	 */
+	public boolean shouldLog(ResponseException e) {
+		if (executor == null) {
+			if (closed) {
+				return true;
+			}
+			start();
+			if (closed) {
+				return true;
+			}
+		}
+		ErrorKey key = ErrorKey.of(e);
+		LongAdder occurrences = errors.get(key);
+		if (occurrences == null) {
+			if (errors.size() >= maxErrors) {
+				errors.computeIfAbsent(OVERFLOW, k -> new LongAdder()).increment();
+				return false;
+			}
+			if (errors.putIfAbsent(key, new LongAdder()) == null) {
+				return true;
+			}
+			occurrences = errors.get(key);
+			if (occurrences == null) {
+				return true;
+			}
+		}
+		occurrences.increment();
+		return false;
+	}
+
+	/**
+	 * Log the summaries of the current window and start a new one. It is executed by the summary thread at the
+	 * end of each window.
+	 */
+	public void flush() {
+		for (Map.Entry<ErrorKey, LongAdder> entry : errors.entrySet()) {
+			long count = entry.getValue().sumThenReset();
+			if (count > 0) {
+				logSummary(entry.getKey().error, entry.getKey().getException(), count);
+			} else {
+				errors.remove(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Get the number of tracked errors.
+	 *
+	 * @return number of errors
+	 */
+	public int size() {
+		return errors.size();
+	}
+
+	/**
+	 * Log the summary of an error in a window. It uses {@link ContextField#ALARM} to save the alarm identifier.
+	 *
+	 * @param error error identifier (or null for the errors not tracked individually)
+	 * @param exception exception class and top frame (or null for the errors not tracked individually)
+	 * @param count number of occurrences not logged in the window
+	 */
+	protected void logSummary(String error, String exception, long count) {
+		try {
+			MDC.put(ContextField.ALARM, alarm);
+			MDC.put(ContextField.ERROR, error);
+			MDC.put(ContextField.EXCEPTION, exception);
+			MDC.put(ContextField.COUNT, Long.toString(count));
+			log.warn("Error summary");
+		} finally {
+			MDC.clear();
+		}
+	}
+
+	/**
+	 * Resolve the accessor to the internal stack trace of a throwable. It is only available in Java 8 (later
+	 * versions do not allow the reflective access to java.lang).
+	 *
+	 * @return accessor (or null)
+	 */
+	private static MethodHandle stackTraceAccessor() {
+		if (!System.getProperty("java.specification.version", "").startsWith("1.")) {
+			return null;
+		}
+		try {
+			Method method = Throwable.class.getDeclaredMethod("getOurStackTrace");
+			method.setAccessible(true);
+			return MethodHandles.lookup().unreflect(method);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the top frame of the stack trace of a throwable.
+	 *
+	 * @param t
+	 * @return top frame (or null if there is no stack trace)
+	 */
+	private static StackTraceElement getTopFrame(Throwable t) {
+		StackTraceElement[] stackTrace = null;
+		if (STACK_TRACE != null) {
+			try {
+				stackTrace = (StackTraceElement[]) STACK_TRACE.invokeExact(t);
+			} catch (Throwable e) {
+				// Use the public accessor
+			}
+		}
+		if (stackTrace == null) {
+			stackTrace = t.getStackTrace();
+		}
+		return (stackTrace.length == 0) ? null : stackTrace[0];
+	}
+
+	/**
+	 * Key of an error: error identifier, exception class and top frame. The description of the exception is
+	 * only built for the summaries.
+	 */
+	private static final class ErrorKey {
+
+		private final String error;
+
+		private final Class<?> exceptionClass;
+
+		private final StackTraceElement frame;
+
+		private final int hash;
+
+		ErrorKey(String error, Class<?> exceptionClass, StackTraceElement frame) {
+			this.error = error;
+			this.exceptionClass = exceptionClass;
+			this.frame = frame;
+			this.hash = 31 * (31 * Objects.hashCode(error) + Objects.hashCode(exceptionClass))
+					+ Objects.hashCode(frame);
+		}
+
+		static ErrorKey of(ResponseException e) {
+			Throwable t = (e.getCause() == null) ? e : e.getCause();
+			return new ErrorKey(e.getError(), t.getClass(), getTopFrame(t));
+		}
+
+		/**
+		 * Get the description of the exception: class and top frame.
+		 *
+		 * @return exception (or null for the errors not tracked individually)
+		 */
+		String getException() {
+			if (exceptionClass == null) {
+				return null;
+			}
+			return (frame == null) ? exceptionClass.getName() : exceptionClass.getName() + " at " + frame;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof ErrorKey)) {
+				return false;
+			}
+			ErrorKey other = (ErrorKey) o;
+			return exceptionClass == other.exceptionClass && Objects.equals(error, other.error)
+					&& Objects.equals(frame, other.frame);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.SlotContextMap;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxyUtil;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+/**
+ * Logback encoder that writes each log event as a JSON line, specialized for the {@link ContextField} keys.
+ *
+ * The log event is serialized straight into a reusable byte buffer (one per thread), with the JSON keys of
+ * the {@link ContextField} properties pre-encoded, so that the only allocation per log event is the resulting
+ * byte array required by the logback encoder API. The MDC properties are iterated without creating map entries,
+ * and the properties {@link ContextField#STATUS} and {@link ContextField#LATENCY} are written as numbers.
+ *
+ * <code>
+ * {"time":"2020-03-01T10:00:00.123Z","lvl":"INFO","logger":"...","msg":"Response","svc":"almaraz-example","trans":"...","status":200,"latency":12}
+ * </code>
+ *
+ * The property "customFields" adds static fields (a JSON object) to every log event:
+ *
+ * <code>
+ * &lt;encoder class="com.elevenpaths.almaraz.logging.JsonContextEncoder"&gt;
+ *   &lt;customFields&gt;{"svc":"almaraz-example"}&lt;/customFields&gt;
+ * &lt;/encoder&gt;
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class JsonContextEncoder extends EncoderBase<ILoggingEvent> {
+
+	/**
+	 * Initial size of the per-thread buffer.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	/**
+	 * Maximum size of the per-thread buffer kept between log events. A larger buffer (e.g. after encoding
+	 * a long stack trace) is released.
+	 */
+	private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Pre-encoded keys of the {@link ContextField} properties (with the leading comma and trailing colon),
+	 * indexed by the slots of {@link SlotContextMap}.
+	 */
+	private static final byte[][] CONTEXT_KEYS = new byte[SlotContextMap.SLOT_COUNT][];
+
+	static {
+		for (int slot = 0; slot < SlotContextMap.SLOT_COUNT; slot++) {
+			CONTEXT_KEYS[slot] = ascii(",\"" + SlotContextMap.keyOf(slot) + "\":");
+		}
+	}
+
+	private static final byte[] TIME = ascii("{\"time\":\"");
+
+	private static final byte[] LEVEL = ascii("\",\"lvl\":\"");
+
+	private static final byte[] LOGGER = ascii("\",\"logger\":");
+
+	private static final byte[] MESSAGE = ascii(",\"msg\":");
+
+	private static final byte[] EXCEPTION = ascii(",\"exception\":");
+
+	private static final byte[] NULL = ascii("null");
+
+	private static final byte[] HEX = ascii("0123456789abcdef");
+
+	/**
+	 * Cache of the pre-encoded logger names (JSON strings).
+	 */
+	private final Map<String, byte[]> loggerNames = new ConcurrentHashMap<>();
+
+	/**
+	 * Per-thread serialization state.
+	 */
+	private final ThreadLocal<JsonBuffer> buffers = ThreadLocal.withInitial(JsonBuffer::new);
+
+	/**
+	 * Static fields as JSON object.
+	 */
+	private String customFields;
+
+	/**
+	 * Pre-encoded static fields (with the leading comma).
+	 */
+	private byte[] customFieldsBytes = new byte[0];
+
+	/**
+	 * Get the static fields added to every log event.
+	 *
+	 * @return JSON object
+	 */
+	public String getCustomFields() {
+		return customFields;
+	}
+
+	/**
+	 * Set the static fields added to every log event.
+	 *
+	 * @param customFields JSON object (e.g. {"svc":"almaraz-example"})
+	 */
+	public void setCustomFields(String customFields) {
+		this.customFields = customFields;
+	}
+
+	/**
+	 * Validate and pre-encode the custom fields.
+	 */
+	@Override
+	public void start() {
+		if (customFields != null && !customFields.trim().isEmpty()) {
+			try {
+				ObjectMapper mapper = new ObjectMapper();
+				JsonNode node = mapper.readTree(customFields);
+				if (!node.isObject()) {
+					addError("Custom fields must be a JSON object: " + customFields);
+					return;
+				}
+				StringBuilder fields = new StringBuilder();
+				Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+				while (it.hasNext()) {
+					Map.Entry<String, JsonNode> field = it.next();
+					fields.append(',').append(mapper.writeValueAsString(field.getKey()))
+							.append(':').append(field.getValue().toString());
+				}
+				customFieldsBytes = fields.toString().getBytes(StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				addError("Invalid custom fields: " + customFields, e);
+				return;
+			}
+		}
+		super.start();
+	}
+
+	@Override
+	public byte[] headerBytes() {
+		return null;
+	}
+
+	@Override
+	public byte[] footerBytes() {
+		return null;
+	}
+
+	/**
+	 * Encode the log event as a JSON line.
+	 */
+	@Override
+	public byte[] encode(ILoggingEvent event) {
+		JsonBuffer buffer = buffers.get();
+		buffer.reset();
+		buffer.write(TIME);
+		buffer.writeTimestamp(event.getTimeStamp());
+		buffer.write(LEVEL);
+		buffer.writeAscii(event.getLevel().levelStr);
+		buffer.write(LOGGER);
+		buffer.write(loggerName(event.getLoggerName()));
+		buffer.write(MESSAGE);
+		buffer.writeString(event.getFormattedMessage());
+		buffer.write(customFieldsBytes);
+		Map<String, String> mdc = event.getMDCPropertyMap();
+		if (mdc != null && !mdc.isEmpty()) {
+			mdc.forEach(buffer);
+		}
+		IThrowableProxy throwable = event.getThrowableProxy();
+		if (throwable != null) {
+			buffer.write(EXCEPTION);
+			buffer.writeString(ThrowableProxyUtil.asString(throwable));
+		}
+		buffer.writeByte('}');
+		buffer.writeByte('\n');
+		byte[] bytes = buffer.toByteArray();
+		buffer.release();
+		return bytes;
+	}
+
+	/**
+	 * Get the pre-encoded JSON string with a logger name.
+	 *
+	 * @param loggerName
+	 * @return JSON string
+	 */
+	private byte[] loggerName(String loggerName) {
+		if (loggerName == null) {
+			return NULL;
+		}
+		byte[] bytes = loggerNames.get(loggerName);
+		if (bytes == null) {
+			JsonBuffer buffer = new JsonBuffer();
+			buffer.writeString(loggerName);
+			bytes = buffer.toByteArray();
+			loggerNames.putIfAbsent(loggerName, bytes);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Encode an ASCII text.
+	 *
+	 * @param text
+	 * @return bytes
+	 */
+	private static byte[] ascii(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Growable byte buffer with JSON serialization methods. It also consumes the MDC properties to write
+	 * them as JSON fields.
+	 */
+	static final class JsonBuffer implements BiConsumer<String, String> {
+
+		private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+
+		private int length;
+
+		/**
+		 * Epoch second of the cached timestamp prefix.
+		 */
+		private long cachedSecond = Long.MIN_VALUE;
+
+		/**
+		 * Cached timestamp prefix (yyyy-MM-ddTHH:mm:ss) for the epoch second {@link #cachedSecond}.
+		 */
+		private final byte[] cachedPrefix = new byte[19];
+
+		void reset() {
+			length = 0;
+		}
+
+		void release() {
+			if (bytes.length > MAX_RETAINED_BUFFER_SIZE) {
+				bytes = new byte[INITIAL_BUFFER_SIZE];
+			}
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, length);
+		}
+
+		private void ensure(int extra) {
+			if (length + extra > bytes.length) {
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+			}
+		}
+
+		void writeByte(int b) {
+			ensure(1);
+			bytes[length++] = (byte) b;
+		}
+
+		void write(byte[] data) {
+			ensure(data.length);
+			System.arraycopy(data, 0, bytes, length, data.length);
+			length += data.length;
+		}
+
+		void writeAscii(String text) {
+			ensure(text.length());
+			for (int i = 0; i < text.length(); i++) {
+				bytes[length++] = (byte) text.charAt(i);
+			}
+		}
+
+		/**
+		 * Write a timestamp in ISO-8601 format (UTC with milliseconds). The date and time (until seconds)
+		 * are cached, so it only allocates once per second.
+		 *
+		 * @param timestamp
+		 */
+		void writeTimestamp(long timestamp) {
+			long second = Math.floorDiv(timestamp, 1000);
+			int millis = (int) Math.floorMod(timestamp, 1000);
+			if (second != cachedSecond) {
+				LocalDateTime time = LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+				writeDigits(cachedPrefix, 0, time.getYear(), 4);
+				cachedPrefix[4] = '-';
+				writeDigits(cachedPrefix, 5, time.getMonthValue(), 2);
+				cachedPrefix[7] = '-';
+				writeDigits(cachedPrefix, 8, time.getDayOfMonth(), 2);
+				cachedPrefix[10] = 'T';
+				writeDigits(cachedPrefix, 11, time.getHour(), 2);
+				cachedPrefix[13] = ':';
+				writeDigits(cachedPrefix, 14, time.getMinute(), 2);
+				cachedPrefix[16] = ':';
+				writeDigits(cachedPrefix, 17, time.getSecond(), 2);
+				cachedSecond = second;
+			}
+			write(cachedPrefix);
+			ensure(5);
+			bytes[length++] = '.';
+			writeDigits(bytes, length, millis, 3);
+			length += 3;
+			bytes[length++] = 'Z';
+		}
+
+		private static void writeDigits(byte[] target, int offset, int value, int digits) {
+			for (int i = offset + digits - 1; i >= offset; i--) {
+				target[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+		}
+
+		/**
+		 * Write a JSON string (or null), escaping the special characters and encoding it in UTF-8. The
+		 * space is reserved for the worst case: every character being a control character escaped in 6 bytes.
+		 *
+		 * @param value
+		 */
+		void writeString(String value) {
+			if (value == null) {
+				write(NULL);
+				return;
+			}
+			int size = value.length();
+			ensure(size * 6 + 2);
+			bytes[length++] = '"';
+			for (int i = 0; i < size; i++) {
+				char c = value.charAt(i);
+				if (c < 0x80) {
+					if (c >= 0x20 && c != '"' && c != '\\') {
+						bytes[length++] = (byte) c;
+					} else {
+						writeEscaped(c);
+					}
+				} else if (c < 0x800) {
+					bytes[length++] = (byte) (0xC0 | (c >> 6));
+					bytes[length++] = (byte) (0x80 | (c & 0x3F));
+				} else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, value.charAt(++i));
+					bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+					bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+					bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+					bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+				} else if (Character.isSurrogate(c)) {
+					bytes[length++] = '?';
+				} else {
+					bytes[length++] = (byte) (0xE0 | (c >> 12));
+					bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+					bytes[length++] = (byte) (0x80 | (c & 0x3F));
+				}
+			}
+			bytes[length++] = '"';
+		}
+
+		private void writeEscaped(char c) {
+			bytes[length++] = '\\';
+			switch (c) {
+			case '"':
+				bytes[length++] = '"';
+				break;
+			case '\\':
+				bytes[length++] = '\\';
+				break;
+			case '\n':
+				bytes[length++] = 'n';
+				break;
+			case '\r':
+				bytes[length++] = 'r';
+				break;
+			case '\t':
+				bytes[length++] = 't';
+				break;
+			default:
+				bytes[length++] = 'u';
+				bytes[length++] = '0';
+				bytes[length++] = '0';
+				bytes[length++] = HEX[c >> 4];
+				bytes[length++] = HEX[c & 0xF];
+			}
+		}
+
+		/**
+		 * Write a MDC property as a JSON field. The properties with a null value are skipped.
+		 */
+		@Override
+		public void accept(String key, String value) {
+			if (key == null || value == null) {
+				return;
+			}
+			int slot = SlotContextMap.slotOf(key);
+			if (slot < 0) {
+				writeByte(',');
+				writeString(key);
+				writeByte(':');
+				writeString(value);
+				return;
+			}
+			write(CONTEXT_KEYS[slot]);
+			if ((slot == SlotContextMap.STATUS || slot == SlotContextMap.LATENCY) && isInteger(value)) {
+				writeAscii(value);
+			} else {
+				writeString(value);
+			}
+		}
+
+		/**
+		 * Check if a value is a JSON integer.
+		 *
+		 * @param value
+		 * @return true if the value only contains digits (with an optional minus sign and without leading zeros)
+		 */
+		private static boolean isInteger(String value) {
+			int start = (!value.isEmpty() && value.charAt(0) == '-') ? 1 : 0;
+			if (value.length() == start || value.length() > 19) {
+				return false;
+			}
+			if (value.charAt(start) == '0' && value.length() > start + 1) {
+				return false;
+			}
+			for (int i = start; i < value.length(); i++) {
+				char c = value.charAt(i);
+				if (c < '0' || c > '9') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.slf4j.MDC;
+
+/**
+ * Lazy {@link MDC} properties. A property is registered with a provider that is only evaluated when a log event
+ * passes the logger level and the filters, and reaches a {@link RequestContextAppender}. The appender resolves
+ * the pending providers into MDC right before exposing the MDC properties to the event.
+ *
+ * If no {@link RequestContextAppender} is running, the providers are evaluated immediately (as with
+ * {@link MDC#put(String, String)}). Callers should also check the logger level before registering the
+ * properties, so that a disabled event does not pay anything at all.
+ *
+ * The pending providers are bound to the current thread. They are discarded when the {@link ReactiveLogger}
+ * binding is reset, or with {@link #clear()}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public final class LazyMDC {
+
+	/**
+	 * Pending providers of the current thread by MDC key.
+	 */
+	private static final ThreadLocal<Map<String, Supplier<String>>> PENDING = ThreadLocal.withInitial(LinkedHashMap::new);
+
+	/**
+	 * Private constructor. Only static methods.
+	 */
+	private LazyMDC() {
+	}
+
+	/**
+	 * Register a lazy MDC property.
+	 *
+	 * @param key
+	 * @param provider
+	 */
+	public static void put(String key, Supplier<String> provider) {
+		if (MDCBinding.isByReference()) {
+			PENDING.get().put(key, provider);
+		} else {
+			MDC.put(key, provider.get());
+		}
+	}
+
+	/**
+	 * Evaluate the pending providers of the current thread into MDC.
+	 */
+	public static void resolve() {
+		Map<String, Supplier<String>> pending = PENDING.get();
+		if (pending.isEmpty()) {
+			return;
+		}
+		try {
+			for (Map.Entry<String, Supplier<String>> entry : pending.entrySet()) {
+				MDC.put(entry.getKey(), entry.getValue().get());
+			}
+		} finally {
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Discard the pending providers of the current thread.
+	 */
+	public static void clear() {
+		Map<String, Supplier<String>> pending = PENDING.get();
+		if (!pending.isEmpty()) {
+			pending.clear();
+		}
+	}
+
+	/**
+	 * Check if there are pending providers in the current thread.
+	 *
+	 * @return true if there are pending providers
+	 */
+	public static boolean isPending() {
+		return !PENDING.get().isEmpty();
+	}
+
+}
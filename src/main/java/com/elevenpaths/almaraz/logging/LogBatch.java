@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scope of a batch of log events in the current thread. While the scope is active, the
+ * {@link RequestContextAppender} collects the log events instead of forwarding them one by one, and forwards
+ * them together when the scope ends.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+final class LogBatch {
+
+	/**
+	 * Active batch of the current thread.
+	 */
+	private static final ThreadLocal<LogBatch> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * Actions to be executed when the scope ends.
+	 */
+	private final List<Runnable> onEnd = new ArrayList<>(2);
+
+	/**
+	 * Private constructor. Created by {@link #run(Runnable)}.
+	 */
+	private LogBatch() {
+	}
+
+	/**
+	 * Get the active batch of the current thread.
+	 *
+	 * @return {@link LogBatch}, or null if there is no active batch
+	 */
+	static LogBatch current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Execute an action in the scope of a batch. If a batch is already active, the action joins it.
+	 *
+	 * @param action
+	 */
+	static void run(Runnable action) {
+		if (CURRENT.get() != null) {
+			action.run();
+			return;
+		}
+		LogBatch batch = new LogBatch();
+		CURRENT.set(batch);
+		try {
+			action.run();
+		} finally {
+			CURRENT.remove();
+			for (Runnable end : batch.onEnd) {
+				end.run();
+			}
+		}
+	}
+
+	/**
+	 * Register an action to be executed when the scope ends (once the batch is no longer active).
+	 *
+	 * @param end
+	 */
+	void onEnd(Runnable end) {
+		onEnd.add(end);
+	}
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+
+/**
+ * Binding of a {@link RequestContext} to the current thread, reflected in {@link MDC}.
+ *
+ * It is used by {@link ReactiveLogger} to log with the context properties, and by {@link MDCContextPropagation}
+ * to restore the {@link RequestContext} at thread hops. At thread hops, the MDC is only updated when the bound
+ * context changes, so nested bindings of the same context in a thread (e.g. a thread hop inside another one) do
+ * not copy the context properties again. Before logging, the MDC is always refreshed with the current
+ * properties of the context (see {@link #refresh(RequestContext)}).
+ *
+ * If a {@link RequestContextAppender} is running, the context properties are not copied to MDC at all: the
+ * appender exposes the bound {@link RequestContext} to the encoders by reference, and MDC only keeps the
+ * properties added explicitly with {@link MDC#put(String, String)}. The pending {@link LazyMDC} properties are
+ * discarded whenever the binding changes.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+final class MDCBinding {
+
+	/**
+	 * {@link RequestContext} bound to the current thread.
+	 */
+	private static final ThreadLocal<RequestContext> BOUND = new ThreadLocal<>();
+
+	/**
+	 * Number of running {@link RequestContextAppender} instances. If positive, the context properties are
+	 * not copied to MDC.
+	 */
+	private static final AtomicInteger BY_REFERENCE = new AtomicInteger();
+
+	/**
+	 * Private constructor. Only static methods.
+	 */
+	private MDCBinding() {
+	}
+
+	/**
+	 * Get the {@link RequestContext} bound to the current thread.
+	 *
+	 * @return {@link RequestContext} or null if none is bound
+	 */
+	static RequestContext current() {
+		return BOUND.get();
+	}
+
+	/**
+	 * Bind a {@link RequestContext} to the current thread and update MDC with its properties.
+	 *
+	 * @param requestContext
+	 * @return {@link RequestContext} previously bound (to be passed to {@link #restore(RequestContext)})
+	 */
+	static RequestContext bind(RequestContext requestContext) {
+		RequestContext previous = BOUND.get();
+		if (previous != requestContext) {
+			apply(requestContext);
+		}
+		return previous;
+	}
+
+	/**
+	 * Bind a {@link RequestContext} to the current thread and update MDC with its current properties, even if
+	 * it is already bound (its properties may have changed since it was bound, e.g. the operation set by a
+	 * handler after a thread hop). It is used before logging. The MDC is not updated if the properties are
+	 * exposed by reference.
+	 *
+	 * @param requestContext
+	 * @return {@link RequestContext} previously bound (to be passed to {@link #reset(RequestContext)})
+	 */
+	static RequestContext refresh(RequestContext requestContext) {
+		RequestContext previous = BOUND.get();
+		if (previous != requestContext || !isByReference()) {
+			apply(requestContext);
+		}
+		return previous;
+	}
+
+	/**
+	 * Restore the binding that was replaced by {@link #bind(RequestContext)}.
+	 *
+	 * @param previous
+	 */
+	static void restore(RequestContext previous) {
+		if (BOUND.get() != previous) {
+			apply(previous);
+		}
+	}
+
+	/**
+	 * Restore the binding that was replaced by {@link #bind(RequestContext)}, discarding any other MDC
+	 * property added in the meantime.
+	 *
+	 * @param previous
+	 */
+	static void reset(RequestContext previous) {
+		apply(previous);
+	}
+
+	/**
+	 * Check if the context properties are exposed by reference (by a {@link RequestContextAppender})
+	 * instead of being copied to MDC.
+	 *
+	 * @return true if exposed by reference
+	 */
+	static boolean isByReference() {
+		return BY_REFERENCE.get() > 0;
+	}
+
+	/**
+	 * Register a running {@link RequestContextAppender}.
+	 */
+	static void startByReference() {
+		BY_REFERENCE.incrementAndGet();
+	}
+
+	/**
+	 * Unregister a stopped {@link RequestContextAppender}.
+	 */
+	static void stopByReference() {
+		BY_REFERENCE.decrementAndGet();
+	}
+
+	/**
+	 * Update the binding and MDC.
+	 *
+	 * @param requestContext
+	 */
+	private static void apply(RequestContext requestContext) {
+		LazyMDC.clear();
+		if (requestContext == null || requestContext.isEmpty()) {
+			BOUND.remove();
+			MDC.clear();
+		} else {
+			BOUND.set(requestContext);
+			if (isByReference()) {
+				MDC.clear();
+			} else {
+				MDC.setContextMap(requestContext.getContextMap());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+
+/**
+ * Read-only view of the MDC properties of a log event built by {@link RequestContextAppender}. It combines,
+ * without copying them, the properties of a {@link RequestContext} and the properties added explicitly to MDC.
+ * The MDC properties take precedence over the context properties with the same key.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+final class MDCContextMap extends AbstractMap<String, String> {
+
+	/**
+	 * Properties of the {@link RequestContext}.
+	 */
+	private final Map<String, String> context;
+
+	/**
+	 * Properties added explicitly to MDC.
+	 */
+	private final Map<String, String> mdc;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param context
+	 * @param mdc
+	 */
+	MDCContextMap(Map<String, String> context, Map<String, String> mdc) {
+		this.context = context;
+		this.mdc = mdc;
+	}
+
+	@Override
+	public String get(Object key) {
+		String value = mdc.get(key);
+		return (value == null) ? context.get(key) : value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return mdc.containsKey(key) || context.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		int size = mdc.size();
+		for (String key : context.keySet()) {
+			if (!mdc.containsKey(key)) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return mdc.isEmpty() && context.isEmpty();
+	}
+
+	@Override
+	public void forEach(BiConsumer<? super String, ? super String> action) {
+		context.forEach((key, value) -> {
+			if (!mdc.containsKey(key)) {
+				action.accept(key, value);
+			}
+		});
+		mdc.forEach(action);
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new EntryIterator();
+			}
+
+			@Override
+			public int size() {
+				return MDCContextMap.this.size();
+			}
+
+		};
+	}
+
+	/**
+	 * Iterator of the context properties not overridden by MDC followed by the MDC properties.
+	 */
+	private final class EntryIterator implements Iterator<Map.Entry<String, String>> {
+
+		private final Iterator<Map.Entry<String, String>> contextIterator = context.entrySet().iterator();
+
+		private final Iterator<Map.Entry<String, String>> mdcIterator = mdc.entrySet().iterator();
+
+		private Map.Entry<String, String> next;
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && contextIterator.hasNext()) {
+				Map.Entry<String, String> entry = contextIterator.next();
+				if (!mdc.containsKey(entry.getKey())) {
+					next = entry;
+				}
+			}
+			if (next == null && mdcIterator.hasNext()) {
+				next = mdcIterator.next();
+			}
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, String> entry = next;
+			next = null;
+			return entry;
+		}
+
+	}
+
+}
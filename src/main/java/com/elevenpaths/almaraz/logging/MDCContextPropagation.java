@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import org.reactivestreams.Subscription;
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+
+import reactor.core.CoreSubscriber;
+import reactor.core.Fuseable;
+import reactor.core.Scannable;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoOperator;
+import reactor.core.publisher.Operators;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+/**
+ * Optional propagation of the {@link RequestContext} to {@link MDC} across thread hops, so that any standard
+ * logger (e.g. a plain log.info after a publishOn step or inside a blocking client library) includes the
+ * context properties without using {@link ReactiveLogger}.
+ *
+ * The propagation is disabled by default. It is enabled globally, before creating any scheduler, with:
+ *
+ * <code>
+ * public static void main(String[] args) {
+ *   MDCContextPropagation.enable();
+ *   SpringApplication.run(Application.class, args);
+ * }
+ * </code>
+ *
+ * The {@link RequestContext} is only restored in MDC at actual thread hops, not on every operator:
+ * <ul>
+ * <li>Operators running on a scheduler (e.g. publishOn, subscribeOn, delayElements) are decorated, with an
+ * operator hook, to restore the {@link RequestContext} (read from the subscriber {@link Context}) in the
+ * signals they emit on the scheduler thread. The context is looked up once per subscription, and the
+ * rest of operators are not decorated.</li>
+ * <li>The executor services of the Reactor schedulers are decorated to run the tasks with the
+ * {@link RequestContext} bound in the thread that submitted them (e.g. the subscription of a subscribeOn step
+ * started in a thread with the context in MDC).</li>
+ * </ul>
+ *
+ * The MDC is restored to its previous state after each signal or task, so a thread of a scheduler does not
+ * keep the context properties of a previous request.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MDCContextPropagation {
+
+	/**
+	 * Key to register the operator hook and the executor service decorator.
+	 */
+	static final String KEY = MDCContextPropagation.class.getName();
+
+	/**
+	 * Flag with the propagation status.
+	 */
+	private static volatile boolean enabled;
+
+	/**
+	 * Private constructor. Only static methods.
+	 */
+	private MDCContextPropagation() {
+	}
+
+	/**
+	 * Enable the propagation of the {@link RequestContext} to {@link MDC}.
+	 *
+	 * Only the schedulers created afterwards decorate their executor services, so it must be invoked at
+	 * startup, before using any scheduler.
+	 */
+	public static synchronized void enable() {
+		if (enabled) {
+			return;
+		}
+		Hooks.onEachOperator(KEY, Operators.lift(MDCContextPropagation::isThreadHop, MDCContextPropagation::lift));
+		Schedulers.setExecutorServiceDecorator(KEY, (scheduler, executor) -> new MDCExecutorService(executor));
+		enabled = true;
+	}
+
+	/**
+	 * Disable the propagation of the {@link RequestContext} to {@link MDC}. The schedulers created while
+	 * the propagation was enabled keep their decorated executor services.
+	 */
+	public static synchronized void disable() {
+		Hooks.resetOnEachOperator(KEY);
+		Schedulers.removeExecutorServiceDecorator(KEY);
+		enabled = false;
+	}
+
+	/**
+	 * Check if the propagation is enabled.
+	 *
+	 * @return true if enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Bind the {@link RequestContext} of the subscriber context while subscribing to the source. Any task
+	 * submitted to a scheduler during the subscription (e.g. by a subscribeOn step) runs with the
+	 * {@link RequestContext} in MDC. If the propagation is disabled, it returns the source.
+	 *
+	 * @param source
+	 * @return {@link Mono}
+	 */
+	public static <T> Mono<T> bindOnSubscribe(Mono<T> source) {
+		if (!enabled) {
+			return source;
+		}
+		return new MDCBindOnSubscribe<>(source);
+	}
+
+	/**
+	 * Check if an operator runs on a scheduler (a potential thread hop).
+	 *
+	 * @param operator
+	 * @return true if the operator runs on a scheduler
+	 */
+	static boolean isThreadHop(Scannable operator) {
+		Object runOn = operator.scanUnsafe(Scannable.Attr.RUN_ON);
+		return runOn != null && runOn != Schedulers.immediate();
+	}
+
+	/**
+	 * Decorate the subscriber of an operator running on a scheduler if its context contains a
+	 * {@link RequestContext}.
+	 *
+	 * @param operator
+	 * @param actual
+	 * @return decorated subscriber
+	 */
+	static <T> CoreSubscriber<? super T> lift(Scannable operator, CoreSubscriber<? super T> actual) {
+		RequestContext requestContext = RequestContext.from(actual.currentContext());
+		if (requestContext.isEmpty()) {
+			return actual;
+		}
+		return new MDCSubscriber<>(actual, requestContext);
+	}
+
+	/**
+	 * Subscriber that binds the {@link RequestContext} while delivering each signal to the actual subscriber.
+	 * It is also the subscription of the actual subscriber and rejects any fusion, so that the signals are
+	 * not drained (bypassing the binding) from the queue of the operator.
+	 *
+	 * @param <T>
+	 */
+	static final class MDCSubscriber<T> implements CoreSubscriber<T>, Fuseable.QueueSubscription<T> {
+
+		private final CoreSubscriber<? super T> actual;
+
+		private final RequestContext requestContext;
+
+		private Subscription subscription;
+
+		MDCSubscriber(CoreSubscriber<? super T> actual, RequestContext requestContext) {
+			this.actual = actual;
+			this.requestContext = requestContext;
+		}
+
+		@Override
+		public Context currentContext() {
+			return actual.currentContext();
+		}
+
+		@Override
+		public void onSubscribe(Subscription s) {
+			this.subscription = s;
+			actual.onSubscribe(this);
+		}
+
+		@Override
+		public void onNext(T t) {
+			RequestContext previous = MDCBinding.bind(requestContext);
+			try {
+				actual.onNext(t);
+			} finally {
+				MDCBinding.restore(previous);
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			RequestContext previous = MDCBinding.bind(requestContext);
+			try {
+				actual.onError(t);
+			} finally {
+				MDCBinding.restore(previous);
+			}
+		}
+
+		@Override
+		public void onComplete() {
+			RequestContext previous = MDCBinding.bind(requestContext);
+			try {
+				actual.onComplete();
+			} finally {
+				MDCBinding.restore(previous);
+			}
+		}
+
+		@Override
+		public void request(long n) {
+			subscription.request(n);
+		}
+
+		@Override
+		public void cancel() {
+			subscription.cancel();
+		}
+
+		@Override
+		public int requestFusion(int requestedMode) {
+			return Fuseable.NONE;
+		}
+
+		@Override
+		public T poll() {
+			return null;
+		}
+
+		@Override
+		public int size() {
+			return 0;
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return true;
+		}
+
+		@Override
+		public void clear() {
+		}
+
+	}
+
+	/**
+	 * Operator that binds the {@link RequestContext} of the subscriber context during the subscription.
+	 *
+	 * @param <T>
+	 */
+	static final class MDCBindOnSubscribe<T> extends MonoOperator<T, T> {
+
+		MDCBindOnSubscribe(Mono<? extends T> source) {
+			super(source);
+		}
+
+		@Override
+		public void subscribe(CoreSubscriber<? super T> actual) {
+			RequestContext requestContext = RequestContext.from(actual.currentContext());
+			if (requestContext.isEmpty()) {
+				source.subscribe(actual);
+				return;
+			}
+			RequestContext previous = MDCBinding.bind(requestContext);
+			try {
+				source.subscribe(actual);
+			} finally {
+				MDCBinding.restore(previous);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+
+/**
+ * {@link ScheduledExecutorService} decorator for Reactor schedulers that propagates the {@link RequestContext}
+ * bound to the submitting thread (see {@link MDCBinding}) to the thread running the task.
+ *
+ * Tasks submitted from a thread without a bound context are delegated as they are, without any wrapping.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+final class MDCExecutorService implements ScheduledExecutorService {
+
+	/**
+	 * Decorated executor service.
+	 */
+	private final ScheduledExecutorService delegate;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param delegate
+	 */
+	MDCExecutorService(ScheduledExecutorService delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Wrap a task to run it with the {@link RequestContext} bound to the current thread.
+	 *
+	 * @param task
+	 * @return wrapped task (or the same task if there is no bound context)
+	 */
+	static Runnable wrap(Runnable task) {
+		RequestContext requestContext = MDCBinding.current();
+		if (requestContext == null) {
+			return task;
+		}
+		return () -> {
+			RequestContext previous = MDCBinding.bind(requestContext);
+			try {
+				task.run();
+			} finally {
+				MDCBinding.restore(previous);
+			}
+		};
+	}
+
+	/**
+	 * Wrap a task to run it with the {@link RequestContext} bound to the current thread.
+	 *
+	 * @param task
+	 * @return wrapped task (or the same task if there is no bound context)
+	 */
+	static <T> Callable<T> wrap(Callable<T> task) {
+		RequestContext requestContext = MDCBinding.current();
+		if (requestContext == null) {
+			return task;
+		}
+		return () -> {
+			RequestContext previous = MDCBinding.bind(requestContext);
+			try {
+				return task.call();
+			} finally {
+				MDCBinding.restore(previous);
+			}
+		};
+	}
+
+	/**
+	 * Wrap a collection of tasks.
+	 *
+	 * @param tasks
+	 * @return list of wrapped tasks
+	 */
+	private static <T> List<Callable<T>> wrapAll(Collection<? extends Callable<T>> tasks) {
+		List<Callable<T>> wrapped = new ArrayList<>(tasks.size());
+		for (Callable<T> task : tasks) {
+			wrapped.add(wrap(task));
+		}
+		return wrapped;
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		delegate.execute(wrap(command));
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		return delegate.submit(wrap(task));
+	}
+
+	@Override
+	public <T> Future<T> submit(Runnable task, T result) {
+		return delegate.submit(wrap(task), result);
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return delegate.submit(wrap(task));
+	}
+
+	@Override
+	public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+		return delegate.schedule(wrap(command), delay, unit);
+	}
+
+	@Override
+	public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+		return delegate.schedule(wrap(callable), delay, unit);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+		return delegate.scheduleAtFixedRate(wrap(command), initialDelay, period, unit);
+	}
+
+	@Override
+	public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+		return delegate.scheduleWithFixedDelay(wrap(command), initialDelay, delay, unit);
+	}
+
+	@Override
+	public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+		return delegate.invokeAll(wrapAll(tasks));
+	}
+
+	@Override
+	public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return delegate.invokeAll(wrapAll(tasks), timeout, unit);
+	}
+
+	@Override
+	public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+		return delegate.invokeAny(wrapAll(tasks));
+	}
+
+	@Override
+	public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		return delegate.invokeAny(wrapAll(tasks), timeout, unit);
+	}
+
+	@Override
+	public void shutdown() {
+		delegate.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return delegate.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return delegate.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return delegate.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return delegate.awaitTermination(timeout, unit);
+	}
+
+}
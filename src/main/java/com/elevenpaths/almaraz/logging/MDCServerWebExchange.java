@@ -4,12 +4,25 @@
 
 package com.elevenpaths.almaraz.logging;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.server.ServerWebExchange;
 
 /**
  * Utility class to extract attributes from a {@link ServerWebExchange} instance in {@link String} format
  * as required by MDC.
  *
+ * The request attributes (method, path, query params and remote address) are extracted once per exchange
+ * and cached in an exchange attribute. The extraction checks for missing values instead of catching
+ * exceptions (e.g. when there is no X-Forwarded-For header); exceptions are only caught if the underlying
+ * request fails unexpectedly. The remote address is resolved with a {@link RemoteAddressResolver}, that can be
+ * configured with trusted proxies with {@link #setRemoteAddressResolver(RemoteAddressResolver)}.
+ *
  * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
  *
  */
@@ -23,7 +36,28 @@ public class MDCServerWebExchange {
 	/**
 	 * X-Forwarded-For header name.
 	 */
-	public static final String X_FORWARDED_FOR_HEADER = "X-Forwarded-For";
+	public static final String X_FORWARDED_FOR_HEADER = RemoteAddressResolver.X_FORWARDED_FOR_HEADER;
+
+	/**
+	 * Exchange attribute with the cached attributes.
+	 */
+	public static final String CACHED_ATTRIBUTES = MDCServerWebExchange.class.getName() + ".attributes";
+
+	/**
+	 * Status codes as strings (to avoid converting them in every response).
+	 */
+	private static final String[] STATUS_CODES = new String[600];
+
+	static {
+		for (int i = 0; i < STATUS_CODES.length; i++) {
+			STATUS_CODES[i] = Integer.toString(i);
+		}
+	}
+
+	/**
+	 * Resolver of the remote address.
+	 */
+	private static volatile RemoteAddressResolver remoteAddressResolver = new RemoteAddressResolver();
 
 	/**
 	 * Private constructor.
@@ -32,6 +66,25 @@ public class MDCServerWebExchange {
 	private MDCServerWebExchange() {
 	}
 
+	/**
+	 * Set the resolver of the remote address used by {@link #getRemoteAddress(ServerWebExchange)} (e.g. to
+	 * configure the trusted proxies).
+	 *
+	 * @param resolver
+	 */
+	public static void setRemoteAddressResolver(RemoteAddressResolver resolver) {
+		remoteAddressResolver = (resolver == null) ? new RemoteAddressResolver() : resolver;
+	}
+
+	/**
+	 * Get the resolver of the remote address.
+	 *
+	 * @return {@link RemoteAddressResolver}
+	 */
+	public static RemoteAddressResolver getRemoteAddressResolver() {
+		return remoteAddressResolver;
+	}
+
 	/**
 	 * Get the method of the exchange request.
 	 *
@@ -39,11 +92,15 @@ public class MDCServerWebExchange {
 	 * @return request method
 	 */
 	public static String getMethod(ServerWebExchange exchange) {
-		try {
-			return exchange.getRequest().getMethodValue();
-		} catch (Exception e) {
-			return null;
+		CachedAttributes attributes = getCachedAttributes(exchange);
+		if (attributes.method == null) {
+			try {
+				attributes.method = exchange.getRequest().getMethodValue();
+			} catch (Exception e) {
+				return null;
+			}
 		}
+		return attributes.method;
 	}
 
 	/**
@@ -53,11 +110,15 @@ public class MDCServerWebExchange {
 	 * @return request path
 	 */
 	public static String getPath(ServerWebExchange exchange) {
-		try {
-			return exchange.getRequest().getURI().getPath();
-		} catch (Exception e) {
-			return null;
+		CachedAttributes attributes = getCachedAttributes(exchange);
+		if (attributes.path == null) {
+			URI uri = getURI(exchange);
+			if (uri == null) {
+				return null;
+			}
+			attributes.path = uri.getPath();
 		}
+		return attributes.path;
 	}
 
 	/**
@@ -67,27 +128,35 @@ public class MDCServerWebExchange {
 	 * @return request query params
 	 */
 	public static String getQueryParams(ServerWebExchange exchange) {
-		try {
-			return exchange.getRequest().getURI().getQuery();
-		} catch (Exception e) {
-			return null;
-		} 
+		CachedAttributes attributes = getCachedAttributes(exchange);
+		if (attributes.query == CachedAttributes.UNRESOLVED) {
+			URI uri = getURI(exchange);
+			if (uri == null) {
+				return null;
+			}
+			attributes.query = uri.getQuery();
+		}
+		return attributes.query;
 	}
 
 	/**
-	 * Get the remote address of the exchange request.
-	 * If the request contains a X-Forwarded-For HTTP header, it returns the first address. Otherwise, it returns
-	 * the remote address obtained from TCP/IP.
+	 * Get the remote address of the exchange request with the {@link RemoteAddressResolver}.
+	 * By default, if the request contains a X-Forwarded-For HTTP header, it returns the first address.
+	 * Otherwise, it returns the remote address obtained from TCP/IP.
 	 *
 	 * @param exchange
 	 * @return request remote address
 	 */
 	public static String getRemoteAddress(ServerWebExchange exchange) {
-		String address = getRemoteAddressFromXFF(exchange);
-		if (address == null) {
-			address = getRemoteAddressFromTCP(exchange);
+		CachedAttributes attributes = getCachedAttributes(exchange);
+		if (attributes.remoteAddress == CachedAttributes.UNRESOLVED) {
+			try {
+				attributes.remoteAddress = remoteAddressResolver.resolve(exchange);
+			} catch (Exception e) {
+				return null;
+			}
 		}
-		return address;
+		return attributes.remoteAddress;
 	}
 
 	/**
@@ -98,11 +167,17 @@ public class MDCServerWebExchange {
 	 * @return request remote address
 	 */
 	public static String getRemoteAddressFromTCP(ServerWebExchange exchange) {
+		InetSocketAddress remoteAddress;
 		try {
-			return exchange.getRequest().getRemoteAddress().getAddress().toString();
+			remoteAddress = exchange.getRequest().getRemoteAddress();
 		} catch (Exception e) {
 			return null;
 		}
+		if (remoteAddress == null) {
+			return null;
+		}
+		InetAddress address = remoteAddress.getAddress();
+		return (address == null) ? null : address.toString();
 	}
 
 	/**
@@ -115,7 +190,7 @@ public class MDCServerWebExchange {
 	 */
 	public static String getRemoteAddressFromXFF(ServerWebExchange exchange) {
 		try {
-			return exchange.getRequest().getHeaders().getValuesAsList(X_FORWARDED_FOR_HEADER).get(0);
+			return RemoteAddressResolver.getFirstAddress(exchange.getRequest().getHeaders().get(X_FORWARDED_FOR_HEADER));
 		} catch (Exception e) {
 			return null;
 		}
@@ -123,16 +198,76 @@ public class MDCServerWebExchange {
 
 	/**
 	 * Get the status code of the exchange response.
+	 * It is not cached because the status code may change until the response is committed.
 	 *
 	 * @param exchange
 	 * @return response status code
 	 */
 	public static String getStatusCode(ServerWebExchange exchange) {
+		HttpStatus status;
+		try {
+			status = exchange.getResponse().getStatusCode();
+		} catch (Exception e) {
+			return null;
+		}
+		if (status == null) {
+			return null;
+		}
+		int value = status.value();
+		return (value < STATUS_CODES.length) ? STATUS_CODES[value] : Integer.toString(value);
+	}
+
+	/**
+	 * Get the URI of the exchange request.
+	 *
+	 * @param exchange
+	 * @return URI (or null)
+	 */
+	private static URI getURI(ServerWebExchange exchange) {
 		try {
-			return Integer.toString(exchange.getResponse().getStatusCode().value());
+			ServerHttpRequest request = exchange.getRequest();
+			return (request == null) ? null : request.getURI();
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
+	/**
+	 * Get the cached attributes of an exchange, creating them the first time.
+	 *
+	 * @param exchange
+	 * @return {@link CachedAttributes}
+	 */
+	private static CachedAttributes getCachedAttributes(ServerWebExchange exchange) {
+		Map<String, Object> exchangeAttributes = exchange.getAttributes();
+		Object cached = exchangeAttributes.get(CACHED_ATTRIBUTES);
+		if (cached instanceof CachedAttributes) {
+			return (CachedAttributes) cached;
+		}
+		CachedAttributes attributes = new CachedAttributes();
+		exchangeAttributes.put(CACHED_ATTRIBUTES, attributes);
+		return attributes;
+	}
+
+	/**
+	 * Attributes of the request extracted once per exchange. The extraction is idempotent, so concurrent
+	 * accesses may extract the same value twice but never an inconsistent one.
+	 */
+	private static final class CachedAttributes {
+
+		/**
+		 * Marker of an attribute not extracted yet (for nullable attributes).
+		 */
+		private static final String UNRESOLVED = new String("unresolved");
+
+		private volatile String method;
+
+		private volatile String path;
+
+		private volatile String query = UNRESOLVED;
+
+		private volatile String remoteAddress = UNRESOLVED;
+
+	}
+
 }
@@ -0,0 +1,612 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.spi.FilterReply;
+import ch.qos.logback.core.util.FileSize;
+
+/**
+ * Logback appender that writes the encoded log events into a memory-mapped file, rotated by size. It is
+ * intended for high-rate logs (e.g. the request and response logs of
+ * {@link com.elevenpaths.almaraz.webfilters.LoggerWebFilter}) where a stream appender, which serializes the
+ * writers with a lock and a system call per event, becomes the bottleneck.
+ *
+ * The file is mapped as a region of "maxFileSize" bytes. Each writer encodes its event without any lock,
+ * claims a range of the region by incrementing an atomic position, copies the bytes into its range and
+ * commits them by adding its length to an atomic counter. The writer whose claim crosses the end of the
+ * region rotates the file: it waits for the previous writers to commit, truncates the file to the written
+ * size, archives it (with a timestamp suffix), and maps a new region. The writers that claimed beyond the end
+ * of the region wait for the new one. The replaced region is unmapped explicitly (instead of waiting for the
+ * garbage collector), as it is still referenced by the per-thread views of the writers.
+ *
+ * If the rotation fails (e.g. the file cannot be archived), the error is reported and the next writer maps the
+ * active file again (appending after its records), so the rotation is retried when the new region is full. If
+ * the file cannot be mapped, the events are dropped and it is retried after {@link #RETRY_NANOS}.
+ *
+ * The committed records are written in the page cache of the operating system, so they survive a crash of the
+ * process (but not of the operating system). After a crash, the file keeps its mapped size with unwritten
+ * bytes (zeros) at the end, and in the ranges claimed by records that were not committed. When the appender
+ * starts, the trailing zeros are discarded and the new records are appended after the last committed one.
+ *
+ * It implements {@link BatchAppender}: a batch of log events (e.g. the log events of a request forwarded by
+ * {@link RequestContextAppender}) is written with a single claim, so the events are contiguous in the file.
+ *
+ * It requires a local filesystem that supports memory-mapped files and truncating mapped files (e.g. Linux).
+ *
+ * <code>
+ * &lt;appender name="FILE" class="com.elevenpaths.almaraz.logging.MappedFileAppender"&gt;
+ *   &lt;file&gt;/var/log/app/access.log&lt;/file&gt;
+ *   &lt;maxFileSize&gt;64MB&lt;/maxFileSize&gt;
+ *   &lt;maxHistory&gt;10&lt;/maxHistory&gt;
+ *   &lt;encoder class="com.elevenpaths.almaraz.logging.JsonContextEncoder" /&gt;
+ * &lt;/appender&gt;
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MappedFileAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+		implements BatchAppender<ILoggingEvent> {
+
+	/**
+	 * Default size of the files.
+	 */
+	public static final String DEFAULT_MAX_FILE_SIZE = "64MB";
+
+	/**
+	 * Default number of archived files.
+	 */
+	public static final int DEFAULT_MAX_HISTORY = 7;
+
+	/**
+	 * Time (in nanoseconds) to park a writer waiting for a rotation or for the commits of other writers.
+	 */
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+
+	/**
+	 * Time (in nanoseconds) to wait before retrying to map the active file after a failure.
+	 */
+	private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Function to unmap a mapped buffer (or null if it is not supported by the JVM).
+	 */
+	private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+	/**
+	 * Size of the chunks read to find the end of the committed records in an existing file.
+	 */
+	private static final int RECOVERY_CHUNK_SIZE = 8192;
+
+	/**
+	 * Encoder of the log events.
+	 */
+	private Encoder<ILoggingEvent> encoder;
+
+	/**
+	 * Path of the active file.
+	 */
+	private String file;
+
+	/**
+	 * Maximum size of a file.
+	 */
+	private FileSize maxFileSize = FileSize.valueOf(DEFAULT_MAX_FILE_SIZE);
+
+	/**
+	 * Maximum number of archived files (0 to keep all of them).
+	 */
+	private int maxHistory = DEFAULT_MAX_HISTORY;
+
+	/**
+	 * Absolute path of the active file.
+	 */
+	private Path path;
+
+	/**
+	 * Active mapped region (null if the appender is stopped or the active file could not be mapped).
+	 */
+	private final AtomicReference<Region> region = new AtomicReference<>();
+
+	/**
+	 * Flag set by the writer that is mapping the active file again after a failure.
+	 */
+	private final AtomicBoolean reopening = new AtomicBoolean();
+
+	/**
+	 * Time (as {@link System#nanoTime()}) from which the active file can be mapped again.
+	 */
+	private volatile long retryAt;
+
+	/**
+	 * Per-thread view of the active mapped region.
+	 */
+	private final ThreadLocal<Cursor> cursors = ThreadLocal.withInitial(Cursor::new);
+
+	/**
+	 * Number of dropped events (larger than a file, or while the appender is not writable).
+	 */
+	private final LongAdder dropped = new LongAdder();
+
+	public Encoder<ILoggingEvent> getEncoder() {
+		return encoder;
+	}
+
+	public void setEncoder(Encoder<ILoggingEvent> encoder) {
+		this.encoder = encoder;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+	public FileSize getMaxFileSize() {
+		return maxFileSize;
+	}
+
+	public void setMaxFileSize(FileSize maxFileSize) {
+		this.maxFileSize = maxFileSize;
+	}
+
+	public int getMaxHistory() {
+		return maxHistory;
+	}
+
+	public void setMaxHistory(int maxHistory) {
+		this.maxHistory = maxHistory;
+	}
+
+	/**
+	 * Get the number of dropped events.
+	 *
+	 * @return dropped events
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Map the active file, appending after its committed records if it already exists.
+	 */
+	@Override
+	public void start() {
+		if (encoder == null) {
+			addError("No encoder set for the appender named [" + name + "]");
+			return;
+		}
+		if (file == null) {
+			addError("No file set for the appender named [" + name + "]");
+			return;
+		}
+		long size = maxFileSize.getSize();
+		if (size <= 0 || size > Integer.MAX_VALUE) {
+			addError("Invalid maxFileSize for the appender named [" + name + "]: " + maxFileSize);
+			return;
+		}
+		try {
+			path = new File(file).getAbsoluteFile().toPath();
+			Files.createDirectories(path.getParent());
+			region.set(open());
+		} catch (IOException e) {
+			addError("Failed to map the file [" + file + "]", e);
+			return;
+		}
+		super.start();
+	}
+
+	/**
+	 * Wait for the pending writes, and truncate the active file to the committed records.
+	 */
+	@Override
+	public void stop() {
+		if (!isStarted()) {
+			return;
+		}
+		super.stop();
+		while (true) {
+			Region current = region.get();
+			if (current == null) {
+				return;
+			}
+			long offset = current.claim(current.capacity + 1);
+			if (offset <= current.capacity) {
+				current.close(offset);
+				region.compareAndSet(current, null);
+				return;
+			}
+			awaitRotation(current);
+		}
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		write(encoder.encode(event));
+	}
+
+	/**
+	 * Append a batch of log events with a single claim. If the encoded batch is larger than a file, the log
+	 * events are written one by one.
+	 */
+	@Override
+	public void doAppendBatch(List<ILoggingEvent> events) {
+		if (!isStarted()) {
+			return;
+		}
+		byte[][] encoded = new byte[events.size()][];
+		int length = 0;
+		for (int i = 0; i < encoded.length; i++) {
+			ILoggingEvent event = events.get(i);
+			if (getFilterChainDecision(event) != FilterReply.DENY) {
+				encoded[i] = encoder.encode(event);
+				length += encoded[i].length;
+			}
+		}
+		if (length > maxFileSize.getSize()) {
+			for (byte[] bytes : encoded) {
+				if (bytes != null) {
+					write(bytes);
+				}
+			}
+			return;
+		}
+		byte[] batch = new byte[length];
+		int offset = 0;
+		for (byte[] bytes : encoded) {
+			if (bytes != null) {
+				System.arraycopy(bytes, 0, batch, offset, bytes.length);
+				offset += bytes.length;
+			}
+		}
+		if (length > 0) {
+			write(batch);
+		}
+	}
+
+	/**
+	 * Write the bytes of an encoded event with the claim/commit protocol, rotating the file if required.
+	 *
+	 * @param bytes
+	 */
+	void write(byte[] bytes) {
+		int length = bytes.length;
+		while (true) {
+			Region current = region.get();
+			if (current == null) {
+				if (!isStarted() || !reopen()) {
+					dropped.increment();
+					return;
+				}
+				continue;
+			}
+			if (length > current.capacity) {
+				dropped.increment();
+				return;
+			}
+			long offset = current.claim(length);
+			if (offset + length <= current.capacity) {
+				try {
+					cursors.get().put(current, (int) offset, bytes);
+				} finally {
+					current.commit(length);
+				}
+				return;
+			}
+			if (offset <= current.capacity) {
+				rotate(current, offset);
+			} else {
+				awaitRotation(current);
+			}
+		}
+	}
+
+	/**
+	 * Map the active file, appending after its committed records if it already exists (or archiving it if it
+	 * is full).
+	 *
+	 * @return region
+	 * @throws IOException
+	 */
+	private Region open() throws IOException {
+		int size = (int) maxFileSize.getSize();
+		long end = recover(path);
+		if (end >= size) {
+			archive(path);
+			end = 0;
+		}
+		return new Region(path, size, end);
+	}
+
+	/**
+	 * Rotate the file. It is executed by the writer whose claim crosses the end of the region. If it fails,
+	 * the region is cleared so that the next writer maps the active file again.
+	 *
+	 * @param current region
+	 * @param end of the committed records in the region
+	 */
+	private void rotate(Region current, long end) {
+		Region next = null;
+		current.close(end);
+		try {
+			archive(current.path);
+			next = new Region(current.path, current.capacity, 0);
+		} catch (IOException e) {
+			addError("Failed to rotate the file [" + file + "]", e);
+			retryAt = System.nanoTime();
+		}
+		region.compareAndSet(current, next);
+	}
+
+	/**
+	 * Map the active file again after a failed rotation. Only one writer maps it, and the concurrent writers
+	 * wait for it. If it fails, it is not retried until {@link #RETRY_NANOS} later.
+	 *
+	 * @return true if there is an active region
+	 */
+	private boolean reopen() {
+		while (!reopening.compareAndSet(false, true)) {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+		try {
+			if (region.get() != null) {
+				return true;
+			}
+			if (System.nanoTime() - retryAt < 0) {
+				return false;
+			}
+			Region next = open();
+			region.set(next);
+			if (!isStarted() && region.compareAndSet(next, null)) {
+				// Stopped while mapping the file
+				next.close(next.committed.get());
+				return false;
+			}
+			return true;
+		} catch (IOException e) {
+			addError("Failed to map the file [" + file + "]", e);
+			retryAt = System.nanoTime() + RETRY_NANOS;
+			return false;
+		} finally {
+			reopening.set(false);
+		}
+	}
+
+	/**
+	 * Wait until the region is replaced by a rotation.
+	 *
+	 * @param current region
+	 */
+	private void awaitRotation(Region current) {
+		while (region.get() == current) {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Find the end of the committed records of an existing file (discarding the trailing zeros).
+	 *
+	 * @param path
+	 * @return end of the committed records (0 if the file does not exist)
+	 * @throws IOException
+	 */
+	private static long recover(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return 0;
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long end = channel.size();
+			ByteBuffer chunk = ByteBuffer.allocate(RECOVERY_CHUNK_SIZE);
+			while (end > 0) {
+				long start = Math.max(0, end - RECOVERY_CHUNK_SIZE);
+				chunk.clear().limit((int) (end - start));
+				while (chunk.hasRemaining() && channel.read(chunk, start + chunk.position()) >= 0) {
+					// Read the whole chunk
+				}
+				int last = chunk.position() - 1;
+				while (last >= 0 && chunk.get(last) == 0) {
+					last--;
+				}
+				if (last >= 0) {
+					end = start + last + 1;
+					break;
+				}
+				end = start;
+			}
+			channel.truncate(end);
+			return end;
+		}
+	}
+
+	/**
+	 * Archive the active file with a timestamp suffix, and delete the oldest archived files beyond
+	 * {@link #maxHistory}.
+	 *
+	 * @param path
+	 * @throws IOException
+	 */
+	void archive(Path path) throws IOException {
+		String suffix = new SimpleDateFormat("yyyyMMdd-HHmmss.SSS").format(new Date());
+		Path target = path.resolveSibling(path.getFileName() + "." + suffix);
+		for (int i = 1; Files.exists(target); i++) {
+			target = path.resolveSibling(path.getFileName() + "." + suffix + "-" + i);
+		}
+		Files.move(path, target);
+		if (maxHistory <= 0) {
+			return;
+		}
+		String prefix = path.getFileName() + ".";
+		String[] archived = path.getParent().toFile().list((dir, name) -> name.startsWith(prefix));
+		if (archived == null || archived.length <= maxHistory) {
+			return;
+		}
+		Arrays.sort(archived);
+		for (int i = 0; i < archived.length - maxHistory; i++) {
+			Files.deleteIfExists(path.resolveSibling(archived[i]));
+		}
+	}
+
+	/**
+	 * Resolve the function to unmap a mapped buffer: with sun.misc.Unsafe#invokeCleaner (Java 9+) or with the
+	 * cleaner of the buffer (Java 8).
+	 *
+	 * @return unmapper (or null if not supported)
+	 */
+	private static Consumer<ByteBuffer> unmapper() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Object unsafe = theUnsafe.get(null);
+			return buffer -> invoke(invokeCleaner, unsafe, buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Not Java 9+
+		}
+		try {
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> invoke(clean, invoke(cleaner, buffer));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Invoke a method by reflection, wrapping the checked exceptions.
+	 *
+	 * @param method
+	 * @param target
+	 * @param args
+	 * @return result of the method
+	 */
+	private static Object invoke(Method method, Object target, Object... args) {
+		try {
+			return method.invoke(target, args);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Mapped region of the active file.
+	 */
+	private final class Region {
+
+		private final Path path;
+
+		private final int capacity;
+
+		private final FileChannel channel;
+
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * Next position to be claimed.
+		 */
+		private final AtomicLong claimed;
+
+		/**
+		 * Committed bytes (including the records existing before mapping the region).
+		 */
+		private final AtomicLong committed;
+
+		Region(Path path, int capacity, long start) throws IOException {
+			this.path = path;
+			this.capacity = capacity;
+			this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			this.claimed = new AtomicLong(start);
+			this.committed = new AtomicLong(start);
+		}
+
+		long claim(int length) {
+			return claimed.getAndAdd(length);
+		}
+
+		void commit(int length) {
+			committed.addAndGet(length);
+		}
+
+		/**
+		 * Wait for the writers that claimed a range before the end, truncate the file to the end, and unmap the
+		 * buffer (no writer can write into the region anymore).
+		 *
+		 * @param end
+		 */
+		void close(long end) {
+			while (committed.get() < end) {
+				LockSupport.parkNanos(PARK_NANOS);
+			}
+			try {
+				channel.truncate(end);
+				channel.close();
+			} catch (IOException e) {
+				addError("Failed to close the file [" + path + "]", e);
+			}
+			if (UNMAPPER != null) {
+				try {
+					UNMAPPER.accept(buffer);
+				} catch (RuntimeException e) {
+					addError("Failed to unmap the file [" + path + "]", e);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Per-thread duplicate of the buffer of a region, to write at absolute positions without sharing
+	 * the buffer position between threads.
+	 */
+	private static final class Cursor {
+
+		private Region region;
+
+		private ByteBuffer buffer;
+
+		void put(Region target, int offset, byte[] bytes) {
+			if (region != target) {
+				region = target;
+				buffer = target.buffer.duplicate();
+			}
+			buffer.position(offset);
+			buffer.put(bytes);
+		}
+
+	}
+
+}
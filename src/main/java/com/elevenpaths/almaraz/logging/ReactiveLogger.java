@@ -7,9 +7,9 @@ package com.elevenpaths.almaraz.logging;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
-import org.slf4j.MDC;
-
 import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestLogBuffer;
+import com.elevenpaths.almaraz.context.SamplingDecision;
 
 import reactor.core.publisher.Mono;
 import reactor.core.publisher.Signal;
@@ -41,6 +41,13 @@ import reactor.util.context.Context;
  * The goal of this logger utilities is to configure MDC with the {@link RequestContext} properties while still using
  * a standard logger.
  *
+ * The log entries follow the {@link SamplingDecision} of the {@link RequestContext} (see
+ * {@link com.elevenpaths.almaraz.webfilters.LoggerWebFilter}): they are discarded if the request is not sampled.
+ * If the context has an open {@link RequestLogBuffer} (because the decision is deferred or the log entries are
+ * batched), the log entries are buffered until {@link #flush(RequestContext)}. If a {@link RequestContextAppender}
+ * is running, the log events are buffered by the appender (keeping their timestamp); otherwise, the invocations
+ * of the logger are buffered.
+ *
  * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
  *
  */
@@ -55,7 +62,9 @@ public class ReactiveLogger {
 	/**
 	 * Low level logger that considers the reactive signal to determine if the logger must be invoked or not.
 	 * If the logger is to be invoked, then the {@link RequestContext} is extracted from the reactive context
-	 * to update MDC with all the context properties. The MDC is cleared afterwards.
+	 * to update MDC with all the context properties (or to bind it by reference if a {@link RequestContextAppender}
+	 * is running). The MDC is cleared afterwards (or restored to the {@link RequestContext} bound by
+	 * {@link MDCContextPropagation} in the current thread).
 	 *
 	 * @param isSignal
 	 * @param log
@@ -66,16 +75,111 @@ public class ReactiveLogger {
 			if (!isSignal.test(signal)) {
 				return;
 			}
-			try {
-				RequestContext logContext = signal.getContext().getOrDefault(RequestContext.class, new RequestContext());
-				MDC.setContextMap(logContext.getContextMap());
-				log.accept(signal);
-			} finally {
-				MDC.clear();
+			RequestContext requestContext = RequestContext.from(signal);
+			if (requestContext.getSamplingDecision() == SamplingDecision.NOT_SAMPLED) {
+				return;
+			}
+			if (requestContext.getLogBuffer() == null || MDCBinding.isByReference()) {
+				log(requestContext, signal, log);
+				return;
 			}
+			Signal<T> deferred = copy(signal);
+			logSampled(requestContext, () -> log(requestContext, deferred, log));
 		};
 	}
 
+	/**
+	 * Execute a log action following the {@link SamplingDecision} of the {@link RequestContext}: it is discarded
+	 * if the request is not sampled, it is added to the {@link RequestLogBuffer} of the context if open, and it is
+	 * executed otherwise. If the buffer is full, it is only executed if the request is sampled. The log action is
+	 * responsible for binding the context.
+	 *
+	 * @param requestContext
+	 * @param action
+	 */
+	public static void logSampled(RequestContext requestContext, Runnable action) {
+		if (requestContext.getSamplingDecision() == SamplingDecision.NOT_SAMPLED) {
+			return;
+		}
+		RequestLogBuffer logBuffer = requestContext.getLogBuffer();
+		if (logBuffer != null && logBuffer.add(action)) {
+			return;
+		}
+		// The buffer is full, flushed or discarded: follow the current decision
+		SamplingDecision samplingDecision = requestContext.getSamplingDecision();
+		if (samplingDecision == null || samplingDecision == SamplingDecision.SAMPLED) {
+			action.run();
+		}
+	}
+
+	/**
+	 * Invoke a logger with a {@link RequestContext} available outside the reactive context (e.g. in a web filter
+	 * that creates it), following its {@link SamplingDecision} as {@link #logOnSignal(Predicate, Consumer)}.
+	 * The {@link RequestContext} is bound to MDC while the logger runs.
+	 *
+	 * @param requestContext
+	 * @param log
+	 */
+	public static void log(RequestContext requestContext, Runnable log) {
+		if (requestContext.getSamplingDecision() == SamplingDecision.NOT_SAMPLED) {
+			return;
+		}
+		if (requestContext.getLogBuffer() == null || MDCBinding.isByReference()) {
+			log(requestContext, null, signal -> log.run());
+			return;
+		}
+		logSampled(requestContext, () -> log(requestContext, null, signal -> log.run()));
+	}
+
+	/**
+	 * Write the log entries buffered in the {@link RequestLogBuffer} of the {@link RequestContext} (if any) in
+	 * order, and close the buffer. The buffered log events are passed to the appenders as a single batch (see
+	 * {@link RequestContextAppender}).
+	 *
+	 * @param requestContext
+	 */
+	public static void flush(RequestContext requestContext) {
+		RequestLogBuffer logBuffer = requestContext.getLogBuffer();
+		if (logBuffer != null && !logBuffer.isClosed()) {
+			LogBatch.run(logBuffer::flush);
+		}
+	}
+
+	/**
+	 * Copy a signal to defer the logger. Some operators (e.g. doOnEach) reuse a mutable signal instance.
+	 *
+	 * @param signal
+	 * @return immutable signal
+	 */
+	private static <T> Signal<T> copy(Signal<T> signal) {
+		switch (signal.getType()) {
+		case ON_NEXT:
+			return Signal.next(signal.get(), signal.getContext());
+		case ON_ERROR:
+			return Signal.error(signal.getThrowable(), signal.getContext());
+		case ON_COMPLETE:
+			return Signal.complete(signal.getContext());
+		default:
+			return signal;
+		}
+	}
+
+	/**
+	 * Invoke the logger with the {@link RequestContext} bound to MDC.
+	 *
+	 * @param requestContext
+	 * @param signal
+	 * @param log
+	 */
+	private static <T> void log(RequestContext requestContext, Signal<T> signal, Consumer<Signal<T>> log) {
+		RequestContext previous = MDCBinding.refresh(requestContext);
+		try {
+			log.accept(signal);
+		} finally {
+			MDCBinding.reset(previous);
+		}
+	}
+
 	/**
 	 * Logger triggered with the signal type {@link SignalType#ON_NEXT}.
 	 *
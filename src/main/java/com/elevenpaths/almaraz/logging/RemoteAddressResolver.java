@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * Resolver of the remote (client) address of a request, taking into account the X-Forwarded-For HTTP header.
+ *
+ * Without trusted proxies, it returns the first address of the X-Forwarded-For header (or the TCP/IP remote
+ * address if the header is not present). Note that the client may forge the header in this mode.
+ *
+ * With trusted proxies (as a list of CIDR blocks, e.g. "10.0.0.0/8"), the X-Forwarded-For chain is only
+ * considered if the TCP/IP remote address is a trusted proxy, and it is walked from right to left skipping the
+ * trusted proxies: the first address not trusted is the client address. If all the addresses are trusted, it
+ * returns the first one.
+ *
+ * It does not use exceptions or DNS lookups to parse the addresses of the X-Forwarded-For header: the entries
+ * that are not IP addresses (e.g. "unknown") are considered not trusted.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RemoteAddressResolver {
+
+	/**
+	 * X-Forwarded-For header name.
+	 */
+	public static final String X_FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+	/**
+	 * Trusted proxies.
+	 */
+	private final List<Cidr> trustedProxies = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Add a trusted proxy as a CIDR block (e.g. "10.0.0.0/8" or "fd00::/8") or as a single IP address.
+	 *
+	 * @param cidr
+	 * @return {@link RemoteAddressResolver}
+	 * @throws IllegalArgumentException if it is not a valid CIDR block
+	 */
+	public RemoteAddressResolver addTrustedProxy(String cidr) {
+		int slash = cidr.indexOf('/');
+		String address = (slash < 0) ? cidr.trim() : cidr.substring(0, slash).trim();
+		byte[] bytes = parseAddress(address, 0, address.length());
+		if (bytes == null) {
+			throw new IllegalArgumentException("Invalid CIDR block: " + cidr);
+		}
+		int prefix = bytes.length * 8;
+		if (slash >= 0) {
+			prefix = parseInt(cidr, slash + 1, cidr.length());
+			if (prefix < 0 || prefix > bytes.length * 8) {
+				throw new IllegalArgumentException("Invalid CIDR block: " + cidr);
+			}
+		}
+		trustedProxies.add(new Cidr(bytes, prefix));
+		return this;
+	}
+
+	/**
+	 * Check if an address is a trusted proxy.
+	 *
+	 * @param address
+	 * @return true if trusted
+	 */
+	public boolean isTrustedProxy(InetAddress address) {
+		return address != null && isTrusted(address.getAddress());
+	}
+
+	/**
+	 * Check if an address (as a string) is a trusted proxy.
+	 *
+	 * @param address
+	 * @return true if trusted
+	 */
+	public boolean isTrustedProxy(String address) {
+		return address != null && isTrusted(parseAddress(address, 0, address.length()));
+	}
+
+	/**
+	 * Resolve the remote address of the exchange request.
+	 *
+	 * @param exchange
+	 * @return remote address (or null if unknown)
+	 */
+	public String resolve(ServerWebExchange exchange) {
+		ServerHttpRequest request = exchange.getRequest();
+		List<String> xff = request.getHeaders().get(X_FORWARDED_FOR_HEADER);
+		if (trustedProxies.isEmpty()) {
+			String first = getFirstAddress(xff);
+			return (first == null) ? MDCServerWebExchange.getRemoteAddressFromTCP(exchange) : first;
+		}
+		InetSocketAddress remoteAddress = request.getRemoteAddress();
+		if (remoteAddress == null || !isTrustedProxy(remoteAddress.getAddress())) {
+			return MDCServerWebExchange.getRemoteAddressFromTCP(exchange);
+		}
+		String client = getClientAddress(xff);
+		return (client == null) ? MDCServerWebExchange.getRemoteAddressFromTCP(exchange) : client;
+	}
+
+	/**
+	 * Get the first address of the X-Forwarded-For header values.
+	 *
+	 * @param xff
+	 * @return first address (or null if none)
+	 */
+	static String getFirstAddress(List<String> xff) {
+		if (xff == null) {
+			return null;
+		}
+		for (String value : xff) {
+			int start = 0;
+			int length = value.length();
+			while (start < length) {
+				int end = value.indexOf(',', start);
+				if (end < 0) {
+					end = length;
+				}
+				String entry = trim(value, start, end);
+				if (entry != null) {
+					return entry;
+				}
+				start = end + 1;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Walk the X-Forwarded-For chain from right to left, skipping the trusted proxies.
+	 *
+	 * @param xff
+	 * @return first address not trusted, the leftmost address if all are trusted, or null if there is no address
+	 */
+	private String getClientAddress(List<String> xff) {
+		if (xff == null) {
+			return null;
+		}
+		String leftmost = null;
+		for (int i = xff.size() - 1; i >= 0; i--) {
+			String value = xff.get(i);
+			int end = value.length();
+			while (end >= 0) {
+				int start = value.lastIndexOf(',', end - 1) + 1;
+				String entry = trim(value, start, end);
+				if (entry != null) {
+					if (!isTrustedProxy(entry)) {
+						return entry;
+					}
+					leftmost = entry;
+				}
+				end = start - 1;
+			}
+		}
+		return leftmost;
+	}
+
+	/**
+	 * Check if the address bytes are in a trusted CIDR block.
+	 *
+	 * @param address
+	 * @return true if trusted
+	 */
+	private boolean isTrusted(byte[] address) {
+		if (address == null) {
+			return false;
+		}
+		for (Cidr cidr : trustedProxies) {
+			if (cidr.matches(address)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Trim a substring.
+	 *
+	 * @param value
+	 * @param start
+	 * @param end
+	 * @return trimmed substring, or null if empty
+	 */
+	private static String trim(String value, int start, int end) {
+		while (start < end && Character.isWhitespace(value.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+			end--;
+		}
+		return (start == end) ? null : value.substring(start, end);
+	}
+
+	/**
+	 * Parse an IP address literal, optionally with port (e.g. "10.0.0.1:8080" or "[::1]:8080"). IPv4 addresses
+	 * are parsed without allocations other than the result; IPv6 literals are parsed by {@link InetAddress}
+	 * (that does not perform a DNS lookup for literals).
+	 *
+	 * @param value
+	 * @param start
+	 * @param end
+	 * @return address bytes, or null if it is not an IP address
+	 */
+	static byte[] parseAddress(String value, int start, int end) {
+		if (start >= end) {
+			return null;
+		}
+		if (value.charAt(start) == '[') {
+			int close = value.indexOf(']', start);
+			return (close < 0 || close >= end) ? null : parseIPv6(value.substring(start + 1, close));
+		}
+		int colon = value.indexOf(':', start);
+		if (colon >= 0 && colon < end) {
+			if (value.indexOf(':', colon + 1) < 0 || value.indexOf(':', colon + 1) >= end) {
+				// IPv4 with port
+				return parseIPv4(value, start, colon);
+			}
+			return parseIPv6(value.substring(start, end));
+		}
+		return parseIPv4(value, start, end);
+	}
+
+	/**
+	 * Parse an IPv4 address in dotted-decimal notation.
+	 *
+	 * @param value
+	 * @param start
+	 * @param end
+	 * @return address bytes, or null if not valid
+	 */
+	private static byte[] parseIPv4(String value, int start, int end) {
+		byte[] bytes = new byte[4];
+		int octet = 0;
+		int digits = 0;
+		int number = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c >= '0' && c <= '9') {
+				number = number * 10 + (c - '0');
+				if (++digits > 3 || number > 255) {
+					return null;
+				}
+			} else if (c == '.' && digits > 0 && octet < 3) {
+				bytes[octet++] = (byte) number;
+				digits = 0;
+				number = 0;
+			} else {
+				return null;
+			}
+		}
+		if (digits == 0 || octet != 3) {
+			return null;
+		}
+		bytes[3] = (byte) number;
+		return bytes;
+	}
+
+	/**
+	 * Parse an IPv6 literal.
+	 *
+	 * @param value
+	 * @return address bytes, or null if not valid
+	 */
+	private static byte[] parseIPv6(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (Character.digit(c, 16) < 0 && c != ':' && c != '.') {
+				return null;
+			}
+		}
+		if (value.indexOf(':') < 0) {
+			return null;
+		}
+		try {
+			return InetAddress.getByName(value).getAddress();
+		} catch (UnknownHostException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a non-negative integer.
+	 *
+	 * @param value
+	 * @param start
+	 * @param end
+	 * @return integer, or -1 if not valid
+	 */
+	private static int parseInt(String value, int start, int end) {
+		if (start >= end || end - start > 3) {
+			return -1;
+		}
+		int number = 0;
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			number = number * 10 + (c - '0');
+		}
+		return number;
+	}
+
+	/**
+	 * CIDR block.
+	 */
+	private static final class Cidr {
+
+		private final byte[] network;
+
+		private final int prefix;
+
+		Cidr(byte[] network, int prefix) {
+			this.network = network;
+			this.prefix = prefix;
+		}
+
+		boolean matches(byte[] address) {
+			if (address.length != network.length) {
+				return false;
+			}
+			int bytes = prefix / 8;
+			for (int i = 0; i < bytes; i++) {
+				if (address[i] != network[i]) {
+					return false;
+				}
+			}
+			int bits = prefix % 8;
+			if (bits == 0) {
+				return true;
+			}
+			int mask = (0xFF << (8 - bits)) & 0xFF;
+			return (address[bytes] & mask) == (network[bytes] & mask);
+		}
+
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.MDC;
+import org.slf4j.spi.MDCAdapter;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestLogBuffer;
+import com.elevenpaths.almaraz.context.SamplingDecision;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.classic.util.LogbackMDCAdapter;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+/**
+ * Logback appender that exposes the {@link RequestContext} bound by {@link ReactiveLogger} (or
+ * {@link MDCContextPropagation}) to the encoders by reference, and forwards the log events to its child
+ * appenders.
+ *
+ * Without this appender, the context properties are copied to MDC for every log record. While this appender
+ * is running, the context properties are not copied: the MDC properties of each log event are a read-only view
+ * combining the bound {@link RequestContext} and the properties added explicitly to MDC (e.g. with
+ * {@link MDC#put(String, String)} inside a log consumer), which take precedence.
+ *
+ * It must wrap all the appenders of the application loggers:
+ *
+ * <code>
+ * &lt;appender name="CONTEXT" class="com.elevenpaths.almaraz.logging.RequestContextAppender"&gt;
+ *   &lt;appender-ref ref="CONSOLE" /&gt;
+ * &lt;/appender&gt;
+ * &lt;root level="INFO"&gt;
+ *   &lt;appender-ref ref="CONTEXT" /&gt;
+ * &lt;/root&gt;
+ * </code>
+ *
+ * The view is live. If a child appender processes the events asynchronously (e.g. an AsyncAppender), the
+ * property "snapshot" must be enabled to expose an immutable snapshot of the context properties instead.
+ *
+ * If the bound {@link RequestContext} has an open {@link RequestLogBuffer} (for a deferred sampling decision or
+ * for batching), the log events are buffered (with a snapshot of the context properties) until
+ * {@link ReactiveLogger#flush(RequestContext)}. Then, they are forwarded as a batch: the child appenders
+ * implementing {@link BatchAppender} receive all the log events of the request at once.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RequestContextAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+		implements AppenderAttachable<ILoggingEvent> {
+
+	/**
+	 * Child appenders.
+	 */
+	private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+
+	/**
+	 * Expose a snapshot of the context properties instead of a live view.
+	 */
+	private boolean snapshot;
+
+	/**
+	 * Log events of the active {@link LogBatch} in the current thread.
+	 */
+	private final ThreadLocal<List<ILoggingEvent>> batches = ThreadLocal.withInitial(ArrayList::new);
+
+	/**
+	 * Check if a snapshot of the context properties is exposed instead of a live view.
+	 *
+	 * @return true if a snapshot is exposed
+	 */
+	public boolean isSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Expose a snapshot of the context properties instead of a live view.
+	 *
+	 * @param snapshot
+	 */
+	public void setSnapshot(boolean snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	@Override
+	public void start() {
+		if (!appenders.iteratorForAppenders().hasNext()) {
+			addWarn("No child appender attached to RequestContextAppender [" + getName() + "]");
+		}
+		MDCBinding.startByReference();
+		super.start();
+	}
+
+	@Override
+	public void stop() {
+		if (!isStarted()) {
+			return;
+		}
+		super.stop();
+		MDCBinding.stopByReference();
+		appenders.detachAndStopAllAppenders();
+	}
+
+	/**
+	 * Set the MDC properties of the log event with the bound {@link RequestContext} and forward it to the
+	 * child appenders (or buffer it in the {@link RequestLogBuffer} of the context). The pending
+	 * {@link LazyMDC} properties are resolved first: the event already passed the level and the filters.
+	 */
+	@Override
+	protected void append(ILoggingEvent event) {
+		LazyMDC.resolve();
+		RequestContext requestContext = MDCBinding.current();
+		if (requestContext == null || !(event instanceof LoggingEvent)) {
+			forward(event);
+			return;
+		}
+		RequestLogBuffer logBuffer = requestContext.getLogBuffer();
+		boolean buffered = logBuffer != null && !logBuffer.isClosed();
+		Map<String, String> context = (snapshot || buffered)
+				? requestContext.snapshot()
+				: requestContext.getContextMap();
+		Map<String, String> mdc = getMDCPropertyMap();
+		try {
+			((LoggingEvent) event).setMDCPropertyMap(mdc.isEmpty() ? context : new MDCContextMap(context, mdc));
+		} catch (IllegalStateException e) {
+			// The MDC properties of the event were already read. Keep them.
+		}
+		if (buffered) {
+			event.prepareForDeferredProcessing();
+			if (logBuffer.add(() -> forward(event))) {
+				return;
+			}
+			// The buffer is full, flushed or discarded: follow the current decision
+			SamplingDecision samplingDecision = requestContext.getSamplingDecision();
+			if (samplingDecision == SamplingDecision.DEFERRED || samplingDecision == SamplingDecision.NOT_SAMPLED) {
+				return;
+			}
+		}
+		forward(event);
+	}
+
+	/**
+	 * Forward the log event to the child appenders, or collect it if there is an active {@link LogBatch}.
+	 *
+	 * @param event
+	 */
+	private void forward(ILoggingEvent event) {
+		LogBatch batch = LogBatch.current();
+		if (batch == null) {
+			appenders.appendLoopOnAppenders(event);
+			return;
+		}
+		List<ILoggingEvent> events = batches.get();
+		if (events.isEmpty()) {
+			batch.onEnd(this::forwardBatch);
+		}
+		events.add(event);
+	}
+
+	/**
+	 * Forward the log events collected in the {@link LogBatch} to the child appenders.
+	 */
+	@SuppressWarnings("unchecked")
+	private void forwardBatch() {
+		List<ILoggingEvent> events = batches.get();
+		try {
+			Iterator<Appender<ILoggingEvent>> it = appenders.iteratorForAppenders();
+			while (it.hasNext()) {
+				Appender<ILoggingEvent> appender = it.next();
+				if (appender instanceof BatchAppender) {
+					((BatchAppender<ILoggingEvent>) appender).doAppendBatch(events);
+				} else {
+					for (ILoggingEvent event : events) {
+						appender.doAppend(event);
+					}
+				}
+			}
+		} finally {
+			events.clear();
+		}
+	}
+
+	/**
+	 * Get the MDC properties of the current thread. It avoids copying them with Logback.
+	 *
+	 * @return MDC properties (never null)
+	 */
+	private static Map<String, String> getMDCPropertyMap() {
+		MDCAdapter adapter = MDC.getMDCAdapter();
+		Map<String, String> mdc = (adapter instanceof LogbackMDCAdapter)
+				? ((LogbackMDCAdapter) adapter).getPropertyMap()
+				: adapter.getCopyOfContextMap();
+		return (mdc == null) ? Collections.emptyMap() : mdc;
+	}
+
+	@Override
+	public void addAppender(Appender<ILoggingEvent> newAppender) {
+		appenders.addAppender(newAppender);
+	}
+
+	@Override
+	public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+		return appenders.iteratorForAppenders();
+	}
+
+	@Override
+	public Appender<ILoggingEvent> getAppender(String name) {
+		return appenders.getAppender(name);
+	}
+
+	@Override
+	public boolean isAttached(Appender<ILoggingEvent> appender) {
+		return appenders.isAttached(appender);
+	}
+
+	@Override
+	public void detachAndStopAllAppenders() {
+		appenders.detachAndStopAllAppenders();
+	}
+
+	@Override
+	public boolean detachAppender(Appender<ILoggingEvent> appender) {
+		return appenders.detachAppender(appender);
+	}
+
+	@Override
+	public boolean detachAppender(String name) {
+		return appenders.detachAppender(name);
+	}
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestLogBuffer;
+import com.elevenpaths.almaraz.context.SamplingDecision;
+
+/**
+ * Log sampling policy for {@link com.elevenpaths.almaraz.webfilters.LoggerWebFilter}. The decision is stored
+ * in the {@link RequestContext} so that the log entries written with {@link ReactiveLogger} follow it.
+ *
+ * The decision is taken in two steps:
+ * <ul>
+ * <li><b>Request</b> - The request is sampled with the rate of the first route matching the method and path
+ * (in order of registration), or the default rate. If it is not sampled and the tail-based sampling is enabled,
+ * the decision is deferred: the log entries of the request are buffered in a {@link RequestLogBuffer}.</li>
+ * <li><b>Response</b> - If the response is interesting (an error or a slow response), the request is sampled and
+ * the buffered log entries are written (with {@link ReactiveLogger#flush(RequestContext)}). Otherwise, the
+ * buffered log entries are discarded.</li>
+ * </ul>
+ *
+ * <code>
+ * new SamplingPolicy()
+ *   .setDefaultRate(0.1)
+ *   .addRoute(HttpMethod.GET, "/api/health", 0)
+ *   .addRoute("/api/users/**", 0.5)
+ *   .setErrorStatus(500)
+ *   .setSlowThreshold(Duration.ofMillis(500))
+ *   .setTailBased(true);
+ * </code>
+ *
+ * The route patterns (with the syntax of {@link PathPattern}) are matched against the whole request path,
+ * including the base path.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class SamplingPolicy {
+
+	/**
+	 * Parser of the route patterns.
+	 */
+	private static final PathPatternParser PARSER = new PathPatternParser();
+
+	/**
+	 * Sampling routes in order of registration.
+	 */
+	private final List<Route> routes = new ArrayList<>();
+
+	/**
+	 * Sampling rate of the requests not matching any route.
+	 */
+	private double defaultRate = 1;
+
+	/**
+	 * Minimum status code of the responses that are always logged.
+	 */
+	private int errorStatus = HttpStatus.INTERNAL_SERVER_ERROR.value();
+
+	/**
+	 * Minimum latency (in milliseconds) of the responses that are always logged. Disabled if 0.
+	 */
+	private long slowThresholdMillis;
+
+	/**
+	 * Defer the decision of the requests that are not sampled until the response.
+	 */
+	private boolean tailBased;
+
+	/**
+	 * Capacity of the {@link RequestLogBuffer} of the deferred requests.
+	 */
+	private int bufferCapacity = RequestLogBuffer.DEFAULT_CAPACITY;
+
+	/**
+	 * Set the sampling rate of the requests not matching any route (by default, 1).
+	 *
+	 * @param defaultRate between 0 (none) and 1 (all)
+	 * @return {@link SamplingPolicy}
+	 */
+	public SamplingPolicy setDefaultRate(double defaultRate) {
+		this.defaultRate = checkRate(defaultRate);
+		return this;
+	}
+
+	/**
+	 * Add a sampling route for any method.
+	 *
+	 * @param pattern of the request path
+	 * @param rate between 0 (none) and 1 (all)
+	 * @return {@link SamplingPolicy}
+	 */
+	public SamplingPolicy addRoute(String pattern, double rate) {
+		return addRoute(null, pattern, rate);
+	}
+
+	/**
+	 * Add a sampling route.
+	 *
+	 * @param method of the request (null for any method)
+	 * @param pattern of the request path
+	 * @param rate between 0 (none) and 1 (all)
+	 * @return {@link SamplingPolicy}
+	 */
+	public SamplingPolicy addRoute(HttpMethod method, String pattern, double rate) {
+		routes.add(new Route(method, PARSER.parse(pattern), checkRate(rate)));
+		return this;
+	}
+
+	/**
+	 * Set the minimum status code of the responses that are always logged (by default, 500).
+	 *
+	 * @param errorStatus
+	 * @return {@link SamplingPolicy}
+	 */
+	public SamplingPolicy setErrorStatus(int errorStatus) {
+		this.errorStatus = errorStatus;
+		return this;
+	}
+
+	/**
+	 * Set the minimum latency of the responses that are always logged (by default, disabled).
+	 *
+	 * @param slowThreshold (null or zero to disable it)
+	 * @return {@link SamplingPolicy}
+	 */
+	public SamplingPolicy setSlowThreshold(Duration slowThreshold) {
+		this.slowThresholdMillis = (slowThreshold == null) ? 0 : slowThreshold.toMillis();
+		return this;
+	}
+
+	/**
+	 * Enable the tail-based sampling: the log entries of the requests that are not sampled are buffered
+	 * until the response is completed (by default, disabled).
+	 *
+	 * @param tailBased
+	 * @return {@link SamplingPolicy}
+	 */
+	public SamplingPolicy setTailBased(boolean tailBased) {
+		this.tailBased = tailBased;
+		return this;
+	}
+
+	/**
+	 * Set the capacity of the {@link RequestLogBuffer} of the deferred requests.
+	 *
+	 * @param bufferCapacity
+	 * @return {@link SamplingPolicy}
+	 */
+	public SamplingPolicy setBufferCapacity(int bufferCapacity) {
+		this.bufferCapacity = bufferCapacity;
+		return this;
+	}
+
+	/**
+	 * Take the sampling decision of the request, and store it in the {@link RequestContext}.
+	 * If deferred, a {@link RequestLogBuffer} is attached to the context.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @return {@link SamplingDecision}
+	 */
+	public SamplingDecision sampleRequest(ServerWebExchange exchange, RequestContext requestContext) {
+		SamplingDecision samplingDecision;
+		if (isSampled(getRate(exchange))) {
+			samplingDecision = SamplingDecision.SAMPLED;
+		} else if (tailBased) {
+			samplingDecision = SamplingDecision.DEFERRED;
+			requestContext.setLogBuffer(new RequestLogBuffer(bufferCapacity));
+		} else {
+			samplingDecision = SamplingDecision.NOT_SAMPLED;
+		}
+		requestContext.setSamplingDecision(samplingDecision);
+		return samplingDecision;
+	}
+
+	/**
+	 * Take the final sampling decision with the status code and latency of the response, and store it in the
+	 * {@link RequestContext}. An interesting response is always sampled, and the deferred log entries are kept
+	 * to be written with {@link ReactiveLogger#flush(RequestContext)}. Otherwise, the deferred log entries are
+	 * discarded.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param latencyMillis
+	 * @return {@link SamplingDecision}
+	 */
+	public SamplingDecision sampleResponse(ServerWebExchange exchange, RequestContext requestContext,
+			long latencyMillis) {
+		SamplingDecision samplingDecision = requestContext.getSamplingDecision();
+		if (samplingDecision == null || samplingDecision == SamplingDecision.SAMPLED) {
+			return SamplingDecision.SAMPLED;
+		}
+		HttpStatus status = exchange.getResponse().getStatusCode();
+		int statusCode = (status == null) ? HttpStatus.OK.value() : status.value();
+		samplingDecision = isInteresting(statusCode, latencyMillis)
+				? SamplingDecision.SAMPLED
+				: SamplingDecision.NOT_SAMPLED;
+		requestContext.setSamplingDecision(samplingDecision);
+		RequestLogBuffer logBuffer = requestContext.getLogBuffer();
+		if (logBuffer != null && samplingDecision == SamplingDecision.NOT_SAMPLED) {
+			logBuffer.discard();
+		}
+		return samplingDecision;
+	}
+
+	/**
+	 * Check if a response must always be logged (an error or a slow response).
+	 *
+	 * @param statusCode
+	 * @param latencyMillis
+	 * @return true if interesting
+	 */
+	public boolean isInteresting(int statusCode, long latencyMillis) {
+		return statusCode >= errorStatus || (slowThresholdMillis > 0 && latencyMillis >= slowThresholdMillis);
+	}
+
+	/**
+	 * Get the sampling rate of the request: the rate of the first matching route, or the default rate.
+	 *
+	 * @param exchange
+	 * @return sampling rate
+	 */
+	protected double getRate(ServerWebExchange exchange) {
+		if (routes.isEmpty()) {
+			return defaultRate;
+		}
+		HttpMethod method = exchange.getRequest().getMethod();
+		PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+		for (Route route : routes) {
+			if ((route.method == null || route.method == method) && route.pattern.matches(path)) {
+				return route.rate;
+			}
+		}
+		return defaultRate;
+	}
+
+	/**
+	 * Decide randomly if a request is sampled.
+	 *
+	 * @param rate
+	 * @return true if sampled
+	 */
+	protected boolean isSampled(double rate) {
+		return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+	}
+
+	private static double checkRate(double rate) {
+		if (!(rate >= 0 && rate <= 1)) {
+			throw new IllegalArgumentException("Invalid sampling rate: " + rate);
+		}
+		return rate;
+	}
+
+	/**
+	 * Sampling route.
+	 */
+	private static final class Route {
+
+		private final HttpMethod method;
+
+		private final PathPattern pattern;
+
+		private final double rate;
+
+		Route(HttpMethod method, PathPattern pattern, double rate) {
+			this.method = method;
+			this.pattern = pattern;
+			this.rate = rate;
+		}
+
+	}
+
+}
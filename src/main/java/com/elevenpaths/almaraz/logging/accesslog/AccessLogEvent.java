@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.SlotContextMap;
+
+/**
+ * Access log event stored in a preallocated slot of an {@link AccessLogRingBuffer}. It keeps the values of
+ * the {@link ContextField} properties indexed by the slots of {@link SlotContextMap}. The events are reused:
+ * they are cleared once they are consumed.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class AccessLogEvent {
+
+	/**
+	 * Log message.
+	 */
+	private String message;
+
+	/**
+	 * Timestamp (in milliseconds since epoch).
+	 */
+	private long timestamp;
+
+	/**
+	 * Values of the {@link ContextField} properties indexed by slot.
+	 */
+	private final String[] fields = new String[SlotContextMap.SLOT_COUNT];
+
+	/**
+	 * Get the log message.
+	 *
+	 * @return message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Set the log message.
+	 *
+	 * @param message
+	 * @return this event
+	 */
+	public AccessLogEvent setMessage(String message) {
+		this.message = message;
+		return this;
+	}
+
+	/**
+	 * Get the timestamp.
+	 *
+	 * @return timestamp (in milliseconds since epoch)
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Set the timestamp.
+	 *
+	 * @param timestamp (in milliseconds since epoch)
+	 * @return this event
+	 */
+	public AccessLogEvent setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+		return this;
+	}
+
+	/**
+	 * Get the value of a field.
+	 *
+	 * @param slot (e.g. {@link SlotContextMap#TRANSACTION_ID})
+	 * @return value (or null if not set)
+	 */
+	public String get(int slot) {
+		return fields[slot];
+	}
+
+	/**
+	 * Set the value of a field.
+	 *
+	 * @param slot (e.g. {@link SlotContextMap#TRANSACTION_ID})
+	 * @param value
+	 * @return this event
+	 */
+	public AccessLogEvent put(int slot, String value) {
+		fields[slot] = value;
+		return this;
+	}
+
+	/**
+	 * Copy the {@link ContextField} properties of a {@link RequestContext}. The rest of properties are
+	 * not copied.
+	 *
+	 * @param requestContext
+	 * @return this event
+	 */
+	public AccessLogEvent copy(RequestContext requestContext) {
+		Map<String, String> contextMap = requestContext.getContextMap();
+		if (contextMap.isEmpty()) {
+			return this;
+		}
+		for (int slot = 0; slot < fields.length; slot++) {
+			String value = contextMap.get(SlotContextMap.keyOf(slot));
+			if (value != null) {
+				fields[slot] = value;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Clear the event to be reused.
+	 */
+	void clear() {
+		message = null;
+		timestamp = 0;
+		Arrays.fill(fields, null);
+	}
+
+}
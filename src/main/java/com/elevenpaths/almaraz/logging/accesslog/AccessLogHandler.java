@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+/**
+ * Handler of the access log events consumed from an {@link AccessLogRingBuffer}. It is invoked by the consumer
+ * thread of the ring buffer, one event at a time and in order, so it does not need to be thread-safe.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@FunctionalInterface
+public interface AccessLogHandler {
+
+	/**
+	 * Handle an access log event. The event must not be used after returning because it is reused by the
+	 * ring buffer.
+	 *
+	 * @param event
+	 * @param endOfBatch true if it is the last event available in the ring buffer (e.g. to flush the output)
+	 * @throws Exception
+	 */
+	void onEvent(AccessLogEvent event, boolean endOfBatch) throws Exception;
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free ring buffer of {@link AccessLogEvent} to decouple the access log from the request
+ * processing. The producers (e.g. {@link com.elevenpaths.almaraz.webfilters.LoggerWebFilter} in the event loop)
+ * only copy some values into a preallocated event, and a dedicated consumer thread passes the events to an
+ * {@link AccessLogHandler} that serializes and writes them in batches. Therefore, a stalled log output does not
+ * increase the request latency.
+ *
+ * The events are published with a claim/commit protocol:
+ *
+ * <code>
+ * long sequence = ringBuffer.claim();
+ * if (sequence &gt;= 0) {
+ *   try {
+ *     ringBuffer.get(sequence).setMessage("Request").copy(requestContext);
+ *   } finally {
+ *     ringBuffer.publish(sequence);
+ *   }
+ * }
+ * </code>
+ *
+ * Each slot has a sequence number to coordinate the producers and the consumer without locks (based on the
+ * bounded MPMC queue by Dmitry Vyukov). When the ring buffer is full, the {@link OverflowPolicy} decides if
+ * the event is dropped (and counted in {@link #getDroppedCount()}) or the producer is blocked until the
+ * consumer frees a slot.
+ *
+ * The idle consumer backs off progressively: it parks for {@link #PARK_NANOS} after the first empty poll, and
+ * doubles the time up to {@link #MAX_IDLE_PARK_NANOS} while the ring buffer stays empty, so an idle service
+ * does not wake up the consumer thousands of times per second. The producer that finds the ring buffer full
+ * unparks the consumer, so a burst is not delayed by the back-off.
+ *
+ * The consumer thread is started with {@link #start()} and stopped with {@link #close()}, which waits for the
+ * consumer to handle the pending events.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class AccessLogRingBuffer implements Closeable {
+
+	/**
+	 * Default capacity of the ring buffer.
+	 */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/**
+	 * Time (in nanoseconds) to park a thread while waiting (either a blocked producer or the idle consumer).
+	 */
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	/**
+	 * Maximum time (in nanoseconds) to park the idle consumer (with the progressive back-off).
+	 */
+	private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * Maximum time (in milliseconds) to wait for the consumer thread to handle the pending events when closing.
+	 */
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Preallocated events.
+	 */
+	private final AccessLogEvent[] events;
+
+	/**
+	 * Sequence of each slot. A slot is free for the producer claiming the position p if its sequence is p,
+	 * and it is ready for the consumer if its sequence is p + 1.
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * Mask to get the slot of a position (the capacity is a power of 2).
+	 */
+	private final int mask;
+
+	/**
+	 * Next position to be claimed by a producer.
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Next position to be consumed. Only updated by the consumer thread.
+	 */
+	private long head;
+
+	/**
+	 * Policy when the ring buffer is full.
+	 */
+	private final OverflowPolicy overflowPolicy;
+
+	/**
+	 * Handler of the consumed events.
+	 */
+	private final AccessLogHandler handler;
+
+	/**
+	 * Number of dropped events.
+	 */
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * Number of events that failed in the handler.
+	 */
+	private final LongAdder failed = new LongAdder();
+
+	/**
+	 * Consumer thread.
+	 */
+	private final Thread consumer;
+
+	/**
+	 * Flag to accept new events and keep the consumer running.
+	 */
+	private volatile boolean running;
+
+	/**
+	 * Constructor with default capacity and {@link OverflowPolicy#DROP} policy.
+	 *
+	 * @param handler
+	 */
+	public AccessLogRingBuffer(AccessLogHandler handler) {
+		this(handler, DEFAULT_CAPACITY, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param handler
+	 * @param capacity (rounded up to a power of 2)
+	 * @param overflowPolicy (by default, {@link OverflowPolicy#DROP})
+	 */
+	public AccessLogRingBuffer(AccessLogHandler handler, int capacity, OverflowPolicy overflowPolicy) {
+		if (handler == null) {
+			throw new IllegalArgumentException("Access log handler is required");
+		}
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid access log capacity: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.handler = handler;
+		this.overflowPolicy = (overflowPolicy == null) ? OverflowPolicy.DROP : overflowPolicy;
+		this.mask = size - 1;
+		this.events = new AccessLogEvent[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			events[i] = new AccessLogEvent();
+			sequences.set(i, i);
+		}
+		this.consumer = new Thread(this::consume, "almaraz-access-log");
+		this.consumer.setDaemon(true);
+	}
+
+	/**
+	 * Start the consumer thread.
+	 *
+	 * @return this ring buffer
+	 */
+	public synchronized AccessLogRingBuffer start() {
+		if (!running && consumer.getState() == Thread.State.NEW) {
+			running = true;
+			consumer.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Stop accepting events, and wait for the consumer thread to handle the pending events.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		LockSupport.unpark(consumer);
+		try {
+			consumer.join(CLOSE_TIMEOUT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Claim a position of the ring buffer to publish an event. The event of the position, obtained with
+	 * {@link #get(long)}, must be published with {@link #publish(long)}.
+	 *
+	 * If the ring buffer is full, it either drops the event or waits for a free slot depending on the
+	 * {@link OverflowPolicy}. If the ring buffer is not running, the event is dropped.
+	 *
+	 * @return claimed position, or -1 if the event is dropped
+	 */
+	public long claim() {
+		while (true) {
+			if (!running) {
+				dropped.increment();
+				return -1;
+			}
+			long position = tail.get();
+			long available = sequences.get((int) position & mask) - position;
+			if (available == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					return position;
+				}
+			} else if (available < 0) {
+				// Wake up the consumer if it is backing off
+				LockSupport.unpark(consumer);
+				if (overflowPolicy == OverflowPolicy.DROP) {
+					dropped.increment();
+					return -1;
+				}
+				LockSupport.parkNanos(PARK_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Get the event of a claimed position.
+	 *
+	 * @param position
+	 * @return event
+	 */
+	public AccessLogEvent get(long position) {
+		return events[(int) position & mask];
+	}
+
+	/**
+	 * Publish the event of a claimed position so that it is available to the consumer.
+	 *
+	 * @param position
+	 */
+	public void publish(long position) {
+		sequences.lazySet((int) position & mask, position + 1);
+	}
+
+	/**
+	 * Get the number of dropped events (because the ring buffer was full or not running).
+	 *
+	 * @return dropped events
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Get the number of events that failed in the {@link AccessLogHandler}.
+	 *
+	 * @return failed events
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	/**
+	 * Get the capacity of the ring buffer.
+	 *
+	 * @return capacity
+	 */
+	public int getCapacity() {
+		return events.length;
+	}
+
+	/**
+	 * Get the {@link OverflowPolicy}.
+	 *
+	 * @return overflow policy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Loop of the consumer thread. It handles the published events in batches, and parks the thread while
+	 * the ring buffer is empty (backing off progressively). Once closed, it handles the pending events before
+	 * finishing.
+	 */
+	private void consume() {
+		long idleParkNanos = 0;
+		while (true) {
+			boolean stopping = !running;
+			if (consumeBatch()) {
+				idleParkNanos = 0;
+			} else {
+				if (stopping) {
+					return;
+				}
+				idleParkNanos = (idleParkNanos == 0) ? PARK_NANOS : Math.min(idleParkNanos * 2, MAX_IDLE_PARK_NANOS);
+				LockSupport.parkNanos(this, idleParkNanos);
+			}
+		}
+	}
+
+	/**
+	 * Handle all the published events.
+	 *
+	 * @return true if any event was handled
+	 */
+	private boolean consumeBatch() {
+		long position = head;
+		if (!isPublished(position)) {
+			return false;
+		}
+		boolean endOfBatch;
+		do {
+			int slot = (int) position & mask;
+			AccessLogEvent event = events[slot];
+			endOfBatch = !isPublished(position + 1);
+			try {
+				handler.onEvent(event, endOfBatch);
+			} catch (Exception e) {
+				failed.increment();
+			}
+			event.clear();
+			sequences.lazySet(slot, position + events.length);
+			position++;
+		} while (!endOfBatch);
+		head = position;
+		return true;
+	}
+
+	/**
+	 * Check if the event of a position is published.
+	 *
+	 * @param position
+	 * @return true if published
+	 */
+	private boolean isPublished(long position) {
+		return sequences.get((int) position & mask) == position + 1;
+	}
+
+}
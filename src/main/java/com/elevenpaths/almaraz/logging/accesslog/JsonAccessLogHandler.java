@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+import com.elevenpaths.almaraz.context.SlotContextMap;
+
+/**
+ * {@link AccessLogHandler} that serializes the access log events as JSON lines and writes them to an
+ * {@link OutputStream} (e.g. the standard output) in batches: the output is only flushed at the end of each
+ * batch of events consumed from the {@link AccessLogRingBuffer}.
+ *
+ * Each line contains the time, the level (always INFO), the message and the fields of the event.
+ * The fields {@link SlotContextMap#STATUS} and {@link SlotContextMap#LATENCY} are written as numbers.
+ *
+ * <code>
+ * {"time":"2020-03-01T10:00:00.123Z","lvl":"INFO","msg":"Response","trans":"...","corr":"...","status":200,"latency":12}
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class JsonAccessLogHandler implements AccessLogHandler {
+
+	/**
+	 * Size of the output buffer.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Buffered output.
+	 */
+	private final Writer writer;
+
+	/**
+	 * Reusable buffer to serialize each event.
+	 */
+	private final StringBuilder line = new StringBuilder(512);
+
+	/**
+	 * Constructor with the standard output.
+	 */
+	public JsonAccessLogHandler() {
+		this(System.out);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param out
+	 */
+	public JsonAccessLogHandler(OutputStream out) {
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+
+	@Override
+	public void onEvent(AccessLogEvent event, boolean endOfBatch) throws IOException {
+		line.setLength(0);
+		serialize(event, line);
+		writer.append(line);
+		if (endOfBatch) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Serialize an event as a JSON line.
+	 *
+	 * @param event
+	 * @param out
+	 */
+	protected void serialize(AccessLogEvent event, StringBuilder out) {
+		out.append("{\"time\":\"");
+		DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochMilli(event.getTimestamp()), out);
+		out.append("\",\"lvl\":\"INFO\",\"msg\":");
+		appendString(out, event.getMessage());
+		for (int slot = 0; slot < SlotContextMap.SLOT_COUNT; slot++) {
+			String value = event.get(slot);
+			if (value == null) {
+				continue;
+			}
+			out.append(",\"").append(SlotContextMap.keyOf(slot)).append("\":");
+			if ((slot == SlotContextMap.STATUS || slot == SlotContextMap.LATENCY) && isNumber(value)) {
+				out.append(value);
+			} else {
+				appendString(out, value);
+			}
+		}
+		out.append("}\n");
+	}
+
+	/**
+	 * Append a JSON string, escaping the special characters.
+	 *
+	 * @param out
+	 * @param value
+	 */
+	static void appendString(StringBuilder out, String value) {
+		if (value == null) {
+			out.append("null");
+			return;
+		}
+		out.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.append("\\u00");
+					out.append(Character.forDigit(c >> 4, 16));
+					out.append(Character.forDigit(c & 0xF, 16));
+				} else {
+					out.append(c);
+				}
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Check if a value is an integer number.
+	 *
+	 * @param value
+	 * @return true if the value only contains digits (with an optional minus sign)
+	 */
+	private static boolean isNumber(String value) {
+		int start = (value.startsWith("-")) ? 1 : 0;
+		if (value.length() == start) {
+			return false;
+		}
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+/**
+ * Policy of an {@link AccessLogRingBuffer} when it is full.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Drop the event (and count it as dropped). The producer is never blocked.
+	 */
+	DROP,
+
+	/**
+	 * Block the producer until there is a free slot.
+	 */
+	BLOCK
+
+}
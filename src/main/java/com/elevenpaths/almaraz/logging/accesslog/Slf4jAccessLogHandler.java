@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.SlotContextMap;
+
+/**
+ * {@link AccessLogHandler} that writes the access log events with a SLF4J {@link Logger}, with the fields as
+ * MDC properties. It generates the same log entries as {@link com.elevenpaths.almaraz.webfilters.LoggerWebFilter}
+ * in synchronous mode, but written by the consumer thread of the {@link AccessLogRingBuffer}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class Slf4jAccessLogHandler implements AccessLogHandler {
+
+	/**
+	 * Logger.
+	 */
+	private final Logger logger;
+
+	/**
+	 * Constructor with the logger of {@link com.elevenpaths.almaraz.webfilters.LoggerWebFilter}.
+	 */
+	public Slf4jAccessLogHandler() {
+		this(LoggerFactory.getLogger("com.elevenpaths.almaraz.webfilters.LoggerWebFilter"));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param logger
+	 */
+	public Slf4jAccessLogHandler(Logger logger) {
+		this.logger = logger;
+	}
+
+	@Override
+	public void onEvent(AccessLogEvent event, boolean endOfBatch) {
+		if (!logger.isInfoEnabled()) {
+			return;
+		}
+		try {
+			for (int slot = 0; slot < SlotContextMap.SLOT_COUNT; slot++) {
+				String value = event.get(slot);
+				if (value != null) {
+					MDC.put(SlotContextMap.keyOf(slot), value);
+				}
+			}
+			logger.info(event.getMessage());
+		} finally {
+			MDC.clear();
+		}
+	}
+
+}
@@ -17,6 +17,8 @@ import org.springframework.web.reactive.BindingContext;
 import org.springframework.web.reactive.result.method.HandlerMethodArgumentResolver;
 import org.springframework.web.server.ServerWebExchange;
 
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestTiming;
 import com.elevenpaths.almaraz.exceptions.InvalidRequestException;
 import com.elevenpaths.almaraz.exceptions.UnsupportedMediaTypeException;
 import com.elevenpaths.almaraz.validation.JsonSchemaValidator;
@@ -61,6 +63,9 @@ import reactor.core.publisher.Mono;
  * }
  * </pre>
  *
+ * If the {@link RequestContext} has a {@link RequestTiming}, the time to read and validate the body is recorded
+ * as {@link RequestTiming.Phase#VALIDATION}.
+ *
  * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
  *
  */
@@ -98,6 +103,25 @@ public class ValidRequestBodyResolver implements HandlerMethodArgumentResolver {
 	@Override
 	public Mono<Object> resolveArgument(MethodParameter parameter, BindingContext bindingContext,
 			ServerWebExchange exchange) {
+		return Mono.subscriberContext().flatMap(context -> {
+			RequestTiming timing = RequestContext.from(context).getTiming();
+			if (timing == null) {
+				return resolve(parameter, exchange);
+			}
+			long start = System.nanoTime();
+			return Mono.defer(() -> resolve(parameter, exchange))
+					.doFinally(signal -> timing.addValidation(System.nanoTime() - start));
+		});
+	}
+
+	/**
+	 * Resolve the argument: read the body (or the query parameters), validate it and bind it.
+	 *
+	 * @param parameter
+	 * @param exchange
+	 * @return resolved argument
+	 */
+	protected Mono<Object> resolve(MethodParameter parameter, ServerWebExchange exchange) {
 		String schemaName = parameter.getParameterAnnotation(ValidRequestBody.class).value();
 		boolean multi = parameter.getParameterAnnotation(ValidRequestBody.class).multi();
 		boolean query = parameter.getParameterAnnotation(ValidRequestBody.class).query();
@@ -111,7 +135,7 @@ public class ValidRequestBodyResolver implements HandlerMethodArgumentResolver {
 		} else if (MediaType.APPLICATION_FORM_URLENCODED.includes(contentType)) {
 			return resolveUrlEncodedBody(exchange, schemaName, valueType, multi);
 		} else {
-			throw new UnsupportedMediaTypeException();
+			throw UnsupportedMediaTypeException.instance();
 		}
 	}
 
@@ -3,7 +3,6 @@
  */
 
 package com.elevenpaths.almaraz.webclientfilters;
-import java.util.UUID;
 
 import org.slf4j.MDC;
 import org.springframework.web.reactive.function.client.ClientRequest;
@@ -12,6 +11,9 @@ import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.ExchangeFunction;
 
 import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.ids.IdGenerator;
+import com.elevenpaths.almaraz.ids.RandomUuidIdGenerator;
+import com.elevenpaths.almaraz.logging.LazyMDC;
 import com.elevenpaths.almaraz.logging.ReactiveLogger;
 
 import lombok.extern.slf4j.Slf4j;
@@ -26,10 +28,31 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class LoggerWebClientFilter implements ExchangeFilterFunction {
 
+	/**
+	 * Generator of transaction IDs for the client requests.
+	 */
+	private final IdGenerator idGenerator;
+
+	/**
+	 * Default constructor. It generates random UUIDs as transaction IDs.
+	 */
+	public LoggerWebClientFilter() {
+		this(new RandomUuidIdGenerator());
+	}
+
+	/**
+	 * Constructor with a custom generator of transaction IDs.
+	 *
+	 * @param idGenerator
+	 */
+	public LoggerWebClientFilter(IdGenerator idGenerator) {
+		this.idGenerator = idGenerator;
+	}
+
 	@Override
 	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
 		long start = System.currentTimeMillis();
-		String transactionId = UUID.randomUUID().toString();
+		String transactionId = idGenerator.generateId();
 		return ReactiveLogger.log(() -> logRequest(request, transactionId))
 				.then(next.exchange(request))
 				.doOnEach(ReactiveLogger.logOnNext((response) -> logResponse(response, start, transactionId)));
@@ -42,8 +65,11 @@ public class LoggerWebClientFilter implements ExchangeFilterFunction {
 	 * @param transactionId
 	 */
 	protected void logRequest(ClientRequest request, String transactionId) {
-		MDC.put(ContextField.METHOD, request.method().name());
-		MDC.put(ContextField.URL, request.url().toString());
+		if (!log.isInfoEnabled()) {
+			return;
+		}
+		LazyMDC.put(ContextField.METHOD, () -> request.method().name());
+		LazyMDC.put(ContextField.URL, () -> request.url().toString());
 		MDC.put(ContextField.TRANSACTION_ID, transactionId);
 		log.info("Client request");
 	}
@@ -56,8 +82,12 @@ public class LoggerWebClientFilter implements ExchangeFilterFunction {
 	 * @param transactionId
 	 */
 	protected void logResponse(ClientResponse response, long start, String transactionId) {
-		MDC.put(ContextField.STATUS, Integer.toString(response.rawStatusCode()));
-		MDC.put(ContextField.LATENCY, Long.toString(System.currentTimeMillis() - start));
+		if (!log.isInfoEnabled()) {
+			return;
+		}
+		long latency = System.currentTimeMillis() - start;
+		LazyMDC.put(ContextField.STATUS, () -> Integer.toString(response.rawStatusCode()));
+		LazyMDC.put(ContextField.LATENCY, () -> Long.toString(latency));
 		MDC.put(ContextField.TRANSACTION_ID, transactionId);
 		log.info("Client response");
 	}
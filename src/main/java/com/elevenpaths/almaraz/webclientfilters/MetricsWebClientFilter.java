@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webclientfilters;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * {@link ExchangeFilterFunction} to record Micrometer metrics of the requests to each downstream service:
+ *
+ * <ul>
+ * <li>A {@link Timer} (count, total time and percentile histogram of the time to receive the response) tagged
+ * with host, uri (the URI template passed to the {@link WebClient}, e.g. "/users/{id}", or none), method, status
+ * (or IO_ERROR if the request failed, or CANCELLED if it was cancelled before the response, e.g. by a timeout of
+ * the caller) and outcome (SUCCESS, REDIRECTION, CLIENT_ERROR, SERVER_ERROR, IO_ERROR or CANCELLED) to calculate
+ * the error rates.</li>
+ * <li>A {@link Gauge} with the requests in flight to each host.</li>
+ * </ul>
+ *
+ * The timers and in-flight counters are cached, so recording a request only requires a map lookup.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MetricsWebClientFilter implements ExchangeFilterFunction {
+
+	/**
+	 * Default name of the metric. The gauge of requests in flight is named with the suffix ".active".
+	 * It is prefixed with "almaraz" so that it does not collide with the metric of Spring Boot actuator
+	 * (http.client.requests), which has other tag keys.
+	 */
+	public static final String DEFAULT_METRIC_NAME = "almaraz.http.client.requests";
+
+	/**
+	 * Name of the request attribute with the URI template (set by the {@link WebClient}).
+	 */
+	public static final String URI_TEMPLATE_ATTRIBUTE = WebClient.class.getName() + ".uriTemplate";
+
+	/**
+	 * Tag value when there is no host or URI template.
+	 */
+	public static final String NONE = "none";
+
+	/**
+	 * Status tag value when the request failed without response.
+	 */
+	public static final String IO_ERROR = "IO_ERROR";
+
+	/**
+	 * Status tag value when the request was cancelled before the response (e.g. by a timeout of the caller).
+	 */
+	public static final String CANCELLED = "CANCELLED";
+
+	/**
+	 * Status code recorded when the request was cancelled before the response.
+	 */
+	private static final int CANCELLED_STATUS = -1;
+
+	/**
+	 * Registry of meters.
+	 */
+	private final MeterRegistry registry;
+
+	/**
+	 * Name of the metric.
+	 */
+	private final String metricName;
+
+	/**
+	 * Timers cached by tags.
+	 */
+	private final ConcurrentMap<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+
+	/**
+	 * Requests in flight by host.
+	 */
+	private final ConcurrentMap<String, LongAdder> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Publish a percentile histogram with the timer.
+	 */
+	private boolean percentileHistogram = true;
+
+	/**
+	 * Constructor with the default metric name.
+	 *
+	 * @param registry
+	 */
+	public MetricsWebClientFilter(MeterRegistry registry) {
+		this(registry, DEFAULT_METRIC_NAME);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param registry
+	 * @param metricName
+	 */
+	public MetricsWebClientFilter(MeterRegistry registry, String metricName) {
+		this.registry = registry;
+		this.metricName = metricName;
+	}
+
+	/**
+	 * Enable or disable the percentile histogram of the timers (enabled by default).
+	 *
+	 * @param percentileHistogram
+	 * @return {@link MetricsWebClientFilter}
+	 */
+	public MetricsWebClientFilter setPercentileHistogram(boolean percentileHistogram) {
+		this.percentileHistogram = percentileHistogram;
+		return this;
+	}
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return Mono.defer(() -> {
+			String host = getHost(request);
+			LongAdder active = getInFlight(host);
+			long start = System.nanoTime();
+			active.increment();
+			int[] status = new int[1];
+			return next.exchange(request)
+					.doOnNext(response -> status[0] = response.rawStatusCode())
+					.doFinally(signal -> {
+						active.decrement();
+						boolean cancelled = signal == SignalType.CANCEL && status[0] == 0;
+						record(request, host, cancelled ? CANCELLED_STATUS : status[0], System.nanoTime() - start);
+					});
+		});
+	}
+
+	/**
+	 * Get the number of requests in flight to a host.
+	 *
+	 * @param host
+	 * @return requests in flight
+	 */
+	public long getInFlightCount(String host) {
+		LongAdder active = inFlight.get(host);
+		return (active == null) ? 0 : active.sum();
+	}
+
+	/**
+	 * Record the request in the timer of its tags.
+	 *
+	 * @param request
+	 * @param host
+	 * @param status status code (0 if the request failed without response, -1 if it was cancelled)
+	 * @param durationNanos
+	 */
+	protected void record(ClientRequest request, String host, int status, long durationNanos) {
+		MeterKey key = new MeterKey(host, getUri(request), request.method().name(), status);
+		Timer timer = timers.get(key);
+		if (timer == null) {
+			timer = timers.computeIfAbsent(key, this::registerTimer);
+		}
+		timer.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Register the timer of some tags.
+	 *
+	 * @param key
+	 * @return {@link Timer}
+	 */
+	protected Timer registerTimer(MeterKey key) {
+		return Timer.builder(metricName)
+				.tags(Tags.of(
+						"host", key.host,
+						"uri", key.uri,
+						"method", key.method,
+						"status", getStatus(key.status),
+						"outcome", getOutcome(key.status)))
+				.publishPercentileHistogram(percentileHistogram)
+				.register(registry);
+	}
+
+	/**
+	 * Get the counter of requests in flight to a host, registering its gauge the first time.
+	 *
+	 * @param host
+	 * @return {@link LongAdder}
+	 */
+	private LongAdder getInFlight(String host) {
+		LongAdder active = inFlight.get(host);
+		if (active == null) {
+			active = inFlight.computeIfAbsent(host, h -> {
+				LongAdder adder = new LongAdder();
+				Gauge.builder(metricName + ".active", adder, LongAdder::sum)
+						.tag("host", h)
+						.register(registry);
+				return adder;
+			});
+		}
+		return active;
+	}
+
+	/**
+	 * Get the host of the request.
+	 *
+	 * @param request
+	 * @return host or {@link #NONE}
+	 */
+	protected String getHost(ClientRequest request) {
+		String host = request.url().getHost();
+		return (host == null) ? NONE : host;
+	}
+
+	/**
+	 * Get the URI template of the request. The raw path is not used to avoid inflating the cardinality with
+	 * path variables.
+	 *
+	 * @param request
+	 * @return URI template or {@link #NONE}
+	 */
+	protected String getUri(ClientRequest request) {
+		return request.attribute(URI_TEMPLATE_ATTRIBUTE)
+				.map(Object::toString)
+				.orElse(NONE);
+	}
+
+	/**
+	 * Get the status tag of a status code.
+	 *
+	 * @param status
+	 * @return status tag
+	 */
+	protected static String getStatus(int status) {
+		if (status == 0) {
+			return IO_ERROR;
+		}
+		if (status == CANCELLED_STATUS) {
+			return CANCELLED;
+		}
+		return Integer.toString(status);
+	}
+
+	/**
+	 * Get the outcome of a status code.
+	 *
+	 * @param status
+	 * @return outcome
+	 */
+	protected static String getOutcome(int status) {
+		if (status == 0) {
+			return IO_ERROR;
+		}
+		if (status == CANCELLED_STATUS) {
+			return CANCELLED;
+		}
+		if (status < 300) {
+			return "SUCCESS";
+		}
+		if (status < 400) {
+			return "REDIRECTION";
+		}
+		if (status < 500) {
+			return "CLIENT_ERROR";
+		}
+		return "SERVER_ERROR";
+	}
+
+	/**
+	 * Tags of a timer.
+	 */
+	protected static final class MeterKey {
+
+		private final String host;
+
+		private final String uri;
+
+		private final String method;
+
+		private final int status;
+
+		private final int hash;
+
+		MeterKey(String host, String uri, String method, int status) {
+			this.host = host;
+			this.uri = uri;
+			this.method = method;
+			this.status = status;
+			int h = host.hashCode();
+			h = 31 * h + uri.hashCode();
+			h = 31 * h + method.hashCode();
+			this.hash = 31 * h + status;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof MeterKey)) {
+				return false;
+			}
+			MeterKey other = (MeterKey) obj;
+			return hash == other.hash
+					&& status == other.status
+					&& host.equals(other.host)
+					&& uri.equals(other.uri)
+					&& method.equals(other.method);
+		}
+
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.elevenpaths.almaraz.context.InFlightRegistry;
+import com.elevenpaths.almaraz.context.InFlightRequest;
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestTiming;
+import com.elevenpaths.almaraz.exceptions.NotFoundException;
+import com.elevenpaths.almaraz.logging.MDCContextPropagation;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.context.Context;
+
+/**
+ * Reactive {@link WebFilter} that fuses {@link RequestContextWebFilter}, {@link LoggerWebFilter},
+ * {@link MetricsWebFilter} (optional), {@link ErrorWebFilter}, {@link CompleteLocationHeaderWebFilter} and
+ * {@link BasePathWebFilter} in a single pass.
+ *
+ * The chained filters mutate the exchange twice, register three beforeCommit hooks, and wrap the handler with
+ * about a dozen reactive operators. This filter creates the {@link RequestContext} and mutates the exchange
+ * (request with the context path and timed response) once, registers a single beforeCommit hook (correlator,
+ * location and response log), and only wraps the handler with defer, onErrorResume and doFinally (plus the
+ * subscriber context). As in the chained filters, the request log and the registration of the request in flight
+ * happen on subscription, so that a response that is never subscribed or is subscribed again is not logged
+ * nor registered twice. The work of each step is delegated to the protected methods of the filter instances,
+ * so their customizations (e.g. a custom {@link RequestContext}) are preserved.
+ *
+ * The logger, location and base path steps are optional (null filter). It replaces the chained filters, so
+ * they must not be registered at the same time.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class AlmarazWebFilter implements WebFilter {
+
+	/**
+	 * Filter to build the {@link RequestContext} and register the requests in flight.
+	 */
+	private final RequestContextWebFilter requestContextWebFilter;
+
+	/**
+	 * Filter to log the request and response (or null).
+	 */
+	private final LoggerWebFilter loggerWebFilter;
+
+	/**
+	 * Filter to generate the error responses.
+	 */
+	private final ErrorWebFilter errorWebFilter;
+
+	/**
+	 * Filter to complete the location header (or null).
+	 */
+	private final CompleteLocationHeaderWebFilter completeLocationHeaderWebFilter;
+
+	/**
+	 * Filter to set up the context path (or null).
+	 */
+	private final BasePathWebFilter basePathWebFilter;
+
+	/**
+	 * Filter to record the metrics (or null).
+	 */
+	private MetricsWebFilter metricsWebFilter;
+
+	/**
+	 * Constructor with the default filters.
+	 *
+	 * @param basePath (or null)
+	 */
+	public AlmarazWebFilter(String basePath) {
+		this(new RequestContextWebFilter(), new LoggerWebFilter(), new ErrorWebFilter(),
+				new CompleteLocationHeaderWebFilter(), (basePath == null) ? null : new BasePathWebFilter(basePath));
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param requestContextWebFilter (a default one if null)
+	 * @param loggerWebFilter (or null to disable the log)
+	 * @param errorWebFilter (a default one if null)
+	 * @param completeLocationHeaderWebFilter (or null to disable the location completion)
+	 * @param basePathWebFilter (or null to disable the base path)
+	 */
+	public AlmarazWebFilter(RequestContextWebFilter requestContextWebFilter, LoggerWebFilter loggerWebFilter,
+			ErrorWebFilter errorWebFilter, CompleteLocationHeaderWebFilter completeLocationHeaderWebFilter,
+			BasePathWebFilter basePathWebFilter) {
+		this.requestContextWebFilter = (requestContextWebFilter == null)
+				? new RequestContextWebFilter() : requestContextWebFilter;
+		this.loggerWebFilter = loggerWebFilter;
+		this.errorWebFilter = (errorWebFilter == null) ? new ErrorWebFilter() : errorWebFilter;
+		this.completeLocationHeaderWebFilter = completeLocationHeaderWebFilter;
+		this.basePathWebFilter = basePathWebFilter;
+	}
+
+	/**
+	 * Set the {@link MetricsWebFilter} to record the metrics of the requests (after the error response).
+	 *
+	 * @param metricsWebFilter (or null)
+	 * @return this filter
+	 */
+	public AlmarazWebFilter setMetricsWebFilter(MetricsWebFilter metricsWebFilter) {
+		this.metricsWebFilter = metricsWebFilter;
+		return this;
+	}
+
+	/**
+	 * Implementation of the web filter that runs all the steps in a single reactive assembly.
+	 */
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (LightweightWebFilter.isLightweight(exchange)) {
+			return chain.filter(mutateLightweightExchange(exchange));
+		}
+		long start = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
+		RequestContext requestContext = requestContextWebFilter.buildRequestContext(exchange.getRequest());
+		RequestTiming timing = (loggerWebFilter == null || !loggerWebFilter.isTimed()) ? null : new RequestTiming();
+		ServerHttpRequest request = (basePathWebFilter == null)
+				? exchange.getRequest() : basePathWebFilter.mutateRequest(exchange);
+		ServerWebExchange filteredExchange = mutateExchange(exchange, request, timing);
+		exchange.getResponse().beforeCommit(() -> {
+			beforeCommit(exchange, requestContext, start);
+			return Mono.empty();
+		});
+		Mono<Void> result = Mono.defer(() -> {
+			InFlightRegistry inFlightRegistry = requestContextWebFilter.getInFlightRegistry();
+			InFlightRequest inFlightRequest = (inFlightRegistry == null)
+					? null : requestContextWebFilter.register(exchange, requestContext);
+			if (loggerWebFilter != null) {
+				loggerWebFilter.onRequest(exchange, requestContext, timing);
+			}
+			Mono<Void> handled;
+			if (request == null) {
+				handled = handleError(filteredExchange, timing, NotFoundException.instance());
+			} else {
+				handled = chain.filter(filteredExchange)
+						.onErrorResume(t -> handleError(filteredExchange, timing, t));
+			}
+			return handled.doFinally(signal -> {
+				if (loggerWebFilter != null) {
+					loggerWebFilter.onComplete(exchange, requestContext, start);
+				}
+				if (inFlightRequest != null) {
+					inFlightRegistry.unregister(inFlightRequest);
+				}
+				if (metricsWebFilter != null) {
+					recordMetrics(exchange, requestContext, signal, System.nanoTime() - startNanos);
+				}
+			});
+		});
+		return MDCContextPropagation.bindOnSubscribe(result)
+				.subscriberContext(Context.of(RequestContext.class, requestContext));
+	}
+
+	/**
+	 * Set up the context path of a lightweight request if it matches a base path (as {@link BasePathWebFilter}
+	 * does).
+	 *
+	 * @param exchange
+	 * @return mutated exchange (or the same exchange if there is nothing to mutate)
+	 */
+	private ServerWebExchange mutateLightweightExchange(ServerWebExchange exchange) {
+		if (basePathWebFilter == null) {
+			return exchange;
+		}
+		ServerHttpRequest request = basePathWebFilter.mutateRequest(exchange);
+		if (request == null || request == exchange.getRequest()) {
+			return exchange;
+		}
+		return exchange.mutate().request(request).build();
+	}
+
+	/**
+	 * Mutate the exchange once with the request (with the context path) and the timed response.
+	 *
+	 * @param exchange
+	 * @param request (or null if the request does not match the base path)
+	 * @param timing (or null)
+	 * @return mutated exchange (or the same exchange if there is nothing to mutate)
+	 */
+	private ServerWebExchange mutateExchange(ServerWebExchange exchange, ServerHttpRequest request,
+			RequestTiming timing) {
+		boolean mutateRequest = request != null && request != exchange.getRequest();
+		if (!mutateRequest && timing == null) {
+			return exchange;
+		}
+		ServerWebExchange.Builder builder = exchange.mutate();
+		if (mutateRequest) {
+			builder.request(request);
+		}
+		if (timing != null) {
+			ServerHttpResponse response = new LoggerWebFilter.TimedResponse(exchange, timing);
+			builder.response(response);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Single hook before committing the response: write the correlator, complete the location header, and log
+	 * the response.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param start
+	 */
+	protected void beforeCommit(ServerWebExchange exchange, RequestContext requestContext, long start) {
+		requestContextWebFilter.writeCorrelator(exchange, requestContext);
+		if (completeLocationHeaderWebFilter != null) {
+			completeLocationHeaderWebFilter.completeLocation(exchange);
+		}
+		if (loggerWebFilter != null) {
+			loggerWebFilter.onResponse(exchange, requestContext, start);
+		}
+	}
+
+	/**
+	 * Generate the error response.
+	 *
+	 * @param exchange
+	 * @param timing (or null)
+	 * @param t
+	 * @return Mono<Void>
+	 */
+	private Mono<Void> handleError(ServerWebExchange exchange, RequestTiming timing, Throwable t) {
+		if (timing != null) {
+			timing.mark(RequestTiming.Phase.HANDLER).mark(RequestTiming.Phase.ERROR);
+		}
+		return errorWebFilter.buildErrorResponse(exchange, t);
+	}
+
+	/**
+	 * Record the metrics of the request. It is kept apart from {@link #filter(ServerWebExchange, WebFilterChain)}
+	 * so that Micrometer (an optional dependency) is only required if there is a {@link MetricsWebFilter}.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param signal
+	 * @param durationNanos
+	 */
+	private void recordMetrics(ServerWebExchange exchange, RequestContext requestContext, SignalType signal,
+			long durationNanos) {
+		metricsWebFilter.record(exchange, requestContext, signal, durationNanos);
+	}
+
+}
@@ -4,6 +4,9 @@
 
 package com.elevenpaths.almaraz.webfilters;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
@@ -18,6 +21,12 @@ import reactor.core.publisher.Mono;
  * The goal is to make it configurable and avoid repeating the base path in the
  * controller.
  *
+ * Several base paths (mount points) can be configured for the same handlers (e.g. /api/v1 and /api/v2). They
+ * are precompiled (normalized and sorted from the longest to the shortest), so matching a request is a
+ * character comparison of the path without allocations, and the request is only mutated if it matches. A base
+ * path matches a path if it is equal to the path or it is followed by a '/' in the path (e.g. /api matches
+ * /api/users, but not /apis). An empty base path (or "/") matches any path without mutating the request.
+ *
  * Note that configuration property <b>server.servlet.context-path</b> is not actually working.
  *
  * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
@@ -26,33 +35,116 @@ import reactor.core.publisher.Mono;
 public class BasePathWebFilter implements WebFilter {
 
 	/**
-	 * Base path.
+	 * Pre-built response for the requests that do not match any base path. The exception is obtained on
+	 * subscription, so that it follows the stackless mode (see {@link NotFoundException#instance()}).
 	 */
-	private final String basePath;
+	private static final Mono<Void> NOT_FOUND = Mono.defer(() -> Mono.error(NotFoundException.instance()));
 
 	/**
-	 * Constructor.
+	 * Base paths, without trailing '/', from the longest to the shortest.
+	 */
+	private final String[] basePaths;
+
+	/**
+	 * Constructor with a single base path (kept for binary compatibility).
 	 *
-	 * @param basePath
+	 * @param basePath (null or empty for the root path)
 	 */
 	public BasePathWebFilter(String basePath) {
-		this.basePath = basePath;
+		this(new String[] { basePath });
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param basePaths (null or empty for the root path)
+	 */
+	public BasePathWebFilter(String... basePaths) {
+		this.basePaths = compile(basePaths);
+	}
+
+	/**
+	 * Normalize the base paths (removing the trailing '/'), and sort them from the longest to the shortest,
+	 * so that the first match is the longest one.
+	 *
+	 * @param basePaths
+	 * @return precompiled base paths
+	 */
+	private static String[] compile(String[] basePaths) {
+		if (basePaths == null || basePaths.length == 0) {
+			return new String[] { "" };
+		}
+		String[] compiled = new String[basePaths.length];
+		for (int i = 0; i < basePaths.length; i++) {
+			String basePath = (basePaths[i] == null) ? "" : basePaths[i];
+			if (!basePath.isEmpty() && !basePath.startsWith("/")) {
+				throw new IllegalArgumentException("Invalid base path: " + basePath);
+			}
+			int end = basePath.length();
+			while (end > 0 && basePath.charAt(end - 1) == '/') {
+				end--;
+			}
+			compiled[i] = basePath.substring(0, end);
+		}
+		Arrays.sort(compiled, Comparator.comparingInt(String::length).reversed());
+		return compiled;
 	}
 
 	/**
 	 * Implementation of the web filter that modifies the request to set up the context path
-	 * with the {@link #basePath}.
-	 * Note that if the request URI does not start with the {@link #basePath}, then it throws
-	 * a {@link NotFoundException}.
+	 * with the matching base path.
+	 * Note that if the request URI does not start with any base path, then it returns
+	 * a {@link NotFoundException}. The lightweight requests (see {@link LightweightWebFilter}) also get the
+	 * context path if they match a base path (e.g. static resources under the base path), but they are passed
+	 * through if they do not match any (e.g. liveness probes outside the base path).
 	 */
 	@Override
 	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
-		try {
-			ServerHttpRequest request = exchange.getRequest().mutate().contextPath(basePath).build();
-			return chain.filter(exchange.mutate().request(request).build());
-		} catch (IllegalArgumentException e) {
-			return Mono.error(new NotFoundException());
+		ServerHttpRequest request = mutateRequest(exchange);
+		if (request == null) {
+			return LightweightWebFilter.isLightweight(exchange) ? chain.filter(exchange) : NOT_FOUND;
+		}
+		if (request == exchange.getRequest()) {
+			return chain.filter(exchange);
+		}
+		return chain.filter(exchange.mutate().request(request).build());
+	}
+
+	/**
+	 * Set up the context path of the request with the matching base path.
+	 *
+	 * @param exchange
+	 * @return request with the context path, the same request if the base path is the root path, or null if
+	 *         the request URI does not start with any base path
+	 */
+	protected ServerHttpRequest mutateRequest(ServerWebExchange exchange) {
+		ServerHttpRequest request = exchange.getRequest();
+		String basePath = matchBasePath(request.getPath().value());
+		if (basePath == null) {
+			return null;
+		}
+		if (basePath.isEmpty()) {
+			return request;
+		}
+		return request.mutate().contextPath(basePath).build();
+	}
+
+	/**
+	 * Get the longest base path matching a path.
+	 *
+	 * @param path
+	 * @return base path (empty for the root path), or null if there is no match
+	 */
+	protected String matchBasePath(String path) {
+		int length = path.length();
+		for (String basePath : basePaths) {
+			int prefixLength = basePath.length();
+			if (prefixLength <= length && path.startsWith(basePath)
+					&& (prefixLength == length || path.charAt(prefixLength) == '/')) {
+				return basePath;
+			}
 		}
+		return null;
 	}
 
 }
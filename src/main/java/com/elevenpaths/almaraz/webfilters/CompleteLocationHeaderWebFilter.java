@@ -32,16 +32,29 @@ public class CompleteLocationHeaderWebFilter implements WebFilter {
 	 */
 	@Override
 	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (LightweightWebFilter.isLightweight(exchange)) {
+			return chain.filter(exchange);
+		}
 		exchange.getResponse().beforeCommit(() -> {
-			HttpHeaders httpHeaders = exchange.getResponse().getHeaders();
-			URI uriLocation = httpHeaders.getLocation();
-			if (uriLocation != null && uriLocation.getPath() != null && !uriLocation.getPath().startsWith("/")) {
-				URI newUriLocation = new UriTemplate("{requestUri}/{locationUri}")
-						.expand(exchange.getRequest().getURI(), httpHeaders.getLocation());
-				httpHeaders.setLocation(newUriLocation);
-			}
+			completeLocation(exchange);
 			return Mono.empty();
 		});
 		return chain.filter(exchange);
 	}
+
+	/**
+	 * Complete the location header of the response with the request URI if it is a relative path.
+	 *
+	 * @param exchange
+	 */
+	protected void completeLocation(ServerWebExchange exchange) {
+		HttpHeaders httpHeaders = exchange.getResponse().getHeaders();
+		URI uriLocation = httpHeaders.getLocation();
+		if (uriLocation != null && uriLocation.getPath() != null && !uriLocation.getPath().startsWith("/")) {
+			URI newUriLocation = new UriTemplate("{requestUri}/{locationUri}")
+					.expand(exchange.getRequest().getURI(), httpHeaders.getLocation());
+			httpHeaders.setLocation(newUriLocation);
+		}
+	}
+
 }
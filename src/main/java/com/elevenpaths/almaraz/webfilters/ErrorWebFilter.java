@@ -4,8 +4,15 @@
 
 package com.elevenpaths.almaraz.webfilters;
 
-import org.slf4j.MDC;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -18,10 +25,15 @@ import org.springframework.web.server.WebFilterChain;
 
 import com.elevenpaths.almaraz.context.ContextField;
 import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestTiming;
 import com.elevenpaths.almaraz.exceptions.ResponseException;
 import com.elevenpaths.almaraz.exceptions.ServerException;
+import com.elevenpaths.almaraz.logging.ErrorLogDeduplicator;
+import com.elevenpaths.almaraz.logging.LazyMDC;
 import com.elevenpaths.almaraz.logging.ReactiveLogger;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
@@ -38,17 +50,66 @@ import reactor.core.publisher.Mono;
  * so that it is possible to log not only the exception but also the response status code. The
  * error handler is responsible for converting an exception into a HTTP response.
  *
+ * If the {@link RequestContext} has a {@link RequestTiming}, the start of the error rendering is recorded as
+ * {@link RequestTiming.Phase#ERROR} (and it ends the {@link RequestTiming.Phase#HANDLER} phase).
+ *
  * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
  *
  */
 @Slf4j
 public class ErrorWebFilter implements WebFilter {
 
+	/**
+	 * Name of the exchange attribute with the {@link ResponseException} rendered as the error response
+	 * (e.g. to tag metrics with the error identifier).
+	 */
+	public static final String ERROR_ATTRIBUTE = ErrorWebFilter.class.getName() + ".error";
+
+	/**
+	 * Maximum number of error response bodies in the cache.
+	 */
+	static final int MAX_CACHED_BODIES = 256;
+
+	/**
+	 * Markers of the state of a lazily encoded error response body: emitted to the response, or cancelled
+	 * before being emitted (the buffer is released).
+	 */
+	private static final Object DELIVERED = new Object();
+	private static final Object CANCELLED = new Object();
+
 	/**
 	 * Marshaller of error responses into JSON.
 	 */
 	private final ObjectMapper objectMapper;
 
+	/**
+	 * Cache of encoded error response bodies without details, by error identifier and reason. It evicts the
+	 * least recently used body, so that dynamic reasons (e.g. validation errors) do not displace the fixed ones
+	 * for good. It must be accessed with its lock.
+	 */
+	private final Map<BodyKey, byte[]> bodyCache = new LinkedHashMap<BodyKey, byte[]>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<BodyKey, byte[]> eldest) {
+			return size() > MAX_CACHED_BODIES;
+		}
+
+	};
+
+	/**
+	 * Deduplication of the error log entries (or null to log every error).
+	 */
+	private final ErrorLogDeduplicator errorLogDeduplicator;
+
+	/**
+	 * Render the error responses with {@link #marshalErrorResponseBody(ResponseException)} and
+	 * {@link #renderErrorResponse(ServerWebExchange, HttpStatus, byte[], MultiValueMap)} because a subclass
+	 * overrides any of them.
+	 */
+	private final boolean byteArrayRendering;
+
 	/**
 	 * Constructor.
 	 */
@@ -62,7 +123,40 @@ public class ErrorWebFilter implements WebFilter {
 	 * @param objectMapper
 	 */
 	public ErrorWebFilter(ObjectMapper objectMapper) {
+		this(objectMapper, null);
+	}
+
+	/**
+	 * Constructor with deduplication of the error log entries.
+	 *
+	 * @param objectMapper
+	 * @param errorLogDeduplicator
+	 */
+	public ErrorWebFilter(ObjectMapper objectMapper, ErrorLogDeduplicator errorLogDeduplicator) {
 		this.objectMapper = objectMapper;
+		this.errorLogDeduplicator = errorLogDeduplicator;
+		this.byteArrayRendering = isOverridden("marshalErrorResponseBody", ResponseException.class)
+				|| isOverridden("renderErrorResponse",
+						ServerWebExchange.class, HttpStatus.class, byte[].class, MultiValueMap.class);
+	}
+
+	/**
+	 * Check if a subclass overrides a method of this class.
+	 *
+	 * @param name
+	 * @param parameterTypes
+	 * @return true if overridden
+	 */
+	private boolean isOverridden(String name, Class<?>... parameterTypes) {
+		for (Class<?> c = getClass(); c != ErrorWebFilter.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod(name, parameterTypes);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// Check the superclass
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -71,8 +165,17 @@ public class ErrorWebFilter implements WebFilter {
 	 */
 	@Override
 	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (LightweightWebFilter.isLightweight(exchange)) {
+			return chain.filter(exchange);
+		}
 		return chain.filter(exchange)
-				.onErrorResume(t -> buildErrorResponse(exchange, t));
+				.onErrorResume(t -> Mono.subscriberContext().flatMap(context -> {
+					RequestTiming timing = RequestContext.from(context).getTiming();
+					if (timing != null) {
+						timing.mark(RequestTiming.Phase.HANDLER).mark(RequestTiming.Phase.ERROR);
+					}
+					return buildErrorResponse(exchange, t);
+				}));
 	}
 
 	/**
@@ -85,6 +188,88 @@ public class ErrorWebFilter implements WebFilter {
 	 */
 	protected Mono<Void> buildErrorResponse(ServerWebExchange exchange, Throwable t) {
 		ResponseException e = getResponseException(t);
+		exchange.getAttributes().put(ERROR_ATTRIBUTE, e);
+		if (byteArrayRendering) {
+			return buildByteArrayErrorResponse(exchange, e);
+		}
+		if (exchange.getResponse().isCommitted()) {
+			// The error response cannot be rendered anymore
+			return Mono.empty()
+					.doOnEach(ReactiveLogger.logOnComplete(() -> logError(e)))
+					.then(Mono.error(t));
+		}
+		Mono<DataBuffer> body = (e.getError() == null) ? null : encodeLazily(exchange.getResponse(), e);
+		return Mono.empty()
+				.doOnEach(ReactiveLogger.logOnComplete(() -> logError(e)))
+				.then(renderErrorResponse(exchange, e.getStatus(), body, e.getHeaders()))
+				.onErrorResume(IOException.class, e1 -> renderMarshallingError(exchange, e, e1));
+	}
+
+	/**
+	 * Publisher of the error response body. The buffer is only encoded when the response is written (and it is
+	 * not committed yet), so it is never allocated if the request is cancelled before. If the subscriber cancels
+	 * while the buffer is being encoded, it is released.
+	 *
+	 * @param response
+	 * @param e
+	 * @return Mono with the buffer (or empty if the response is already committed)
+	 */
+	private Mono<DataBuffer> encodeLazily(ServerHttpResponse response, ResponseException e) {
+		return Mono.defer(() -> {
+			AtomicReference<Object> pending = new AtomicReference<>();
+			return Mono.fromCallable(() -> {
+				if (response.isCommitted()) {
+					return null;
+				}
+				DataBuffer buffer = encodeErrorResponseBody(e, response.bufferFactory());
+				if (buffer != null && !pending.compareAndSet(null, buffer)) {
+					DataBufferUtils.release(buffer);
+					return null;
+				}
+				return buffer;
+			})
+					.doOnNext(buffer -> pending.set(DELIVERED))
+					.doOnCancel(() -> {
+						Object buffer = pending.getAndSet(CANCELLED);
+						if (buffer instanceof DataBuffer) {
+							DataBufferUtils.release((DataBuffer) buffer);
+						}
+					});
+		});
+	}
+
+	/**
+	 * Render an internal server error (without body) when the error response cannot be marshalled.
+	 *
+	 * @param exchange
+	 * @param e
+	 * @param cause
+	 * @return a completed {@link Mono}
+	 */
+	private Mono<Void> renderMarshallingError(ServerWebExchange exchange, ResponseException e, Throwable cause) {
+		log.error("Error marshalling exception", cause);
+		ServerHttpResponse response = exchange.getResponse();
+		if (response.isCommitted()) {
+			return Mono.empty();
+		}
+		response.setStatusCode(HttpStatus.INTERNAL_SERVER_ERROR);
+		response.getHeaders().remove(HttpHeaders.CONTENT_TYPE);
+		if (e.getHeaders() != null) {
+			e.getHeaders().keySet().forEach(response.getHeaders()::remove);
+		}
+		return response.setComplete();
+	}
+
+	/**
+	 * Render the error response with the byte array hooks overridden by a subclass:
+	 * {@link #marshalErrorResponseBody(ResponseException)} and
+	 * {@link #renderErrorResponse(ServerWebExchange, HttpStatus, byte[], MultiValueMap)}.
+	 *
+	 * @param exchange
+	 * @param e
+	 * @return a completed {@link Mono}
+	 */
+	private Mono<Void> buildByteArrayErrorResponse(ServerWebExchange exchange, ResponseException e) {
 		HttpStatus status = e.getStatus();
 		MultiValueMap<String, String> headers = null;
 		byte[] bodyBytes = null;
@@ -100,9 +285,114 @@ public class ErrorWebFilter implements WebFilter {
 				.then(renderErrorResponse(exchange, status, bodyBytes, headers));
 	}
 
+	/**
+	 * Encode the error response body into a {@link DataBuffer}.
+	 *
+	 * The bodies of the errors without details only depend on the error identifier and reason (e.g. the
+	 * standard OAuth error codes), so they are encoded once and cached. The bodies of the errors with details
+	 * are streamed with a {@link JsonGenerator} directly into a buffer allocated by the factory (pooled with
+	 * Netty), without building an intermediate JSON tree or byte array.
+	 *
+	 * @param e
+	 * @param bufferFactory
+	 * @return buffer with the error response (or null if the response has no body)
+	 * @throws IOException
+	 */
+	protected DataBuffer encodeErrorResponseBody(ResponseException e, DataBufferFactory bufferFactory)
+			throws IOException {
+		if (e.getError() == null) {
+			return null;
+		}
+		if (e.getDetailMap() == null) {
+			return bufferFactory.wrap(getCachedErrorResponseBody(e.getError(), e.getReason()));
+		}
+		DataBuffer buffer = bufferFactory.allocateBuffer();
+		boolean release = true;
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer.asOutputStream())) {
+			writeErrorResponseBody(generator, e.getError(), e.getReason(), e.getDetailMap());
+			release = false;
+		} finally {
+			if (release) {
+				DataBufferUtils.release(buffer);
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * Get the encoded error response body of an error without details. The cache is bounded and evicts the
+	 * least recently used body, because the reason is not always fixed (e.g. in validation errors).
+	 *
+	 * @param error
+	 * @param reason
+	 * @return encoded error response body (shared: it must not be modified)
+	 * @throws IOException
+	 */
+	private byte[] getCachedErrorResponseBody(String error, String reason) throws IOException {
+		BodyKey key = new BodyKey(error, reason);
+		byte[] body;
+		synchronized (bodyCache) {
+			body = bodyCache.get(key);
+		}
+		if (body != null) {
+			return body;
+		}
+		ByteArrayBuilder builder = new ByteArrayBuilder();
+		try (JsonGenerator generator = objectMapper.getFactory().createGenerator(builder)) {
+			writeErrorResponseBody(generator, error, reason, null);
+		}
+		body = builder.toByteArray();
+		builder.release();
+		synchronized (bodyCache) {
+			bodyCache.put(key, body);
+		}
+		return body;
+	}
+
+	/**
+	 * Check if the error response body of an error without details is cached (for testing).
+	 *
+	 * @param error
+	 * @param reason
+	 * @return true if it is cached
+	 */
+	boolean isCachedErrorResponseBody(String error, String reason) {
+		synchronized (bodyCache) {
+			return bodyCache.containsKey(new BodyKey(error, reason));
+		}
+	}
+
+	/**
+	 * Write the error response body as JSON.
+	 *
+	 * @param generator
+	 * @param error
+	 * @param reason
+	 * @param detailMap
+	 * @throws IOException
+	 */
+	private void writeErrorResponseBody(JsonGenerator generator, String error, String reason,
+			Map<String, Object> detailMap) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("error", error);
+		if (reason != null) {
+			generator.writeStringField("error_description", reason);
+		}
+		if (detailMap != null) {
+			generator.writeFieldName("error_details");
+			objectMapper.writeValue(generator, detailMap);
+		}
+		generator.writeEndObject();
+	}
+
 	/**
 	 * Serialize the error response body into a byte array.
 	 *
+	 * By default, the error responses are encoded with
+	 * {@link #encodeErrorResponseBody(ResponseException, DataBufferFactory)}. If a subclass overrides this method
+	 * (or {@link #renderErrorResponse(ServerWebExchange, HttpStatus, byte[], MultiValueMap)}), the error responses
+	 * are rendered with these methods instead.
+	 *
 	 * @param e
 	 * @return byte array of the error response
 	 * @throws JsonProcessingException
@@ -133,17 +423,33 @@ public class ErrorWebFilter implements WebFilter {
 	 */
 	protected Mono<Void> renderErrorResponse(
 			ServerWebExchange exchange, HttpStatus status, byte[] bodyBytes, MultiValueMap<String, String> headers) {
+		Mono<DataBuffer> body = (bodyBytes == null)
+				? null : Mono.fromCallable(() -> exchange.getResponse().bufferFactory().wrap(bodyBytes));
+		return renderErrorResponse(exchange, status, body, headers);
+	}
+
+	/**
+	 * Render a body response with status, body (as a publisher of a data buffer) and headers. The body
+	 * publisher is only subscribed when the response is written.
+	 *
+	 * @param exchange
+	 * @param status
+	 * @param body (or null if there is no body)
+	 * @param headers
+	 * @return a completed {@link Mono}
+	 */
+	protected Mono<Void> renderErrorResponse(ServerWebExchange exchange, HttpStatus status, Mono<DataBuffer> body,
+			MultiValueMap<String, String> headers) {
 		ServerHttpResponse response = exchange.getResponse();
 		response.setStatusCode(status);
 		if (headers != null) {
 			response.getHeaders().addAll(headers);
 		}
-		if (bodyBytes == null) {
+		if (body == null) {
 			return Mono.empty();
 		}
 		response.getHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
-		DataBuffer buffer = response.bufferFactory().wrap(bodyBytes);
-		return response.writeWith(Mono.just(buffer));
+		return response.writeWith(body);
 	}
 
 	/**
@@ -168,17 +474,59 @@ public class ErrorWebFilter implements WebFilter {
 
 	/**
 	 * Log an error. It uses the {@link ContextField#ERROR} to save the error identifier.
+	 * The contextual information is only computed if the log event is enabled (see {@link LazyMDC}).
+	 * With an {@link ErrorLogDeduplicator}, only the first occurrence of each error is logged.
 	 *
 	 * @param e
 	 */
 	protected void logError(ResponseException e) {
-		MDC.put(ContextField.ERROR, e.getError());
-		MDC.put(ContextField.REASON, e.getReason());
-		if (e instanceof ServerException) {
+		boolean serverError = e instanceof ServerException;
+		if (serverError ? !log.isErrorEnabled() : !log.isInfoEnabled()) {
+			return;
+		}
+		if (errorLogDeduplicator != null && !errorLogDeduplicator.shouldLog(e)) {
+			return;
+		}
+		LazyMDC.put(ContextField.ERROR, e::getError);
+		LazyMDC.put(ContextField.REASON, e::getReason);
+		if (serverError) {
 			log.error("Error", e.getCause());
 		} else {
 			log.info("Error");
 		}
 	}
 
+	/**
+	 * Key of the cache of error response bodies.
+	 */
+	private static final class BodyKey {
+
+		private final String error;
+
+		private final String reason;
+
+		BodyKey(String error, String reason) {
+			this.error = error;
+			this.reason = reason;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof BodyKey)) {
+				return false;
+			}
+			BodyKey other = (BodyKey) o;
+			return error.equals(other.error) && Objects.equals(reason, other.reason);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * error.hashCode() + Objects.hashCode(reason);
+		}
+
+	}
+
 }
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.InFlightRegistry;
+import com.elevenpaths.almaraz.context.InFlightRequest;
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive {@link WebFilter} to generate a response with the requests in flight registered in an
+ * {@link InFlightRegistry} (for live debugging). It is read-only: it only replies to GET requests.
+ *
+ * Each request is rendered with the transaction ID, correlator, operation, method, path, elapsed time (in
+ * milliseconds), phase in progress and whether it exceeded the latency budget. Note that the response may
+ * include sensitive information (e.g. paths), so the endpoint should not be exposed publicly.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class InFlightWebFilter implements WebFilter {
+
+	/**
+	 * Default path where in-flight API is available.
+	 */
+	public static final String DEFAULT_PATH = "/inflight";
+
+	/**
+	 * Marshaller of the response into JSON.
+	 */
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * Registry of the requests in flight.
+	 */
+	private final InFlightRegistry inFlightRegistry;
+
+	/**
+	 * Path where in-flight API is available. By default, /inflight
+	 */
+	private final String path;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param objectMapper
+	 * @param inFlightRegistry
+	 */
+	public InFlightWebFilter(ObjectMapper objectMapper, InFlightRegistry inFlightRegistry) {
+		this(objectMapper, inFlightRegistry, DEFAULT_PATH);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param objectMapper
+	 * @param inFlightRegistry
+	 * @param path
+	 */
+	public InFlightWebFilter(ObjectMapper objectMapper, InFlightRegistry inFlightRegistry, String path) {
+		this.objectMapper = objectMapper;
+		this.inFlightRegistry = inFlightRegistry;
+		this.path = path;
+	}
+
+	/**
+	 * Implementation of the web filter that replies with the requests in flight.
+	 */
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (!isGetInFlight(exchange)) {
+			return chain.filter(exchange);
+		}
+		return renderInFlightResponse(exchange);
+	}
+
+	/**
+	 * Check if the request matches with the in-flight API.
+	 *
+	 * @param exchange
+	 * @return true if method is GET and request path is path (by default /inflight)
+	 */
+	protected boolean isGetInFlight(ServerWebExchange exchange) {
+		ServerHttpRequest request = exchange.getRequest();
+		return (HttpMethod.GET.equals(request.getMethod()) && request.getPath().value().equals(path));
+	}
+
+	/**
+	 * Convert the requests in flight into a byte array to be rendered in the response.
+	 *
+	 * @return requests in flight as byte array
+	 */
+	protected byte[] marshalInFlightResponseBody() {
+		ArrayNode array = JsonNodeFactory.instance.arrayNode();
+		for (InFlightRequest request : inFlightRegistry.getInFlightRequests()) {
+			RequestContext requestContext = request.getRequestContext();
+			ObjectNode node = array.addObject();
+			node.put(ContextField.TRANSACTION_ID, request.getId());
+			node.put(ContextField.CORRELATOR, requestContext.getCorrelator());
+			node.put(ContextField.OPERATION, requestContext.getOperation());
+			node.put(ContextField.METHOD, request.getMethod());
+			node.put(ContextField.PATH, request.getPath());
+			node.put(ContextField.LATENCY, request.getElapsedMillis());
+			node.put(ContextField.PHASE, request.getPhase());
+			node.put("slow", request.isSlow());
+		}
+		try {
+			return objectMapper.writeValueAsBytes(array);
+		} catch (JsonProcessingException e) {
+			return new byte[] {};
+		}
+	}
+
+	/**
+	 * Generate a response body with the requests in flight as JSON.
+	 *
+	 * @param exchange
+	 * @return Mono<Void>
+	 */
+	protected Mono<Void> renderInFlightResponse(ServerWebExchange exchange) {
+		ServerHttpResponse response = exchange.getResponse();
+		response.setStatusCode(HttpStatus.OK);
+		response.getHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
+		response.getHeaders().add(HttpHeaders.CACHE_CONTROL, "no-store");
+		DataBuffer buffer = response.bufferFactory().wrap(marshalInFlightResponseBody());
+		return response.writeWith(Mono.just(buffer));
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.util.Arrays;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Matcher of the requests that skip the Almaraz web filters (see {@link LightweightWebFilter}), by HTTP method
+ * and path prefix.
+ *
+ * The path prefixes are stored in a character trie, so matching a path only walks its characters once,
+ * whatever the number of prefixes. A prefix matches a path if it is equal to the path or it is followed by
+ * a '/' in the path (e.g. /health matches /health and /health/liveness, but not /healthz). A prefix ending
+ * with '/' matches any path starting with it.
+ *
+ * The prefixes are registered at configuration time with {@link #add(HttpMethod, String)}. This class is not
+ * thread-safe while registering prefixes, but matching is.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class LightweightPathMatcher {
+
+	/**
+	 * Mask of all the HTTP methods.
+	 */
+	private static final int ALL_METHODS = -1;
+
+	/**
+	 * Mask of a non-standard HTTP method (not in {@link HttpMethod}). It is only included in
+	 * {@link #ALL_METHODS}.
+	 */
+	private static final int OTHER_METHOD = Integer.MIN_VALUE;
+
+	/**
+	 * Root of the trie (empty prefix).
+	 */
+	private final Node root = new Node();
+
+	/**
+	 * Number of registered prefixes.
+	 */
+	private int size;
+
+	/**
+	 * Register a path prefix for any HTTP method.
+	 *
+	 * @param prefix
+	 * @return this matcher
+	 */
+	public LightweightPathMatcher add(String prefix) {
+		return add(null, prefix);
+	}
+
+	/**
+	 * Register a path prefix for an HTTP method.
+	 *
+	 * @param method HTTP method (or null for any method)
+	 * @param prefix path prefix (starting with '/')
+	 * @return this matcher
+	 */
+	public LightweightPathMatcher add(HttpMethod method, String prefix) {
+		if (prefix == null || !prefix.startsWith("/")) {
+			throw new IllegalArgumentException("Invalid path prefix: " + prefix);
+		}
+		Node node = root;
+		for (int i = 0; i < prefix.length(); i++) {
+			node = node.getOrAddChild(prefix.charAt(i));
+		}
+		node.methods |= (method == null) ? ALL_METHODS : (1 << method.ordinal());
+		size++;
+		return this;
+	}
+
+	/**
+	 * Check if there are no registered prefixes.
+	 *
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Check if a request matches any registered prefix.
+	 *
+	 * @param method HTTP method of the request (or null for a non-standard method)
+	 * @param path path of the request
+	 * @return true if the request matches
+	 */
+	public boolean matches(HttpMethod method, String path) {
+		int mask = (method == null) ? OTHER_METHOD : (1 << method.ordinal());
+		Node node = root;
+		int length = path.length();
+		for (int i = 0; i < length; i++) {
+			char c = path.charAt(i);
+			// The prefix before a path separator (e.g. /health in /health/liveness)
+			if (c == '/' && (node.methods & mask) != 0) {
+				return true;
+			}
+			node = node.getChild(c);
+			if (node == null) {
+				return false;
+			}
+			// A prefix ending with a path separator (e.g. /static/)
+			if (c == '/' && (node.methods & mask) != 0) {
+				return true;
+			}
+		}
+		return (node.methods & mask) != 0;
+	}
+
+	/**
+	 * Node of the trie.
+	 */
+	private static final class Node {
+
+		/**
+		 * Characters of the children (sorted).
+		 */
+		private char[] chars = new char[0];
+
+		/**
+		 * Children, in the same order as chars.
+		 */
+		private Node[] children = new Node[0];
+
+		/**
+		 * Mask of the HTTP methods (by ordinal) of the prefix ending in this node.
+		 */
+		private int methods;
+
+		Node getChild(char c) {
+			char[] cs = chars;
+			if (cs.length <= 8) {
+				for (int i = 0; i < cs.length; i++) {
+					if (cs[i] == c) {
+						return children[i];
+					}
+				}
+				return null;
+			}
+			int i = Arrays.binarySearch(cs, c);
+			return (i < 0) ? null : children[i];
+		}
+
+		Node getOrAddChild(char c) {
+			int i = Arrays.binarySearch(chars, c);
+			if (i >= 0) {
+				return children[i];
+			}
+			int pos = -i - 1;
+			char[] newChars = new char[chars.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(chars, 0, newChars, 0, pos);
+			System.arraycopy(children, 0, newChildren, 0, pos);
+			newChars[pos] = c;
+			newChildren[pos] = new Node();
+			System.arraycopy(chars, pos, newChars, pos + 1, chars.length - pos);
+			System.arraycopy(children, pos, newChildren, pos + 1, children.length - pos);
+			chars = newChars;
+			children = newChildren;
+			return newChildren[pos];
+		}
+
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive {@link WebFilter} to mark the requests that skip the Almaraz web filters (e.g. liveness probes or
+ * static resources), according to a {@link LightweightPathMatcher}.
+ *
+ * It must be executed at the front of the chain. The request is matched once, and the exchange is marked with
+ * the attribute {@link #LIGHTWEIGHT_ATTRIBUTE}. Then, {@link RequestContextWebFilter}, {@link LoggerWebFilter},
+ * {@link MetricsWebFilter}, {@link ErrorWebFilter} and {@link CompleteLocationHeaderWebFilter} only check the
+ * attribute (with {@link #isLightweight(ServerWebExchange)}) to pass the request through.
+ * {@link BasePathWebFilter} still sets up the context path of the lightweight requests under a base path (e.g.
+ * static resources), but it passes through the ones that do not match any base path. A lightweight request has
+ * no {@link com.elevenpaths.almaraz.context.RequestContext} and it is not logged. The web filters that reply to
+ * requests (e.g. {@link StaticResponseWebFilter}) are not affected.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class LightweightWebFilter implements WebFilter {
+
+	/**
+	 * Name of the exchange attribute that marks a lightweight request.
+	 */
+	public static final String LIGHTWEIGHT_ATTRIBUTE = LightweightWebFilter.class.getName() + ".lightweight";
+
+	/**
+	 * Matcher of the lightweight requests.
+	 */
+	private final LightweightPathMatcher matcher;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param matcher
+	 */
+	public LightweightWebFilter(LightweightPathMatcher matcher) {
+		this.matcher = matcher;
+	}
+
+	/**
+	 * Implementation of the web filter that marks the lightweight requests.
+	 */
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		ServerHttpRequest request = exchange.getRequest();
+		if (matcher.matches(request.getMethod(), request.getPath().value())) {
+			exchange.getAttributes().put(LIGHTWEIGHT_ATTRIBUTE, Boolean.TRUE);
+		}
+		return chain.filter(exchange);
+	}
+
+	/**
+	 * Check if the exchange was marked as a lightweight request.
+	 *
+	 * @param exchange
+	 * @return true if lightweight
+	 */
+	public static boolean isLightweight(ServerWebExchange exchange) {
+		return exchange.getAttributes().get(LIGHTWEIGHT_ATTRIBUTE) != null;
+	}
+
+}
@@ -4,15 +4,23 @@
 
 package com.elevenpaths.almaraz.webfilters;
 
-import org.slf4j.MDC;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 
 import com.elevenpaths.almaraz.context.ContextField;
 import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestLogBuffer;
+import com.elevenpaths.almaraz.context.RequestTiming;
+import com.elevenpaths.almaraz.context.SlotContextMap;
+import com.elevenpaths.almaraz.logging.LazyMDC;
 import com.elevenpaths.almaraz.logging.MDCServerWebExchange;
 import com.elevenpaths.almaraz.logging.ReactiveLogger;
+import com.elevenpaths.almaraz.logging.SamplingPolicy;
+import com.elevenpaths.almaraz.logging.accesslog.AccessLogRingBuffer;
 
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
@@ -22,6 +30,30 @@ import reactor.core.publisher.Mono;
  * The contextual information is stored as a {@link RequestContext} instance in the
  * reactive context.
  *
+ * By default, the log entries are written synchronously (in the event loop). If an {@link AccessLogRingBuffer}
+ * is provided, the web filter only copies the {@link ContextField} values into an event of the ring buffer, and
+ * the log entries are serialized and written by the consumer thread of the ring buffer. Note that the custom
+ * properties of the {@link RequestContext} are not included in this asynchronous mode.
+ *
+ * If a {@link SamplingPolicy} is provided, the sampling decision is taken when the request is received and
+ * reviewed when the response is committed (to log errors and slow responses). It is stored in the
+ * {@link RequestContext}, so the log entries written with {@link ReactiveLogger} follow the same decision.
+ *
+ * If batching is enabled, the log entries of each request (including the request and response log entries and
+ * the ones written with {@link ReactiveLogger}) are buffered in a {@link RequestLogBuffer} attached to the
+ * {@link RequestContext}, and they are written in order as a single batch when the response is committed.
+ *
+ * The phases of each request are timed with high resolution in a {@link RequestTiming} attached to the
+ * {@link RequestContext}: validation, handler, error rendering, first byte and completion. When the response
+ * is committed, the phases already recorded are stored in the {@link RequestContext} (e.g.
+ * {@link ContextField#LATENCY_HANDLER}) and, optionally, written in the Server-Timing response header. The
+ * timing is opt-in: the requests are only timed with the Server-Timing header, the asynchronous access log, the
+ * completion log, or {@link #setTiming(boolean)} (see {@link #isTimed()}).
+ *
+ * The completion happens after the response log entry. If the completion log is enabled (by default, with the
+ * asynchronous access log or batching), a "Complete" log entry is written when the response is completed, with
+ * the time to complete the response ({@link ContextField#LATENCY} and {@link ContextField#LATENCY_COMPLETE}).
+ *
  * Note that errors are not logged by this web filter. This is delegated to the error handler
  * so that it is possible to log not only the exception but also the response status code. The
  * error handler is responsible for converting an exception into a HTTP response.
@@ -32,44 +64,455 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class LoggerWebFilter implements WebFilter {
 
+	/**
+	 * Server-Timing HTTP header.
+	 */
+	public static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+	/**
+	 * Ring buffer for the asynchronous access log. If null, the log entries are written synchronously.
+	 */
+	private final AccessLogRingBuffer accessLog;
+
+	/**
+	 * Log sampling policy. If null, all the requests are logged.
+	 */
+	private final SamplingPolicy samplingPolicy;
+
+	/**
+	 * Buffer the log entries of each request to write them as a batch when the response is committed.
+	 */
+	private final boolean batching;
+
+	/**
+	 * Write the Server-Timing header with the phases of the request.
+	 */
+	private final boolean serverTiming;
+
+	/**
+	 * Write a log entry when the response is completed.
+	 */
+	private boolean completionLog;
+
+	/**
+	 * Time the phases of the requests (even without Server-Timing header, access log or completion log).
+	 */
+	private boolean timing;
+
+	/**
+	 * Default constructor. The log entries are written synchronously.
+	 */
+	public LoggerWebFilter() {
+		this(null);
+	}
+
+	/**
+	 * Constructor with a ring buffer for the asynchronous access log. Its consumer thread must be started.
+	 *
+	 * @param accessLog
+	 */
+	public LoggerWebFilter(AccessLogRingBuffer accessLog) {
+		this(accessLog, null);
+	}
+
+	/**
+	 * Constructor with a ring buffer for the asynchronous access log (null to write the log entries
+	 * synchronously) and a log sampling policy (null to log all the requests).
+	 *
+	 * @param accessLog
+	 * @param samplingPolicy
+	 */
+	public LoggerWebFilter(AccessLogRingBuffer accessLog, SamplingPolicy samplingPolicy) {
+		this(accessLog, samplingPolicy, false);
+	}
+
+	/**
+	 * Constructor with a ring buffer for the asynchronous access log (null to write the log entries
+	 * synchronously), a log sampling policy (null to log all the requests), and the batching mode.
+	 *
+	 * @param accessLog
+	 * @param samplingPolicy
+	 * @param batching
+	 */
+	public LoggerWebFilter(AccessLogRingBuffer accessLog, SamplingPolicy samplingPolicy, boolean batching) {
+		this(accessLog, samplingPolicy, batching, false);
+	}
+
+	/**
+	 * Constructor with a ring buffer for the asynchronous access log (null to write the log entries
+	 * synchronously), a log sampling policy (null to log all the requests), the batching mode, and whether
+	 * to write the Server-Timing header.
+	 *
+	 * @param accessLog
+	 * @param samplingPolicy
+	 * @param batching
+	 * @param serverTiming
+	 */
+	public LoggerWebFilter(AccessLogRingBuffer accessLog, SamplingPolicy samplingPolicy, boolean batching,
+			boolean serverTiming) {
+		this.accessLog = accessLog;
+		this.samplingPolicy = samplingPolicy;
+		this.batching = batching;
+		this.serverTiming = serverTiming;
+		this.completionLog = accessLog != null || batching;
+	}
+
+	/**
+	 * Enable or disable the "Complete" log entry, written when the response is completed. By default, it is
+	 * enabled with the asynchronous access log or batching.
+	 *
+	 * @param completionLog
+	 * @return this filter
+	 */
+	public LoggerWebFilter setCompletionLog(boolean completionLog) {
+		this.completionLog = completionLog;
+		return this;
+	}
+
+	/**
+	 * Enable or disable the timing of the phases of the requests, so that they are added to the response log
+	 * entry (or reported by {@link com.elevenpaths.almaraz.context.InFlightRegistry}). It is disabled by
+	 * default, but the requests are also timed with the Server-Timing header, the access log or the completion
+	 * log.
+	 *
+	 * @param timing
+	 * @return this filter
+	 */
+	public LoggerWebFilter setTiming(boolean timing) {
+		this.timing = timing;
+		return this;
+	}
+
+	/**
+	 * Check if the phases of the requests are timed with a {@link RequestTiming}. They are only timed if
+	 * enabled with {@link #setTiming(boolean)} or consumed by the Server-Timing header, the access log or the
+	 * completion log.
+	 *
+	 * @return true if the requests are timed
+	 */
+	protected boolean isTimed() {
+		return timing || serverTiming || completionLog || accessLog != null;
+	}
+
 	/**
 	 * Web filter implementation to write a log entry when the request is received and
 	 * another log entry when the response is completed.
 	 */
 	@Override
 	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (LightweightWebFilter.isLightweight(exchange)) {
+			return chain.filter(exchange);
+		}
 		long start = System.currentTimeMillis();
+		RequestTiming timing = isTimed() ? new RequestTiming() : null;
+		ServerWebExchange timedExchange = (timing == null)
+				? exchange : exchange.mutate().response(new TimedResponse(exchange, timing)).build();
 		exchange.getResponse().beforeCommit(() -> {
-			return Mono.empty()
-					.doOnEach(ReactiveLogger.logOnComplete(() -> logResponse(exchange, start)))
+			return RequestContext.context()
+					.doOnNext(requestContext -> onResponse(exchange, requestContext, start))
 					.then();
 		});
-		return Mono.empty()
-				.doOnEach(ReactiveLogger.logOnComplete(() -> logRequest(exchange)))
-				.then(chain.filter(exchange));
+		return RequestContext.context()
+				.flatMap(requestContext -> {
+					onRequest(exchange, requestContext, timing);
+					return chain.filter(timedExchange)
+							.doFinally(signal -> onComplete(exchange, requestContext, start));
+				});
+	}
+
+	/**
+	 * Attach the {@link RequestTiming} to the {@link RequestContext}, take the sampling decision, and log (or
+	 * publish in the access log) the request.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param timing (or null if the request is not timed)
+	 */
+	void onRequest(ServerWebExchange exchange, RequestContext requestContext, RequestTiming timing) {
+		if (timing != null) {
+			requestContext.setTiming(timing);
+		}
+		sampleRequest(exchange, requestContext);
+		if (accessLog != null) {
+			ReactiveLogger.logSampled(requestContext, () -> publishRequest(exchange, requestContext));
+		} else {
+			ReactiveLogger.log(requestContext, () -> logRequest(exchange));
+		}
+	}
+
+	/**
+	 * Record the timing, take the final sampling decision, log (or publish in the access log) the response,
+	 * and flush the log entries buffered for the request. It is invoked before committing the response.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param start
+	 */
+	void onResponse(ServerWebExchange exchange, RequestContext requestContext, long start) {
+		recordTiming(exchange, requestContext);
+		sampleResponse(exchange, requestContext, start);
+		if (accessLog != null) {
+			ReactiveLogger.logSampled(requestContext, () -> publishResponse(exchange, requestContext, start));
+		} else {
+			ReactiveLogger.log(requestContext, () -> logResponse(exchange, start));
+		}
+		ReactiveLogger.flush(requestContext);
+	}
+
+	/**
+	 * Record the completion in the {@link RequestTiming} of the {@link RequestContext}, and log (or publish in the
+	 * access log) the completion if the completion log is enabled. It is invoked when the response is completed
+	 * (or the request is cancelled or failed).
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param start
+	 */
+	void onComplete(ServerWebExchange exchange, RequestContext requestContext, long start) {
+		RequestTiming timing = requestContext.getTiming();
+		if (timing != null) {
+			timing.mark(RequestTiming.Phase.COMPLETE);
+		}
+		if (!completionLog || requestContext.isEmpty()) {
+			return;
+		}
+		if (timing != null) {
+			putDuration(requestContext, ContextField.LATENCY_COMPLETE, timing, RequestTiming.Phase.COMPLETE);
+		}
+		if (accessLog != null) {
+			ReactiveLogger.logSampled(requestContext, () -> publishComplete(requestContext, start));
+		} else {
+			ReactiveLogger.log(requestContext, () -> logComplete(start));
+		}
+	}
+
+	/**
+	 * Record the first byte in the {@link RequestTiming} of the {@link RequestContext}, store the phases already
+	 * recorded in the {@link RequestContext}, and write the Server-Timing header (if enabled).
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 */
+	protected void recordTiming(ServerWebExchange exchange, RequestContext requestContext) {
+		RequestTiming timing = requestContext.getTiming();
+		if (timing == null) {
+			return;
+		}
+		timing.mark(RequestTiming.Phase.FIRST_BYTE);
+		putDuration(requestContext, ContextField.LATENCY_VALIDATION, timing, RequestTiming.Phase.VALIDATION);
+		putDuration(requestContext, ContextField.LATENCY_HANDLER, timing, RequestTiming.Phase.HANDLER);
+		putDuration(requestContext, ContextField.LATENCY_ERROR, timing, RequestTiming.Phase.ERROR);
+		putDuration(requestContext, ContextField.LATENCY_FIRST_BYTE, timing, RequestTiming.Phase.FIRST_BYTE);
+		if (serverTiming) {
+			exchange.getResponse().getHeaders()
+					.set(SERVER_TIMING_HEADER, timing.appendServerTiming(new StringBuilder()).toString());
+		}
+	}
+
+	/**
+	 * Store the duration of a phase (in milliseconds, with microsecond precision) in the {@link RequestContext}
+	 * if it was recorded. It is stored as a double, so it is only formatted if it is logged.
+	 *
+	 * @param requestContext
+	 * @param key
+	 * @param timing
+	 * @param phase
+	 */
+	private static void putDuration(RequestContext requestContext, String key, RequestTiming timing,
+			RequestTiming.Phase phase) {
+		long duration = timing.getDuration(phase);
+		if (duration > 0) {
+			requestContext.put(key, Math.round(duration / 1000.0) / 1000.0);
+		}
+	}
+
+	/**
+	 * Take the sampling decision of the request with the {@link SamplingPolicy} (if any), and attach a
+	 * {@link RequestLogBuffer} to the {@link RequestContext} if batching is enabled.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 */
+	protected void sampleRequest(ServerWebExchange exchange, RequestContext requestContext) {
+		if (requestContext.isEmpty()) {
+			return;
+		}
+		if (samplingPolicy != null) {
+			samplingPolicy.sampleRequest(exchange, requestContext);
+		}
+		if (batching && requestContext.getLogBuffer() == null) {
+			requestContext.setLogBuffer(new RequestLogBuffer());
+		}
+	}
+
+	/**
+	 * Take the final sampling decision with the response status code and latency with the
+	 * {@link SamplingPolicy} (if any).
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param start
+	 */
+	protected void sampleResponse(ServerWebExchange exchange, RequestContext requestContext, long start) {
+		if (samplingPolicy != null) {
+			samplingPolicy.sampleResponse(exchange, requestContext, System.currentTimeMillis() - start);
+		}
 	}
 
 	/**
 	 * Log the request with method, path, and remote address as contextual information.
+	 * The contextual information is only computed if the log event is enabled (see {@link LazyMDC}).
 	 *
 	 * @param exchange
 	 */
 	protected void logRequest(ServerWebExchange exchange) {
-		MDC.put(ContextField.METHOD, MDCServerWebExchange.getMethod(exchange));
-		MDC.put(ContextField.PATH, MDCServerWebExchange.getPath(exchange));
-		MDC.put(ContextField.QUERY, MDCServerWebExchange.getQueryParams(exchange));
-		MDC.put(ContextField.ADDRESS, MDCServerWebExchange.getRemoteAddress(exchange));
+		if (!log.isInfoEnabled()) {
+			return;
+		}
+		LazyMDC.put(ContextField.METHOD, () -> MDCServerWebExchange.getMethod(exchange));
+		LazyMDC.put(ContextField.PATH, () -> MDCServerWebExchange.getPath(exchange));
+		LazyMDC.put(ContextField.QUERY, () -> MDCServerWebExchange.getQueryParams(exchange));
+		LazyMDC.put(ContextField.ADDRESS, () -> MDCServerWebExchange.getRemoteAddress(exchange));
 		log.info("Request");
 	}
 
 	/**
 	 * Log the response with status and latency as contextual information.
+	 * The contextual information is only computed if the log event is enabled (see {@link LazyMDC}).
+	 *
 	 * @param exchange
 	 */
 	protected void logResponse(ServerWebExchange exchange, long start) {
-		MDC.put(ContextField.STATUS, MDCServerWebExchange.getStatusCode(exchange));
-		MDC.put(ContextField.LATENCY, Long.toString(System.currentTimeMillis() - start));
+		if (!log.isInfoEnabled()) {
+			return;
+		}
+		long latency = System.currentTimeMillis() - start;
+		LazyMDC.put(ContextField.STATUS, () -> MDCServerWebExchange.getStatusCode(exchange));
+		LazyMDC.put(ContextField.LATENCY, () -> Long.toString(latency));
 		log.info("Response");
 	}
 
+	/**
+	 * Log the completion of the response with the latency as contextual information.
+	 *
+	 * @param start
+	 */
+	protected void logComplete(long start) {
+		if (!log.isInfoEnabled()) {
+			return;
+		}
+		long latency = System.currentTimeMillis() - start;
+		LazyMDC.put(ContextField.LATENCY, () -> Long.toString(latency));
+		log.info("Complete");
+	}
+
+	/**
+	 * Publish the request, with method, path, and remote address as contextual information, in the
+	 * asynchronous access log.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 */
+	protected void publishRequest(ServerWebExchange exchange, RequestContext requestContext) {
+		long sequence = accessLog.claim();
+		if (sequence < 0) {
+			return;
+		}
+		try {
+			accessLog.get(sequence)
+					.setMessage("Request")
+					.setTimestamp(System.currentTimeMillis())
+					.copy(requestContext)
+					.put(SlotContextMap.METHOD, MDCServerWebExchange.getMethod(exchange))
+					.put(SlotContextMap.PATH, MDCServerWebExchange.getPath(exchange))
+					.put(SlotContextMap.QUERY, MDCServerWebExchange.getQueryParams(exchange))
+					.put(SlotContextMap.ADDRESS, MDCServerWebExchange.getRemoteAddress(exchange));
+		} finally {
+			accessLog.publish(sequence);
+		}
+	}
+
+	/**
+	 * Publish the response, with status and latency as contextual information, in the asynchronous
+	 * access log.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param start
+	 */
+	protected void publishResponse(ServerWebExchange exchange, RequestContext requestContext, long start) {
+		long sequence = accessLog.claim();
+		if (sequence < 0) {
+			return;
+		}
+		try {
+			long now = System.currentTimeMillis();
+			accessLog.get(sequence)
+					.setMessage("Response")
+					.setTimestamp(now)
+					.copy(requestContext)
+					.put(SlotContextMap.STATUS, MDCServerWebExchange.getStatusCode(exchange))
+					.put(SlotContextMap.LATENCY, Long.toString(now - start));
+		} finally {
+			accessLog.publish(sequence);
+		}
+	}
+
+	/**
+	 * Publish the completion of the response, with the latency as contextual information, in the asynchronous
+	 * access log.
+	 *
+	 * @param requestContext
+	 * @param start
+	 */
+	protected void publishComplete(RequestContext requestContext, long start) {
+		long sequence = accessLog.claim();
+		if (sequence < 0) {
+			return;
+		}
+		try {
+			long now = System.currentTimeMillis();
+			accessLog.get(sequence)
+					.setMessage("Complete")
+					.setTimestamp(now)
+					.copy(requestContext)
+					.put(SlotContextMap.LATENCY, Long.toString(now - start));
+		} finally {
+			accessLog.publish(sequence);
+		}
+	}
+
+	/**
+	 * Response decorator to record the end of the handler ({@link RequestTiming.Phase#HANDLER}) when the
+	 * body is passed to the response.
+	 */
+	static class TimedResponse extends ServerHttpResponseDecorator {
+
+		private final RequestTiming timing;
+
+		TimedResponse(ServerWebExchange exchange, RequestTiming timing) {
+			super(exchange.getResponse());
+			this.timing = timing;
+		}
+
+		@Override
+		public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+			timing.mark(RequestTiming.Phase.HANDLER);
+			return super.writeWith(body);
+		}
+
+		@Override
+		public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+			timing.mark(RequestTiming.Phase.HANDLER);
+			return super.writeAndFlushWith(body);
+		}
+
+		@Override
+		public Mono<Void> setComplete() {
+			timing.mark(RequestTiming.Phase.HANDLER);
+			return super.setComplete();
+		}
+
+	}
+
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.exceptions.ResponseException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * Reactive {@link WebFilter} to record a Micrometer {@link Timer} (count, total time and percentile histogram)
+ * for each request. The timer is tagged with:
+ *
+ * <ul>
+ * <li>uri - Route template of the handler (e.g. "/users/{id}") instead of the raw path, so that path variables
+ * do not inflate the cardinality. Requests without a route are tagged as NOT_FOUND, REDIRECTION, root or
+ * UNKNOWN.</li>
+ * <li>method - HTTP method, or OTHER for a non-standard method.</li>
+ * <li>status - HTTP status code.</li>
+ * <li>error - Error identifier of the {@link ResponseException} rendered by {@link ErrorWebFilter}
+ * (or none).</li>
+ * <li>operation - Operation of the {@link RequestContext} (e.g. set by
+ * {@link com.elevenpaths.almaraz.context.aspects.OperationRequestContextAspect}), or none.</li>
+ * </ul>
+ *
+ * The timers are cached by tags, so recording a request only requires a map lookup. The number of timers is
+ * limited (see {@link #setMaxTimers(int)}): once reached, the requests with new tags are recorded in an
+ * overflow timer (tagged as OVERFLOW except for the status). This web filter must be executed after
+ * {@link RequestContextWebFilter} and before {@link ErrorWebFilter}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MetricsWebFilter implements WebFilter {
+
+	/**
+	 * Default name of the metric. It is prefixed with "almaraz" so that it does not collide with the metric
+	 * of Spring Boot actuator (http.server.requests), which has other tag keys.
+	 */
+	public static final String DEFAULT_METRIC_NAME = "almaraz.http.server.requests";
+
+	/**
+	 * Tag value when there is no error or operation.
+	 */
+	public static final String NONE = "none";
+
+	/**
+	 * Tag value of the method when it is not a standard HTTP method.
+	 */
+	public static final String OTHER = "OTHER";
+
+	/**
+	 * Tag value of the overflow timers, when the maximum number of timers is reached.
+	 */
+	public static final String OVERFLOW = "OVERFLOW";
+
+	/**
+	 * Default maximum number of timers.
+	 */
+	public static final int DEFAULT_MAX_TIMERS = 1000;
+
+	/**
+	 * Registry of meters.
+	 */
+	private final MeterRegistry registry;
+
+	/**
+	 * Name of the metric.
+	 */
+	private final String metricName;
+
+	/**
+	 * Timers cached by tags.
+	 */
+	private final ConcurrentMap<MeterKey, Timer> timers = new ConcurrentHashMap<>();
+
+	/**
+	 * Publish a percentile histogram with the timer.
+	 */
+	private boolean percentileHistogram = true;
+
+	/**
+	 * Maximum number of timers (without the overflow ones).
+	 */
+	private int maxTimers = DEFAULT_MAX_TIMERS;
+
+	/**
+	 * Constructor with the default metric name.
+	 *
+	 * @param registry
+	 */
+	public MetricsWebFilter(MeterRegistry registry) {
+		this(registry, DEFAULT_METRIC_NAME);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param registry
+	 * @param metricName
+	 */
+	public MetricsWebFilter(MeterRegistry registry, String metricName) {
+		this.registry = registry;
+		this.metricName = metricName;
+	}
+
+	/**
+	 * Enable or disable the percentile histogram of the timers (enabled by default).
+	 *
+	 * @param percentileHistogram
+	 * @return {@link MetricsWebFilter}
+	 */
+	public MetricsWebFilter setPercentileHistogram(boolean percentileHistogram) {
+		this.percentileHistogram = percentileHistogram;
+		return this;
+	}
+
+	/**
+	 * Set the maximum number of timers (1000 by default). Once reached, the requests with new tags are recorded
+	 * in an overflow timer per status code.
+	 *
+	 * @param maxTimers
+	 * @return {@link MetricsWebFilter}
+	 */
+	public MetricsWebFilter setMaxTimers(int maxTimers) {
+		this.maxTimers = maxTimers;
+		return this;
+	}
+
+	/**
+	 * Web filter implementation to record the timer when the request is completed.
+	 */
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (LightweightWebFilter.isLightweight(exchange)) {
+			return chain.filter(exchange);
+		}
+		long start = System.nanoTime();
+		return RequestContext.context()
+				.flatMap(requestContext -> chain.filter(exchange)
+						.doFinally(signal -> record(exchange, requestContext, signal, System.nanoTime() - start)));
+	}
+
+	/**
+	 * Record the request in the timer of its tags.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @param signal
+	 * @param durationNanos
+	 */
+	protected void record(ServerWebExchange exchange, RequestContext requestContext, SignalType signal,
+			long durationNanos) {
+		int status = getStatus(exchange, signal);
+		MeterKey key = new MeterKey(getUri(exchange, status), getMethod(exchange), status,
+				getError(exchange), getOperation(requestContext));
+		Timer timer = timers.get(key);
+		if (timer == null) {
+			if (timers.size() >= maxTimers) {
+				key = new MeterKey(OVERFLOW, OVERFLOW, status, OVERFLOW, OVERFLOW);
+			}
+			timer = timers.computeIfAbsent(key, this::registerTimer);
+		}
+		timer.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get the HTTP method of the request. The non-standard methods are grouped as {@link #OTHER}, so that
+	 * clients cannot inflate the cardinality.
+	 *
+	 * @param exchange
+	 * @return HTTP method or {@link #OTHER}
+	 */
+	protected String getMethod(ServerWebExchange exchange) {
+		HttpMethod method = exchange.getRequest().getMethod();
+		return (method == null) ? OTHER : method.name();
+	}
+
+	/**
+	 * Register the timer of some tags.
+	 *
+	 * @param key
+	 * @return {@link Timer}
+	 */
+	protected Timer registerTimer(MeterKey key) {
+		return Timer.builder(metricName)
+				.tags(Tags.of(
+						"uri", key.uri,
+						"method", key.method,
+						"status", Integer.toString(key.status),
+						"error", key.error,
+						"operation", key.operation))
+				.publishPercentileHistogram(percentileHistogram)
+				.register(registry);
+	}
+
+	/**
+	 * Get the status code of the response. If not set, it is 500 when the chain failed, and 200 otherwise.
+	 *
+	 * @param exchange
+	 * @param signal
+	 * @return status code
+	 */
+	protected int getStatus(ServerWebExchange exchange, SignalType signal) {
+		HttpStatus status = exchange.getResponse().getStatusCode();
+		if (status != null) {
+			return status.value();
+		}
+		return (signal == SignalType.ON_ERROR) ? 500 : 200;
+	}
+
+	/**
+	 * Get the route template of the request (the best matching pattern of the handler mapping).
+	 *
+	 * @param exchange
+	 * @param status
+	 * @return route template or a constant if there is no route
+	 */
+	protected String getUri(ServerWebExchange exchange, int status) {
+		Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		if (pattern instanceof PathPattern) {
+			return ((PathPattern) pattern).getPatternString();
+		}
+		if (pattern != null) {
+			return pattern.toString();
+		}
+		if (status == 404) {
+			return "NOT_FOUND";
+		}
+		if (status >= 300 && status < 400) {
+			return "REDIRECTION";
+		}
+		String path = exchange.getRequest().getPath().pathWithinApplication().value();
+		if (path.isEmpty() || "/".equals(path)) {
+			return "root";
+		}
+		return "UNKNOWN";
+	}
+
+	/**
+	 * Get the error identifier of the {@link ResponseException} rendered by {@link ErrorWebFilter}.
+	 *
+	 * @param exchange
+	 * @return error identifier or {@link #NONE}
+	 */
+	protected String getError(ServerWebExchange exchange) {
+		ResponseException e = exchange.getAttribute(ErrorWebFilter.ERROR_ATTRIBUTE);
+		if (e == null || e.getError() == null) {
+			return NONE;
+		}
+		return e.getError();
+	}
+
+	/**
+	 * Get the operation of the {@link RequestContext}.
+	 *
+	 * @param requestContext
+	 * @return operation or {@link #NONE}
+	 */
+	protected String getOperation(RequestContext requestContext) {
+		String operation = requestContext.getOperation();
+		return (operation == null) ? NONE : operation;
+	}
+
+	/**
+	 * Tags of a timer.
+	 */
+	protected static final class MeterKey {
+
+		private final String uri;
+
+		private final String method;
+
+		private final int status;
+
+		private final String error;
+
+		private final String operation;
+
+		private final int hash;
+
+		MeterKey(String uri, String method, int status, String error, String operation) {
+			this.uri = uri;
+			this.method = method;
+			this.status = status;
+			this.error = error;
+			this.operation = operation;
+			int h = uri.hashCode();
+			h = 31 * h + method.hashCode();
+			h = 31 * h + status;
+			h = 31 * h + error.hashCode();
+			this.hash = 31 * h + operation.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof MeterKey)) {
+				return false;
+			}
+			MeterKey other = (MeterKey) obj;
+			return hash == other.hash
+					&& status == other.status
+					&& uri.equals(other.uri)
+					&& method.equals(other.method)
+					&& error.equals(other.error)
+					&& operation.equals(other.operation);
+		}
+
+	}
+
+}
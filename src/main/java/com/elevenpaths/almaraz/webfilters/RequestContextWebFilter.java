@@ -4,7 +4,6 @@
 
 package com.elevenpaths.almaraz.webfilters;
 
-import java.util.UUID;
 import java.util.function.Supplier;
 
 import org.springframework.http.server.reactive.ServerHttpRequest;
@@ -12,7 +11,13 @@ import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 
+import com.elevenpaths.almaraz.context.InFlightRegistry;
+import com.elevenpaths.almaraz.context.InFlightRequest;
 import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.ids.IdGenerator;
+import com.elevenpaths.almaraz.ids.RandomUuidIdGenerator;
+import com.elevenpaths.almaraz.logging.MDCContextPropagation;
+import com.elevenpaths.almaraz.logging.MDCServerWebExchange;
 import com.elevenpaths.almaraz.logging.ReactiveLogger;
 
 import reactor.core.publisher.Mono;
@@ -25,12 +30,15 @@ import reactor.util.context.Context;
  *
  * The web filter also initializes the {@link RequestContext} with the correlator and transaction ID:
  * <ul>
- * <li><b>Transaction ID</b> - UUID for the request</li>
+ * <li><b>Transaction ID</b> - Unique identifier for the request generated by an {@link IdGenerator} (by default,
+ * a random UUID)</li>
  * <li><b>Correlator</b> - Identifier to correlate a request or flow of requests in a microservices architecture.
  * The correlator can be specified by the client using a HTTP header (by default, "Unica-Correlator"). Web clients should include this
  * correlator in a HTTP header to maintain it during the rest of the web flow.</li>
  * </ul>
  *
+ * If an {@link InFlightRegistry} is provided, the request is registered (by transaction ID) while it is in flight.
+ *
  * Both correlator and transaction ID are logged as contextual information (MDC fields). It is possible to track all the log
  * entries of a request by transaction ID or all the log entries of a web flow by correlator with a log aggregator.
  *
@@ -61,6 +69,16 @@ public class RequestContextWebFilter implements WebFilter {
 	 */
 	private final String correlatorHeader;
 
+	/**
+	 * Generator of transaction IDs.
+	 */
+	private final IdGenerator idGenerator;
+
+	/**
+	 * Registry of the requests in flight (optional).
+	 */
+	private final InFlightRegistry inFlightRegistry;
+
 	/**
 	 * Default constructor.
 	 */
@@ -93,28 +111,102 @@ public class RequestContextWebFilter implements WebFilter {
 	 * @param correlatorHeader
 	 */
 	public <T extends RequestContext> RequestContextWebFilter(Supplier<T> contextSupplier, String correlatorHeader) {
+		this(contextSupplier, correlatorHeader, null);
+	}
+
+	/**
+	 * Constructor with custom contextSupplier, correlator header and generator of transaction IDs.
+	 *
+	 * @param contextSupplier
+	 * @param correlatorHeader
+	 * @param idGenerator
+	 */
+	public <T extends RequestContext> RequestContextWebFilter(
+			Supplier<T> contextSupplier, String correlatorHeader, IdGenerator idGenerator) {
+		this(contextSupplier, correlatorHeader, idGenerator, null);
+	}
+
+	/**
+	 * Constructor with custom contextSupplier, correlator header, generator of transaction IDs and registry of the
+	 * requests in flight.
+	 *
+	 * @param contextSupplier
+	 * @param correlatorHeader
+	 * @param idGenerator
+	 * @param inFlightRegistry
+	 */
+	public <T extends RequestContext> RequestContextWebFilter(Supplier<T> contextSupplier, String correlatorHeader,
+			IdGenerator idGenerator, InFlightRegistry inFlightRegistry) {
+		this.inFlightRegistry = inFlightRegistry;
 		this.contextSupplier = contextSupplier == null ? DEFAULT_CONTEXT_SUPPLIER : contextSupplier;
 		this.correlatorHeader = correlatorHeader == null ? DEFAULT_CORRELATOR_HEADER : correlatorHeader;
+		this.idGenerator = idGenerator == null ? new RandomUuidIdGenerator() : idGenerator;
 	}
 
 	/**
 	 * Implementation of the web filter that instantiates a {@link RequestContext} (or subclass) with
 	 * {@link #contextSupplier}. It also updates the reactive context with the {@link RequestContext}
-	 * instance.
+	 * instance. If {@link MDCContextPropagation} is enabled, the {@link RequestContext} is bound to MDC while
+	 * subscribing to the filter chain.
 	 * The web filter modifies neither the request nor the response.
 	 */
 	@Override
 	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (LightweightWebFilter.isLightweight(exchange)) {
+			return chain.filter(exchange);
+		}
 		ServerHttpRequest request = exchange.getRequest();
 		RequestContext requestContext = buildRequestContext(request);
 		exchange.getResponse().beforeCommit(() -> {
-			exchange.getResponse().getHeaders().set(correlatorHeader, requestContext.getCorrelator());
+			writeCorrelator(exchange, requestContext);
 			return Mono.empty();
 		});
-		return chain.filter(exchange)
+		Mono<Void> result;
+		if (inFlightRegistry != null) {
+			result = Mono.defer(() -> {
+				InFlightRequest inFlightRequest = register(exchange, requestContext);
+				return chain.filter(exchange)
+						.doFinally(signal -> inFlightRegistry.unregister(inFlightRequest));
+			});
+		} else {
+			result = chain.filter(exchange);
+		}
+		return MDCContextPropagation.bindOnSubscribe(result)
 				.subscriberContext(Context.of(RequestContext.class, requestContext));
 	}
 
+	/**
+	 * Register the request in the {@link InFlightRegistry} by transaction ID.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 * @return {@link InFlightRequest}
+	 */
+	protected InFlightRequest register(ServerWebExchange exchange, RequestContext requestContext) {
+		String id = requestContext.getTransactionId();
+		return inFlightRegistry.register((id == null) ? exchange.getRequest().getId() : id, requestContext,
+				MDCServerWebExchange.getMethod(exchange), MDCServerWebExchange.getPath(exchange));
+	}
+
+	/**
+	 * Write the correlator of the {@link RequestContext} in the response header.
+	 *
+	 * @param exchange
+	 * @param requestContext
+	 */
+	protected void writeCorrelator(ServerWebExchange exchange, RequestContext requestContext) {
+		exchange.getResponse().getHeaders().set(correlatorHeader, requestContext.getCorrelator());
+	}
+
+	/**
+	 * Get the registry of the requests in flight.
+	 *
+	 * @return {@link InFlightRegistry} (or null)
+	 */
+	InFlightRegistry getInFlightRegistry() {
+		return inFlightRegistry;
+	}
+
 	/**
 	 * Create a new {@link RequestContext} instance using {@link #newRequestContext()} and enrich
 	 * this context with the transaction ID and correlator using {@link #initRequestContext(RequestContext, ServerHttpRequest)}.
@@ -138,7 +230,7 @@ public class RequestContextWebFilter implements WebFilter {
 
 	/**
 	 * Initializes the {@link RequestContext} with the transaction ID and correlator.
-	 * The context instance includes a transaction ID (UUID) and a correlator (from the HTTP header of the request
+	 * The context instance includes a transaction ID and a correlator (from the HTTP header of the request
 	 * or the transaction ID if not available the header).
 	 *
 	 * @param requestContext
@@ -154,12 +246,12 @@ public class RequestContextWebFilter implements WebFilter {
 	}
 
 	/**
-	 * Get the transaction ID using a random UUID.
+	 * Get the transaction ID using the {@link #idGenerator}.
 	 *
 	 * @return transaction ID
 	 */
 	protected String getTransactionId() {
-		return UUID.randomUUID().toString();
+		return idGenerator.generateId();
 	}
 
 	/**
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive {@link WebFilter} to reply to GET and HEAD requests with static responses (e.g. version, health,
+ * readiness, API docs or robots.txt).
+ *
+ * Each response is registered with a path, a content type and a body. The body is encoded once (or when it is
+ * updated with {@link StaticResponse#setBody(byte[])}), together with its strong ETag, so replying to a request
+ * only requires a map lookup and wrapping the encoded body (without copying it). A request with an
+ * If-None-Match header matching the ETag is replied with 304 (not modified) and no body. A HEAD request is
+ * replied with the headers only.
+ *
+ * This filter should be executed before {@link RequestContextWebFilter} and {@link LoggerWebFilter}, so that
+ * the requests of the load balancers and monitoring systems do not create a context nor log entries.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class StaticResponseWebFilter implements WebFilter {
+
+	/**
+	 * Static responses by path.
+	 */
+	private final Map<String, StaticResponse> responses = new ConcurrentHashMap<>();
+
+	/**
+	 * Register a static response.
+	 *
+	 * @param path
+	 * @param contentType
+	 * @param body
+	 * @return {@link StaticResponse} (e.g. to update the body)
+	 */
+	public StaticResponse register(String path, MediaType contentType, byte[] body) {
+		StaticResponse response = new StaticResponse(contentType, body);
+		responses.put(path, response);
+		return response;
+	}
+
+	/**
+	 * Unregister a static response.
+	 *
+	 * @param path
+	 */
+	public void unregister(String path) {
+		responses.remove(path);
+	}
+
+	/**
+	 * Get a static response.
+	 *
+	 * @param path
+	 * @return {@link StaticResponse} (or null if not registered)
+	 */
+	public StaticResponse getStaticResponse(String path) {
+		return responses.get(path);
+	}
+
+	/**
+	 * Check if there are static responses.
+	 *
+	 * @return true if there are no static responses
+	 */
+	public boolean isEmpty() {
+		return responses.isEmpty();
+	}
+
+	/**
+	 * Implementation of the web filter that replies with the static response registered for the request path.
+	 */
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		ServerHttpRequest request = exchange.getRequest();
+		HttpMethod method = request.getMethod();
+		if (method != HttpMethod.GET && method != HttpMethod.HEAD) {
+			return chain.filter(exchange);
+		}
+		StaticResponse staticResponse = responses.get(request.getPath().value());
+		if (staticResponse == null) {
+			return chain.filter(exchange);
+		}
+		return renderStaticResponse(exchange, staticResponse.encoded);
+	}
+
+	/**
+	 * Render a static response.
+	 *
+	 * @param exchange
+	 * @param encoded
+	 * @return Mono<Void>
+	 */
+	private Mono<Void> renderStaticResponse(ServerWebExchange exchange, EncodedResponse encoded) {
+		ServerHttpResponse response = exchange.getResponse();
+		HttpHeaders headers = response.getHeaders();
+		headers.setETag(encoded.etag);
+		if (isNotModified(exchange.getRequest(), encoded.etag)) {
+			response.setStatusCode(HttpStatus.NOT_MODIFIED);
+			return response.setComplete();
+		}
+		response.setStatusCode(HttpStatus.OK);
+		headers.setContentType(encoded.contentType);
+		headers.setContentLength(encoded.body.length);
+		if (exchange.getRequest().getMethod() == HttpMethod.HEAD) {
+			return response.setComplete();
+		}
+		DataBuffer buffer = response.bufferFactory().wrap(encoded.body);
+		return response.writeWith(Mono.just(buffer));
+	}
+
+	/**
+	 * Check if the If-None-Match header of the request matches the ETag.
+	 *
+	 * @param request
+	 * @param etag
+	 * @return true if the response is not modified
+	 */
+	private static boolean isNotModified(ServerHttpRequest request, String etag) {
+		List<String> ifNoneMatch = request.getHeaders().get(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String values : ifNoneMatch) {
+			for (String value : values.split(",")) {
+				value = value.trim();
+				if (value.startsWith("W/")) {
+					value = value.substring(2);
+				}
+				if (value.equals(etag) || value.equals("*")) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Static response registered in a {@link StaticResponseWebFilter}.
+	 */
+	public static class StaticResponse {
+
+		/**
+		 * Encoded response. It is replaced when the body is updated.
+		 */
+		private volatile EncodedResponse encoded;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param contentType
+		 * @param body
+		 */
+		StaticResponse(MediaType contentType, byte[] body) {
+			this.encoded = new EncodedResponse(contentType, body);
+		}
+
+		/**
+		 * Get the content type.
+		 *
+		 * @return content type
+		 */
+		public MediaType getContentType() {
+			return encoded.contentType;
+		}
+
+		/**
+		 * Get the ETag of the body.
+		 *
+		 * @return ETag (quoted)
+		 */
+		public String getETag() {
+			return encoded.etag;
+		}
+
+		/**
+		 * Update the body (e.g. if the readiness of the service changes). The ETag is recomputed.
+		 *
+		 * @param body
+		 * @return this response
+		 */
+		public StaticResponse setBody(byte[] body) {
+			this.encoded = new EncodedResponse(encoded.contentType, body);
+			return this;
+		}
+
+	}
+
+	/**
+	 * Immutable encoded response: content type, body and ETag.
+	 */
+	private static final class EncodedResponse {
+
+		private final MediaType contentType;
+
+		private final byte[] body;
+
+		private final String etag;
+
+		EncodedResponse(MediaType contentType, byte[] body) {
+			this.contentType = contentType;
+			this.body = (body == null) ? new byte[] {} : body;
+			this.etag = "\"" + DigestUtils.md5DigestAsHex(this.body) + "\"";
+		}
+
+	}
+
+}
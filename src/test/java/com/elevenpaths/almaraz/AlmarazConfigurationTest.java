@@ -4,15 +4,31 @@
 
 package com.elevenpaths.almaraz;
 
+import java.time.Duration;
+import java.util.Collections;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.info.BuildProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.web.reactive.result.method.annotation.ArgumentResolverConfigurer;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.handler.DefaultWebFilterChain;
 
 import com.elevenpaths.almaraz.resolvers.ValidRequestBodyResolver;
+import com.elevenpaths.almaraz.webfilters.LightweightPathMatcher;
+import com.elevenpaths.almaraz.webfilters.LoggerWebFilter;
+import com.elevenpaths.almaraz.webfilters.StaticResponseWebFilter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 /**
  * Unit tests for {@link AlmarazConfiguration}.
  *
@@ -25,6 +41,7 @@ public class AlmarazConfigurationTest {
 	public void beans() {
 		AlmarazConfiguration config = new AlmarazConfiguration("/api");
 		Assert.assertNotNull(config.getJsonSchemaValidator());
+		Assert.assertNotNull(config.getIdGenerator());
 		Assert.assertNotNull(config.getContextWebFilter());
 		Assert.assertNotNull(config.getLoggerWebFilter());
 		Assert.assertNotNull(config.getErrorWebFilter());
@@ -43,6 +60,90 @@ public class AlmarazConfigurationTest {
 		Assert.assertNotNull(config.getVersionWebFilter());
 	}
 
+	@Test
+	public void staticResponseBean() {
+		AlmarazConfiguration config = new AlmarazConfiguration("/api");
+		Assert.assertNull(config.getStaticResponseWebFilter());
+
+		config = new AlmarazConfiguration("/api") {
+			@Override
+			protected void configureStaticResponses(StaticResponseWebFilter filter) {
+				filter.register("/robots.txt", MediaType.TEXT_PLAIN, "User-agent: *\nDisallow: /".getBytes());
+			}
+		};
+		Assert.assertNotNull(config.getStaticResponseWebFilter().getStaticResponse("/robots.txt"));
+	}
+
+	@Test
+	public void lightweightBean() {
+		AlmarazConfiguration config = new AlmarazConfiguration("/api");
+		Assert.assertNull(config.getLightweightWebFilter());
+
+		config = new AlmarazConfiguration("/api") {
+			@Override
+			protected void configureLightweightPaths(LightweightPathMatcher matcher) {
+				matcher.add(HttpMethod.GET, "/health");
+			}
+		};
+		Assert.assertNotNull(config.getLightweightWebFilter());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void fusedBean() {
+		ApplicationContext applicationContext = Mockito.mock(ApplicationContext.class);
+		Mockito.when(applicationContext.getBeanProvider(MeterRegistry.class))
+				.thenReturn(Mockito.mock(ObjectProvider.class));
+		AlmarazConfiguration config = new AlmarazConfiguration("/api");
+		Assert.assertNull(config.getAlmarazWebFilter(applicationContext));
+
+		config = new AlmarazConfiguration("/api") {
+			@Override
+			protected boolean isFusedWebFilter() {
+				return true;
+			}
+		};
+		Assert.assertNotNull(config.getAlmarazWebFilter(applicationContext));
+		Assert.assertNull(config.getContextWebFilter());
+		Assert.assertNull(config.getLoggerWebFilter());
+		Assert.assertNull(config.getMetricsWebFilter(applicationContext));
+		Assert.assertNull(config.getErrorWebFilter());
+		Assert.assertNull(config.getCompleteLocationHeaderWebFilter());
+		Assert.assertNull(config.getBasePathWebFilter());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void fusedBeanWithCustomFilters() {
+		ApplicationContext applicationContext = Mockito.mock(ApplicationContext.class);
+		Mockito.when(applicationContext.getBeanProvider(MeterRegistry.class))
+				.thenReturn(Mockito.mock(ObjectProvider.class));
+		int[] requests = new int[1];
+		AlmarazConfiguration config = new AlmarazConfiguration("/api") {
+			@Override
+			protected boolean isFusedWebFilter() {
+				return true;
+			}
+
+			@Override
+			protected LoggerWebFilter createLoggerWebFilter() {
+				return new LoggerWebFilter() {
+					@Override
+					protected void logRequest(ServerWebExchange exchange) {
+						requests[0]++;
+					}
+				};
+			}
+		};
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users"));
+		new DefaultWebFilterChain(e -> e.getResponse().setComplete(),
+				Collections.singletonList(config.getAlmarazWebFilter(applicationContext)))
+				.filter(exchange)
+				.block(Duration.ZERO);
+
+		Assert.assertEquals(1, requests[0]);
+	}
+
 	@Test
 	public void configureArgumentResolvers() {
 		ArgumentResolverConfigurer configurer = Mockito.mock(ArgumentResolverConfigurer.class);
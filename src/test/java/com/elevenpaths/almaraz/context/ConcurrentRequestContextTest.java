@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+package com.elevenpaths.almaraz.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+/**
+ * Unit tests for {@link ConcurrentRequestContext}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class ConcurrentRequestContextTest {
+
+	@Test
+	public void fluentApi() {
+		RequestContext requestContext = new ConcurrentRequestContext()
+				.setTransactionId("trans")
+				.setCorrelator("corr")
+				.put("custom", "value");
+
+		assertEquals("trans", requestContext.getTransactionId());
+		assertEquals("corr", requestContext.getCorrelator());
+		assertEquals("value", requestContext.getString("custom"));
+		assertEquals(3, requestContext.getContextMap().size());
+	}
+
+	@Test
+	public void snapshotIsImmutable() {
+		RequestContext requestContext = new ConcurrentRequestContext().setOperation("op1");
+		Map<String, String> snapshot = requestContext.snapshot();
+		requestContext.setOperation("op2").put("custom", "value");
+
+		assertEquals("op1", snapshot.get(ContextField.OPERATION));
+		assertNull(snapshot.get("custom"));
+		assertEquals("op2", requestContext.getOperation());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void snapshotIsReadOnly() {
+		new ConcurrentRequestContext().snapshot().put("custom", "value");
+	}
+
+	@Test
+	public void concurrentWriters() {
+		RequestContext requestContext = new ConcurrentRequestContext().setTransactionId("trans");
+		int writers = 1000;
+
+		Flux.range(0, writers)
+				.parallel(8)
+				.runOn(Schedulers.parallel())
+				.flatMap(i -> RequestContext.context()
+						.map(ctxt -> ctxt.setOperation("op-" + i).put("key-" + i, Integer.toString(i))))
+				.sequential()
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.blockLast();
+
+		assertEquals(writers + 2, requestContext.getContextMap().size());
+		for (int i = 0; i < writers; i++) {
+			assertEquals(Integer.toString(i), requestContext.getString("key-" + i));
+		}
+		assertEquals("trans", requestContext.getTransactionId());
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link HashedTimerWheel}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class HashedTimerWheelTest {
+
+	@Test
+	public void expireAfterSeveralRounds() throws InterruptedException {
+		try (HashedTimerWheel wheel = new HashedTimerWheel(TimeUnit.MILLISECONDS.toNanos(5), 3, "test-wheel")) {
+			wheel.start();
+			CountDownLatch latch = new CountDownLatch(1);
+			long start = System.nanoTime();
+			HashedTimerWheel.Timeout timeout = wheel.schedule(latch::countDown, 60, TimeUnit.MILLISECONDS);
+
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+			Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(60));
+			Assert.assertTrue(timeout.isExpired());
+			Assert.assertFalse(timeout.cancel());
+		}
+	}
+
+	@Test
+	public void cancel() throws InterruptedException {
+		try (HashedTimerWheel wheel = new HashedTimerWheel(TimeUnit.MILLISECONDS.toNanos(5), 8, "test-wheel")) {
+			wheel.start();
+			AtomicInteger expired = new AtomicInteger();
+			CountDownLatch latch = new CountDownLatch(1);
+			for (int i = 0; i < 1000; i++) {
+				HashedTimerWheel.Timeout timeout = wheel.schedule(expired::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+				Assert.assertTrue(timeout.cancel());
+			}
+			wheel.schedule(latch::countDown, 40, TimeUnit.MILLISECONDS);
+
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+			Assert.assertEquals(0, expired.get());
+		}
+	}
+
+	@Test
+	public void startOnSchedule() throws InterruptedException {
+		try (HashedTimerWheel wheel = new HashedTimerWheel(TimeUnit.MILLISECONDS.toNanos(5), 8, "test-wheel")) {
+			CountDownLatch latch = new CountDownLatch(1);
+			wheel.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void scheduleAfterClose() {
+		HashedTimerWheel wheel = new HashedTimerWheel(TimeUnit.MILLISECONDS.toNanos(5), 8, "test-wheel");
+		wheel.start();
+		wheel.close();
+		HashedTimerWheel.Timeout timeout = wheel.schedule(() -> { }, 10, TimeUnit.MILLISECONDS);
+
+		Assert.assertFalse(timeout.cancel());
+		Assert.assertFalse(timeout.isExpired());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidTick() {
+		new HashedTimerWheel(0, 8, "test-wheel");
+	}
+
+}
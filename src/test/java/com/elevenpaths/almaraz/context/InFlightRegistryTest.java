@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.elevenpaths.almaraz.utils.LoggingAppender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Unit tests for {@link InFlightRegistry}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class InFlightRegistryTest {
+
+	@Test
+	public void registerAndUnregister() {
+		try (InFlightRegistry registry = new InFlightRegistry(Duration.ofSeconds(10)).start()) {
+			RequestContext requestContext = new RequestContext().setTransactionId("trans");
+			InFlightRequest request = registry.register("trans", requestContext, "GET", "/test");
+			Assert.assertEquals(1, registry.size());
+			Assert.assertSame(request, registry.get("trans"));
+			Assert.assertEquals("/test", registry.getInFlightRequests().iterator().next().getPath());
+			Assert.assertFalse(request.isSlow());
+			Assert.assertNull(request.getPhase());
+
+			registry.unregister(request);
+			Assert.assertEquals(0, registry.size());
+			Assert.assertTrue(registry.getInFlightRequests().isEmpty());
+		}
+	}
+
+	@Test
+	public void watchdog() throws InterruptedException {
+		CountDownLatch slow = new CountDownLatch(1);
+		AtomicInteger flagged = new AtomicInteger();
+		InFlightRegistry registry = new InFlightRegistry(Duration.ofMillis(50), Duration.ofMillis(10)) {
+			@Override
+			protected void onSlowRequest(InFlightRequest request) {
+				flagged.incrementAndGet();
+				slow.countDown();
+			}
+		};
+		try {
+			registry.start();
+			RequestContext requestContext = new RequestContext().setTiming(new RequestTiming());
+			InFlightRequest fast = registry.register("fast", new RequestContext(), "GET", "/fast");
+			registry.unregister(fast);
+			InFlightRequest request = registry.register("slow", requestContext, "GET", "/slow");
+
+			Assert.assertTrue(slow.await(5, TimeUnit.SECONDS));
+			Assert.assertTrue(request.isSlow());
+			Assert.assertFalse(fast.isSlow());
+			Assert.assertEquals("handler", request.getPhase());
+			Assert.assertTrue(request.getElapsedMillis() >= 50);
+
+			// The slow request is flagged once, and it is still in flight
+			Thread.sleep(100);
+			Assert.assertEquals(1, flagged.get());
+			Assert.assertEquals(1, registry.size());
+		} finally {
+			registry.close();
+		}
+	}
+
+	@Test
+	public void logSlowRequest() {
+		try (InFlightRegistry registry = new InFlightRegistry(Duration.ofSeconds(10))) {
+			RequestContext requestContext = new RequestContext().setTransactionId("trans");
+			InFlightRequest request = registry.register("trans", requestContext, "GET", "/test");
+
+			LoggingAppender.clearEvents();
+			registry.onSlowRequest(request);
+			List<ILoggingEvent> events = LoggingAppender.getEvents();
+			Assert.assertEquals(1, events.size());
+			Assert.assertEquals("Slow request", events.get(0).getMessage());
+			Assert.assertEquals(Level.WARN, events.get(0).getLevel());
+
+			// Requests already completed are not logged
+			registry.unregister(request);
+			registry.onSlowRequest(request);
+			Assert.assertEquals(1, LoggingAppender.getEvents().size());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBudget() {
+		new InFlightRegistry(Duration.ZERO);
+	}
+
+}
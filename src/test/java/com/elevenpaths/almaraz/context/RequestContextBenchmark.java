@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+package com.elevenpaths.almaraz.context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * JMH benchmark of the {@link RequestContext} storage ({@link SlotContextMap}) against the former
+ * layout based on a {@link HashMap}.
+ *
+ * Each benchmark simulates the context lifecycle of a request: it is created and initialized by the
+ * web filters, read by handlers, and copied into MDC when logging. Run it with the GC profiler to compare
+ * the allocation rate:
+ *
+ * <code>
+ * make benchmark BENCHMARK="RequestContextBenchmark -prof gc"
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestContextBenchmark {
+
+	private final Map<String, String> mdc = new HashMap<>();
+
+	@Benchmark
+	public void slotContext(Blackhole bh) {
+		RequestContext requestContext = new RequestContext()
+				.setTransactionId("9b9d4b3e-4bfa-4c5c-8c7b-2c0e6f0a7f10")
+				.setCorrelator("corr")
+				.setOperation("op")
+				.setService("svc");
+		requestContext.put(ContextField.STATUS, "200");
+		requestContext.put(ContextField.LATENCY, "12");
+		bh.consume(requestContext.getTransactionId());
+		bh.consume(requestContext.getCorrelator());
+		bh.consume(requestContext.getOperation());
+		mdc.putAll(requestContext.getContextMap());
+		mdc.clear();
+	}
+
+	@Benchmark
+	public void typedValues(Blackhole bh) {
+		RequestContext requestContext = new RequestContext()
+				.put(ContextField.STATUS, 200L)
+				.put(ContextField.LATENCY, 12L)
+				.put("counter", 1L);
+		requestContext.put("counter", requestContext.getLong("counter", 0L) + 1);
+		bh.consume(requestContext.getLong(ContextField.LATENCY, 0L));
+		bh.consume(requestContext.getLong("counter", 0L));
+	}
+
+	@Benchmark
+	public void stringValues(Blackhole bh) {
+		HashMapRequestContext requestContext = new HashMapRequestContext()
+				.put(ContextField.STATUS, Long.toString(200L))
+				.put(ContextField.LATENCY, Long.toString(12L))
+				.put("counter", Long.toString(1L));
+		requestContext.put("counter", Long.toString(Long.valueOf(requestContext.getString("counter")) + 1));
+		bh.consume(Long.valueOf(requestContext.getString(ContextField.LATENCY)));
+		bh.consume(Long.valueOf(requestContext.getString("counter")));
+	}
+
+	@Benchmark
+	public void hashMapContext(Blackhole bh) {
+		HashMapRequestContext requestContext = new HashMapRequestContext()
+				.put(ContextField.TRANSACTION_ID, "9b9d4b3e-4bfa-4c5c-8c7b-2c0e6f0a7f10")
+				.put(ContextField.CORRELATOR, "corr")
+				.put(ContextField.OPERATION, "op")
+				.put(ContextField.SERVICE, "svc")
+				.put(ContextField.STATUS, "200")
+				.put(ContextField.LATENCY, "12");
+		bh.consume(requestContext.getString(ContextField.TRANSACTION_ID));
+		bh.consume(requestContext.getString(ContextField.CORRELATOR));
+		bh.consume(requestContext.getString(ContextField.OPERATION));
+		mdc.putAll(requestContext.contextMap);
+		mdc.clear();
+	}
+
+	/**
+	 * Former {@link RequestContext} layout, kept as baseline.
+	 */
+	private static class HashMapRequestContext {
+
+		private final Map<String, String> contextMap = new HashMap<>();
+
+		HashMapRequestContext put(String key, String value) {
+			contextMap.put(key, value);
+			return this;
+		}
+
+		String getString(String key) {
+			return contextMap.get(key);
+		}
+
+	}
+
+}
@@ -7,12 +7,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Map;
 
 import org.junit.Test;
 
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Signal;
 import reactor.test.StepVerifier;
+import reactor.util.context.Context;
 
 
 /**
@@ -59,6 +64,43 @@ public class RequestContextTest {
 		assertFalse(requestContext.getBoolean("customStr"));
 	}
 
+	@Test
+	public void typedValues() {
+		RequestContext requestContext = new RequestContext()
+				.put("counter", 5L)
+				.put("enabled", true)
+				.put("ratio", 0.5)
+				.put(ContextField.STATUS, 200L)
+				.put("text", "7");
+
+		assertEquals(5L, requestContext.getLong("counter", -1L));
+		assertEquals(200L, requestContext.getLong(ContextField.STATUS, -1L));
+		assertTrue(requestContext.getBoolean("enabled", false));
+		assertEquals(0.5, requestContext.getDouble("ratio", 0.0), 0.0);
+
+		// Typed accessors never parse
+		assertEquals(-1L, requestContext.getLong("text", -1L));
+		assertEquals(-1L, requestContext.getLong("enabled", -1L));
+		assertEquals(-1L, requestContext.getLong("missing", -1L));
+
+		// Boxed accessors support typed and string values
+		assertEquals(Long.valueOf(5L), requestContext.getLong("counter"));
+		assertEquals(Long.valueOf(7L), requestContext.getLong("text"));
+		assertTrue(requestContext.getBoolean("enabled"));
+
+		// Values are formatted lazily by the map view
+		Map<String, String> context = requestContext.getContextMap();
+		assertEquals("5", context.get("counter"));
+		assertEquals("200", context.get(ContextField.STATUS));
+		assertEquals("true", context.get("enabled"));
+		assertEquals("0.5", context.get("ratio"));
+
+		requestContext.put("counter", 6L);
+		assertEquals("6", context.get("counter"));
+		requestContext.put("counter", (Long) null);
+		assertNull(context.get("counter"));
+	}
+
 	@Test
 	public void requestContextReactiveStream() {
 		RequestContext requestContext = new RequestContext();
@@ -68,4 +110,35 @@ public class RequestContextTest {
 		.assertNext(rc -> "transId".equals(rc.getTransactionId())).verifyComplete();
 	}
 
+	@Test
+	public void emptyContext() {
+		RequestContext requestContext = RequestContext.from(Context.empty());
+		assertSame(RequestContext.EMPTY, requestContext);
+		assertTrue(requestContext.isEmpty());
+
+		requestContext.setTransactionId("transId").put("custom", "value").put("counter", 1L);
+		assertNull(requestContext.getTransactionId());
+		assertNull(requestContext.getString("custom"));
+		assertEquals(-1L, requestContext.getLong("counter", -1L));
+		assertTrue(requestContext.getContextMap().isEmpty());
+
+		StepVerifier.create(RequestContext.context())
+			.expectNext(RequestContext.EMPTY)
+			.verifyComplete();
+	}
+
+	@Test
+	public void fromContextAndSignal() {
+		RequestContext requestContext = new RequestContext().setTransactionId("transId");
+		Context context = Context.of(RequestContext.class, requestContext);
+		assertSame(requestContext, RequestContext.from(context));
+		assertFalse(RequestContext.from(context).isEmpty());
+
+		Signal<?> signal = Mono.just("test")
+				.materialize()
+				.subscriberContext(context)
+				.block();
+		assertSame(requestContext, RequestContext.from(signal));
+	}
+
 }
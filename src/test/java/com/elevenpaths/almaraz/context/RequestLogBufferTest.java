@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RequestLogBuffer}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RequestLogBufferTest {
+
+	@Test
+	public void flush() {
+		List<String> logged = new ArrayList<>();
+		RequestLogBuffer logBuffer = new RequestLogBuffer(2);
+		Assert.assertTrue(logBuffer.add(() -> logged.add("1")));
+		Assert.assertTrue(logBuffer.add(() -> logged.add("2")));
+		Assert.assertFalse(logBuffer.add(() -> logged.add("3")));
+		Assert.assertEquals(2, logBuffer.size());
+		Assert.assertEquals(1, logBuffer.getOverflowCount());
+		Assert.assertTrue(logged.isEmpty());
+
+		logBuffer.flush();
+		Assert.assertEquals(Arrays.asList("1", "2"), logged);
+		Assert.assertTrue(logBuffer.isClosed());
+		Assert.assertFalse(logBuffer.add(() -> logged.add("4")));
+		logBuffer.flush();
+		Assert.assertEquals(Arrays.asList("1", "2"), logged);
+	}
+
+	@Test
+	public void discard() {
+		List<String> logged = new ArrayList<>();
+		RequestLogBuffer logBuffer = new RequestLogBuffer();
+		logBuffer.add(() -> logged.add("1"));
+		logBuffer.discard();
+		logBuffer.flush();
+		Assert.assertTrue(logged.isEmpty());
+		Assert.assertTrue(logBuffer.isClosed());
+		Assert.assertEquals(0, logBuffer.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCapacity() {
+		new RequestLogBuffer(0);
+	}
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.context;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.elevenpaths.almaraz.context.RequestTiming.Phase;
+
+/**
+ * Unit tests for {@link RequestTiming}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RequestTimingTest {
+
+	@Test
+	public void phases() {
+		RequestTiming timing = new RequestTiming(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+		timing.addValidation(TimeUnit.MILLISECONDS.toNanos(2))
+				.addValidation(TimeUnit.MILLISECONDS.toNanos(1))
+				.mark(Phase.HANDLER);
+		long handler = timing.getNanos(Phase.HANDLER);
+		timing.mark(Phase.HANDLER)
+				.mark(Phase.FIRST_BYTE);
+
+		Assert.assertEquals(handler, timing.getNanos(Phase.HANDLER));
+		Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(3), timing.getDuration(Phase.VALIDATION));
+		Assert.assertEquals(handler - TimeUnit.MILLISECONDS.toNanos(3), timing.getDuration(Phase.HANDLER));
+		Assert.assertTrue(timing.getDuration(Phase.FIRST_BYTE) >= handler);
+		Assert.assertFalse(timing.isRecorded(Phase.ERROR));
+		Assert.assertEquals(0, timing.getDuration(Phase.ERROR));
+		Assert.assertFalse(timing.isRecorded(Phase.COMPLETE));
+	}
+
+	@Test
+	public void error() {
+		RequestTiming timing = new RequestTiming();
+		timing.mark(Phase.HANDLER).mark(Phase.ERROR);
+		Assert.assertEquals(0, timing.getDuration(Phase.ERROR));
+
+		timing.mark(Phase.FIRST_BYTE);
+		Assert.assertTrue(timing.isRecorded(Phase.ERROR));
+		Assert.assertEquals(Math.max(1, timing.getNanos(Phase.FIRST_BYTE) - timing.getNanos(Phase.ERROR)),
+				timing.getDuration(Phase.ERROR));
+	}
+
+	@Test
+	public void currentPhase() {
+		RequestTiming timing = new RequestTiming();
+		Assert.assertEquals(Phase.HANDLER, timing.getCurrentPhase());
+		timing.mark(Phase.HANDLER);
+		Assert.assertEquals(Phase.FIRST_BYTE, timing.getCurrentPhase());
+		timing.mark(Phase.ERROR);
+		Assert.assertEquals(Phase.ERROR, timing.getCurrentPhase());
+		timing.mark(Phase.FIRST_BYTE);
+		Assert.assertEquals(Phase.COMPLETE, timing.getCurrentPhase());
+	}
+
+	@Test
+	public void serverTiming() {
+		RequestTiming timing = new RequestTiming(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10));
+		Assert.assertEquals("", timing.appendServerTiming(new StringBuilder()).toString());
+
+		timing.addValidation(1_250_000).mark(Phase.FIRST_BYTE);
+		String serverTiming = timing.appendServerTiming(new StringBuilder()).toString();
+		Assert.assertTrue(serverTiming, serverTiming.matches(
+				"validation;dur=1\\.250, handler;dur=\\d+\\.\\d{3}, ttfb;dur=\\d+\\.\\d{3}"));
+	}
+
+	@Test
+	public void appendMillis() {
+		Assert.assertEquals("0.000", RequestTiming.appendMillis(new StringBuilder(), 999).toString());
+		Assert.assertEquals("0.005", RequestTiming.appendMillis(new StringBuilder(), 5_000).toString());
+		Assert.assertEquals("1.050", RequestTiming.appendMillis(new StringBuilder(), 1_050_999).toString());
+		Assert.assertEquals("1234.567", RequestTiming.appendMillis(new StringBuilder(), 1_234_567_000).toString());
+	}
+
+}
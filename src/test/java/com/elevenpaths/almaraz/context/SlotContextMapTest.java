@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+package com.elevenpaths.almaraz.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SlotContextMap}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class SlotContextMapTest {
+
+	@Test
+	public void slotsForContextFields() {
+		for (int slot = 0; slot < SlotContextMap.SLOT_COUNT; slot++) {
+			assertEquals(slot, SlotContextMap.slotOf(SlotContextMap.keyOf(slot)));
+		}
+		assertEquals(-1, SlotContextMap.slotOf("custom"));
+	}
+
+	@Test
+	public void putAndGet() {
+		SlotContextMap map = new SlotContextMap();
+		map.putSlot(SlotContextMap.TRANSACTION_ID, "trans");
+		map.put(ContextField.CORRELATOR, "corr");
+		map.put("custom", "value");
+
+		assertEquals("trans", map.get(ContextField.TRANSACTION_ID));
+		assertEquals("corr", map.getSlot(SlotContextMap.CORRELATOR));
+		assertEquals("value", map.get("custom"));
+		assertNull(map.get(ContextField.OPERATION));
+		assertNull(map.get("unknown"));
+		assertEquals(3, map.size());
+		assertTrue(map.containsKey("custom"));
+		assertFalse(map.containsKey(ContextField.USER));
+	}
+
+	@Test
+	public void putNullRemoves() {
+		SlotContextMap map = new SlotContextMap();
+		map.put(ContextField.OPERATION, "op");
+		map.put("custom", "value");
+		map.put(ContextField.OPERATION, null);
+		map.remove("custom");
+
+		assertTrue(map.isEmpty());
+		assertFalse(map.containsKey(ContextField.OPERATION));
+	}
+
+	@Test
+	public void mapView() {
+		SlotContextMap map = new SlotContextMap();
+		map.put(ContextField.TRANSACTION_ID, "trans");
+		map.put(ContextField.LATENCY, "10");
+		map.put("custom", "value");
+
+		Map<String, String> expected = new HashMap<>();
+		expected.put(ContextField.TRANSACTION_ID, "trans");
+		expected.put(ContextField.LATENCY, "10");
+		expected.put("custom", "value");
+		assertEquals(expected, map);
+		assertEquals(expected, new HashMap<>(map));
+
+		Map<String, String> visited = new HashMap<>();
+		map.forEach(visited::put);
+		assertEquals(expected, visited);
+	}
+
+	@Test
+	public void typedValues() {
+		SlotContextMap map = new SlotContextMap();
+		map.putLong(ContextField.LATENCY, 12L);
+		map.putLong("counter", 1L);
+		map.putBoolean("flag", true);
+		map.putDouble("ratio", 1.5);
+
+		assertEquals(12L, map.getLong(ContextField.LATENCY, 0L));
+		assertEquals(Long.valueOf(12L), map.getValue(ContextField.LATENCY));
+		assertEquals(Boolean.TRUE, map.getValue("flag"));
+		assertEquals(Double.valueOf(1.5), map.getValue("ratio"));
+		assertEquals("12", map.get(ContextField.LATENCY));
+		assertEquals("1", map.get("counter"));
+
+		map.putLong("counter", 2L);
+		assertEquals("2", map.get("counter"));
+		assertEquals(4, map.size());
+
+		map.put(ContextField.LATENCY, "fast");
+		assertEquals(0L, map.getLong(ContextField.LATENCY, 0L));
+		assertEquals("fast", map.getValue(ContextField.LATENCY));
+	}
+
+	@Test
+	public void copyDoesNotShareTypedValues() {
+		SlotContextMap map = new SlotContextMap();
+		map.putLong("counter", 1L);
+		SlotContextMap copy = new SlotContextMap(map);
+		map.putLong("counter", 2L);
+		assertEquals(1L, copy.getLong("counter", 0L));
+	}
+
+	@Test
+	public void iteratorRemove() {
+		SlotContextMap map = new SlotContextMap();
+		map.put(ContextField.TRANSACTION_ID, "trans");
+		map.put("custom", "value");
+		Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+		assertTrue(map.isEmpty());
+		assertNull(map.getSlot(SlotContextMap.TRANSACTION_ID));
+	}
+
+	@Test
+	public void clear() {
+		SlotContextMap map = new SlotContextMap();
+		map.put(ContextField.TRANSACTION_ID, "trans");
+		map.put("custom", "value");
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get("custom"));
+	}
+
+}
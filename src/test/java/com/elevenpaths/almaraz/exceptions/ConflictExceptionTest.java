@@ -26,4 +26,26 @@ public class ConflictExceptionTest {
 		Assert.assertNull(e.getHeaders());
 		Assert.assertNull(e.getDetailMap());
 	}
+
+	@Test
+	public void sharedInstance() {
+		Assert.assertNotSame(ConflictException.instance(), ConflictException.instance());
+		ResponseException.setStacklessClientErrors(true);
+		try {
+			ConflictException e = ConflictException.instance();
+			Assert.assertSame(e, ConflictException.instance());
+			Assert.assertEquals(HttpStatus.CONFLICT, e.getStatus());
+			Assert.assertEquals(ErrorCodes.CONFLICT, e.getError());
+			Assert.assertEquals(0, e.getStackTrace().length);
+			try {
+				e.addHeader("header1", "header1 value");
+				Assert.fail();
+			} catch (UnsupportedOperationException e1) {
+				Assert.assertNull(e.getHeaders());
+			}
+		} finally {
+			ResponseException.setStacklessClientErrors(false);
+		}
+	}
+
 }
@@ -26,4 +26,26 @@ public class ForbiddenExceptionTest {
 		Assert.assertNull(e.getHeaders());
 		Assert.assertNull(e.getDetailMap());
 	}
+
+	@Test
+	public void sharedInstance() {
+		Assert.assertNotSame(ForbiddenException.instance(), ForbiddenException.instance());
+		ResponseException.setStacklessClientErrors(true);
+		try {
+			ForbiddenException e = ForbiddenException.instance();
+			Assert.assertSame(e, ForbiddenException.instance());
+			Assert.assertEquals(HttpStatus.FORBIDDEN, e.getStatus());
+			Assert.assertEquals(ErrorCodes.FORBIDDEN, e.getError());
+			Assert.assertEquals(0, e.getStackTrace().length);
+			try {
+				e.addHeader("header1", "header1 value");
+				Assert.fail();
+			} catch (UnsupportedOperationException e1) {
+				Assert.assertNull(e.getHeaders());
+			}
+		} finally {
+			ResponseException.setStacklessClientErrors(false);
+		}
+	}
+
 }
@@ -47,4 +47,26 @@ public class NotFoundExceptionTest {
 		Assert.assertEquals("reason", e.getReason());
 		Assert.assertEquals(t, e.getCause());
 	}
+
+	@Test
+	public void sharedInstance() {
+		Assert.assertNotSame(NotFoundException.instance(), NotFoundException.instance());
+		ResponseException.setStacklessClientErrors(true);
+		try {
+			NotFoundException e = NotFoundException.instance();
+			Assert.assertSame(e, NotFoundException.instance());
+			Assert.assertEquals(HttpStatus.NOT_FOUND, e.getStatus());
+			Assert.assertNull(e.getError());
+			Assert.assertEquals(0, e.getStackTrace().length);
+			try {
+				e.addHeader("header1", "header1 value");
+				Assert.fail();
+			} catch (UnsupportedOperationException e1) {
+				Assert.assertNull(e.getHeaders());
+			}
+		} finally {
+			ResponseException.setStacklessClientErrors(false);
+		}
+	}
+
 }
@@ -120,4 +120,17 @@ public class ResponseExceptionTest {
 		Assert.assertEquals(expectedException, actualException);
 	}
 
+	@Test
+	public void stacklessClientErrors() {
+		ResponseException.setStacklessClientErrors(true);
+		try {
+			Assert.assertEquals(0, new ResponseException(HttpStatus.I_AM_A_TEAPOT).getStackTrace().length);
+			Assert.assertNotEquals(0, new ResponseException(HttpStatus.BAD_GATEWAY).getStackTrace().length);
+			Assert.assertNotEquals(0, new ServerException("reason").getStackTrace().length);
+		} finally {
+			ResponseException.setStacklessClientErrors(false);
+		}
+		Assert.assertNotEquals(0, new ResponseException(HttpStatus.I_AM_A_TEAPOT).getStackTrace().length);
+	}
+
 }
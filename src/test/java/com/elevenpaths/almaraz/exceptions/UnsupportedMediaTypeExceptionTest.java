@@ -26,4 +26,26 @@ public class UnsupportedMediaTypeExceptionTest {
 		Assert.assertNull(e.getHeaders());
 		Assert.assertNull(e.getDetailMap());
 	}
+
+	@Test
+	public void sharedInstance() {
+		Assert.assertNotSame(UnsupportedMediaTypeException.instance(), UnsupportedMediaTypeException.instance());
+		ResponseException.setStacklessClientErrors(true);
+		try {
+			UnsupportedMediaTypeException e = UnsupportedMediaTypeException.instance();
+			Assert.assertSame(e, UnsupportedMediaTypeException.instance());
+			Assert.assertEquals(HttpStatus.UNSUPPORTED_MEDIA_TYPE, e.getStatus());
+			Assert.assertNull(e.getError());
+			Assert.assertEquals(0, e.getStackTrace().length);
+			try {
+				e.addHeader("header1", "header1 value");
+				Assert.fail();
+			} catch (UnsupportedOperationException e1) {
+				Assert.assertNull(e.getHeaders());
+			}
+		} finally {
+			ResponseException.setStacklessClientErrors(false);
+		}
+	}
+
 }
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CounterIdGenerator}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class CounterIdGeneratorTest {
+
+	@Test
+	public void generateId() {
+		IdGenerator generator = new CounterIdGenerator("node");
+		Assert.assertEquals("node-0", generator.generateId());
+		Assert.assertEquals("node-1", generator.generateId());
+	}
+
+	@Test
+	public void generateIdConcurrently() {
+		IdGenerator generator = new CounterIdGenerator();
+		Set<String> ids = ConcurrentHashMap.newKeySet();
+		IntStream.range(0, 10000).parallel().forEach(i -> ids.add(generator.generateId()));
+		Assert.assertEquals(10000, ids.size());
+	}
+
+}
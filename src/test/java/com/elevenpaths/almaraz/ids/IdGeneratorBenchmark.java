@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Multi-threaded JMH benchmark of the {@link IdGenerator} implementations against {@link UUID#randomUUID()},
+ * which shares a {@link java.security.SecureRandom} between threads. The number of threads can be changed
+ * with the JMH option "-t".
+ *
+ * <code>
+ * make benchmark BENCHMARK="IdGeneratorBenchmark -t 8"
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class IdGeneratorBenchmark {
+
+	private final IdGenerator randomUuid = new RandomUuidIdGenerator();
+
+	private final IdGenerator timeOrdered = new TimeOrderedIdGenerator();
+
+	private final IdGenerator counter = new CounterIdGenerator();
+
+	@Benchmark
+	public String secureRandomUuid() {
+		return UUID.randomUUID().toString();
+	}
+
+	@Benchmark
+	public String randomUuid() {
+		return randomUuid.generateId();
+	}
+
+	@Benchmark
+	public String timeOrdered() {
+		return timeOrdered.generateId();
+	}
+
+	@Benchmark
+	public String counter() {
+		return counter.generateId();
+	}
+
+}
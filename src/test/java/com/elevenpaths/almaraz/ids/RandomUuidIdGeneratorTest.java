@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RandomUuidIdGenerator}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RandomUuidIdGeneratorTest {
+
+	@Test
+	public void generateId() {
+		IdGenerator generator = new RandomUuidIdGenerator();
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 1000; i++) {
+			String id = generator.generateId();
+			UUID uuid = UUID.fromString(id);
+			Assert.assertEquals(id, uuid.toString());
+			Assert.assertEquals(4, uuid.version());
+			Assert.assertEquals(2, uuid.variant());
+			ids.add(id);
+		}
+		Assert.assertEquals(1000, ids.size());
+	}
+
+}
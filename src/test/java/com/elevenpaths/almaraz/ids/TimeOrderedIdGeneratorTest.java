@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.ids;
+
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link TimeOrderedIdGenerator}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class TimeOrderedIdGeneratorTest {
+
+	@Test
+	public void generateId() {
+		IdGenerator generator = new TimeOrderedIdGenerator();
+		long start = System.currentTimeMillis();
+		String previous = generator.generateId();
+		for (int i = 0; i < 10000; i++) {
+			String id = generator.generateId();
+			Assert.assertTrue(id.compareTo(previous) > 0);
+			previous = id;
+		}
+		UUID uuid = UUID.fromString(previous);
+		Assert.assertEquals(previous, uuid.toString());
+		Assert.assertEquals(7, uuid.version());
+		Assert.assertEquals(2, uuid.variant());
+		Assert.assertTrue((uuid.getMostSignificantBits() >>> 16) >= start);
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.elevenpaths.almaraz.exceptions.NotFoundException;
+import com.elevenpaths.almaraz.exceptions.ResponseException;
+import com.elevenpaths.almaraz.exceptions.ServerException;
+import com.elevenpaths.almaraz.utils.LoggingAppender;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Unit tests for {@link ErrorLogDeduplicator}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class ErrorLogDeduplicatorTest {
+
+	@Test
+	public void deduplicate() {
+		List<String> summaries = new ArrayList<>();
+		ErrorLogDeduplicator deduplicator = new ErrorLogDeduplicator(Duration.ofMinutes(1)) {
+			@Override
+			protected void logSummary(String error, String exception, long count) {
+				summaries.add(error + "|" + count);
+			}
+		};
+		IllegalStateException cause = new IllegalStateException("test");
+		Assert.assertTrue(deduplicator.shouldLog(new ServerException(cause)));
+		Assert.assertFalse(deduplicator.shouldLog(new ServerException(cause)));
+		Assert.assertFalse(deduplicator.shouldLog(new ServerException("other reason", cause)));
+		Assert.assertTrue(deduplicator.shouldLog(new ServerException(new IllegalArgumentException())));
+		Assert.assertTrue(deduplicator.shouldLog(new NotFoundException("not found")));
+		Assert.assertEquals(3, deduplicator.size());
+
+		// Only the errors with occurrences in the window are summarized
+		deduplicator.flush();
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertEquals("server_error|2", summaries.get(0));
+		Assert.assertEquals(1, deduplicator.size());
+
+		// The errors without occurrences in a window are forgotten
+		deduplicator.flush();
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertEquals(0, deduplicator.size());
+		Assert.assertTrue(deduplicator.shouldLog(new ServerException(cause)));
+	}
+
+	@Test
+	public void bounded() {
+		List<String> summaries = new ArrayList<>();
+		ErrorLogDeduplicator deduplicator = new ErrorLogDeduplicator(Duration.ofMinutes(1), 2) {
+			@Override
+			protected void logSummary(String error, String exception, long count) {
+				summaries.add(error + "|" + count);
+			}
+		};
+		Assert.assertTrue(deduplicator.shouldLog(new ResponseException(null, "error1", null)));
+		Assert.assertTrue(deduplicator.shouldLog(new ResponseException(null, "error2", null)));
+		for (int i = 0; i < 100; i++) {
+			Assert.assertFalse(deduplicator.shouldLog(new ResponseException(null, "error" + (i + 3), null)));
+		}
+		Assert.assertEquals(3, deduplicator.size());
+
+		deduplicator.flush();
+		Assert.assertEquals(1, summaries.size());
+		Assert.assertEquals("null|100", summaries.get(0));
+	}
+
+	@Test
+	public void logSummary() {
+		ErrorLogDeduplicator deduplicator = new ErrorLogDeduplicator(Duration.ofMinutes(1));
+		LoggingAppender.clearEvents();
+		deduplicator.logSummary("server_error", "java.lang.IllegalStateException", 5);
+		List<ILoggingEvent> events = LoggingAppender.getEvents();
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals("Error summary", events.get(0).getMessage());
+		Assert.assertEquals(Level.WARN, events.get(0).getLevel());
+	}
+
+	@Test
+	public void summaryThread() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(1);
+		try (ErrorLogDeduplicator deduplicator = new ErrorLogDeduplicator(Duration.ofMillis(20)) {
+			@Override
+			protected void logSummary(String error, String exception, long count) {
+				latch.countDown();
+			}
+		}) {
+			deduplicator.start();
+			ServerException e = new ServerException("test");
+			deduplicator.shouldLog(e);
+			deduplicator.shouldLog(e);
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void startOnFirstError() throws InterruptedException {
+		List<String> exceptions = new ArrayList<>();
+		CountDownLatch latch = new CountDownLatch(1);
+		try (ErrorLogDeduplicator deduplicator = new ErrorLogDeduplicator(Duration.ofMillis(20)) {
+			@Override
+			protected void logSummary(String error, String exception, long count) {
+				exceptions.add(exception);
+				latch.countDown();
+			}
+		}) {
+			IllegalStateException cause = new IllegalStateException("test");
+			deduplicator.shouldLog(new ServerException(cause));
+			deduplicator.shouldLog(new ServerException(cause));
+			Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+			Assert.assertEquals("java.lang.IllegalStateException at " + cause.getStackTrace()[0], exceptions.get(0));
+		}
+	}
+
+	@Test
+	public void logEveryErrorWhenClosed() {
+		ErrorLogDeduplicator deduplicator = new ErrorLogDeduplicator(Duration.ofMinutes(1));
+		deduplicator.close();
+		ServerException e = new ServerException("test");
+		Assert.assertTrue(deduplicator.shouldLog(e));
+		Assert.assertTrue(deduplicator.shouldLog(e));
+		Assert.assertEquals(0, deduplicator.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidWindow() {
+		new ErrorLogDeduplicator(Duration.ZERO);
+	}
+
+}
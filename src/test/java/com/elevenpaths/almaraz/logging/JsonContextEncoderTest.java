@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Unit tests for {@link JsonContextEncoder}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class JsonContextEncoderTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private LoggerContext loggerContext;
+
+	private Logger logger;
+
+	private JsonContextEncoder encoder;
+
+	@Before
+	public void setUp() {
+		loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+		logger = loggerContext.getLogger(JsonContextEncoderTest.class);
+		encoder = new JsonContextEncoder();
+		encoder.setContext(loggerContext);
+		encoder.setCustomFields("{\"svc\":\"almaraz\",\"version\":2}");
+		encoder.start();
+	}
+
+	@Test
+	public void encode() throws Exception {
+		Map<String, String> mdc = new RequestContext()
+				.setTransactionId("trans")
+				.setCorrelator("corr")
+				.put(ContextField.STATUS, "200")
+				.put(ContextField.LATENCY, 12L)
+				.put("custom", "café \"😀\"\n")
+				.getContextMap();
+		LoggingEvent event = newEvent("Response", mdc);
+		event.setTimeStamp(1583056800123L);
+
+		byte[] bytes = encoder.encode(event);
+		String line = new String(bytes, StandardCharsets.UTF_8);
+		assertTrue(line.startsWith("{\"time\":\"2020-03-01T10:00:00.123Z\",\"lvl\":\"INFO\""));
+		assertTrue(line.endsWith("}\n"));
+
+		JsonNode json = mapper.readTree(bytes);
+		assertEquals(JsonContextEncoderTest.class.getName(), json.get("logger").asText());
+		assertEquals("Response", json.get("msg").asText());
+		assertEquals("almaraz", json.get("svc").asText());
+		assertEquals(2, json.get("version").asInt());
+		assertEquals("trans", json.get(ContextField.TRANSACTION_ID).asText());
+		assertEquals("corr", json.get(ContextField.CORRELATOR).asText());
+		assertTrue(json.get(ContextField.STATUS).isInt());
+		assertEquals(200, json.get(ContextField.STATUS).asInt());
+		assertTrue(json.get(ContextField.LATENCY).isInt());
+		assertEquals(12, json.get(ContextField.LATENCY).asInt());
+		assertEquals("café \"😀\"\n", json.get("custom").asText());
+		assertFalse(json.has("exception"));
+	}
+
+	@Test
+	public void nonNumericStatus() throws Exception {
+		Map<String, String> mdc = new HashMap<>();
+		mdc.put(ContextField.STATUS, "unknown");
+		mdc.put(ContextField.LATENCY, "007");
+		JsonNode json = mapper.readTree(encoder.encode(newEvent("Response", mdc)));
+		assertEquals("unknown", json.get(ContextField.STATUS).asText());
+		assertEquals("007", json.get(ContextField.LATENCY).asText());
+	}
+
+	@Test
+	public void escapedAndMultiByteCharacters() throws Exception {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 170; i++) {
+			value.append('\u0001');
+		}
+		for (int i = 0; i < 170; i++) {
+			value.append('\u4e00');
+		}
+		Map<String, String> mdc = new HashMap<>();
+		mdc.put("custom", value.toString());
+		JsonNode json = mapper.readTree(encoder.encode(newEvent("Response", mdc)));
+		assertEquals(value.toString(), json.get("custom").asText());
+	}
+
+	@Test
+	public void exception() throws Exception {
+		LoggingEvent event = new LoggingEvent(Logger.FQCN, logger, Level.ERROR, "Error",
+				new IllegalStateException("test error"), null);
+		event.setMDCPropertyMap(new HashMap<>());
+		JsonNode json = mapper.readTree(encoder.encode(event));
+		assertEquals("ERROR", json.get("lvl").asText());
+		assertTrue(json.get("exception").asText().contains("java.lang.IllegalStateException: test error"));
+	}
+
+	@Test
+	public void invalidCustomFields() {
+		JsonContextEncoder invalid = new JsonContextEncoder();
+		invalid.setContext(loggerContext);
+		invalid.setCustomFields("[1, 2]");
+		invalid.start();
+		assertFalse(invalid.isStarted());
+	}
+
+	@Test
+	public void allocationPerEvent() {
+		Map<String, String> mdc = new RequestContext()
+				.setTransactionId("a2b6a8a8-2ba7-4f4e-8c6d-2a6f3f1c7a11")
+				.setCorrelator("a2b6a8a8-2ba7-4f4e-8c6d-2a6f3f1c7a11")
+				.setOperation("getUser")
+				.put(ContextField.METHOD, "GET")
+				.put(ContextField.PATH, "/api/users/1")
+				.put(ContextField.STATUS, "200")
+				.put(ContextField.LATENCY, "12")
+				.getContextMap();
+		LoggingEvent event = newEvent("Response", mdc);
+		int size = encoder.encode(event).length;
+
+		int iterations = 20000;
+		for (int i = 0; i < iterations; i++) {
+			encoder.encode(event);
+		}
+		com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		// Minimum of several rounds to discard the noise of JIT compilations
+		long perEvent = Long.MAX_VALUE;
+		for (int round = 0; round < 5; round++) {
+			long before = threadMXBean.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < iterations; i++) {
+				encoder.encode(event);
+			}
+			perEvent = Math.min(perEvent, (threadMXBean.getThreadAllocatedBytes(threadId) - before) / iterations);
+		}
+
+		// Only the resulting byte array (with its header and padding) is allocated per event
+		assertTrue("Allocated " + perEvent + " bytes per event for " + size + " bytes", perEvent <= size + 32);
+	}
+
+	private LoggingEvent newEvent(String message, Map<String, String> mdc) {
+		LoggingEvent event = new LoggingEvent(Logger.FQCN, logger, Level.INFO, message, null, null);
+		event.setMDCPropertyMap(mdc);
+		return event;
+	}
+
+}
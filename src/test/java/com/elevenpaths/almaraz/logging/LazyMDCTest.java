@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.RequestContext;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Unit tests for {@link LazyMDC}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class LazyMDCTest {
+
+	private Logger logger;
+
+	private RequestContextAppender appender;
+
+	private ListAppender<ILoggingEvent> listAppender;
+
+	@Before
+	public void setUp() {
+		LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+		listAppender = new ListAppender<>();
+		listAppender.setContext(loggerContext);
+		listAppender.start();
+		appender = new RequestContextAppender();
+		appender.setContext(loggerContext);
+		appender.addAppender(listAppender);
+		appender.addFilter(new Filter<ILoggingEvent>() {
+			@Override
+			public FilterReply decide(ILoggingEvent event) {
+				return "Discarded".equals(event.getMessage()) ? FilterReply.DENY : FilterReply.NEUTRAL;
+			}
+		});
+		logger = loggerContext.getLogger(LazyMDCTest.class);
+		logger.setAdditive(false);
+		logger.addAppender(appender);
+	}
+
+	@After
+	public void tearDown() {
+		logger.detachAppender(appender);
+		appender.stop();
+		logger.setLevel(null);
+		LazyMDC.clear();
+		MDC.clear();
+	}
+
+	@Test
+	public void eagerWithoutAppender() {
+		AtomicInteger evaluations = new AtomicInteger();
+		LazyMDC.put(ContextField.STATUS, () -> Integer.toString(200 + evaluations.getAndIncrement()));
+		assertEquals(1, evaluations.get());
+		assertEquals("200", MDC.get(ContextField.STATUS));
+		assertFalse(LazyMDC.isPending());
+	}
+
+	@Test
+	public void lazyWithAppender() {
+		appender.start();
+		AtomicInteger evaluations = new AtomicInteger();
+		RequestContext requestContext = new RequestContext().setTransactionId("trans");
+		String status = Mono.just("test")
+				.doOnEach(ReactiveLogger.logOnNext(value -> {
+					LazyMDC.put(ContextField.STATUS, () -> Integer.toString(200 + evaluations.getAndIncrement()));
+					assertTrue(LazyMDC.isPending());
+					logger.info("Discarded");
+					assertEquals(0, evaluations.get());
+
+					logger.info("Logged");
+					assertEquals(1, evaluations.get());
+					assertFalse(LazyMDC.isPending());
+				}))
+				.map(value -> listAppender.list.get(0).getMDCPropertyMap().get(ContextField.STATUS))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+		assertEquals(1, listAppender.list.size());
+		assertEquals("200", status);
+	}
+
+	@Test
+	public void discardedAtReset() {
+		appender.start();
+		logger.setLevel(Level.INFO);
+		AtomicInteger evaluations = new AtomicInteger();
+		RequestContext requestContext = new RequestContext().setTransactionId("trans");
+		Mono.just("test")
+				.doOnEach(ReactiveLogger.logOnNext(value -> {
+					LazyMDC.put(ContextField.STATUS, () -> Integer.toString(evaluations.incrementAndGet()));
+					logger.debug("Disabled");
+				}))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+		assertFalse(LazyMDC.isPending());
+		assertEquals(0, evaluations.get());
+	}
+
+}
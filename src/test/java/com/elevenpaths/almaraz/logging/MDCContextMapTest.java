@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link MDCContextMap}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MDCContextMapTest {
+
+	@Test
+	public void combinedView() {
+		Map<String, String> context = new HashMap<>();
+		context.put("trans", "1");
+		context.put("corr", "2");
+		Map<String, String> mdc = new HashMap<>();
+		mdc.put("corr", "3");
+		mdc.put("status", "200");
+		Map<String, String> view = new MDCContextMap(context, mdc);
+
+		Map<String, String> expected = new HashMap<>();
+		expected.put("trans", "1");
+		expected.put("corr", "3");
+		expected.put("status", "200");
+		assertEquals(expected, view);
+		assertEquals(expected, new HashMap<>(view));
+		assertEquals(3, view.size());
+		assertTrue(view.containsKey("status"));
+		assertFalse(view.containsKey("unknown"));
+
+		Map<String, String> visited = new HashMap<>();
+		view.forEach(visited::put);
+		assertEquals(expected, visited);
+	}
+
+	@Test
+	public void empty() {
+		Map<String, String> view = new MDCContextMap(Collections.emptyMap(), Collections.emptyMap());
+		assertTrue(view.isEmpty());
+		assertFalse(view.entrySet().iterator().hasNext());
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.RequestContext;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+/**
+ * JMH benchmark of the MDC propagation at thread hops ({@link MDCContextPropagation}) against the
+ * per-signal MDC update of {@link ReactiveLogger}. Each pipeline emits some items on a scheduler thread,
+ * goes through several operators and reads the transaction ID from MDC (as a logger would do) in one of them.
+ * The baseline pipeline does not read MDC at all.
+ *
+ * <code>
+ * make benchmark BENCHMARK="MDCContextPropagationBenchmark -prof gc"
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MDCContextPropagationBenchmark {
+
+	private static final int ITEMS = 16;
+
+	@State(Scope.Benchmark)
+	public static class DefaultState {
+
+		Scheduler scheduler;
+
+		Context context;
+
+		@Setup
+		public void setUp() {
+			scheduler = Schedulers.newSingle("benchmark");
+			context = Context.of(RequestContext.class, new RequestContext().setTransactionId("trans").setCorrelator("corr"));
+		}
+
+		@TearDown
+		public void tearDown() {
+			scheduler.dispose();
+		}
+
+	}
+
+	@State(Scope.Benchmark)
+	public static class PropagationState extends DefaultState {
+
+		@Override
+		@Setup
+		public void setUp() {
+			MDCContextPropagation.enable();
+			super.setUp();
+		}
+
+		@Override
+		@TearDown
+		public void tearDown() {
+			super.tearDown();
+			MDCContextPropagation.disable();
+		}
+
+	}
+
+	@Benchmark
+	public Integer baseline(DefaultState state) {
+		return Flux.range(0, ITEMS)
+				.publishOn(state.scheduler)
+				.map(i -> i + 1)
+				.filter(i -> i > 0)
+				.map(i -> i * 2)
+				.subscriberContext(state.context)
+				.blockLast();
+	}
+
+	@Benchmark
+	public Integer reactiveLogger(DefaultState state, Blackhole blackhole) {
+		return Flux.range(0, ITEMS)
+				.publishOn(state.scheduler)
+				.map(i -> i + 1)
+				.doOnEach(ReactiveLogger.logOnNext(i -> blackhole.consume(MDC.get(ContextField.TRANSACTION_ID))))
+				.filter(i -> i > 0)
+				.map(i -> i * 2)
+				.subscriberContext(state.context)
+				.blockLast();
+	}
+
+	@Benchmark
+	public Integer propagation(PropagationState state, Blackhole blackhole) {
+		return Flux.range(0, ITEMS)
+				.publishOn(state.scheduler)
+				.map(i -> i + 1)
+				.doOnNext(i -> blackhole.consume(MDC.get(ContextField.TRANSACTION_ID)))
+				.filter(i -> i > 0)
+				.map(i -> i * 2)
+				.subscriberContext(state.context)
+				.blockLast();
+	}
+
+}
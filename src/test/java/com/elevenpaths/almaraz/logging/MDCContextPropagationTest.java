@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.RequestContext;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+/**
+ * Unit tests for {@link MDCContextPropagation}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MDCContextPropagationTest {
+
+	private Scheduler scheduler;
+
+	@Before
+	public void setUp() {
+		MDCContextPropagation.enable();
+		scheduler = Schedulers.newSingle("mdc-test");
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.dispose();
+		MDCContextPropagation.disable();
+	}
+
+	@Test
+	public void enabled() {
+		assertTrue(MDCContextPropagation.isEnabled());
+	}
+
+	@Test
+	public void publishOn() {
+		List<String> transactionIds = Flux.just(1, 2, 3)
+				.publishOn(scheduler)
+				.map(i -> MDC.get(ContextField.TRANSACTION_ID))
+				.collectList()
+				.subscriberContext(Context.of(RequestContext.class, new RequestContext().setTransactionId("trans")))
+				.block();
+
+		assertEquals(3, transactionIds.size());
+		transactionIds.forEach(transactionId -> assertEquals("trans", transactionId));
+		assertNull(Mono.fromCallable(() -> MDC.get(ContextField.TRANSACTION_ID)).subscribeOn(scheduler).block());
+	}
+
+	@Test
+	public void subscribeOnWithBinding() {
+		String transactionId = MDCContextPropagation.bindOnSubscribe(
+				Mono.fromCallable(() -> MDC.get(ContextField.TRANSACTION_ID)).subscribeOn(scheduler))
+				.subscriberContext(Context.of(RequestContext.class, new RequestContext().setTransactionId("trans")))
+				.block();
+
+		assertEquals("trans", transactionId);
+		assertNull(MDC.get(ContextField.TRANSACTION_ID));
+	}
+
+	@Test
+	public void withoutRequestContext() {
+		String transactionId = Mono.just(1)
+				.publishOn(scheduler)
+				.map(i -> String.valueOf(MDC.get(ContextField.TRANSACTION_ID)))
+				.block();
+
+		assertEquals("null", transactionId);
+	}
+
+	@Test
+	public void reactiveLoggerKeepsBinding() {
+		String transactionId = Mono.just(1)
+				.publishOn(scheduler)
+				.doOnEach(ReactiveLogger.logOnNext(i -> MDC.put("custom", "value")))
+				.map(i -> MDC.get(ContextField.TRANSACTION_ID) + "," + MDC.get("custom"))
+				.subscriberContext(Context.of(RequestContext.class, new RequestContext().setTransactionId("trans")))
+				.block();
+
+		assertEquals("trans,null", transactionId);
+	}
+
+	@Test
+	public void reactiveLoggerRefreshesBoundContext() {
+		String[] mdc = new String[1];
+		RequestContext requestContext = new RequestContext().setTransactionId("trans");
+		String result = MDCContextPropagation.bindOnSubscribe(Mono.just(1)
+				.publishOn(scheduler)
+				.map(i -> requestContext)
+				.doOnNext(c -> c.setOperation("createUser"))
+				.doOnEach(ReactiveLogger.logOnNext(c -> mdc[0] = MDC.get(ContextField.OPERATION) + "/"
+						+ MDC.get(ContextField.TRANSACTION_ID)))
+				.map(c -> "done"))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+
+		assertEquals("done", result);
+		assertEquals("createUser/trans", mdc[0]);
+	}
+
+	@Test
+	public void disabled() {
+		MDCContextPropagation.disable();
+		assertFalse(MDCContextPropagation.isEnabled());
+		Scheduler other = Schedulers.newSingle("mdc-test-disabled");
+		try {
+			String transactionId = Mono.just(1)
+					.publishOn(other)
+					.map(i -> String.valueOf(MDC.get(ContextField.TRANSACTION_ID)))
+					.subscriberContext(Context.of(RequestContext.class, new RequestContext().setTransactionId("trans")))
+					.block();
+			assertEquals("null", transactionId);
+		} finally {
+			other.dispose();
+		}
+	}
+
+}
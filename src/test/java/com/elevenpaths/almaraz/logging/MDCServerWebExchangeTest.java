@@ -20,6 +20,8 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.web.server.ServerWebExchange;
 
 /**
@@ -152,4 +154,30 @@ public class MDCServerWebExchangeTest {
 		assertNull(result);
 	}
 
+	@Test
+	public void cachedAttributesTest() {
+		MockServerWebExchange mockExchange = MockServerWebExchange.from(MockServerHttpRequest
+				.get("/path/test?key=test")
+				.remoteAddress(new InetSocketAddress("127.0.0.1", 8080)));
+
+		assertEquals("GET", MDCServerWebExchange.getMethod(mockExchange));
+		assertEquals("/path/test", MDCServerWebExchange.getPath(mockExchange));
+		assertEquals("key=test", MDCServerWebExchange.getQueryParams(mockExchange));
+		assertEquals("/127.0.0.1", MDCServerWebExchange.getRemoteAddress(mockExchange));
+		assertNull(MDCServerWebExchange.getRemoteAddressFromXFF(mockExchange));
+		assertNotNull(mockExchange.getAttribute(MDCServerWebExchange.CACHED_ATTRIBUTES));
+
+		// The attributes are cached in the exchange (and shared with the mutated exchanges)
+		ServerWebExchange mutated = mockExchange.mutate()
+				.request(mockExchange.getRequest().mutate().path("/other").build())
+				.build();
+		assertEquals("/path/test", MDCServerWebExchange.getPath(mutated));
+	}
+
+	@Test
+	public void getStatusCodeWithoutStatusTest() {
+		Mockito.when(exchange.getResponse().getStatusCode()).thenReturn(null);
+		assertNull(MDCServerWebExchange.getStatusCode(exchange));
+	}
+
 }
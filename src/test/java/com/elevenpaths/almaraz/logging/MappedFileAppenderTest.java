@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.util.FileSize;
+
+/**
+ * Unit tests for {@link MappedFileAppender}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MappedFileAppenderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private LoggerContext loggerContext;
+
+	private PatternLayoutEncoder encoder;
+
+	private File file;
+
+	@Before
+	public void setUp() {
+		loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+		encoder = new PatternLayoutEncoder();
+		encoder.setContext(loggerContext);
+		encoder.setPattern("%msg%n");
+		encoder.start();
+		file = new File(folder.getRoot(), "logs/access.log");
+	}
+
+	@After
+	public void tearDown() {
+		encoder.stop();
+	}
+
+	@Test
+	public void appendAndTruncateOnStop() throws Exception {
+		MappedFileAppender appender = newAppender("1MB", 7);
+		assertTrue(appender.isStarted());
+		assertEquals(FileSize.valueOf("1MB").getSize(), file.length());
+		appender.doAppend(newEvent("Request"));
+		appender.doAppend(newEvent("Response"));
+		appender.stop();
+
+		assertFalse(appender.isStarted());
+		assertEquals(Arrays.asList("Request", "Response"), Files.readAllLines(file.toPath()));
+		assertEquals(0, appender.getDroppedCount());
+	}
+
+	@Test
+	public void rotateBySize() throws Exception {
+		MappedFileAppender appender = newAppender("100", 0);
+		for (int i = 0; i < 50; i++) {
+			appender.doAppend(newEvent(String.format("message-%03d", i)));
+		}
+		appender.stop();
+
+		List<String> lines = readAllFiles();
+		assertEquals(50, lines.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals(String.format("message-%03d", i), lines.get(i));
+		}
+		for (File archived : folder.getRoot().toPath().resolve("logs").toFile().listFiles()) {
+			assertTrue(archived.length() <= 100);
+		}
+	}
+
+	@Test
+	public void maxHistory() throws Exception {
+		MappedFileAppender appender = newAppender("100", 2);
+		for (int i = 0; i < 50; i++) {
+			appender.doAppend(newEvent(String.format("message-%03d", i)));
+		}
+		appender.stop();
+
+		String[] files = file.getParentFile().list();
+		assertEquals(3, files.length);
+		List<String> lines = readAllFiles();
+		assertEquals("message-049", lines.get(lines.size() - 1));
+	}
+
+	@Test
+	public void retryFailedRotation() throws Exception {
+		int[] archived = new int[1];
+		MappedFileAppender appender = new MappedFileAppender() {
+			@Override
+			void archive(Path path) throws IOException {
+				if (archived[0]++ == 0) {
+					throw new IOException("archive failed");
+				}
+				super.archive(path);
+			}
+		};
+		setUp(appender, "100", 0);
+		for (int i = 0; i < 50; i++) {
+			appender.doAppend(newEvent(String.format("message-%03d", i)));
+		}
+		appender.stop();
+
+		assertTrue(archived[0] > 1);
+		assertEquals(0, appender.getDroppedCount());
+		List<String> lines = readAllFiles();
+		assertEquals(50, lines.size());
+		for (int i = 0; i < 50; i++) {
+			assertEquals(String.format("message-%03d", i), lines.get(i));
+		}
+	}
+
+	@Test
+	public void appendBatch() throws Exception {
+		MappedFileAppender appender = newAppender("1MB", 7);
+		appender.doAppend(newEvent("Other"));
+		appender.doAppendBatch(Arrays.asList(newEvent("Request"), newEvent("Handler"), newEvent("Response")));
+		appender.stop();
+
+		assertEquals(Arrays.asList("Other", "Request", "Handler", "Response"), Files.readAllLines(file.toPath()));
+	}
+
+	@Test
+	public void dropEventLargerThanFile() throws Exception {
+		MappedFileAppender appender = newAppender("10", 7);
+		appender.doAppend(newEvent("a message larger than the file"));
+		appender.doAppend(newEvent("small"));
+		appender.stop();
+
+		assertEquals(1, appender.getDroppedCount());
+		assertEquals(Arrays.asList("small"), Files.readAllLines(file.toPath()));
+	}
+
+	@Test
+	public void recoverAfterCrash() throws Exception {
+		file.getParentFile().mkdirs();
+		byte[] crashed = new byte[4096];
+		byte[] committed = "Request\n".getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(committed, 0, crashed, 0, committed.length);
+		Files.write(file.toPath(), crashed);
+
+		MappedFileAppender appender = newAppender("1MB", 7);
+		appender.doAppend(newEvent("Response"));
+		appender.stop();
+
+		assertArrayEquals("Request\nResponse\n".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void concurrentWriters() throws Exception {
+		MappedFileAppender appender = newAppender("4KB", 0);
+		int threads = 4;
+		int events = 2000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			String prefix = "thread-" + t + "-";
+			futures.add(executor.submit(() -> {
+				for (int i = 0; i < events; i++) {
+					appender.doAppend(newEvent(prefix + i));
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		appender.stop();
+
+		List<String> lines = readAllFiles();
+		assertEquals(threads * events, lines.size());
+		Set<String> unique = new HashSet<>(lines);
+		for (int t = 0; t < threads; t++) {
+			for (int i = 0; i < events; i++) {
+				assertTrue(unique.contains("thread-" + t + "-" + i));
+			}
+		}
+	}
+
+	private MappedFileAppender newAppender(String maxFileSize, int maxHistory) {
+		return setUp(new MappedFileAppender(), maxFileSize, maxHistory);
+	}
+
+	private MappedFileAppender setUp(MappedFileAppender appender, String maxFileSize, int maxHistory) {
+		appender.setContext(loggerContext);
+		appender.setName("MAPPED");
+		appender.setEncoder(encoder);
+		appender.setFile(file.getPath());
+		appender.setMaxFileSize(FileSize.valueOf(maxFileSize));
+		appender.setMaxHistory(maxHistory);
+		appender.start();
+		return appender;
+	}
+
+	private LoggingEvent newEvent(String message) {
+		LoggingEvent event = new LoggingEvent();
+		event.setLoggerName(MappedFileAppenderTest.class.getName());
+		event.setLevel(Level.INFO);
+		event.setMessage(message);
+		return event;
+	}
+
+	/**
+	 * Read the lines of the archived files (in order) and the active file.
+	 */
+	private List<String> readAllFiles() throws IOException {
+		String[] names = file.getParentFile().list();
+		Arrays.sort(names);
+		List<String> lines = new ArrayList<>();
+		for (String name : names) {
+			if (!name.equals(file.getName())) {
+				lines.addAll(Files.readAllLines(new File(file.getParentFile(), name).toPath()));
+			}
+		}
+		if (file.exists()) {
+			lines.addAll(Files.readAllLines(file.toPath()));
+		}
+		return lines;
+	}
+
+}
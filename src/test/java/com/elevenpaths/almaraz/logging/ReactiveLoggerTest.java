@@ -4,13 +4,17 @@
 
 package com.elevenpaths.almaraz.logging;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
 
 import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestLogBuffer;
+import com.elevenpaths.almaraz.context.SamplingDecision;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -85,4 +89,45 @@ public class ReactiveLoggerTest {
 		Assert.assertEquals(true, map.get("logged"));
 	}
 
+	@Test
+	public void logNotSampled() {
+		List<String> logged = new ArrayList<>();
+		RequestContext requestContext = new RequestContext().setSamplingDecision(SamplingDecision.NOT_SAMPLED);
+		Mono.just("test")
+				.doOnEach(ReactiveLogger.logOnNext(logged::add))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+
+		Assert.assertTrue(logged.isEmpty());
+	}
+
+	@Test
+	public void logDeferred() {
+		List<String> logged = new ArrayList<>();
+		RequestLogBuffer logBuffer = new RequestLogBuffer();
+		RequestContext requestContext = new RequestContext()
+				.setCorrelator("test-corr")
+				.setSamplingDecision(SamplingDecision.DEFERRED)
+				.setLogBuffer(logBuffer);
+		Flux.just("test1", "test2")
+				.doOnEach(ReactiveLogger.logOnNext(value -> logged.add(value + " " + MDCBinding.current().getCorrelator())))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.blockLast();
+
+		Assert.assertTrue(logged.isEmpty());
+		Assert.assertEquals(2, logBuffer.size());
+
+		requestContext.setSamplingDecision(SamplingDecision.SAMPLED);
+		logBuffer.flush();
+		Assert.assertEquals(2, logged.size());
+		Assert.assertEquals("test1 test-corr", logged.get(0));
+		Assert.assertEquals("test2 test-corr", logged.get(1));
+
+		// Once flushed, the log entries follow the final decision
+		ReactiveLogger.log(() -> logged.add("test3"))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+		Assert.assertEquals("test3", logged.get(2));
+	}
+
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+/**
+ * Unit tests for {@link RemoteAddressResolver}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RemoteAddressResolverTest {
+
+	@Test
+	public void resolveWithoutTrustedProxies() {
+		RemoteAddressResolver resolver = new RemoteAddressResolver();
+		Assert.assertEquals("1.1.1.1", resolver.resolve(exchange("10.0.0.1", " 1.1.1.1, 10.0.0.2")));
+		Assert.assertEquals("/10.0.0.1", resolver.resolve(exchange("10.0.0.1")));
+	}
+
+	@Test
+	public void resolveWithTrustedProxies() {
+		RemoteAddressResolver resolver = new RemoteAddressResolver()
+				.addTrustedProxy("10.0.0.0/8")
+				.addTrustedProxy("192.168.1.1");
+
+		// The client forges the header, but the proxies append the addresses they see
+		Assert.assertEquals("2.2.2.2", resolver.resolve(exchange("10.0.0.1", "1.1.1.1, 2.2.2.2", "192.168.1.1")));
+		Assert.assertEquals("unknown", resolver.resolve(exchange("10.0.0.1", "1.1.1.1, unknown, 10.1.1.1")));
+		Assert.assertEquals("10.1.1.1", resolver.resolve(exchange("10.0.0.1", "10.1.1.1,10.2.2.2")));
+		Assert.assertEquals("2.2.2.2:1234", resolver.resolve(exchange("10.0.0.1", "2.2.2.2:1234")));
+		Assert.assertEquals("/10.0.0.1", resolver.resolve(exchange("10.0.0.1")));
+
+		// The header is ignored if the remote address is not a trusted proxy
+		Assert.assertEquals("/3.3.3.3", resolver.resolve(exchange("3.3.3.3", "1.1.1.1")));
+	}
+
+	@Test
+	public void isTrustedProxy() {
+		RemoteAddressResolver resolver = new RemoteAddressResolver()
+				.addTrustedProxy("172.16.0.0/12")
+				.addTrustedProxy("fd00::/8");
+		Assert.assertTrue(resolver.isTrustedProxy("172.16.0.1"));
+		Assert.assertTrue(resolver.isTrustedProxy("172.31.255.255"));
+		Assert.assertFalse(resolver.isTrustedProxy("172.32.0.1"));
+		Assert.assertTrue(resolver.isTrustedProxy("[fd12::1]:8080"));
+		Assert.assertFalse(resolver.isTrustedProxy("fe80::1"));
+		Assert.assertFalse(resolver.isTrustedProxy("172.16.0"));
+		Assert.assertFalse(resolver.isTrustedProxy("172.16.0.256"));
+		Assert.assertFalse(resolver.isTrustedProxy("example.com"));
+		Assert.assertFalse(resolver.isTrustedProxy(""));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCidr() {
+		new RemoteAddressResolver().addTrustedProxy("10.0.0.0/33");
+	}
+
+	private MockServerWebExchange exchange(String remoteAddress, String... xff) {
+		MockServerHttpRequest.BaseBuilder<?> builder = MockServerHttpRequest.get("/test")
+				.remoteAddress(new InetSocketAddress(remoteAddress, 1000));
+		for (String value : xff) {
+			builder.header(RemoteAddressResolver.X_FORWARDED_FOR_HEADER, value);
+		}
+		return MockServerWebExchange.from(builder.build());
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.elevenpaths.almaraz.context.ContextField;
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestLogBuffer;
+import com.elevenpaths.almaraz.context.SamplingDecision;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.read.ListAppender;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Unit tests for {@link RequestContextAppender}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class RequestContextAppenderTest {
+
+	private Logger logger;
+
+	private RequestContextAppender appender;
+
+	private ListAppender<ILoggingEvent> listAppender;
+
+	@Before
+	public void setUp() {
+		LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+		listAppender = new ListAppender<>();
+		listAppender.setContext(loggerContext);
+		listAppender.start();
+		appender = new RequestContextAppender();
+		appender.setContext(loggerContext);
+		appender.addAppender(listAppender);
+		appender.start();
+		logger = loggerContext.getLogger(RequestContextAppenderTest.class);
+		logger.setAdditive(false);
+		logger.addAppender(appender);
+	}
+
+	@After
+	public void tearDown() {
+		logger.detachAppender(appender);
+		appender.stop();
+		MDC.clear();
+	}
+
+	@Test
+	public void contextByReference() {
+		RequestContext requestContext = new RequestContext().setTransactionId("trans");
+		String mdcTransactionId = Mono.just("test")
+				.doOnEach(ReactiveLogger.logOnNext(value -> {
+					MDC.put(ContextField.STATUS, "200");
+					logger.info("Next: {}", value);
+				}))
+				.map(value -> String.valueOf(MDC.get(ContextField.TRANSACTION_ID)))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+
+		assertEquals("null", mdcTransactionId);
+		assertEquals(1, listAppender.list.size());
+		Map<String, String> mdc = listAppender.list.get(0).getMDCPropertyMap();
+		assertEquals("trans", mdc.get(ContextField.TRANSACTION_ID));
+		assertEquals("200", mdc.get(ContextField.STATUS));
+		assertEquals(2, mdc.size());
+		assertNull(MDC.get(ContextField.STATUS));
+	}
+
+	@Test
+	public void mdcTakesPrecedence() {
+		Mono.just("test")
+				.doOnEach(ReactiveLogger.logOnNext(value -> {
+					MDC.put(ContextField.TRANSACTION_ID, "other");
+					logger.info("Next: {}", value);
+				}))
+				.subscriberContext(Context.of(RequestContext.class, new RequestContext().setTransactionId("trans")))
+				.block();
+
+		Map<String, String> mdc = listAppender.list.get(0).getMDCPropertyMap();
+		assertEquals("other", mdc.get(ContextField.TRANSACTION_ID));
+		assertEquals(1, mdc.size());
+	}
+
+	@Test
+	public void snapshot() {
+		appender.setSnapshot(true);
+		RequestContext requestContext = new RequestContext().setTransactionId("trans");
+		Mono.just("test")
+				.doOnEach(ReactiveLogger.logOnNext(value -> logger.info("Next: {}", value)))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+		requestContext.setTransactionId("changed");
+
+		assertEquals("trans", listAppender.list.get(0).getMDCPropertyMap().get(ContextField.TRANSACTION_ID));
+	}
+
+	@Test
+	public void withoutContext() {
+		MDC.put("custom", "value");
+		logger.info("test");
+
+		Map<String, String> mdc = listAppender.list.get(0).getMDCPropertyMap();
+		assertEquals("value", mdc.get("custom"));
+		assertFalse(mdc.containsKey(ContextField.TRANSACTION_ID));
+	}
+
+	@Test
+	public void batch() {
+		BatchListAppender batchAppender = new BatchListAppender();
+		batchAppender.start();
+		appender.addAppender(batchAppender);
+		RequestContext requestContext = new RequestContext()
+				.setTransactionId("trans")
+				.setLogBuffer(new RequestLogBuffer());
+		Mono.just("test")
+				.doOnEach(ReactiveLogger.logOnNext(value -> logger.info("Next: {}", value)))
+				.doOnEach(ReactiveLogger.logOnComplete(() -> logger.info("Complete")))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+		requestContext.setTransactionId("changed");
+
+		assertTrue(listAppender.list.isEmpty());
+		assertTrue(batchAppender.batches.isEmpty());
+
+		ReactiveLogger.flush(requestContext);
+		assertEquals(2, listAppender.list.size());
+		assertEquals("Next: test", listAppender.list.get(0).getFormattedMessage());
+		assertEquals("Complete", listAppender.list.get(1).getFormattedMessage());
+		assertEquals("trans", listAppender.list.get(0).getMDCPropertyMap().get(ContextField.TRANSACTION_ID));
+		assertEquals(1, batchAppender.batches.size());
+		assertEquals(2, batchAppender.batches.get(0).size());
+
+		// Once flushed, the log events are forwarded immediately
+		ReactiveLogger.log(() -> logger.info("After"))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+		assertEquals(3, listAppender.list.size());
+		assertEquals(1, batchAppender.batches.size());
+		assertEquals(1, batchAppender.events.size());
+	}
+
+	@Test
+	public void deferredNotSampled() {
+		RequestLogBuffer logBuffer = new RequestLogBuffer();
+		RequestContext requestContext = new RequestContext()
+				.setSamplingDecision(SamplingDecision.DEFERRED)
+				.setLogBuffer(logBuffer);
+		ReactiveLogger.log(() -> logger.info("Deferred"))
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block();
+		assertEquals(1, logBuffer.size());
+
+		requestContext.setSamplingDecision(SamplingDecision.NOT_SAMPLED);
+		logBuffer.discard();
+		ReactiveLogger.flush(requestContext);
+		assertTrue(listAppender.list.isEmpty());
+	}
+
+	@Test
+	public void stopped() {
+		assertTrue(MDCBinding.isByReference());
+		appender.stop();
+		assertFalse(MDCBinding.isByReference());
+	}
+
+	private static class BatchListAppender extends AppenderBase<ILoggingEvent> implements BatchAppender<ILoggingEvent> {
+
+		private final List<List<ILoggingEvent>> batches = new ArrayList<>();
+
+		private final List<ILoggingEvent> events = new ArrayList<>();
+
+		@Override
+		public void doAppendBatch(List<ILoggingEvent> events) {
+			batches.add(new ArrayList<>(events));
+		}
+
+		@Override
+		protected void append(ILoggingEvent event) {
+			events.add(event);
+		}
+
+	}
+
+}
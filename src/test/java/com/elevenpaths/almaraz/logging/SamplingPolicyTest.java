@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging;
+
+import java.time.Duration;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestLogBuffer;
+import com.elevenpaths.almaraz.context.SamplingDecision;
+
+/**
+ * Unit tests for {@link SamplingPolicy}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class SamplingPolicyTest {
+
+	private final SamplingPolicy policy = new SamplingPolicy()
+			.setDefaultRate(1)
+			.addRoute(HttpMethod.GET, "/api/health", 0)
+			.addRoute("/api/users/{id}", 0)
+			.setSlowThreshold(Duration.ofMillis(500));
+
+	@Test
+	public void sampleRequestByRoute() {
+		Assert.assertEquals(SamplingDecision.SAMPLED, sampleRequest(MockServerHttpRequest.get("/api/test")));
+		Assert.assertEquals(SamplingDecision.NOT_SAMPLED, sampleRequest(MockServerHttpRequest.get("/api/health")));
+		Assert.assertEquals(SamplingDecision.SAMPLED, sampleRequest(MockServerHttpRequest.post("/api/health")));
+		Assert.assertEquals(SamplingDecision.NOT_SAMPLED, sampleRequest(MockServerHttpRequest.delete("/api/users/1")));
+	}
+
+	@Test
+	public void sampleRequestTailBased() {
+		policy.setTailBased(true);
+		RequestContext requestContext = new RequestContext();
+		SamplingDecision samplingDecision = policy.sampleRequest(
+				MockServerWebExchange.from(MockServerHttpRequest.get("/api/health")), requestContext);
+		Assert.assertEquals(SamplingDecision.DEFERRED, samplingDecision);
+		Assert.assertEquals(SamplingDecision.DEFERRED, requestContext.getSamplingDecision());
+		Assert.assertNotNull(requestContext.getLogBuffer());
+	}
+
+	@Test
+	public void sampleResponse() {
+		Assert.assertEquals(SamplingDecision.NOT_SAMPLED, sampleResponse(HttpStatus.OK, 10));
+		Assert.assertEquals(SamplingDecision.NOT_SAMPLED, sampleResponse(HttpStatus.NOT_FOUND, 10));
+		Assert.assertEquals(SamplingDecision.SAMPLED, sampleResponse(HttpStatus.INTERNAL_SERVER_ERROR, 10));
+		Assert.assertEquals(SamplingDecision.SAMPLED, sampleResponse(HttpStatus.OK, 500));
+
+		policy.setErrorStatus(400);
+		Assert.assertEquals(SamplingDecision.SAMPLED, sampleResponse(HttpStatus.NOT_FOUND, 10));
+	}
+
+	@Test
+	public void sampleResponseDiscardsBuffer() {
+		StringBuilder logged = new StringBuilder();
+		for (HttpStatus status : new HttpStatus[] { HttpStatus.OK, HttpStatus.SERVICE_UNAVAILABLE }) {
+			RequestLogBuffer logBuffer = new RequestLogBuffer();
+			logBuffer.add(() -> logged.append(status.value()));
+			RequestContext requestContext = new RequestContext()
+					.setSamplingDecision(SamplingDecision.DEFERRED)
+					.setLogBuffer(logBuffer);
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/health"));
+			exchange.getResponse().setStatusCode(status);
+			policy.sampleResponse(exchange, requestContext, 10);
+			ReactiveLogger.flush(requestContext);
+			Assert.assertTrue(logBuffer.isClosed());
+		}
+		Assert.assertEquals("503", logged.toString());
+	}
+
+	@Test
+	public void emptyContext() {
+		policy.sampleRequest(MockServerWebExchange.from(MockServerHttpRequest.get("/api/health")),
+				RequestContext.EMPTY);
+		Assert.assertNull(RequestContext.EMPTY.getSamplingDecision());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidRate() {
+		new SamplingPolicy().setDefaultRate(1.5);
+	}
+
+	private SamplingDecision sampleRequest(MockServerHttpRequest.BaseBuilder<?> request) {
+		return policy.sampleRequest(MockServerWebExchange.from(request.build()), new RequestContext());
+	}
+
+	private SamplingDecision sampleResponse(HttpStatus status, long latencyMillis) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/health"));
+		exchange.getResponse().setStatusCode(status);
+		RequestContext requestContext = new RequestContext().setSamplingDecision(SamplingDecision.NOT_SAMPLED);
+		return policy.sampleResponse(exchange, requestContext, latencyMillis);
+	}
+
+}
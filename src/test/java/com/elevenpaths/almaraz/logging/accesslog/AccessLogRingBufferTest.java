@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.elevenpaths.almaraz.context.SlotContextMap;
+
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Unit tests for {@link AccessLogRingBuffer}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class AccessLogRingBufferTest {
+
+	@Test
+	public void capacity() {
+		AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer(
+				(event, endOfBatch) -> { }, 1000, null);
+		assertEquals(1024, ringBuffer.getCapacity());
+		assertEquals(OverflowPolicy.DROP, ringBuffer.getOverflowPolicy());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidCapacity() {
+		new AccessLogRingBuffer((event, endOfBatch) -> { }, 0, null);
+	}
+
+	@Test
+	public void publishAndConsume() {
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer(
+				(event, endOfBatch) -> messages.add(event.getMessage() + ":" + event.get(SlotContextMap.STATUS)),
+				4, OverflowPolicy.BLOCK).start();
+		for (int i = 0; i < 100; i++) {
+			publish(ringBuffer, "msg-" + i);
+		}
+		ringBuffer.close();
+
+		assertEquals(100, messages.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals("msg-" + i + ":200", messages.get(i));
+		}
+		assertEquals(0, ringBuffer.getDroppedCount());
+	}
+
+	@Test
+	public void concurrentProducers() {
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer(
+				(event, endOfBatch) -> messages.add(event.getMessage()), 16, OverflowPolicy.BLOCK).start();
+		Flux.range(0, 1000)
+				.parallel(4)
+				.runOn(Schedulers.parallel())
+				.doOnNext(i -> publish(ringBuffer, "msg-" + i))
+				.sequential()
+				.blockLast();
+		ringBuffer.close();
+
+		assertEquals(1000, messages.size());
+		assertEquals(1000, messages.stream().distinct().count());
+	}
+
+	@Test
+	public void dropWhenFull() throws InterruptedException {
+		CountDownLatch consuming = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer((event, endOfBatch) -> {
+			consuming.countDown();
+			release.await();
+			messages.add(event.getMessage());
+		}, 2, OverflowPolicy.DROP).start();
+
+		publish(ringBuffer, "msg-0");
+		assertTrue(consuming.await(5, TimeUnit.SECONDS));
+		publish(ringBuffer, "msg-1");
+		publish(ringBuffer, "msg-2");
+		assertEquals(1, ringBuffer.getDroppedCount());
+		release.countDown();
+		ringBuffer.close();
+
+		assertEquals(2, messages.size());
+	}
+
+	@Test
+	public void consumeAfterIdle() throws InterruptedException {
+		CountDownLatch consumed = new CountDownLatch(1);
+		AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer((event, endOfBatch) -> consumed.countDown()).start();
+		try {
+			// Let the idle consumer back off to the maximum park time
+			Thread.sleep(100);
+			publish(ringBuffer, "msg-0");
+
+			assertTrue(consumed.await(1, TimeUnit.SECONDS));
+		} finally {
+			ringBuffer.close();
+		}
+	}
+
+	@Test
+	public void dropWhenClosed() {
+		AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer((event, endOfBatch) -> { });
+		assertEquals(-1, ringBuffer.claim());
+		assertEquals(1, ringBuffer.getDroppedCount());
+	}
+
+	@Test
+	public void handlerFailure() {
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		AccessLogRingBuffer ringBuffer = new AccessLogRingBuffer((event, endOfBatch) -> {
+			if ("fail".equals(event.getMessage())) {
+				throw new IllegalStateException("fail");
+			}
+			messages.add(event.getMessage());
+		}).start();
+		publish(ringBuffer, "fail");
+		publish(ringBuffer, "ok");
+		ringBuffer.close();
+
+		assertEquals(1, ringBuffer.getFailedCount());
+		assertEquals(Collections.singletonList("ok"), messages);
+	}
+
+	private static void publish(AccessLogRingBuffer ringBuffer, String message) {
+		long sequence = ringBuffer.claim();
+		if (sequence < 0) {
+			return;
+		}
+		try {
+			ringBuffer.get(sequence).setMessage(message).put(SlotContextMap.STATUS, "200");
+		} finally {
+			ringBuffer.publish(sequence);
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.logging.accesslog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.SlotContextMap;
+
+/**
+ * Unit tests for {@link JsonAccessLogHandler}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class JsonAccessLogHandlerTest {
+
+	@Test
+	public void serialize() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonAccessLogHandler handler = new JsonAccessLogHandler(out);
+		AccessLogEvent event = new AccessLogEvent()
+				.setMessage("Response")
+				.setTimestamp(0)
+				.copy(new RequestContext().setTransactionId("trans").put("custom", "ignored"))
+				.put(SlotContextMap.PATH, "/a\"b\\c\n")
+				.put(SlotContextMap.STATUS, "200")
+				.put(SlotContextMap.LATENCY, "invalid");
+
+		handler.onEvent(event, false);
+		assertEquals(0, out.size());
+		handler.onEvent(event.setMessage("Request\u0001"), true);
+
+		String expected = "{\"time\":\"1970-01-01T00:00:00Z\",\"lvl\":\"INFO\",\"msg\":\"Response\","
+				+ "\"trans\":\"trans\",\"path\":\"/a\\\"b\\\\c\\n\",\"status\":200,\"latency\":\"invalid\"}\n"
+				+ "{\"time\":\"1970-01-01T00:00:00Z\",\"lvl\":\"INFO\",\"msg\":\"Request\\u0001\","
+				+ "\"trans\":\"trans\",\"path\":\"/a\\\"b\\\\c\\n\",\"status\":200,\"latency\":\"invalid\"}\n";
+		assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+}
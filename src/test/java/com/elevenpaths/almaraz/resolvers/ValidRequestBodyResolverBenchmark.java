@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.resolvers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.MethodParameter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.BindingContext;
+
+import com.elevenpaths.almaraz.exceptions.ResponseException;
+import com.elevenpaths.almaraz.validation.JsonSchemaRepository;
+import com.elevenpaths.almaraz.validation.JsonSchemaValidator;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * JMH benchmark of the validation failure path of {@link ValidRequestBodyResolver}: the query parameters of
+ * the request do not comply with the JSON schema, so an {@link com.elevenpaths.almaraz.exceptions.InvalidRequestException}
+ * is raised. It compares the default mode against the stackless mode of client errors
+ * ({@link ResponseException#setStacklessClientErrors(boolean)}), with the resolver invoked at several stack
+ * depths (to emulate deep reactive stacks).
+ *
+ * <code>
+ * make benchmark BENCHMARK="ValidRequestBodyResolverBenchmark -prof gc"
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidRequestBodyResolverBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class ResolverState {
+
+		@Param({ "false", "true" })
+		boolean stackless;
+
+		@Param({ "0", "200" })
+		int depth;
+
+		ValidRequestBodyResolver resolver;
+
+		MethodParameter parameter;
+
+		BindingContext bindingContext;
+
+		MockServerWebExchange exchange;
+
+		@Setup
+		public void setUp() throws NoSuchMethodException {
+			ResponseException.setStacklessClientErrors(stackless);
+			resolver = new ValidRequestBodyResolver(new JsonSchemaValidator(new JsonSchemaRepository()));
+			parameter = new MethodParameter(Controller.class.getMethod("handle", Person.class), 0);
+			bindingContext = new BindingContext();
+			exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/test?firstName=John&lastName=Doe"));
+		}
+
+		@TearDown
+		public void tearDown() {
+			ResponseException.setStacklessClientErrors(false);
+		}
+
+	}
+
+	@Benchmark
+	public Object invalidQueryParams(ResolverState state) {
+		return resolve(state, state.depth);
+	}
+
+	private static Object resolve(ResolverState state, int depth) {
+		if (depth > 0) {
+			return resolve(state, depth - 1);
+		}
+		return state.resolver.resolveArgument(state.parameter, state.bindingContext, state.exchange)
+				.onErrorResume(Mono::just)
+				.block();
+	}
+
+	public static class Controller {
+
+		public void handle(@ValidRequestBody(value = "schema", query = true) Person person) {
+		}
+
+	}
+
+	public static class Person {
+
+		public String firstName;
+
+		public String lastName;
+
+		public int age;
+
+	}
+
+}
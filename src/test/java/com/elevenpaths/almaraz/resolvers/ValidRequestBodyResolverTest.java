@@ -24,6 +24,8 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.BindingContext;
 
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestTiming;
 import com.elevenpaths.almaraz.exceptions.InvalidRequestException;
 import com.elevenpaths.almaraz.exceptions.UnsupportedMediaTypeException;
 import com.elevenpaths.almaraz.validation.JsonSchemaValidator;
@@ -31,6 +33,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.Data;
+import reactor.util.context.Context;
 
 /**
  * Unit tests for {@link ValidRequestBodyResolver}.
@@ -116,6 +119,28 @@ public class ValidRequestBodyResolverTest {
 		Assert.assertTrue(value.bool);
 	}
 
+	@Test
+	public void validateJsonBodyWithTiming() {
+		MockServerHttpRequest request = MockServerHttpRequest
+				.post("/test")
+				.contentType(MediaType.APPLICATION_JSON)
+				.body("{\"str\": \"value\", \"bool\": true}");
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+
+		Mockito.when(validRequestBody.value()).thenReturn("schema");
+		Mockito.when(validRequestBody.multi()).thenReturn(false);
+		Mockito.when(validRequestBody.query()).thenReturn(false);
+		Mockito.when(methodParameter.getParameterAnnotation(ValidRequestBody.class)).thenReturn(validRequestBody);
+		Mockito.doReturn(ReferenceType.class).when(methodParameter).getParameterType();
+
+		RequestTiming timing = new RequestTiming();
+		ValidRequestBodyResolver resolver = new ValidRequestBodyResolver(validator);
+		resolver.resolveArgument(methodParameter, bindingContext, exchange)
+				.subscriberContext(Context.of(RequestContext.class, new RequestContext().setTiming(timing)))
+				.block();
+		Assert.assertTrue(timing.isRecorded(RequestTiming.Phase.VALIDATION));
+	}
+
 	@Test
 	public void validateJsonBodyWithInvalidBody() {
 		MockServerHttpRequest request = MockServerHttpRequest
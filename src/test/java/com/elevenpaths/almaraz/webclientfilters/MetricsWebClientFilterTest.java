@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webclientfilters;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+/**
+ * Unit tests for {@link MetricsWebClientFilter}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MetricsWebClientFilterTest {
+
+	@Test
+	public void filter() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebClientFilter filter = new MetricsWebClientFilter(registry);
+		ClientResponse response = Mockito.mock(ClientResponse.class);
+		Mockito.when(response.rawStatusCode()).thenReturn(503);
+		ExchangeFunction exchange = r -> Mono.just(response);
+
+		filter.filter(request("http://localhost:8080/users/1"), exchange).block();
+		filter.filter(request("http://localhost:8080/users/2"), exchange).block();
+
+		Assert.assertEquals(2, registry.get(MetricsWebClientFilter.DEFAULT_METRIC_NAME)
+				.tag("host", "localhost")
+				.tag("uri", "/users/{id}")
+				.tag("method", "GET")
+				.tag("status", "503")
+				.tag("outcome", "SERVER_ERROR")
+				.timer()
+				.count());
+	}
+
+	@Test
+	public void filterWithError() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebClientFilter filter = new MetricsWebClientFilter(registry);
+		ClientRequest request = ClientRequest.create(HttpMethod.POST, URI.create("http://remote/users")).build();
+
+		try {
+			filter.filter(request, r -> Mono.error(new IOException("connection refused"))).block();
+			Assert.fail();
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof IOException);
+		}
+
+		Assert.assertEquals(1, registry.get(MetricsWebClientFilter.DEFAULT_METRIC_NAME)
+				.tag("host", "remote")
+				.tag("uri", MetricsWebClientFilter.NONE)
+				.tag("status", MetricsWebClientFilter.IO_ERROR)
+				.tag("outcome", MetricsWebClientFilter.IO_ERROR)
+				.timer()
+				.count());
+		Assert.assertEquals(0, filter.getInFlightCount("remote"));
+	}
+
+	@Test
+	public void filterWithTimeout() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebClientFilter filter = new MetricsWebClientFilter(registry);
+		ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("http://slow/users")).build();
+
+		try {
+			filter.filter(request, r -> Mono.never()).timeout(Duration.ofMillis(10)).block();
+			Assert.fail();
+		} catch (RuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+
+		Assert.assertEquals(1, registry.get(MetricsWebClientFilter.DEFAULT_METRIC_NAME)
+				.tag("host", "slow")
+				.tag("status", MetricsWebClientFilter.CANCELLED)
+				.tag("outcome", MetricsWebClientFilter.CANCELLED)
+				.timer()
+				.count());
+		Assert.assertEquals(0, filter.getInFlightCount("slow"));
+	}
+
+	@Test
+	public void inFlight() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebClientFilter filter = new MetricsWebClientFilter(registry).setPercentileHistogram(false);
+		MonoProcessor<ClientResponse> pending = MonoProcessor.create();
+
+		Mono<ClientResponse> result = filter.filter(request("http://localhost:8080/users/1"), r -> pending);
+		Assert.assertEquals(0, filter.getInFlightCount("localhost"));
+
+		MonoProcessor<ClientResponse> subscribed = result.toProcessor();
+		Assert.assertEquals(1, filter.getInFlightCount("localhost"));
+		Assert.assertEquals(1.0, registry.get(MetricsWebClientFilter.DEFAULT_METRIC_NAME + ".active")
+				.tag("host", "localhost")
+				.gauge()
+				.value(), 0);
+
+		ClientResponse response = Mockito.mock(ClientResponse.class);
+		Mockito.when(response.rawStatusCode()).thenReturn(200);
+		pending.onNext(response);
+		Assert.assertEquals(response, subscribed.block());
+		Assert.assertEquals(0, filter.getInFlightCount("localhost"));
+	}
+
+	private ClientRequest request(String url) {
+		return ClientRequest.create(HttpMethod.GET, URI.create(url))
+				.attribute(MetricsWebClientFilter.URI_TEMPLATE_ATTRIBUTE, "/users/{id}")
+				.build();
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebHandler;
+import org.springframework.web.server.handler.DefaultWebFilterChain;
+
+import com.elevenpaths.almaraz.exceptions.ConflictException;
+import com.elevenpaths.almaraz.ids.CounterIdGenerator;
+import com.elevenpaths.almaraz.ids.IdGenerator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import reactor.core.publisher.Mono;
+
+/**
+ * JMH benchmark of the {@link AlmarazWebFilter} (single pass) against the chain of
+ * {@link RequestContextWebFilter}, {@link LoggerWebFilter}, {@link ErrorWebFilter},
+ * {@link CompleteLocationHeaderWebFilter} and {@link BasePathWebFilter}, with a handler that creates a
+ * resource (relative location header) or fails with a conflict.
+ *
+ * The log level of the filters is raised to WARN, and the transaction IDs are generated with a
+ * {@link CounterIdGenerator}, so that the benchmark measures the overhead of the filters and not the appenders
+ * nor the random generator. Both variants pay for the mock exchange of each request. Run it with the GC profiler
+ * to compare the allocations per request:
+ *
+ * <code>
+ * make benchmark BENCHMARK="AlmarazWebFilterBenchmark -prof gc"
+ * </code>
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlmarazWebFilterBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class FilterState {
+
+		@Param({ "created", "conflict" })
+		String handler;
+
+		WebHandler webHandler;
+
+		List<WebFilter> chainedFilters;
+
+		List<WebFilter> fusedFilters;
+
+		MockServerHttpRequest request;
+
+		@Setup
+		public void setUp() {
+			setLevel(Level.WARN);
+			if ("conflict".equals(handler)) {
+				ConflictException conflict = new ConflictException("user already exists");
+				webHandler = exchange -> Mono.error(conflict);
+			} else {
+				webHandler = exchange -> {
+					exchange.getResponse().setStatusCode(HttpStatus.CREATED);
+					exchange.getResponse().getHeaders().setLocation(URI.create("1"));
+					return exchange.getResponse().setComplete();
+				};
+			}
+			IdGenerator idGenerator = new CounterIdGenerator();
+			chainedFilters = Arrays.asList(
+					new RequestContextWebFilter(null, null, idGenerator),
+					new LoggerWebFilter(),
+					new ErrorWebFilter(),
+					new CompleteLocationHeaderWebFilter(),
+					new BasePathWebFilter("/api"));
+			fusedFilters = Collections.singletonList(
+					new AlmarazWebFilter(
+							new RequestContextWebFilter(null, null, idGenerator),
+							new LoggerWebFilter(),
+							new ErrorWebFilter(),
+							new CompleteLocationHeaderWebFilter(),
+							new BasePathWebFilter("/api")));
+			request = MockServerHttpRequest.post("/api/users").build();
+		}
+
+		@TearDown
+		public void tearDown() {
+			setLevel(null);
+		}
+
+		private static void setLevel(Level level) {
+			((Logger) LoggerFactory.getLogger(LoggerWebFilter.class)).setLevel(level);
+			((Logger) LoggerFactory.getLogger(ErrorWebFilter.class)).setLevel(level);
+		}
+
+	}
+
+	@Benchmark
+	public Object chained(FilterState state) {
+		return filter(state, state.chainedFilters);
+	}
+
+	@Benchmark
+	public Object fused(FilterState state) {
+		return filter(state, state.fusedFilters);
+	}
+
+	private static Object filter(FilterState state, List<WebFilter> filters) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(state.request);
+		new DefaultWebFilterChain(state.webHandler, filters).filter(exchange).block();
+		return exchange.getResponse().getStatusCode();
+	}
+
+}
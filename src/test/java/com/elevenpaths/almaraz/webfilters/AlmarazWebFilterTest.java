@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebHandler;
+import org.springframework.web.server.handler.DefaultWebFilterChain;
+
+import com.elevenpaths.almaraz.context.InFlightRegistry;
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.exceptions.ConflictException;
+import com.elevenpaths.almaraz.utils.LoggingAppender;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link AlmarazWebFilter}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class AlmarazWebFilterTest {
+
+	@Test
+	public void filter() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/api/users")
+				.header(RequestContextWebFilter.DEFAULT_CORRELATOR_HEADER, "corr"));
+		RequestContext[] requestContext = new RequestContext[1];
+		WebHandler handler = e -> RequestContext.context()
+				.doOnNext(rc -> requestContext[0] = rc)
+				.then(Mono.defer(() -> {
+					Assert.assertEquals("/api", e.getRequest().getPath().contextPath().value());
+					e.getResponse().setStatusCode(HttpStatus.CREATED);
+					e.getResponse().getHeaders().setLocation(URI.create("1"));
+					return e.getResponse().setComplete();
+				}));
+
+		LoggingAppender.clearEvents();
+		fused(exchange, handler, new AlmarazWebFilter(null, new LoggerWebFilter().setTiming(true), null,
+				new CompleteLocationHeaderWebFilter(), new BasePathWebFilter("/api")));
+
+		HttpHeaders headers = exchange.getResponse().getHeaders();
+		Assert.assertEquals(HttpStatus.CREATED, exchange.getResponse().getStatusCode());
+		Assert.assertEquals("corr", headers.getFirst(RequestContextWebFilter.DEFAULT_CORRELATOR_HEADER));
+		Assert.assertEquals("/api/users/1", headers.getLocation().toString());
+		Assert.assertEquals("corr", requestContext[0].getCorrelator());
+		Assert.assertNotNull(requestContext[0].getTiming());
+		Assert.assertEquals(2, LoggingAppender.getEvents().size());
+		Assert.assertEquals("Request", LoggingAppender.getEvents().get(0).getMessage());
+		Assert.assertEquals("Response", LoggingAppender.getEvents().get(1).getMessage());
+	}
+
+	@Test
+	public void filterWithError() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/users"));
+		fused(exchange, e -> Mono.error(new ConflictException("user already exists")), new AlmarazWebFilter("/api"));
+
+		Assert.assertEquals(HttpStatus.CONFLICT, exchange.getResponse().getStatusCode());
+		Assert.assertEquals("{\"error\":\"conflict\",\"error_description\":\"user already exists\"}",
+				exchange.getResponse().getBodyAsString().block(Duration.ZERO));
+		Assert.assertNotNull(exchange.getResponse().getHeaders()
+				.getFirst(RequestContextWebFilter.DEFAULT_CORRELATOR_HEADER));
+	}
+
+	@Test
+	public void filterWithInvalidBasePath() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/other/users"));
+		boolean[] invoked = new boolean[1];
+		fused(exchange, e -> {
+			invoked[0] = true;
+			return e.getResponse().setComplete();
+		}, new AlmarazWebFilter("/api"));
+
+		Assert.assertFalse(invoked[0]);
+		Assert.assertEquals(HttpStatus.NOT_FOUND, exchange.getResponse().getStatusCode());
+	}
+
+	@Test
+	public void filterWithLightweightRequest() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/health"));
+		exchange.getAttributes().put(LightweightWebFilter.LIGHTWEIGHT_ATTRIBUTE, Boolean.TRUE);
+		RequestContext[] requestContext = new RequestContext[1];
+
+		LoggingAppender.clearEvents();
+		fused(exchange, e -> RequestContext.context()
+				.doOnNext(rc -> requestContext[0] = rc)
+				.then(e.getResponse().setComplete()), new AlmarazWebFilter("/api"));
+
+		Assert.assertSame(RequestContext.EMPTY, requestContext[0]);
+		Assert.assertNull(exchange.getResponse().getHeaders()
+				.getFirst(RequestContextWebFilter.DEFAULT_CORRELATOR_HEADER));
+		Assert.assertTrue(LoggingAppender.getEvents().isEmpty());
+	}
+
+	@Test
+	public void filterWithLightweightRequestUnderBasePath() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/static/app.js"));
+		exchange.getAttributes().put(LightweightWebFilter.LIGHTWEIGHT_ATTRIBUTE, Boolean.TRUE);
+		String[] contextPath = new String[1];
+
+		fused(exchange, e -> {
+			contextPath[0] = e.getRequest().getPath().contextPath().value();
+			return e.getResponse().setComplete();
+		}, new AlmarazWebFilter("/api"));
+
+		Assert.assertEquals("/api", contextPath[0]);
+	}
+
+	@Test
+	public void filterWithMetricsAndInFlightRegistry() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		try (InFlightRegistry inFlightRegistry = new InFlightRegistry(Duration.ofMinutes(1))) {
+			AlmarazWebFilter filter = new AlmarazWebFilter(
+					new RequestContextWebFilter(null, null, null, inFlightRegistry),
+					null, null, null, null)
+					.setMetricsWebFilter(new MetricsWebFilter(registry));
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/users"));
+			int[] inFlight = new int[1];
+			fused(exchange, e -> Mono.defer(() -> {
+				inFlight[0] = inFlightRegistry.size();
+				return Mono.error(new ConflictException("user already exists"));
+			}), filter);
+
+			Assert.assertEquals(1, inFlight[0]);
+			Assert.assertEquals(0, inFlightRegistry.size());
+			Timer timer = registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+					.tag("status", "409")
+					.tag("error", "conflict")
+					.timer();
+			Assert.assertEquals(1, timer.count());
+		}
+	}
+
+	@Test
+	public void filterOnSubscription() {
+		try (InFlightRegistry inFlightRegistry = new InFlightRegistry(Duration.ofMinutes(1))) {
+			AlmarazWebFilter filter = new AlmarazWebFilter(
+					new RequestContextWebFilter(null, null, null, inFlightRegistry),
+					new LoggerWebFilter(), null, null, null);
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/users"));
+
+			LoggingAppender.clearEvents();
+			Mono<Void> result = new DefaultWebFilterChain(e -> e.getResponse().setComplete(),
+					Collections.singletonList(filter)).filter(exchange);
+
+			Assert.assertEquals(0, inFlightRegistry.size());
+			Assert.assertTrue(LoggingAppender.getEvents().isEmpty());
+
+			result.block(Duration.ZERO);
+
+			Assert.assertEquals(0, inFlightRegistry.size());
+			Assert.assertEquals("Request", LoggingAppender.getEvents().get(0).getMessage());
+		}
+	}
+
+	@Test
+	public void sameResponseAsChainedFilters() {
+		List<WebHandler> handlers = Arrays.asList(
+				e -> {
+					e.getResponse().setStatusCode(HttpStatus.CREATED);
+					e.getResponse().getHeaders().setLocation(URI.create("1"));
+					return e.getResponse().setComplete();
+				},
+				e -> Mono.error(new ConflictException("user already exists")),
+				e -> Mono.error(new IllegalStateException("unexpected")));
+		for (String path : new String[] { "/api/users", "/other" }) {
+			for (WebHandler handler : handlers) {
+				MockServerWebExchange chainedExchange = MockServerWebExchange.from(MockServerHttpRequest
+						.method(HttpMethod.POST, path).header(RequestContextWebFilter.DEFAULT_CORRELATOR_HEADER, "corr"));
+				MockServerWebExchange fusedExchange = MockServerWebExchange.from(MockServerHttpRequest
+						.method(HttpMethod.POST, path).header(RequestContextWebFilter.DEFAULT_CORRELATOR_HEADER, "corr"));
+				chained(chainedExchange, handler);
+				fused(fusedExchange, handler, new AlmarazWebFilter("/api"));
+
+				Assert.assertEquals(chainedExchange.getResponse().getStatusCode(),
+						fusedExchange.getResponse().getStatusCode());
+				Assert.assertEquals(chainedExchange.getResponse().getHeaders(),
+						fusedExchange.getResponse().getHeaders());
+				Assert.assertEquals(body(chainedExchange), body(fusedExchange));
+			}
+		}
+	}
+
+	private static String body(MockServerWebExchange exchange) {
+		// The mock response fails if the body was not written
+		return exchange.getResponse().getBodyAsString()
+				.onErrorReturn(IllegalStateException.class, "")
+				.block(Duration.ZERO);
+	}
+
+	private static void fused(MockServerWebExchange exchange, WebHandler handler, AlmarazWebFilter filter) {
+		new DefaultWebFilterChain(handler, Collections.singletonList(filter)).filter(exchange).block(Duration.ZERO);
+	}
+
+	private static void chained(MockServerWebExchange exchange, WebHandler handler) {
+		WebFilter[] filters = {
+				new RequestContextWebFilter(),
+				new LoggerWebFilter(),
+				new ErrorWebFilter(),
+				new CompleteLocationHeaderWebFilter(),
+				new BasePathWebFilter("/api")
+		};
+		new DefaultWebFilterChain(handler, Arrays.asList(filters)).filter(exchange).block(Duration.ZERO);
+	}
+
+}
@@ -14,6 +14,7 @@ import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilterChain;
 
 import com.elevenpaths.almaraz.exceptions.NotFoundException;
+import com.elevenpaths.almaraz.exceptions.ResponseException;
 
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
@@ -49,12 +50,95 @@ public class BasePathWebFilterTest {
 			.verify();
 	}
 
+	@Test
+	public void filterWithSeveralBasePaths() {
+		BasePathWebFilter filter = new BasePathWebFilter("/api/v1/", "/api", "/api/v2");
+		String[][] tcs = {
+				{ "/api/v1/test", "/api/v1", "/test" },
+				{ "/api/v2/test", "/api/v2", "/test" },
+				{ "/api/v3/test", "/api", "/v3/test" },
+				{ "/api/v1", "/api/v1", "" },
+				{ "/api/v10/test", "/api", "/v10/test" },
+		};
+		for (String[] tc : tcs) {
+			TestWebFilterChain chain = new TestWebFilterChain();
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(tc[0]));
+			filter.filter(exchange, chain).block(Duration.ZERO);
+			Assert.assertEquals(tc[1], chain.contextPath);
+			Assert.assertEquals(tc[2], chain.path);
+		}
+	}
+
+	@Test
+	public void filterWithPartialSegment() {
+		BasePathWebFilter filter = new BasePathWebFilter("/api");
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/apis/test"));
+
+		StepVerifier.create(filter.filter(exchange, new TestWebFilterChain()))
+			.consumeErrorWith(error -> {
+				Assert.assertEquals(NotFoundException.class, error.getClass());
+			})
+			.verify();
+
+		// The shared exception in stackless mode
+		ResponseException.setStacklessClientErrors(true);
+		try {
+			StepVerifier.create(filter.filter(exchange, new TestWebFilterChain()))
+				.consumeErrorWith(error -> {
+					Assert.assertSame(NotFoundException.instance(), error);
+				})
+				.verify();
+		} finally {
+			ResponseException.setStacklessClientErrors(false);
+		}
+	}
+
+	@Test
+	public void filterWithRootPath() {
+		for (BasePathWebFilter filter : new BasePathWebFilter[] {
+				new BasePathWebFilter(), new BasePathWebFilter("/"), new BasePathWebFilter((String) null) }) {
+			TestWebFilterChain chain = new TestWebFilterChain();
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/test"));
+			filter.filter(exchange, chain).block(Duration.ZERO);
+			Assert.assertSame(exchange, chain.exchange);
+			Assert.assertEquals("/test", chain.path);
+		}
+	}
+
+	@Test
+	public void filterWithLightweightRequest() {
+		BasePathWebFilter filter = new BasePathWebFilter("/api");
+		String[][] tcs = {
+				{ "/api/static/app.js", "/api", "/static/app.js" },
+				{ "/health", "", "/health" },
+		};
+		for (String[] tc : tcs) {
+			TestWebFilterChain chain = new TestWebFilterChain();
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(tc[0]));
+			exchange.getAttributes().put(LightweightWebFilter.LIGHTWEIGHT_ATTRIBUTE, Boolean.TRUE);
+			filter.filter(exchange, chain).block(Duration.ZERO);
+			Assert.assertEquals(tc[1], chain.contextPath);
+			Assert.assertEquals(tc[2], chain.path);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidBasePath() {
+		new BasePathWebFilter("api");
+	}
+
 	private static class TestWebFilterChain implements WebFilterChain {
 
+		private ServerWebExchange exchange;
+
+		private String contextPath;
+
 		private String path;
 
 		@Override
 		public Mono<Void> filter(ServerWebExchange exchange) {
+			this.exchange = exchange;
+			contextPath = exchange.getRequest().getPath().contextPath().value();
 			path = exchange.getRequest().getPath().pathWithinApplication().value();
 			return Mono.empty();
 		}
@@ -5,16 +5,22 @@
 package com.elevenpaths.almaraz.webfilters;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilterChain;
@@ -22,8 +28,14 @@ import org.springframework.web.server.WebFilterChain;
 import com.elevenpaths.almaraz.exceptions.InsufficientScopesException;
 import com.elevenpaths.almaraz.exceptions.InvalidRequestException;
 import com.elevenpaths.almaraz.exceptions.NotFoundException;
+import com.elevenpaths.almaraz.exceptions.ResponseException;
+import com.elevenpaths.almaraz.exceptions.ServerException;
+import com.elevenpaths.almaraz.logging.ErrorLogDeduplicator;
+import com.elevenpaths.almaraz.utils.LoggingAppender;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -95,6 +107,181 @@ public class ErrorWebFilterTest {
 		Assert.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exchange.getResponse().getStatusCode());
 	}
 
+	@Test
+	public void filterWithCachedErrorBody() {
+		ErrorWebFilter filter = new ErrorWebFilter();
+		for (int i = 0; i < 2; i++) {
+			TestWebFilterChain chain = new TestWebFilterChain(new InsufficientScopesException());
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+
+			filter.filter(exchange, chain).block(Duration.ZERO);
+
+			Assert.assertEquals(HttpStatus.FORBIDDEN, exchange.getResponse().getStatusCode());
+			validateErrorBody(exchange, "unauthorized_client", "invalid token: insufficient scopes");
+		}
+	}
+
+	@Test
+	public void filterWithDynamicReasons() {
+		ErrorWebFilter filter = new ErrorWebFilter();
+		for (int i = 0; i < 2 * ErrorWebFilter.MAX_CACHED_BODIES; i++) {
+			if (i % 16 == 0) {
+				filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/api/test")),
+						new TestWebFilterChain(new InsufficientScopesException())).block(Duration.ZERO);
+			}
+			TestWebFilterChain chain = new TestWebFilterChain(new InvalidRequestException("invalid field " + i));
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+
+			filter.filter(exchange, chain).block(Duration.ZERO);
+
+			validateErrorBody(exchange, "invalid_request", "invalid field " + i);
+		}
+
+		Assert.assertTrue(filter.isCachedErrorResponseBody("unauthorized_client",
+				"invalid token: insufficient scopes"));
+		Assert.assertFalse(filter.isCachedErrorResponseBody("invalid_request", "invalid field 0"));
+		Assert.assertTrue(filter.isCachedErrorResponseBody("invalid_request",
+				"invalid field " + (2 * ErrorWebFilter.MAX_CACHED_BODIES - 1)));
+	}
+
+	@Test
+	public void filterWithErrorDetails() {
+		ErrorWebFilter filter = new ErrorWebFilter();
+		ResponseException e = new ResponseException(HttpStatus.CONFLICT, "conflict", "duplicated user")
+				.addDetail("user", "test");
+		TestWebFilterChain chain = new TestWebFilterChain(e);
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+
+		filter.filter(exchange, chain).block(Duration.ZERO);
+
+		Assert.assertEquals(HttpStatus.CONFLICT, exchange.getResponse().getStatusCode());
+		StepVerifier.create(exchange.getResponse().getBodyAsString())
+			.expectNext("{\"error\":\"conflict\",\"error_description\":\"duplicated user\",\"error_details\":{\"user\":\"test\"}}")
+			.verifyComplete();
+	}
+
+	@Test
+	public void filterWithInvalidErrorDetails() {
+		ErrorWebFilter filter = new ErrorWebFilter();
+		ResponseException e = new ResponseException(HttpStatus.CONFLICT, "conflict", "duplicated user")
+				.addDetail("user", new Object());
+		TestWebFilterChain chain = new TestWebFilterChain(e);
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+
+		filter.filter(exchange, chain).block(Duration.ZERO);
+
+		Assert.assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, exchange.getResponse().getStatusCode());
+	}
+
+	@Test
+	public void filterWithOverriddenMarshalling() {
+		ErrorWebFilter filter = new ErrorWebFilter() {
+			@Override
+			protected byte[] marshalErrorResponseBody(ResponseException e) {
+				return ("{\"code\":\"" + e.getError() + "\"}").getBytes(StandardCharsets.UTF_8);
+			}
+		};
+		TestWebFilterChain chain = new TestWebFilterChain(new InsufficientScopesException());
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+
+		filter.filter(exchange, chain).block(Duration.ZERO);
+
+		Assert.assertEquals(HttpStatus.FORBIDDEN, exchange.getResponse().getStatusCode());
+		StepVerifier.create(exchange.getResponse().getBodyAsString())
+			.expectNext("{\"code\":\"unauthorized_client\"}")
+			.verifyComplete();
+	}
+
+	@Test
+	public void filterWithOverriddenRendering() {
+		HttpStatus[] rendered = new HttpStatus[1];
+		ErrorWebFilter filter = new ErrorWebFilter() {
+			@Override
+			protected Mono<Void> renderErrorResponse(ServerWebExchange exchange, HttpStatus status, byte[] bodyBytes,
+					MultiValueMap<String, String> headers) {
+				rendered[0] = status;
+				return super.renderErrorResponse(exchange, status, bodyBytes, headers);
+			}
+		};
+		TestWebFilterChain chain = new TestWebFilterChain(new InvalidRequestException("$.country is invalid"));
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+
+		filter.filter(exchange, chain).block(Duration.ZERO);
+
+		Assert.assertEquals(HttpStatus.BAD_REQUEST, rendered[0]);
+		validateErrorBody(exchange, "invalid_request", "$.country is invalid");
+	}
+
+	@Test
+	public void buildErrorResponseEncodesBodyLazily() {
+		int[] encoded = new int[1];
+		ErrorWebFilter filter = new ErrorWebFilter() {
+			@Override
+			protected DataBuffer encodeErrorResponseBody(ResponseException e, DataBufferFactory bufferFactory)
+					throws IOException {
+				encoded[0]++;
+				return super.encodeErrorResponseBody(e, bufferFactory);
+			}
+		};
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+
+		Mono<Void> response = filter.buildErrorResponse(exchange, new NotFoundException("user not found"));
+		Assert.assertEquals(0, encoded[0]);
+
+		response.block(Duration.ZERO);
+		Assert.assertEquals(1, encoded[0]);
+		validateErrorBody(exchange, "not_found", "user not found");
+	}
+
+	@Test
+	public void filterWithCommittedResponse() {
+		int[] encoded = new int[1];
+		ErrorWebFilter filter = new ErrorWebFilter() {
+			@Override
+			protected DataBuffer encodeErrorResponseBody(ResponseException e, DataBufferFactory bufferFactory)
+					throws IOException {
+				encoded[0]++;
+				return super.encodeErrorResponseBody(e, bufferFactory);
+			}
+		};
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+		WebFilterChain chain = e -> e.getResponse().setComplete()
+				.then(Mono.error(new InvalidRequestException("$.country is invalid")));
+
+		StepVerifier.create(filter.filter(exchange, chain))
+			.verifyError(InvalidRequestException.class);
+
+		Assert.assertEquals(0, encoded[0]);
+		Assert.assertNull(exchange.getResponse().getStatusCode());
+	}
+
+	@Test
+	public void logErrorWithDeduplication() {
+		ErrorWebFilter filter = new ErrorWebFilter(new ObjectMapper(), new ErrorLogDeduplicator(Duration.ofMinutes(1)));
+		IllegalStateException cause = new IllegalStateException("test");
+		LoggingAppender.clearEvents();
+		filter.logError(new ServerException(cause));
+		filter.logError(new ServerException(cause));
+		filter.logError(new NotFoundException("user not found"));
+		Assert.assertEquals(2, LoggingAppender.getEvents().size());
+	}
+
+	@Test
+	public void logErrorWithWarnLevel() {
+		Logger logger = (Logger) LoggerFactory.getLogger(ErrorWebFilter.class);
+		logger.setLevel(Level.WARN);
+		try {
+			ResponseException e = Mockito.mock(ResponseException.class);
+			LoggingAppender.clearEvents();
+			new ErrorWebFilter().logError(e);
+
+			Mockito.verifyZeroInteractions(e);
+			Assert.assertTrue(LoggingAppender.getEvents().isEmpty());
+		} finally {
+			logger.setLevel(null);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private void validateErrorBody(MockServerWebExchange exchange, String expectedError, String expectedErrorDescription) {
 		StepVerifier.create(exchange.getResponse().getBodyAsString())
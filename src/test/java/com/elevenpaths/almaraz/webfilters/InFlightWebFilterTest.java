@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+
+import com.elevenpaths.almaraz.context.InFlightRegistry;
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Unit tests for {@link InFlightWebFilter}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class InFlightWebFilterTest {
+
+	@Test
+	public void filterWithNotInFlightRequest() {
+		try (InFlightRegistry registry = new InFlightRegistry(Duration.ofSeconds(10))) {
+			InFlightWebFilter filter = new InFlightWebFilter(new ObjectMapper(), registry);
+			WebFilterChain chain = exchange -> exchange.getResponse().setComplete();
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/inflight"));
+			filter.filter(exchange, chain).block(Duration.ZERO);
+			Assert.assertTrue(exchange.getResponse().isCommitted());
+			Assert.assertNull(exchange.getResponse().getStatusCode());
+		}
+	}
+
+	@Test
+	public void filterWithInFlightRequest() throws IOException {
+		try (InFlightRegistry registry = new InFlightRegistry(Duration.ofSeconds(10))) {
+			RequestContext requestContext = new RequestContext()
+					.setTransactionId("test-trans")
+					.setCorrelator("test-corr");
+			registry.register("test-trans", requestContext, "GET", "/api/test");
+			InFlightWebFilter filter = new InFlightWebFilter(new ObjectMapper(), registry);
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/inflight"));
+
+			filter.filter(exchange, e -> {
+				throw new IllegalStateException("unexpected");
+			}).block(Duration.ZERO);
+
+			Assert.assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+			Assert.assertEquals(MediaType.APPLICATION_JSON_UTF8, exchange.getResponse().getHeaders().getContentType());
+			JsonNode body = new ObjectMapper().readTree(exchange.getResponse().getBodyAsString().block(Duration.ZERO));
+			Assert.assertEquals(1, body.size());
+			Assert.assertEquals("test-trans", body.get(0).get("trans").asText());
+			Assert.assertEquals("test-corr", body.get(0).get("corr").asText());
+			Assert.assertEquals("/api/test", body.get(0).get("path").asText());
+			Assert.assertFalse(body.get(0).get("slow").asBoolean());
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Unit tests for {@link LightweightPathMatcher}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class LightweightPathMatcherTest {
+
+	@Test
+	public void matches() {
+		LightweightPathMatcher matcher = new LightweightPathMatcher()
+				.add(HttpMethod.GET, "/health")
+				.add(HttpMethod.HEAD, "/health")
+				.add("/static/")
+				.add(HttpMethod.GET, "/favicon.ico");
+		Assert.assertFalse(matcher.isEmpty());
+
+		Assert.assertTrue(matcher.matches(HttpMethod.GET, "/health"));
+		Assert.assertTrue(matcher.matches(HttpMethod.HEAD, "/health/liveness"));
+		Assert.assertTrue(matcher.matches(HttpMethod.POST, "/static/app.js"));
+		Assert.assertTrue(matcher.matches(HttpMethod.GET, "/favicon.ico"));
+
+		Assert.assertFalse(matcher.matches(HttpMethod.POST, "/health"));
+		Assert.assertFalse(matcher.matches(HttpMethod.GET, "/healthz"));
+		Assert.assertFalse(matcher.matches(HttpMethod.GET, "/heal"));
+		Assert.assertFalse(matcher.matches(HttpMethod.GET, "/static"));
+		Assert.assertFalse(matcher.matches(HttpMethod.GET, "/api/health"));
+		Assert.assertFalse(matcher.matches(null, "/health"));
+	}
+
+	@Test
+	public void matchesWithManyPrefixes() {
+		LightweightPathMatcher matcher = new LightweightPathMatcher();
+		for (char c = 'z'; c >= 'a'; c--) {
+			matcher.add("/" + c);
+		}
+		for (char c = 'a'; c <= 'z'; c++) {
+			Assert.assertTrue(matcher.matches(HttpMethod.GET, "/" + c + "/test"));
+		}
+		Assert.assertFalse(matcher.matches(HttpMethod.GET, "/A"));
+		Assert.assertFalse(matcher.matches(HttpMethod.GET, "/"));
+	}
+
+	@Test
+	public void matchesNonStandardMethod() {
+		LightweightPathMatcher matcher = new LightweightPathMatcher()
+				.add(HttpMethod.GET, "/health")
+				.add("/static/");
+		Assert.assertTrue(matcher.matches(null, "/static/app.js"));
+		Assert.assertFalse(matcher.matches(null, "/health"));
+	}
+
+	@Test
+	public void matchesRoot() {
+		LightweightPathMatcher matcher = new LightweightPathMatcher().add("/");
+		Assert.assertTrue(matcher.matches(HttpMethod.GET, "/"));
+		Assert.assertTrue(matcher.matches(HttpMethod.GET, "/test"));
+		Assert.assertFalse(new LightweightPathMatcher().matches(HttpMethod.GET, "/"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidPrefix() {
+		new LightweightPathMatcher().add("health");
+	}
+
+}
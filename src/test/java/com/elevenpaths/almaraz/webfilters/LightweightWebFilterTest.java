@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.WebHandler;
+import org.springframework.web.server.handler.DefaultWebFilterChain;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.utils.LoggingAppender;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link LightweightWebFilter}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class LightweightWebFilterTest {
+
+	private final LightweightWebFilter filter = new LightweightWebFilter(
+			new LightweightPathMatcher().add(HttpMethod.GET, "/health"));
+
+	@Test
+	public void filterWithLightweightRequest() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/health"));
+		RequestContext[] requestContext = new RequestContext[1];
+		WebFilterChain chain = chain(e -> RequestContext.context()
+				.doOnNext(rc -> requestContext[0] = rc)
+				.then(Mono.defer(() -> {
+					e.getResponse().setStatusCode(HttpStatus.OK);
+					return e.getResponse().setComplete();
+				})));
+
+		LoggingAppender.clearEvents();
+		chain.filter(exchange).block(Duration.ZERO);
+
+		Assert.assertTrue(LightweightWebFilter.isLightweight(exchange));
+		Assert.assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+		Assert.assertSame(RequestContext.EMPTY, requestContext[0]);
+		Assert.assertTrue(LoggingAppender.getEvents().isEmpty());
+	}
+
+	@Test
+	public void filterWithRegularRequest() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/health"));
+		RequestContext[] requestContext = new RequestContext[1];
+		WebFilterChain chain = chain(e -> RequestContext.context()
+				.doOnNext(rc -> requestContext[0] = rc)
+				.then(e.getResponse().setComplete()));
+
+		LoggingAppender.clearEvents();
+		chain.filter(exchange).block(Duration.ZERO);
+
+		Assert.assertFalse(LightweightWebFilter.isLightweight(exchange));
+		Assert.assertNotSame(RequestContext.EMPTY, requestContext[0]);
+		Assert.assertEquals(2, LoggingAppender.getEvents().size());
+	}
+
+	private WebFilterChain chain(WebHandler handler) {
+		WebFilter[] filters = {
+				filter,
+				new RequestContextWebFilter(),
+				new LoggerWebFilter(),
+				new ErrorWebFilter(),
+				new CompleteLocationHeaderWebFilter(),
+				new BasePathWebFilter("/api")
+		};
+		return new DefaultWebFilterChain(handler, Arrays.asList(filters));
+	}
+
+}
@@ -8,18 +8,32 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilterChain;
 
+import com.elevenpaths.almaraz.context.ContextField;
 import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.context.RequestTiming;
+import com.elevenpaths.almaraz.context.SamplingDecision;
+import com.elevenpaths.almaraz.context.SlotContextMap;
+import com.elevenpaths.almaraz.logging.ReactiveLogger;
+import com.elevenpaths.almaraz.logging.SamplingPolicy;
+import com.elevenpaths.almaraz.logging.accesslog.AccessLogRingBuffer;
 import com.elevenpaths.almaraz.utils.LoggingAppender;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import reactor.core.publisher.Mono;
 import reactor.util.context.Context;
@@ -58,6 +72,207 @@ public class LoggerWebFilterTest {
 		Assert.assertEquals("Response", events.get(1).getMessage());
 	}
 
+	@Test
+	public void filterWithAccessLog() throws UnknownHostException {
+		List<String> entries = Collections.synchronizedList(new ArrayList<>());
+		AccessLogRingBuffer accessLog = new AccessLogRingBuffer((event, endOfBatch) -> {
+			entries.add(event.getMessage() + " " + event.get(SlotContextMap.TRANSACTION_ID) + " "
+					+ event.get(SlotContextMap.PATH) + " " + event.get(SlotContextMap.STATUS));
+		}).start();
+		LoggerWebFilter filter = new LoggerWebFilter(accessLog);
+		MockServerHttpRequest request = MockServerHttpRequest
+				.get("/api/test")
+				.remoteAddress(new InetSocketAddress(InetAddress.getByName("172.16.1.11"), 1000))
+				.build();
+		MockServerWebExchange exchange = MockServerWebExchange.from(request);
+		exchange.getResponse().setStatusCode(HttpStatus.OK);
+
+		LoggingAppender.clearEvents();
+
+		filter.filter(exchange, new TestWebFilterChain())
+			.subscriberContext(Context.of(RequestContext.class, new RequestContext().setTransactionId("test-trans")))
+			.block(Duration.ZERO);
+		accessLog.close();
+
+		Assert.assertEquals(0, LoggingAppender.getEvents().size());
+		Assert.assertEquals(3, entries.size());
+		Assert.assertEquals("Request test-trans /api/test null", entries.get(0));
+		Assert.assertEquals("Response test-trans null 200", entries.get(1));
+		Assert.assertEquals("Complete test-trans null null", entries.get(2));
+	}
+
+	@Test
+	public void filterWithSampling() {
+		LoggerWebFilter filter = new LoggerWebFilter(null, new SamplingPolicy()
+				.addRoute("/api/health", 0));
+
+		Assert.assertEquals(0, filterAndLog("/api/health", HttpStatus.OK, filter).size());
+		Assert.assertEquals(3, filterAndLog("/api/test", HttpStatus.OK, filter).size());
+
+		// Errors are always logged, but the request and handler log entries were already discarded
+		List<ILoggingEvent> events = filterAndLog("/api/health", HttpStatus.INTERNAL_SERVER_ERROR, filter);
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals("Response", events.get(0).getMessage());
+	}
+
+	@Test
+	public void filterWithTailBasedSampling() {
+		LoggerWebFilter filter = new LoggerWebFilter(null, new SamplingPolicy()
+				.addRoute("/api/health", 0)
+				.setTailBased(true));
+
+		Assert.assertEquals(0, filterAndLog("/api/health", HttpStatus.OK, filter).size());
+
+		List<ILoggingEvent> events = filterAndLog("/api/health", HttpStatus.INTERNAL_SERVER_ERROR, filter);
+		Assert.assertEquals(3, events.size());
+		Assert.assertEquals("Request", events.get(0).getMessage());
+		Assert.assertEquals("Handler", events.get(1).getMessage());
+		Assert.assertEquals("Response", events.get(2).getMessage());
+	}
+
+	@Test
+	public void filterWithBatching() {
+		LoggerWebFilter filter = new LoggerWebFilter(null, null, true);
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+		RequestContext requestContext = new RequestContext().setTransactionId("test-trans");
+		WebFilterChain chain = e -> ReactiveLogger.log(() -> LoggerFactory.getLogger(LoggerWebFilterTest.class).info("Handler"))
+				.then(Mono.fromRunnable(() -> Assert.assertTrue(LoggingAppender.getEvents().isEmpty())))
+				.then(e.getResponse().setComplete());
+
+		LoggingAppender.clearEvents();
+		filter.filter(exchange, chain)
+			.subscriberContext(Context.of(RequestContext.class, requestContext))
+			.block(Duration.ZERO);
+
+		List<ILoggingEvent> events = LoggingAppender.getEvents();
+		Assert.assertEquals(4, events.size());
+		Assert.assertEquals("Request", events.get(0).getMessage());
+		Assert.assertEquals("Handler", events.get(1).getMessage());
+		Assert.assertEquals("Response", events.get(2).getMessage());
+		Assert.assertEquals("Complete", events.get(3).getMessage());
+		Assert.assertTrue(requestContext.getLogBuffer().isClosed());
+	}
+
+	@Test
+	public void filterWithCompletionLog() {
+		LoggerWebFilter filter = new LoggerWebFilter().setCompletionLog(true);
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+		RequestContext requestContext = new RequestContext().setTransactionId("test-trans");
+		WebFilterChain chain = e -> e.getResponse()
+				.writeWith(Mono.just(e.getResponse().bufferFactory().wrap("test".getBytes())));
+
+		LoggingAppender.clearEvents();
+		filter.filter(exchange, chain)
+			.subscriberContext(Context.of(RequestContext.class, requestContext))
+			.block(Duration.ZERO);
+
+		List<ILoggingEvent> events = LoggingAppender.getEvents();
+		Assert.assertEquals(3, events.size());
+		Assert.assertEquals("Complete", events.get(2).getMessage());
+		Assert.assertNotNull(requestContext.getString(ContextField.LATENCY_COMPLETE));
+	}
+
+	@Test
+	public void filterWithoutTiming() {
+		Logger logger = (Logger) LoggerFactory.getLogger(LoggerWebFilter.class);
+		logger.setLevel(Level.WARN);
+		try {
+			LoggerWebFilter filter = new LoggerWebFilter();
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+			RequestContext requestContext = new RequestContext().setTransactionId("test-trans");
+			ServerWebExchange[] filtered = new ServerWebExchange[1];
+			WebFilterChain chain = e -> {
+				filtered[0] = e;
+				return e.getResponse().setComplete();
+			};
+
+			filter.filter(exchange, chain)
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block(Duration.ZERO);
+
+			Assert.assertSame(exchange, filtered[0]);
+			Assert.assertNull(requestContext.getTiming());
+		} finally {
+			logger.setLevel(null);
+		}
+	}
+
+	@Test
+	public void filterWithTiming() {
+		for (boolean timing : new boolean[] {false, true}) {
+			LoggerWebFilter filter = new LoggerWebFilter().setTiming(timing);
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+			RequestContext requestContext = new RequestContext().setTransactionId("test-trans");
+			WebFilterChain chain = e -> e.getResponse()
+					.writeWith(Mono.just(e.getResponse().bufferFactory().wrap("test".getBytes())));
+
+			filter.filter(exchange, chain)
+				.subscriberContext(Context.of(RequestContext.class, requestContext))
+				.block(Duration.ZERO);
+
+			Assert.assertEquals(timing, requestContext.getTiming() != null);
+			Assert.assertEquals(timing, requestContext.getDouble(ContextField.LATENCY_HANDLER, -1) >= 0);
+			Assert.assertNull(exchange.getResponse().getHeaders().getFirst(LoggerWebFilter.SERVER_TIMING_HEADER));
+		}
+	}
+
+	@Test
+	public void filterWithServerTiming() {
+		LoggerWebFilter filter = new LoggerWebFilter(null, null, false, true);
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/test"));
+		RequestContext requestContext = new RequestContext().setTransactionId("test-trans");
+		WebFilterChain chain = e -> e.getResponse()
+				.writeWith(Mono.just(e.getResponse().bufferFactory().wrap("test".getBytes())));
+
+		LoggingAppender.clearEvents();
+		filter.filter(exchange, chain)
+			.subscriberContext(Context.of(RequestContext.class, requestContext))
+			.block(Duration.ZERO);
+
+		Assert.assertEquals(2, LoggingAppender.getEvents().size());
+		String serverTiming = exchange.getResponse().getHeaders().getFirst(LoggerWebFilter.SERVER_TIMING_HEADER);
+		Assert.assertTrue(serverTiming.matches("handler;dur=\\d+\\.\\d{3}, ttfb;dur=\\d+\\.\\d{3}"));
+		Assert.assertNotNull(requestContext.getString(ContextField.LATENCY_HANDLER));
+		Assert.assertNotNull(requestContext.getString(ContextField.LATENCY_FIRST_BYTE));
+		Assert.assertNull(requestContext.getString(ContextField.LATENCY_ERROR));
+		Assert.assertTrue(requestContext.getTiming().isRecorded(RequestTiming.Phase.COMPLETE));
+	}
+
+	@Test
+	public void logRequestWithWarnLevel() {
+		Logger logger = (Logger) LoggerFactory.getLogger(LoggerWebFilter.class);
+		logger.setLevel(Level.WARN);
+		try {
+			ServerWebExchange exchange = Mockito.mock(ServerWebExchange.class);
+			LoggingAppender.clearEvents();
+			LoggerWebFilter filter = new LoggerWebFilter();
+			filter.logRequest(exchange);
+			filter.logResponse(exchange, System.currentTimeMillis());
+
+			Mockito.verifyZeroInteractions(exchange);
+			Assert.assertTrue(LoggingAppender.getEvents().isEmpty());
+		} finally {
+			logger.setLevel(null);
+		}
+	}
+
+	private List<ILoggingEvent> filterAndLog(String path, HttpStatus status, LoggerWebFilter filter) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+		RequestContext requestContext = new RequestContext().setTransactionId("test-trans");
+		WebFilterChain chain = e -> ReactiveLogger.log(() -> LoggerFactory.getLogger(LoggerWebFilterTest.class).info("Handler"))
+				.then(Mono.defer(() -> {
+					e.getResponse().setStatusCode(status);
+					return e.getResponse().setComplete();
+				}));
+
+		LoggingAppender.clearEvents();
+		filter.filter(exchange, chain)
+			.subscriberContext(Context.of(RequestContext.class, requestContext))
+			.block(Duration.ZERO);
+		Assert.assertNotEquals(SamplingDecision.DEFERRED, requestContext.getSamplingDecision());
+		return new ArrayList<>(LoggingAppender.getEvents());
+	}
+
 	private static class TestWebFilterChain implements WebFilterChain {
 
 		@Override
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.time.Duration;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.elevenpaths.almaraz.context.RequestContext;
+import com.elevenpaths.almaraz.exceptions.NotFoundException;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Unit tests for {@link MetricsWebFilter}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class MetricsWebFilterTest {
+
+	@Test
+	public void filterWithRouteTemplate() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebFilter filter = new MetricsWebFilter(registry);
+		WebFilterChain chain = exchange -> {
+			exchange.getAttributes().put(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE,
+					new PathPatternParser().parse("/users/{id}"));
+			return RequestContext.context()
+					.doOnNext(requestContext -> requestContext.setOperation("get-user"))
+					.then(exchange.getResponse().setComplete());
+		};
+
+		filter(filter, chain, "/users/1");
+		filter(filter, chain, "/users/2");
+
+		Timer timer = registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("uri", "/users/{id}")
+				.tag("method", "GET")
+				.tag("status", "200")
+				.tag("error", MetricsWebFilter.NONE)
+				.tag("operation", "get-user")
+				.timer();
+		Assert.assertEquals(2, timer.count());
+		Assert.assertEquals(1, registry.getMeters().size());
+	}
+
+	@Test
+	public void filterWithError() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebFilter filter = new MetricsWebFilter(registry);
+		WebFilterChain errorChain = exchange -> new ErrorWebFilter()
+				.filter(exchange, e -> Mono.error(new NotFoundException("user not found")));
+
+		filter(filter, errorChain, "/users/1");
+		filter(filter, errorChain, "/users/2");
+
+		Timer timer = registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("uri", "NOT_FOUND")
+				.tag("status", "404")
+				.tag("error", "not_found")
+				.tag("operation", MetricsWebFilter.NONE)
+				.timer();
+		Assert.assertEquals(2, timer.count());
+	}
+
+	@Test
+	public void filterWithoutStatus() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebFilter filter = new MetricsWebFilter(registry).setPercentileHistogram(false);
+
+		filter(filter, exchange -> Mono.error(new IllegalStateException()), "/");
+		filter(filter, exchange -> Mono.empty(), "/test");
+
+		Assert.assertEquals(1, registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("uri", "root").tag("status", "500").timer().count());
+		Assert.assertEquals(1, registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("uri", "UNKNOWN").tag("status", "200").timer().count());
+	}
+
+	@Test
+	public void filterWithNonStandardMethod() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebFilter filter = new MetricsWebFilter(registry);
+		MockServerWebExchange mockExchange = MockServerWebExchange.from(MockServerHttpRequest.get("/test"));
+		for (String method : new String[] {"FOO", "XYZ1"}) {
+			ServerWebExchange exchange = mockExchange.mutate()
+					.request(new ServerHttpRequestDecorator(mockExchange.getRequest()) {
+						@Override
+						public HttpMethod getMethod() {
+							return null;
+						}
+
+						@Override
+						public String getMethodValue() {
+							return method;
+						}
+					})
+					.build();
+			filter(filter, e -> Mono.empty(), exchange);
+		}
+
+		Timer timer = registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("method", MetricsWebFilter.OTHER)
+				.timer();
+		Assert.assertEquals(2, timer.count());
+		Assert.assertEquals(1, registry.getMeters().size());
+	}
+
+	@Test
+	public void filterWithMaxTimers() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		MetricsWebFilter filter = new MetricsWebFilter(registry).setMaxTimers(2);
+		for (int i = 0; i < 5; i++) {
+			String operation = "operation-" + i;
+			filter(filter, exchange -> RequestContext.context()
+					.doOnNext(requestContext -> requestContext.setOperation(operation))
+					.then(), "/test");
+		}
+
+		Assert.assertEquals(3, registry.getMeters().size());
+		Assert.assertEquals(1, registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("operation", "operation-0").timer().count());
+		Assert.assertEquals(1, registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("operation", "operation-1").timer().count());
+		Assert.assertEquals(3, registry.get(MetricsWebFilter.DEFAULT_METRIC_NAME)
+				.tag("uri", MetricsWebFilter.OVERFLOW)
+				.tag("method", MetricsWebFilter.OVERFLOW)
+				.tag("status", "200")
+				.tag("operation", MetricsWebFilter.OVERFLOW)
+				.timer().count());
+	}
+
+	private void filter(MetricsWebFilter filter, WebFilterChain chain, String path) {
+		filter(filter, chain, MockServerWebExchange.from(MockServerHttpRequest.get(path)));
+	}
+
+	private void filter(MetricsWebFilter filter, WebFilterChain chain, ServerWebExchange exchange) {
+		filter.filter(exchange, chain)
+			.onErrorResume(IllegalStateException.class, e -> Mono.empty())
+			.subscriberContext(Context.of(RequestContext.class, new RequestContext()))
+			.block(Duration.ZERO);
+	}
+
+}
@@ -13,6 +13,8 @@ import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilterChain;
 
+import com.elevenpaths.almaraz.context.InFlightRegistry;
+import com.elevenpaths.almaraz.context.InFlightRequest;
 import com.elevenpaths.almaraz.context.RequestContext;
 
 import reactor.core.publisher.Mono;
@@ -71,6 +73,16 @@ public class RequestContextWebFilterTest {
 		Assert.assertEquals("test-corr", exchange.getResponse().getHeaders().getFirst("My-Correlator"));
 	}
 
+	@Test
+	public void filterWithCustomIdGenerator() {
+		RequestContextWebFilter filter = new RequestContextWebFilter(null, null, () -> "test-trans");
+		TestWebFilterChain chain = new TestWebFilterChain();
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/resources"));
+		filter.filter(exchange, chain).block(Duration.ZERO);
+		Assert.assertEquals("test-trans", chain.requestContext.getTransactionId());
+		Assert.assertEquals("test-trans", chain.requestContext.getCorrelator());
+	}
+
 	@Test
 	public void filterWithCustomContext() {
 		RequestContextWebFilter filter = new RequestContextWebFilter(() -> new CustomContext());
@@ -83,6 +95,35 @@ public class RequestContextWebFilterTest {
 		Assert.assertEquals("test-value", chain.requestContext.getString("custom"));
 	}
 
+	@Test
+	public void filterWithInFlightRegistry() {
+		try (InFlightRegistry registry = new InFlightRegistry(Duration.ofSeconds(10))) {
+			RequestContextWebFilter filter = new RequestContextWebFilter(null, null, () -> "test-trans", registry);
+			MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/resources"));
+			WebFilterChain chain = e -> {
+				InFlightRequest request = registry.get("test-trans");
+				Assert.assertNotNull(request);
+				Assert.assertEquals("GET", request.getMethod());
+				Assert.assertEquals("/api/resources", request.getPath());
+				return e.getResponse().setComplete();
+			};
+			filter.filter(exchange, chain).block(Duration.ZERO);
+			Assert.assertEquals(0, registry.size());
+
+			// Failed requests are also unregistered
+			filter.filter(exchange, e -> Mono.error(new IllegalStateException()))
+					.onErrorResume(IllegalStateException.class, t -> Mono.empty())
+					.block(Duration.ZERO);
+			Assert.assertEquals(0, registry.size());
+
+			// Requests are registered on subscription
+			Mono<Void> result = filter.filter(exchange, e -> e.getResponse().setComplete());
+			Assert.assertEquals(0, registry.size());
+			result.block(Duration.ZERO);
+			Assert.assertEquals(0, registry.size());
+		}
+	}
+
 	private static class CustomContext extends RequestContext {
 		public CustomContext() {
 			super();
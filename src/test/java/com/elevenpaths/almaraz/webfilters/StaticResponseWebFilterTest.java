@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Telefonica I+D. All rights reserved.
+ */
+
+package com.elevenpaths.almaraz.webfilters;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Unit tests for {@link StaticResponseWebFilter}.
+ *
+ * @author Jorge Lorenzo <jorge.lorenzogallardo@telefonica.com>
+ *
+ */
+public class StaticResponseWebFilterTest {
+
+	private static final String HEALTH = "{\"status\":\"UP\"}";
+
+	@Test
+	public void filterWithGet() {
+		StaticResponseWebFilter filter = new StaticResponseWebFilter();
+		filter.register("/health", MediaType.APPLICATION_JSON_UTF8, HEALTH.getBytes(StandardCharsets.UTF_8));
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/health"));
+
+		filter.filter(exchange, new TestWebFilterChain()).block(Duration.ZERO);
+		Assert.assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+		Assert.assertEquals(MediaType.APPLICATION_JSON_UTF8, exchange.getResponse().getHeaders().getContentType());
+		Assert.assertEquals(HEALTH.length(), exchange.getResponse().getHeaders().getContentLength());
+		Assert.assertEquals(filter.getStaticResponse("/health").getETag(), exchange.getResponse().getHeaders().getETag());
+		Assert.assertEquals(HEALTH, exchange.getResponse().getBodyAsString().block(Duration.ZERO));
+	}
+
+	@Test
+	public void filterWithHead() {
+		StaticResponseWebFilter filter = new StaticResponseWebFilter();
+		filter.register("/health", MediaType.APPLICATION_JSON_UTF8, HEALTH.getBytes(StandardCharsets.UTF_8));
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.head("/health"));
+
+		filter.filter(exchange, new TestWebFilterChain()).block(Duration.ZERO);
+		Assert.assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+		Assert.assertEquals(HEALTH.length(), exchange.getResponse().getHeaders().getContentLength());
+		Assert.assertEquals("", exchange.getResponse().getBodyAsString().defaultIfEmpty("").block(Duration.ZERO));
+	}
+
+	@Test
+	public void filterWithIfNoneMatch() {
+		StaticResponseWebFilter filter = new StaticResponseWebFilter();
+		String etag = filter.register("/health", MediaType.APPLICATION_JSON_UTF8, HEALTH.getBytes(StandardCharsets.UTF_8))
+				.getETag();
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/health")
+				.header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + etag));
+
+		filter.filter(exchange, new TestWebFilterChain()).block(Duration.ZERO);
+		Assert.assertEquals(HttpStatus.NOT_MODIFIED, exchange.getResponse().getStatusCode());
+		Assert.assertEquals(etag, exchange.getResponse().getHeaders().getETag());
+		Assert.assertEquals("", exchange.getResponse().getBodyAsString().defaultIfEmpty("").block(Duration.ZERO));
+
+		// The ETag changes with the body
+		filter.getStaticResponse("/health").setBody("{\"status\":\"DOWN\"}".getBytes(StandardCharsets.UTF_8));
+		Assert.assertNotEquals(etag, filter.getStaticResponse("/health").getETag());
+		exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/health")
+				.header(HttpHeaders.IF_NONE_MATCH, etag));
+		filter.filter(exchange, new TestWebFilterChain()).block(Duration.ZERO);
+		Assert.assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+		Assert.assertEquals("{\"status\":\"DOWN\"}", exchange.getResponse().getBodyAsString().block(Duration.ZERO));
+	}
+
+	@Test
+	public void filterWithNotStaticRequest() {
+		StaticResponseWebFilter filter = new StaticResponseWebFilter();
+		filter.register("/health", MediaType.APPLICATION_JSON_UTF8, HEALTH.getBytes(StandardCharsets.UTF_8));
+		for (MockServerHttpRequest request : new MockServerHttpRequest[] {
+				MockServerHttpRequest.get("/health/other").build(),
+				MockServerHttpRequest.post("/health").build() }) {
+			MockServerWebExchange exchange = MockServerWebExchange.from(request);
+			filter.filter(exchange, new TestWebFilterChain()).block(Duration.ZERO);
+			Assert.assertEquals(HttpStatus.I_AM_A_TEAPOT, exchange.getResponse().getStatusCode());
+		}
+
+		filter.unregister("/health");
+		Assert.assertTrue(filter.isEmpty());
+	}
+
+	private static class TestWebFilterChain implements WebFilterChain {
+		@Override
+		public Mono<Void> filter(ServerWebExchange exchange) {
+			exchange.getResponse().setStatusCode(HttpStatus.I_AM_A_TEAPOT);
+			return exchange.getResponse().setComplete();
+		}
+	}
+
+}